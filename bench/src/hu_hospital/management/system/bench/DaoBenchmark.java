@@ -0,0 +1,151 @@
+package hu_hospital.management.system.bench;
+
+import hu_hospital.management.system.database.*;
+import hu_hospital.management.system.models.*;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The same hot paths through the DAOs, against a throw-away PostgreSQL server
+ * (embedded-postgres runs real PostgreSQL binaries from a jar), so the SQL that
+ * runs here is exactly the SQL that runs in production: sequences, RETURNING,
+ * ANY(?), the queue counter function and the notify triggers included.
+ *
+ * The schema is loaded from database/hospital_schema.sql (override with
+ * -Dbench.schema=path) and seeded with generate_series before each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DaoBenchmark {
+    static final int WAITING_PATIENTS = HospitalServiceBenchmark.WAITING_PATIENTS;
+    static final int WRITE_BATCH = 1_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int patients;
+
+    EmbeddedPostgres postgres;
+    PatientDAO patientDAO;
+    LabTestDAO labTestDAO;
+    PrescriptionDAO prescriptionDAO;
+    String[] waitingIds;
+    final AtomicInteger registrations = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().threadId());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void startDatabase() throws IOException, SQLException {
+        postgres = EmbeddedPostgres.builder().start();
+
+        // Must be set before DatabaseConfig is first used
+        System.setProperty("hospital.db.url", postgres.getJdbcUrl("postgres", "postgres"));
+        System.setProperty("hospital.db.user", "postgres");
+        System.setProperty("hospital.db.password", "");
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(loadSchema());
+            stmt.execute("""
+                INSERT INTO patients (patient_id, first_name, last_name, date_of_birth, gender,
+                                      phone_number, queue_number, status)
+                SELECT 'B' || g, 'Bench', 'Patient ' || g, DATE '1990-01-01', 'Other',
+                       'bench-' || g, g,
+                       CASE WHEN g > %d THEN 'WAITING' ELSE 'COMPLETED' END
+                FROM generate_series(1, %d) AS g
+                """.formatted(patients - WAITING_PATIENTS, patients));
+            // Enough that dispensing never runs out during the run
+            stmt.execute("""
+                INSERT INTO medication_catalog (item_key, medication_name, strength)
+                VALUES ('vitamin c 1000mg', 'Vitamin C', '1000mg');
+                INSERT INTO medication_stock (item_key, lot_number, expiry_date, quantity)
+                VALUES ('paracetamol 500mg', 'BENCH', CURRENT_DATE + 365, 1000000000),
+                       ('vitamin c 1000mg', 'BENCH', CURRENT_DATE + 365, 1000000000)
+                """);
+            stmt.execute("ANALYZE");
+        }
+
+        patientDAO = new PatientDAO();
+        labTestDAO = new LabTestDAO();
+        prescriptionDAO = new PrescriptionDAO();
+        waitingIds = patientDAO.getWaitingPatients().stream().map(Patient::getPatientId).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws IOException {
+        DatabaseConfig.closeConnection();
+        postgres.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = WRITE_BATCH)
+    @Measurement(iterations = 5, batchSize = WRITE_BATCH)
+    public String insertPatient() throws SQLException {
+        return patientDAO.insertPatient(HospitalServiceBenchmark.newPatient("dao-" + registrations.getAndIncrement()));
+    }
+
+    @Benchmark
+    public Patient findPatientByPhone(ThreadState state) throws SQLException {
+        return patientDAO.findPatientByPhone("bench-" + (1 + state.random.nextInt(patients)));
+    }
+
+    @Benchmark
+    public List<Patient> getWaitingPatients() throws SQLException {
+        return patientDAO.getWaitingPatients();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = WRITE_BATCH)
+    @Measurement(iterations = 5, batchSize = WRITE_BATCH)
+    public boolean orderAndCompleteLabTest(ThreadState state) throws SQLException {
+        String patientId = waitingIds[state.random.nextInt(waitingIds.length)];
+        String testId = labTestDAO.insertLabTest(new LabTest(null, patientId, "Blood Test", "CBC", "DOC001"));
+        return labTestDAO.completeLabTest(testId, "Normal");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = WRITE_BATCH)
+    @Measurement(iterations = 5, batchSize = WRITE_BATCH)
+    public boolean createAndDispensePrescription(ThreadState state) throws SQLException {
+        String patientId = waitingIds[state.random.nextInt(waitingIds.length)];
+        Prescription prescription = new Prescription(null, patientId, "DOC001", "Flu");
+        prescription.addMedication(new Medication("Paracetamol", "500mg", "3x daily", 5, "After meals"));
+        prescription.addMedication(new Medication("Vitamin C", "1000mg", "1x daily", 10, null));
+        return prescriptionDAO.dispensePrescription(prescriptionDAO.insertPrescription(prescription)) != null;
+    }
+
+    /**
+     * hospital_schema.sql without the psql-only CREATE DATABASE / \c preamble
+     */
+    private static String loadSchema() throws IOException {
+        Path schema = Path.of(System.getProperty("bench.schema", "database/hospital_schema.sql"));
+        return Files.readAllLines(schema, StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.startsWith("CREATE DATABASE") && !line.startsWith("\\c"))
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,123 @@
+package hu_hospital.management.system.bench;
+
+import hu_hospital.management.system.models.*;
+import hu_hospital.management.system.services.HospitalService;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Hot paths of the in-memory HospitalService at 1k, 100k and 1M registered patients.
+ *
+ * Every benchmark runs in its own fork, so the singleton service starts empty each time.
+ * Most seeded patients are COMPLETED and only the last WAITING_PATIENTS are queued, like
+ * a real day. Benchmarks that add records (registration, lab tests, prescriptions) use
+ * fixed-size batches so the store cannot grow without bound during a run.
+ *
+ * Run through Ant: "ant bench" (single-threaded and -t ${bench.threads}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HospitalServiceBenchmark {
+    static final int WAITING_PATIENTS = 500;
+    static final int WRITE_BATCH = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int patients;
+
+    HospitalService service;
+    String[] phones;
+    String[] waitingIds;
+    final AtomicInteger registrations = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().threadId());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void populate() {
+        service = HospitalService.getInstance();
+        phones = new String[patients];
+        for (int i = 0; i < patients; i++) {
+            Patient patient = newPatient("seed-" + i);
+            service.registerPatient(patient);
+            phones[i] = patient.getPhoneNumber();
+            if (i < patients - WAITING_PATIENTS) {
+                service.updatePatientStatus(patient.getPatientId(), PatientStatus.COMPLETED);
+            }
+        }
+        waitingIds = service.getWaitingPatients().stream().map(Patient::getPatientId).toArray(String[]::new);
+        // Enough that dispensing never runs out during the run
+        service.receiveStock(new StockLot("Paracetamol", "500mg", "BENCH", LocalDate.now().plusYears(1), 1_000_000_000));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = WRITE_BATCH)
+    @Measurement(iterations = 5, batchSize = WRITE_BATCH)
+    public String registerPatient() {
+        return service.registerPatient(newPatient("new-" + registrations.getAndIncrement()));
+    }
+
+    @Benchmark
+    public Patient findPatientByPhone(ThreadState state) {
+        return service.findPatientByPhone(phones[state.random.nextInt(phones.length)]);
+    }
+
+    @Benchmark
+    public List<Patient> getWaitingPatients() {
+        return service.getWaitingPatients();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = WRITE_BATCH)
+    @Measurement(iterations = 5, batchSize = WRITE_BATCH)
+    public void orderAndCompleteLabTest(ThreadState state) {
+        String patientId = waitingIds[state.random.nextInt(waitingIds.length)];
+        String testId = service.orderLabTest(new LabTest(null, patientId, "Blood Test", "CBC", "DOC001"));
+        service.completeLabTest(testId, "Normal");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = WRITE_BATCH)
+    @Measurement(iterations = 5, batchSize = WRITE_BATCH)
+    public void createAndDispensePrescription(ThreadState state, Blackhole blackhole) {
+        String patientId = waitingIds[state.random.nextInt(waitingIds.length)];
+        Prescription prescription = new Prescription(null, patientId, "DOC001", "Flu");
+        prescription.addMedication(new Medication("Paracetamol", "500mg", "3x daily", 5, "After meals"));
+        String prescriptionId = service.createPrescription(prescription);
+        service.dispensePrescription(prescriptionId);
+        // Dispensing completes the patient; put them back so the queue keeps its size
+        blackhole.consume(service.requeuePatient(patientId));
+    }
+
+    static Patient newPatient(String key) {
+        Patient patient = new Patient();
+        patient.setFirstName("Bench");
+        patient.setLastName(key);
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        patient.setGender("Other");
+        patient.setPhoneNumber("09-" + key);
+        patient.setStatus(PatientStatus.WAITING);
+        return patient;
+    }
+}
@@ -23,10 +23,11 @@ SELECT
     CONCAT(first_name, ' ', last_name) AS patient_name,
     phone_number,
     status,
+    triage_level,
     registration_date
 FROM patients
 WHERE status IN ('WAITING', 'REGISTERED', 'WITH_DOCTOR')
-ORDER BY queue_number;
+ORDER BY triage_level, queue_number;
 
 -- 3. Find patient by phone number
 SELECT * FROM patients 
@@ -286,6 +287,29 @@ SELECT
     COUNT(*) as row_count
 FROM medications;
 
+-- =====================================================
+-- PHARMACY INVENTORY QUERIES
+-- =====================================================
+
+-- 21. Items below their reorder level, emptiest first
+SELECT medication_name, strength, available, reorder_level, next_expiry
+FROM stock_levels
+WHERE is_low
+ORDER BY available;
+
+-- 22. Lots expiring within 30 days
+SELECT 
+    c.medication_name,
+    c.strength,
+    s.lot_number,
+    s.expiry_date,
+    s.quantity
+FROM medication_stock s
+JOIN medication_catalog c ON s.item_key = c.item_key
+WHERE s.quantity > 0
+  AND s.expiry_date < CURRENT_DATE + 30
+ORDER BY s.expiry_date, c.medication_name;
+
 -- =====================================================
 -- BACKUP AND RESTORE COMMANDS (run in terminal)
 -- =====================================================
@@ -37,6 +37,8 @@ CREATE TABLE patients (
     registration_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     queue_number INTEGER,
     status VARCHAR(20) DEFAULT 'REGISTERED' CHECK (status IN ('REGISTERED', 'WAITING', 'WITH_DOCTOR', 'IN_LAB', 'PRESCRIPTION_READY', 'COMPLETED')),
+    -- Manchester triage scale: 1 = immediate ... 5 = non-urgent (see TriageLevel)
+    triage_level SMALLINT NOT NULL DEFAULT 4 CHECK (triage_level BETWEEN 1 AND 5),
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
@@ -52,6 +54,11 @@ CREATE TABLE lab_tests (
     results TEXT,
     status VARCHAR(20) DEFAULT 'ORDERED' CHECK (status IN ('ORDERED', 'IN_PROGRESS', 'COMPLETED')),
     ordered_by VARCHAR(10) NOT NULL,
+    -- Analyzer batch the test ran in (LabTestDAO.startLabBatch), and when it started
+    batch_id VARCHAR(12),
+    started_date TIMESTAMP,
+    -- Order to result, set on completion
+    turnaround_seconds INTEGER,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (patient_id) REFERENCES patients(patient_id) ON DELETE CASCADE,
@@ -101,15 +108,65 @@ CREATE TABLE consultations (
     FOREIGN KEY (doctor_id) REFERENCES doctors(doctor_id)
 );
 
+-- 7. Queue Counters Table (one row per day, see get_next_queue_number())
+CREATE TABLE queue_counters (
+    queue_date DATE PRIMARY KEY,
+    last_number INTEGER NOT NULL
+);
+
+-- 8. Medication Catalog Table (what the pharmacy stocks)
+-- item_key is the lower-cased name and strength without spaces in the strength,
+-- e.g. 'metformin 500mg' (see Medication.stockKey)
+CREATE TABLE medication_catalog (
+    item_key VARCHAR(160) PRIMARY KEY,
+    medication_name VARCHAR(100) NOT NULL,
+    strength VARCHAR(50) NOT NULL,
+    reorder_level INTEGER NOT NULL DEFAULT 100 CHECK (reorder_level >= 0),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 9. Medication Stock Table (one row per delivered lot)
+-- Dispensing takes units from the unexpired lot that expires first
+CREATE TABLE medication_stock (
+    stock_id SERIAL PRIMARY KEY,
+    item_key VARCHAR(160) NOT NULL,
+    lot_number VARCHAR(50) NOT NULL,
+    expiry_date DATE NOT NULL,
+    quantity INTEGER NOT NULL CHECK (quantity >= 0),
+    received_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (item_key, lot_number),
+    FOREIGN KEY (item_key) REFERENCES medication_catalog(item_key)
+);
+
 -- Create Indexes for better performance
 CREATE INDEX idx_patients_phone ON patients(phone_number);
 CREATE INDEX idx_patients_status ON patients(status);
 CREATE INDEX idx_patients_queue ON patients(queue_number);
+CREATE INDEX idx_patients_registration ON patients(registration_date DESC, patient_id DESC);
 CREATE INDEX idx_lab_tests_patient ON lab_tests(patient_id);
 CREATE INDEX idx_lab_tests_status ON lab_tests(status);
 CREATE INDEX idx_prescriptions_patient ON prescriptions(patient_id);
 CREATE INDEX idx_prescriptions_status ON prescriptions(status);
 CREATE INDEX idx_medications_prescription ON medications(prescription_id);
+CREATE INDEX idx_lab_tests_pending ON lab_tests(order_date) WHERE status IN ('ORDERED', 'IN_PROGRESS');
+-- The lab work list: ordered tests per type, oldest first, and the tests of each batch
+CREATE INDEX idx_lab_tests_worklist ON lab_tests(test_type, order_date) WHERE status = 'ORDERED';
+CREATE INDEX idx_lab_tests_batch ON lab_tests(batch_id) WHERE batch_id IS NOT NULL;
+CREATE INDEX idx_prescriptions_pending ON prescriptions(prescription_date) WHERE status = 'PRESCRIBED';
+-- The waiting queue in the order it is served (PatientDAO.getWaitingPatients)
+CREATE INDEX idx_patients_waiting ON patients(triage_level, queue_number) WHERE status IN ('REGISTERED', 'WAITING');
+-- Lots in the order they are dispensed from (MedicationStockDAO.drawStock)
+CREATE INDEX idx_medication_stock_fefo ON medication_stock(item_key, expiry_date, lot_number) WHERE quantity > 0;
+
+-- Patient search at the registration desk (PatientDAO.searchPatients): prefix lookups on
+-- phone number and ID, and typo-tolerant name matching through pg_trgm (a contrib module
+-- shipped with PostgreSQL)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX idx_patients_phone_prefix ON patients(phone_number varchar_pattern_ops);
+CREATE INDEX idx_patients_id_prefix ON patients(patient_id varchar_pattern_ops);
+CREATE INDEX idx_patients_name_trgm ON patients USING gin (lower(first_name || ' ' || last_name) gin_trgm_ops);
 
 -- Insert Sample Data
 
@@ -127,6 +184,9 @@ INSERT INTO patients (patient_id, first_name, last_name, date_of_birth, gender,
 ('PAT1002', 'David', 'Smith', '1978-07-22', 'Male', '555-0103', 'david.smith@email.com', '456 Oak Ave, City', 'Mary Smith - 555-0104', 'Diabetes Type 2', 2, 'WAITING'),
 ('PAT1003', 'Emma', 'Brown', '1992-11-08', 'Female', '555-0105', 'emma.brown@email.com', '789 Pine St, City', 'James Brown - 555-0106', 'Hypertension', 3, 'WITH_DOCTOR');
 
+-- The sample patients hold today's queue numbers 1-3, so the next registration gets 4
+INSERT INTO queue_counters (queue_date, last_number) VALUES (CURRENT_DATE, 3);
+
 -- Sample Lab Tests
 INSERT INTO lab_tests (test_id, patient_id, test_type, description, status, ordered_by) VALUES
 ('TEST0001', 'PAT1001', 'Complete Blood Count (CBC)', 'Routine blood work', 'ORDERED', 'DOC001'),
@@ -145,6 +205,20 @@ INSERT INTO medications (prescription_id, medication_name, dosage, frequency, du
 ('PRES0002', 'Lisinopril', '10mg', 'Once daily', 30, 'Take in the morning with water'),
 ('PRES0002', 'Amlodipine', '5mg', 'Once daily', 30, 'Take at the same time each day');
 
+-- Sample Pharmacy Stock
+INSERT INTO medication_catalog (item_key, medication_name, strength, reorder_level) VALUES
+('paracetamol 500mg', 'Paracetamol', '500mg', 100),
+('amoxicillin 500mg', 'Amoxicillin', '500mg', 100),
+('ibuprofen 400mg', 'Ibuprofen', '400mg', 100),
+('metformin 500mg', 'Metformin', '500mg', 100),
+('glipizide 5mg', 'Glipizide', '5mg', 100),
+('lisinopril 10mg', 'Lisinopril', '10mg', 100),
+('amlodipine 5mg', 'Amlodipine', '5mg', 100);
+
+INSERT INTO medication_stock (item_key, lot_number, expiry_date, quantity)
+SELECT item_key, 'SAMPLE' || ROW_NUMBER() OVER (ORDER BY created_at, item_key), CURRENT_DATE + 365, 500
+FROM medication_catalog;
+
 -- Create Views for Common Queries
 
 -- View: Patient Queue
@@ -154,10 +228,11 @@ SELECT
     p.patient_id,
     CONCAT(p.first_name, ' ', p.last_name) AS patient_name,
     p.status,
+    p.triage_level,
     p.registration_date
 FROM patients p
 WHERE p.status IN ('WAITING', 'WITH_DOCTOR', 'IN_LAB', 'PRESCRIPTION_READY')
-ORDER BY p.queue_number;
+ORDER BY p.triage_level, p.queue_number;
 
 -- View: Pending Lab Tests
 CREATE VIEW pending_lab_tests AS
@@ -168,7 +243,11 @@ SELECT
     lt.test_type,
     lt.order_date,
     lt.status,
-    CONCAT(d.first_name, ' ', d.last_name) AS ordered_by_doctor
+    CONCAT(d.first_name, ' ', d.last_name) AS ordered_by_doctor,
+    lt.description,
+    lt.ordered_by,
+    lt.batch_id,
+    lt.started_date
 FROM lab_tests lt
 JOIN patients p ON lt.patient_id = p.patient_id
 JOIN doctors d ON lt.ordered_by = d.doctor_id
@@ -185,7 +264,8 @@ SELECT
     CONCAT(d.first_name, ' ', d.last_name) AS doctor_name,
     pr.diagnosis,
     pr.prescription_date,
-    pr.status
+    pr.status,
+    pr.instructions
 FROM prescriptions pr
 JOIN patients p ON pr.patient_id = p.patient_id
 JOIN doctors d ON pr.doctor_id = d.doctor_id
@@ -211,27 +291,89 @@ JOIN doctors d ON pr.doctor_id = d.doctor_id
 JOIN medications m ON pr.prescription_id = m.prescription_id
 ORDER BY pr.prescription_date DESC, m.medication_name;
 
+-- View: Stock Levels (unexpired units per catalog item)
+CREATE VIEW stock_levels AS
+SELECT 
+    c.item_key,
+    c.medication_name,
+    c.strength,
+    COALESCE(SUM(s.quantity), 0) AS available,
+    c.reorder_level,
+    MIN(s.expiry_date) AS next_expiry,
+    COALESCE(SUM(s.quantity), 0) < c.reorder_level AS is_low
+FROM medication_catalog c
+LEFT JOIN medication_stock s
+    ON s.item_key = c.item_key AND s.quantity > 0 AND s.expiry_date >= CURRENT_DATE
+GROUP BY c.item_key, c.medication_name, c.strength, c.reorder_level
+ORDER BY c.medication_name, c.strength;
+
+-- Create Sequences for ID Generation
+-- Every nextval() reserves a block of 50 IDs that the application hands out
+-- client-side (see IdAllocator.java), so the increment must stay at 50.
+-- The first block of each sequence starts after the sample rows above.
+CREATE SEQUENCE patient_id_seq START WITH 1004 INCREMENT BY 50;
+CREATE SEQUENCE doctor_id_seq START WITH 6 INCREMENT BY 50;
+CREATE SEQUENCE lab_test_id_seq START WITH 4 INCREMENT BY 50;
+CREATE SEQUENCE prescription_id_seq START WITH 3 INCREMENT BY 50;
+CREATE SEQUENCE lab_batch_id_seq START WITH 1 INCREMENT BY 50;
+
+-- Upgrading an existing database: create the sequences above, then move each one
+-- past the IDs already in use, e.g.
+-- SELECT setval('patient_id_seq', (SELECT MAX(CAST(SUBSTRING(patient_id FROM 4) AS INTEGER)) FROM patients));
+
 -- Create Functions for Common Operations
 
 -- Function: Get Next Queue Number
+-- Bumps today's row in queue_counters. The row lock makes concurrent
+-- registrations get distinct numbers, and numbering restarts every day.
 CREATE OR REPLACE FUNCTION get_next_queue_number()
 RETURNS INTEGER AS $$
+    INSERT INTO queue_counters (queue_date, last_number)
+    VALUES (CURRENT_DATE, 1)
+    ON CONFLICT (queue_date) DO UPDATE SET last_number = queue_counters.last_number + 1
+    RETURNING last_number;
+$$ LANGUAGE sql;
+
+-- Function: Format an ID like IdAllocator.format: zero-padded to at least
+-- digits, never cut short (LPAD truncates values longer than its width)
+CREATE OR REPLACE FUNCTION format_id(prefix TEXT, value BIGINT, digits INTEGER)
+RETURNS VARCHAR(10) AS $$
+    SELECT prefix || CASE WHEN length(value::TEXT) < digits
+                          THEN lpad(value::TEXT, digits, '0')
+                          ELSE value::TEXT END;
+$$ LANGUAGE sql IMMUTABLE;
+
+-- Function: Generate Patient ID
+-- Uses the same sequence as the application. Each call reserves a whole block,
+-- so IDs created from plain SQL are unique but not contiguous.
+CREATE OR REPLACE FUNCTION generate_patient_id()
+RETURNS VARCHAR(10) AS $$
 BEGIN
-    RETURN COALESCE(MAX(queue_number), 0) + 1 FROM patients WHERE DATE(registration_date) = CURRENT_DATE;
+    RETURN format_id('PAT', nextval('patient_id_seq'), 4);
 END;
 $$ LANGUAGE plpgsql;
 
--- Function: Generate Patient ID
-CREATE OR REPLACE FUNCTION generate_patient_id()
+-- Function: Generate Doctor ID
+CREATE OR REPLACE FUNCTION generate_doctor_id()
 RETURNS VARCHAR(10) AS $$
-DECLARE
-    next_id INTEGER;
 BEGIN
-    SELECT COALESCE(MAX(CAST(SUBSTRING(patient_id FROM 4) AS INTEGER)), 1000) + 1 
-    INTO next_id 
-    FROM patients;
-    
-    RETURN 'PAT' || LPAD(next_id::TEXT, 4, '0');
+    RETURN format_id('DOC', nextval('doctor_id_seq'), 3);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: Generate Lab Test ID
+CREATE OR REPLACE FUNCTION generate_lab_test_id()
+RETURNS VARCHAR(10) AS $$
+BEGIN
+    RETURN format_id('TEST', nextval('lab_test_id_seq'), 4);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: Generate Prescription ID
+CREATE OR REPLACE FUNCTION generate_prescription_id()
+RETURNS VARCHAR(10) AS $$
+BEGIN
+    RETURN format_id('PRES', nextval('prescription_id_seq'), 4);
 END;
 $$ LANGUAGE plpgsql;
 
@@ -266,6 +408,59 @@ CREATE TRIGGER prescriptions_update_timestamp
     FOR EACH ROW
     EXECUTE FUNCTION update_timestamp();
 
+CREATE TRIGGER medication_catalog_update_timestamp
+    BEFORE UPDATE ON medication_catalog
+    FOR EACH ROW
+    EXECUTE FUNCTION update_timestamp();
+
+CREATE TRIGGER medication_stock_update_timestamp
+    BEFORE UPDATE ON medication_stock
+    FOR EACH ROW
+    EXECUTE FUNCTION update_timestamp();
+
+-- Trigger: Publish changes to other stations
+-- Sends 'table|operation|id|old status|new status' on the hospital_events channel
+-- (see PgNotificationListener.java). NOTIFY is delivered on commit, so listeners
+-- never see rows from a transaction that rolled back.
+CREATE OR REPLACE FUNCTION notify_hospital_change()
+RETURNS TRIGGER AS $$
+DECLARE
+    old_status TEXT := '';
+    new_status TEXT := COALESCE(to_jsonb(NEW) ->> 'status', '');
+BEGIN
+    -- Bulk imports turn this off for their transaction and send one IMPORT notice instead
+    IF current_setting('hospital.suppress_notify', true) = 'on' THEN
+        RETURN NEW;
+    END IF;
+    
+    IF TG_OP = 'UPDATE' THEN
+        old_status := COALESCE(to_jsonb(OLD) ->> 'status', '');
+        IF old_status = new_status THEN
+            RETURN NEW;
+        END IF;
+    END IF;
+    
+    PERFORM pg_notify('hospital_events', concat_ws('|',
+        TG_TABLE_NAME, TG_OP, to_jsonb(NEW) ->> TG_ARGV[0], old_status, new_status));
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER patients_notify_change
+    AFTER INSERT OR UPDATE OF status ON patients
+    FOR EACH ROW
+    EXECUTE FUNCTION notify_hospital_change('patient_id');
+
+CREATE TRIGGER lab_tests_notify_change
+    AFTER INSERT OR UPDATE OF status ON lab_tests
+    FOR EACH ROW
+    EXECUTE FUNCTION notify_hospital_change('test_id');
+
+CREATE TRIGGER prescriptions_notify_change
+    AFTER INSERT OR UPDATE OF status ON prescriptions
+    FOR EACH ROW
+    EXECUTE FUNCTION notify_hospital_change('prescription_id');
+
 -- Grant permissions (adjust as needed)
 -- GRANT ALL PRIVILEGES ON ALL TABLES IN SCHEMA public TO hospital_user;
 -- GRANT ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA public TO hospital_user;
\ No newline at end of file
@@ -2,8 +2,11 @@ package hu_hospital.management.system;
 
 import hu_hospital.management.system.database.DatabaseConfig;
 import hu_hospital.management.system.models.*;
+import hu_hospital.management.system.services.AsyncHospitalService;
 import hu_hospital.management.system.services.DatabaseHospitalService;
+import hu_hospital.management.system.services.HospitalEvent;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -17,11 +20,16 @@ import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Optional;
 
 public class DatabaseHospitalApp extends Application {
     
+    // Rows fetched per page by the patient browser
+    private static final int PATIENT_PAGE_SIZE = 50;
+    
     private DatabaseHospitalService hospitalService;
+    private AsyncHospitalService<DatabaseHospitalService> asyncService;
     private ObservableList<Patient> queueData;
     private Label totalPatientsLabel, waitingPatientsLabel, activeDoctorsLabel, pendingTestsLabel;
     private TableView<Patient> queueTableView;
@@ -30,6 +38,7 @@ public class DatabaseHospitalApp extends Application {
     public void start(Stage primaryStage) {
         // Initialize database service
         hospitalService = DatabaseHospitalService.getInstance();
+        asyncService = new AsyncHospitalService<>(hospitalService);
         queueData = FXCollections.observableArrayList();
         
         // Test database connection
@@ -74,7 +83,10 @@ public class DatabaseHospitalApp extends Application {
         centerContent.getChildren().addAll(topSection, queueSection);
         mainLayout.setCenter(centerContent);
         
-        // Refresh data
+        // Refresh data, then keep following changes made at any station, once per burst
+        Runnable dashboardChanged = LiveTables.coalescing(this::refreshDashboard);
+        hospitalService.getEventBus().subscribe(HospitalEvent.class, e -> dashboardChanged.run());
+        hospitalService.startChangeNotifications();
         refreshDashboard();
         
         Scene scene = new Scene(mainLayout, 1200, 800);
@@ -241,15 +253,17 @@ public class DatabaseHospitalApp extends Application {
     }
     
     private void refreshDashboard() {
-        totalPatientsLabel.setText("Total Patients: " + hospitalService.getAllPatients().size());
-        waitingPatientsLabel.setText("Waiting Patients: " + hospitalService.getWaitingPatients().size());
-        activeDoctorsLabel.setText("Active Doctors: " + hospitalService.getAllDoctors().size());
-        pendingTestsLabel.setText("Pending Tests: " + hospitalService.getPendingLabTests().size());
-        
-        queueData.clear();
-        queueData.addAll(hospitalService.getWaitingPatients());
-        
-        System.out.println("📊 Dashboard refreshed from database");
+        // Queries run in the background; only the latest refresh updates the labels
+        asyncService.refresh("dashboard", DatabaseHospitalService::getDashboardSnapshot, snapshot -> {
+            totalPatientsLabel.setText("Total Patients: " + snapshot.getTotalPatients());
+            waitingPatientsLabel.setText("Waiting Patients: " + snapshot.getWaitingPatients());
+            activeDoctorsLabel.setText("Active Doctors: " + snapshot.getActiveDoctors());
+            pendingTestsLabel.setText("Pending Tests: " + snapshot.getPendingLabTests());
+            
+            queueData.setAll(snapshot.getQueue());
+            
+            System.out.println("📊 Dashboard refreshed from database");
+        });
     }
     
     private void openPatientRegistration(Stage parentStage) {
@@ -305,18 +319,21 @@ public class DatabaseHospitalApp extends Application {
             patient.setPhoneNumber(phoneField.getText());
             patient.setAddress(addressArea.getText());
             
-            String patientId = hospitalService.registerPatient(patient);
-            if (patientId != null) {
-                showAlert("Success", "Patient registered successfully in database!\n" +
-                         "Patient ID: " + patientId + 
-                         "\nQueue Number: " + patient.getQueueNumber() +
-                         "\n\nCheck pgAdmin to see the data!");
-                
-                refreshDashboard();
-                regStage.close();
-            } else {
-                showAlert("Error", "Failed to register patient. Check database connection.");
-            }
+            registerBtn.setDisable(true);
+            asyncService.call(service -> service.registerPatient(patient), patientId -> {
+                registerBtn.setDisable(false);
+                if (patientId != null) {
+                    showAlert("Success", "Patient registered successfully in database!\n" +
+                             "Patient ID: " + patientId + 
+                             "\nQueue Number: " + patient.getQueueNumber() +
+                             "\n\nCheck pgAdmin to see the data!");
+                    
+                    refreshDashboard();
+                    regStage.close();
+                } else {
+                    showAlert("Error", "Failed to register patient. Check database connection.");
+                }
+            });
         });
         
         layout.getChildren().addAll(title, form, registerBtn);
@@ -327,29 +344,72 @@ public class DatabaseHospitalApp extends Application {
     }
     
     private void viewAllPatients() {
-        StringBuilder patientList = new StringBuilder("Patients in Database:\n\n");
+        Stage browserStage = new Stage();
+        browserStage.setTitle("All Patients - Database");
         
-        for (Patient patient : hospitalService.getAllPatients()) {
-            patientList.append("• ").append(patient.getPatientId())
-                      .append(": ").append(patient.getFullName())
-                      .append(" (").append(patient.getPhoneNumber()).append(")\n");
-        }
+        VBox layout = new VBox(10);
+        layout.setPadding(new Insets(20));
         
-        if (hospitalService.getAllPatients().isEmpty()) {
-            patientList.append("No patients found in database.");
-        }
+        Label title = new Label("Patients in Database (newest first)");
+        title.setFont(Font.font("System", FontWeight.BOLD, 18));
+        
+        TableView<Patient> patientsTable = new TableView<>();
+        VBox.setVgrow(patientsTable, Priority.ALWAYS);
+        patientsTable.setPlaceholder(new Label("No patients found in database."));
         
-        showAlert("All Patients", patientList.toString());
+        TableColumn<Patient, String> patientIdColumn = new TableColumn<>("Patient ID");
+        patientIdColumn.setPrefWidth(100);
+        patientIdColumn.setCellValueFactory(new PropertyValueFactory<>("patientId"));
+        
+        TableColumn<Patient, String> patientNameColumn = new TableColumn<>("Patient Name");
+        patientNameColumn.setPrefWidth(180);
+        patientNameColumn.setCellValueFactory(new PropertyValueFactory<>("fullName"));
+        
+        TableColumn<Patient, String> phoneColumn = new TableColumn<>("Phone");
+        phoneColumn.setPrefWidth(120);
+        phoneColumn.setCellValueFactory(new PropertyValueFactory<>("phoneNumber"));
+        
+        TableColumn<Patient, String> registrationDateColumn = new TableColumn<>("Registered");
+        registrationDateColumn.setPrefWidth(120);
+        registrationDateColumn.setCellValueFactory(cellData -> new javafx.beans.property.SimpleStringProperty(
+            cellData.getValue().getRegistrationDate() != null
+                ? cellData.getValue().getRegistrationDate().format(DateTimeFormatter.ofPattern("MM/dd/yyyy"))
+                : "N/A"));
+        
+        patientsTable.getColumns().setAll(List.of(patientIdColumn, patientNameColumn, phoneColumn, registrationDateColumn));
+        
+        // Rows are fetched a page at a time as the table scrolls, never the whole table
+        PagedTableRows<DatabaseHospitalService, Patient> pagedRows = PagedTableRows.attach(
+            patientsTable, asyncService, PATIENT_PAGE_SIZE,
+            (service, last) -> last == null
+                ? service.getPatientsPage(null, null, PATIENT_PAGE_SIZE)
+                : service.getPatientsPage(last.getRegistrationDate(), last.getPatientId(), PATIENT_PAGE_SIZE));
+        
+        // New registrations are the newest rows, so they go on top
+        LiveTables.closeWithWindow(patientsTable, hospitalService.getEventBus().subscribe(
+            HospitalEvent.PatientRegistered.class,
+            e -> pagedRows.getRows().add(0, e.patient()),
+            Platform::runLater));
+        
+        Button reloadBtn = new Button("Reload");
+        reloadBtn.setStyle("-fx-background-color: #95a5a6; -fx-text-fill: white; -fx-font-weight: bold;");
+        reloadBtn.setOnAction(e -> pagedRows.reload());
+        
+        layout.getChildren().addAll(title, patientsTable, reloadBtn);
+        
+        browserStage.setScene(new Scene(layout, 600, 500));
+        browserStage.show();
     }
     
     private void testDatabase() {
-        if (hospitalService.testDatabaseConnection()) {
-            showAlert("Database Test", "✅ Database connection successful!\n\n" +
-                     "Patients in DB: " + hospitalService.getAllPatients().size() + "\n" +
-                     "Doctors in DB: " + hospitalService.getAllDoctors().size());
-        } else {
-            showAlert("Database Test", "❌ Database connection failed!\n\nCheck your configuration.");
-        }
+        asyncService.call(service -> {
+            if (service.testDatabaseConnection()) {
+                return "✅ Database connection successful!\n\n" +
+                       "Patients in DB: " + service.getDashboardSnapshot().getTotalPatients() + "\n" +
+                       "Doctors in DB: " + service.getAllDoctors().size();
+            }
+            return "❌ Database connection failed!\n\nCheck your configuration.";
+        }, message -> showAlert("Database Test", message));
     }
     
     private void showAlert(String title, String message) {
@@ -360,6 +420,19 @@ public class DatabaseHospitalApp extends Application {
         alert.showAndWait();
     }
     
+    @Override
+    public void stop() {
+        if (asyncService != null) {
+            asyncService.cancelAll();
+        }
+        if (hospitalService != null) {
+            hospitalService.stopChangeNotifications();
+            hospitalService.printCacheStats();
+        }
+        DatabaseConfig.printPoolStats();
+        DatabaseConfig.closeConnection();
+    }
+    
     public static void main(String[] args) {
         launch(args);
     }
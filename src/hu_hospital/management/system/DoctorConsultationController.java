@@ -1,13 +1,17 @@
 package hu_hospital.management.system;
 
 import hu_hospital.management.system.models.*;
+import hu_hospital.management.system.services.AsyncHospitalService;
+import hu_hospital.management.system.services.HospitalEvent;
+import hu_hospital.management.system.services.HospitalEventBus;
 import hu_hospital.management.system.services.HospitalService;
 import java.net.URL;
 import java.time.LocalDate;
 import java.time.Period;
-import java.util.List;
+import java.util.Comparator;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -20,8 +24,11 @@ import javafx.scene.layout.VBox;
 
 public class DoctorConsultationController implements Initializable {
     
+    @FXML private ComboBox<Doctor> doctorComboBox;
+    @FXML private CheckBox availableCheckBox;
     @FXML private TableView<Patient> waitingPatientsTable;
     @FXML private TableColumn<Patient, Integer> queueNumColumn;
+    @FXML private TableColumn<Patient, TriageLevel> triageColumn;
     @FXML private TableColumn<Patient, String> patientNameColumn;
     @FXML private TableColumn<Patient, String> patientIdColumn;
     @FXML private TableColumn<Patient, String> statusColumn;
@@ -38,27 +45,55 @@ public class DoctorConsultationController implements Initializable {
     @FXML private TextArea diagnosisArea;
     @FXML private Label consultationStatusLabel;
     
+    // Same order as HospitalService.getWaitingPatients: most urgent first, then by arrival
+    private static final Comparator<Patient> QUEUE_ORDER = Comparator.comparing(Patient::getTriageLevel)
+            .thenComparingInt(Patient::getQueueNumber);
+    
     private HospitalService hospitalService;
+    private AsyncHospitalService<HospitalService> asyncService;
     private ObservableList<Patient> waitingPatients;
     private Patient currentPatient;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         hospitalService = HospitalService.getInstance();
+        asyncService = AsyncHospitalService.inMemory();
         waitingPatients = FXCollections.observableArrayList();
         
+        setupDoctorSelection();
         setupWaitingPatientsTable();
+        subscribeToChanges();
         refreshWaitingPatients();
         clearCurrentPatient();
     }
     
+    private void setupDoctorSelection() {
+        doctorComboBox.getItems().setAll(hospitalService.getAllDoctors());
+        doctorComboBox.getItems().sort(Comparator.comparing(Doctor::getDoctorId));
+        doctorComboBox.valueProperty().addListener((obs, oldDoctor, doctor) ->
+            availableCheckBox.setSelected(doctor != null && doctor.isAvailable()));
+        if (!doctorComboBox.getItems().isEmpty()) {
+            doctorComboBox.setValue(doctorComboBox.getItems().get(0));
+        }
+    }
+    
+    @FXML
+    private void toggleAvailability(ActionEvent event) {
+        Doctor doctor = doctorComboBox.getValue();
+        if (doctor != null) {
+            hospitalService.setDoctorAvailable(doctor.getDoctorId(), availableCheckBox.isSelected());
+        }
+    }
+    
     private void setupWaitingPatientsTable() {
         queueNumColumn.setCellValueFactory(new PropertyValueFactory<>("queueNumber"));
+        triageColumn.setCellValueFactory(new PropertyValueFactory<>("triageLevel"));
         patientNameColumn.setCellValueFactory(new PropertyValueFactory<>("fullName"));
         patientIdColumn.setCellValueFactory(new PropertyValueFactory<>("patientId"));
         statusColumn.setCellValueFactory(new PropertyValueFactory<>("status"));
         
         waitingPatientsTable.setItems(waitingPatients);
+        waitingPatientsTable.setContextMenu(createTriageMenu());
         
         // Enable row selection
         waitingPatientsTable.getSelectionModel().selectedItemProperty().addListener(
@@ -70,26 +105,67 @@ public class DoctorConsultationController implements Initializable {
         );
     }
     
+    /**
+     * Re-triage the selected waiting patient; the queue reorders through TriageChanged
+     */
+    private ContextMenu createTriageMenu() {
+        Menu triage = new Menu("Change triage level");
+        for (TriageLevel level : TriageLevel.values()) {
+            MenuItem item = new MenuItem(level.toString());
+            item.setOnAction(e -> {
+                Patient selected = waitingPatientsTable.getSelectionModel().getSelectedItem();
+                if (selected != null) {
+                    hospitalService.setTriageLevel(selected.getPatientId(), level);
+                }
+            });
+            triage.getItems().add(item);
+        }
+        return new ContextMenu(triage);
+    }
+    
+    /**
+     * Keep the waiting list current as patients register or change status anywhere
+     */
+    private void subscribeToChanges() {
+        HospitalEventBus bus = hospitalService.getEventBus();
+        LiveTables.closeWithWindow(waitingPatientsTable,
+            bus.subscribe(HospitalEvent.PatientRegistered.class, e -> applyPatientChange(e.patient()), Platform::runLater),
+            bus.subscribe(HospitalEvent.StatusChanged.class, e -> applyPatientChange(e.patient()), Platform::runLater),
+            bus.subscribe(HospitalEvent.TriageChanged.class, e -> applyPatientChange(e.patient()), Platform::runLater));
+    }
+    
+    private void applyPatientChange(Patient patient) {
+        if (patient.getStatus() != null && patient.getStatus().isWaiting()) {
+            LiveTables.upsert(waitingPatients, patient, Patient::getPatientId, QUEUE_ORDER);
+        } else {
+            LiveTables.remove(waitingPatients, Patient::getPatientId, patient.getPatientId());
+        }
+    }
+    
     private void refreshWaitingPatients() {
-        waitingPatients.clear();
-        List<Patient> waiting = hospitalService.getWaitingPatients();
-        waitingPatients.addAll(waiting);
+        asyncService.refresh("waitingPatients", HospitalService::getWaitingPatients, waitingPatients::setAll);
     }
     
     @FXML
     private void callNextPatient(ActionEvent event) {
-        if (waitingPatients.isEmpty()) {
-            showStatus("No patients waiting", "-fx-text-fill: #e74c3c;");
+        Doctor doctor = doctorComboBox.getValue();
+        if (doctor == null) {
+            showStatus("Please select a doctor first", "-fx-text-fill: #e74c3c;");
+            return;
+        }
+        if (!doctor.isAvailable()) {
+            showStatus(doctor.getFullName() + " is not on duty", "-fx-text-fill: #e74c3c;");
             return;
         }
         
-        Patient nextPatient = waitingPatients.get(0);
+        // The scheduler picks by specialization and triage, and marks the patient WITH_DOCTOR
+        Patient nextPatient = hospitalService.callNextPatient(doctor.getDoctorId());
+        if (nextPatient == null) {
+            showStatus("No patients waiting for " + doctor.getFullName(), "-fx-text-fill: #e74c3c;");
+            return;
+        }
         loadPatientDetails(nextPatient);
         
-        // Update patient status
-        hospitalService.updatePatientStatus(nextPatient.getPatientId(), "WITH_DOCTOR");
-        refreshWaitingPatients();
-        
         showStatus("Patient " + nextPatient.getFullName() + " called for consultation", "-fx-text-fill: #2ecc71;");
     }
     
@@ -182,12 +258,11 @@ public class DoctorConsultationController implements Initializable {
             labTest.setPatientId(currentPatient.getPatientId());
             labTest.setTestType(result.get());
             labTest.setDescription(descriptionArea.getText());
-            labTest.setOrderedBy("DOC001"); // Default doctor for now
+            labTest.setOrderedBy(currentDoctorId());
             
             String testId = hospitalService.orderLabTest(labTest);
             
             showStatus("Lab test ordered successfully. Test ID: " + testId, "-fx-text-fill: #2ecc71;");
-            refreshWaitingPatients();
             clearCurrentPatient();
         }
     }
@@ -250,7 +325,7 @@ public class DoctorConsultationController implements Initializable {
                 try {
                     Prescription prescription = new Prescription();
                     prescription.setPatientId(currentPatient.getPatientId());
-                    prescription.setDoctorId("DOC001"); // Default doctor
+                    prescription.setDoctorId(currentDoctorId());
                     prescription.setDiagnosis(diagnosisArea.getText());
                     prescription.setInstructions(instructionsArea.getText());
                     
@@ -276,7 +351,6 @@ public class DoctorConsultationController implements Initializable {
         if (result.isPresent()) {
             String prescriptionId = hospitalService.createPrescription(result.get());
             showStatus("Prescription created successfully. ID: " + prescriptionId, "-fx-text-fill: #2ecc71;");
-            refreshWaitingPatients();
             clearCurrentPatient();
         }
     }
@@ -289,13 +363,17 @@ public class DoctorConsultationController implements Initializable {
         }
         
         // Update patient status to completed
-        hospitalService.updatePatientStatus(currentPatient.getPatientId(), "COMPLETED");
+        hospitalService.updatePatientStatus(currentPatient.getPatientId(), PatientStatus.COMPLETED);
         
         showStatus("Consultation completed for " + currentPatient.getFullName(), "-fx-text-fill: #2ecc71;");
-        refreshWaitingPatients();
         clearCurrentPatient();
     }
     
+    private String currentDoctorId() {
+        Doctor doctor = doctorComboBox.getValue();
+        return doctor != null ? doctor.getDoctorId() : "DOC001";
+    }
+    
     private void showStatus(String message, String style) {
         consultationStatusLabel.setText(message);
         consultationStatusLabel.setStyle(style + " -fx-font-weight: bold;");
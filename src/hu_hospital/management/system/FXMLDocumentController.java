@@ -1,6 +1,8 @@
 package hu_hospital.management.system;
 
 import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.services.AsyncHospitalService;
+import hu_hospital.management.system.services.HospitalEvent;
 import hu_hospital.management.system.services.HospitalService;
 import java.net.URL;
 import java.time.format.DateTimeFormatter;
@@ -34,14 +36,19 @@ public class FXMLDocumentController implements Initializable {
     @FXML private TableColumn<Patient, String> registrationTimeColumn;
     
     private HospitalService hospitalService;
+    private AsyncHospitalService<HospitalService> asyncService;
     private ObservableList<Patient> queueData;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         hospitalService = HospitalService.getInstance();
+        asyncService = AsyncHospitalService.inMemory();
         queueData = FXCollections.observableArrayList();
         
         setupQueueTable();
+        // Counters and queue follow every change, refreshed once per burst of events
+        Runnable dashboardChanged = LiveTables.coalescing(this::refreshDashboard);
+        hospitalService.getEventBus().subscribe(HospitalEvent.class, e -> dashboardChanged.run());
         refreshDashboard();
     }
     
@@ -62,15 +69,16 @@ public class FXMLDocumentController implements Initializable {
     }
     
     public void refreshDashboard() {
-        // Update statistics
-        totalPatientsLabel.setText("Total Patients: " + hospitalService.getAllPatients().size());
-        waitingPatientsLabel.setText("Waiting Patients: " + hospitalService.getWaitingPatients().size());
-        activeDoctorsLabel.setText("Active Doctors: " + hospitalService.getAllDoctors().size());
-        pendingTestsLabel.setText("Pending Tests: " + hospitalService.getPendingLabTests().size());
-        
-        // Update queue table
-        queueData.clear();
-        queueData.addAll(hospitalService.getWaitingPatients());
+        asyncService.refresh("dashboard", HospitalService::getDashboardSnapshot, snapshot -> {
+            // Update statistics
+            totalPatientsLabel.setText("Total Patients: " + snapshot.getTotalPatients());
+            waitingPatientsLabel.setText("Waiting Patients: " + snapshot.getWaitingPatients());
+            activeDoctorsLabel.setText("Active Doctors: " + snapshot.getActiveDoctors());
+            pendingTestsLabel.setText("Pending Tests: " + snapshot.getPendingLabTests());
+            
+            // Update queue table
+            queueData.setAll(snapshot.getQueue());
+        });
     }
     
     @FXML
@@ -1,11 +1,20 @@
 package hu_hospital.management.system;
 
 import hu_hospital.management.system.models.*;
+import hu_hospital.management.system.services.AsyncHospitalService;
+import hu_hospital.management.system.services.HospitalEvent;
+import hu_hospital.management.system.services.HospitalEventBus;
 import hu_hospital.management.system.services.HospitalService;
 import java.net.URL;
+import java.time.Duration;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -16,6 +25,14 @@ import javafx.scene.control.cell.PropertyValueFactory;
 
 public class LaboratoryController implements Initializable {
     
+    @FXML private TableView<LabBatch> batchesTable;
+    @FXML private TableColumn<LabBatch, String> batchIdColumn;
+    @FXML private TableColumn<LabBatch, String> batchTypeColumn;
+    @FXML private TableColumn<LabBatch, Integer> batchSizeColumn;
+    @FXML private TableColumn<LabBatch, String> batchOldestColumn;
+    @FXML private TableColumn<LabBatch, String> batchStateColumn;
+    @FXML private Label turnaroundLabel;
+    
     @FXML private TableView<LabTest> pendingTestsTable;
     @FXML private TableColumn<LabTest, String> testIdColumn;
     @FXML private TableColumn<LabTest, String> patientNameColumn;
@@ -32,20 +49,58 @@ public class LaboratoryController implements Initializable {
     @FXML private TextArea resultsArea;
     @FXML private Label labStatusLabel;
     
+    private static final DateTimeFormatter SHORT_DATE_TIME = DateTimeFormatter.ofPattern("MM/dd HH:mm");
+    
     private HospitalService hospitalService;
+    private AsyncHospitalService<HospitalService> asyncService;
+    private ObservableList<LabBatch> batches;
     private ObservableList<LabTest> pendingTests;
     private LabTest selectedTest;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         hospitalService = HospitalService.getInstance();
+        asyncService = AsyncHospitalService.inMemory();
+        batches = FXCollections.observableArrayList();
         pendingTests = FXCollections.observableArrayList();
         
+        setupBatchesTable();
         setupPendingTestsTable();
-        refreshPendingTests();
+        subscribeToChanges();
+        refreshBatches();
         clearSelectedTest();
     }
     
+    private void setupBatchesTable() {
+        batchIdColumn.setCellValueFactory(cellData -> new SimpleStringProperty(
+            cellData.getValue().getBatchId() != null ? cellData.getValue().getBatchId() : "-"));
+        batchTypeColumn.setCellValueFactory(new PropertyValueFactory<>("testType"));
+        batchSizeColumn.setCellValueFactory(new PropertyValueFactory<>("size"));
+        batchOldestColumn.setCellValueFactory(cellData -> new SimpleStringProperty(
+            cellData.getValue().getOldestOrderDate() != null
+                ? cellData.getValue().getOldestOrderDate().format(SHORT_DATE_TIME) : ""));
+        batchStateColumn.setCellValueFactory(cellData -> {
+            LabBatch batch = cellData.getValue();
+            return new SimpleStringProperty(batch.getBatchId() != null ? "Running"
+                : batch.isReady() ? "Ready" : "Collecting");
+        });
+        
+        batchesTable.setItems(batches);
+        batchesTable.getSelectionModel().selectedItemProperty().addListener(
+            (obs, oldSelection, newSelection) -> showBatch(newSelection));
+    }
+    
+    private void showBatch(LabBatch batch) {
+        pendingTests.setAll(batch != null ? batch.getTests() : List.of());
+        if (batch == null) {
+            turnaroundLabel.setText("");
+            return;
+        }
+        Duration average = hospitalService.getLabWorklist().getAverageTurnaround(batch.getTestType());
+        turnaroundLabel.setText(average != null
+            ? "Avg. turnaround: " + average.toHours() + "h " + average.toMinutesPart() + "m" : "");
+    }
+    
     private void setupPendingTestsTable() {
         testIdColumn.setCellValueFactory(new PropertyValueFactory<>("testId"));
         testTypeColumn.setCellValueFactory(new PropertyValueFactory<>("testType"));
@@ -59,12 +114,9 @@ public class LaboratoryController implements Initializable {
             );
         });
         
-        orderDateColumn.setCellValueFactory(cellData -> {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd HH:mm");
-            return new javafx.beans.property.SimpleStringProperty(
-                cellData.getValue().getOrderDate().format(formatter)
-            );
-        });
+        orderDateColumn.setCellValueFactory(cellData -> new SimpleStringProperty(
+            cellData.getValue().getOrderDate().format(SHORT_DATE_TIME)
+        ));
         
         pendingTestsTable.setItems(pendingTests);
         
@@ -78,10 +130,84 @@ public class LaboratoryController implements Initializable {
         );
     }
     
-    private void refreshPendingTests() {
-        pendingTests.clear();
-        List<LabTest> tests = hospitalService.getPendingLabTests();
-        pendingTests.addAll(tests);
+    /**
+     * Regroup the work list as tests are ordered, started and completed at any station.
+     * Grouping reads only the work list index, and refresh() coalesces bursts of events.
+     */
+    private void subscribeToChanges() {
+        HospitalEventBus bus = hospitalService.getEventBus();
+        LiveTables.closeWithWindow(batchesTable,
+            bus.subscribe(HospitalEvent.LabTestOrdered.class, e -> refreshBatches(), Platform::runLater),
+            bus.subscribe(HospitalEvent.LabTestStarted.class, e -> refreshBatches(), Platform::runLater),
+            bus.subscribe(HospitalEvent.LabTestCompleted.class, e -> refreshBatches(), Platform::runLater));
+    }
+    
+    /**
+     * Running batches first, then the proposed ones, longest-waiting first
+     */
+    private void refreshBatches() {
+        asyncService.refresh("labBatches", service -> {
+            List<LabBatch> all = new ArrayList<>(service.getRunningLabBatches());
+            all.addAll(service.getLabBatches());
+            return all;
+        }, this::showBatches);
+    }
+    
+    private void showBatches(List<LabBatch> latest) {
+        LabBatch selected = batchesTable.getSelectionModel().getSelectedItem();
+        batches.setAll(latest);
+        if (selected == null) {
+            return;
+        }
+        // Keep the same batch selected: running ones by ID, proposed ones by their oldest test
+        for (LabBatch batch : latest) {
+            if (sameBatch(batch, selected)) {
+                batchesTable.getSelectionModel().select(batch);
+                return;
+            }
+        }
+        showBatch(null);
+    }
+    
+    private static boolean sameBatch(LabBatch a, LabBatch b) {
+        if (a.getBatchId() != null || b.getBatchId() != null) {
+            return Objects.equals(a.getBatchId(), b.getBatchId());
+        }
+        return a.getTests().get(0).getTestId().equals(b.getTests().get(0).getTestId());
+    }
+    
+    @FXML
+    private void startBatch(ActionEvent event) {
+        LabBatch selected = batchesTable.getSelectionModel().getSelectedItem();
+        if (selected == null || selected.getBatchId() != null) {
+            showStatus("Please select a batch that is not running yet", "-fx-text-fill: #e74c3c;");
+            return;
+        }
+        
+        LabBatch started = hospitalService.startLabBatch(selected.getTestType());
+        if (started == null) {
+            showStatus("No " + selected.getTestType() + " tests are waiting any more", "-fx-text-fill: #e74c3c;");
+            return;
+        }
+        showStatus("Batch " + started.getBatchId() + " started with " + started.getSize() + " "
+            + started.getTestType() + " tests", "-fx-text-fill: #f39c12;");
+    }
+    
+    @FXML
+    private void completeBatch(ActionEvent event) {
+        LabBatch selected = batchesTable.getSelectionModel().getSelectedItem();
+        if (selected == null || selected.getBatchId() == null) {
+            showStatus("Please select a running batch", "-fx-text-fill: #e74c3c;");
+            return;
+        }
+        
+        // Results entered with Save Results are used for each test
+        if (!hospitalService.completeLabBatch(selected.getBatchId(), Map.of())) {
+            showStatus("Save results for every test of " + selected.getBatchId() + " first", "-fx-text-fill: #e74c3c;");
+            return;
+        }
+        showStatus("Batch " + selected.getBatchId() + " completed", "-fx-text-fill: #2ecc71;");
+        clearSelectedTest();
     }
     
     private void loadTestDetails(LabTest test) {
@@ -118,14 +244,13 @@ public class LaboratoryController implements Initializable {
             return;
         }
         
-        if (!"ORDERED".equals(selectedTest.getStatus())) {
+        if (!hospitalService.startLabTest(selectedTest.getTestId())) {
             showStatus("Test is already in progress or completed", "-fx-text-fill: #e74c3c;");
             return;
         }
         
-        selectedTest.setStatus("IN_PROGRESS");
+        pendingTestsTable.refresh();
         showStatus("Test " + selectedTest.getTestId() + " started", "-fx-text-fill: #f39c12;");
-        refreshPendingTests();
     }
     
     @FXML
@@ -143,7 +268,6 @@ public class LaboratoryController implements Initializable {
         hospitalService.completeLabTest(selectedTest.getTestId(), resultsArea.getText().trim());
         
         showStatus("Test " + selectedTest.getTestId() + " completed successfully", "-fx-text-fill: #2ecc71;");
-        refreshPendingTests();
         clearSelectedTest();
     }
     
@@ -200,7 +324,7 @@ public class LaboratoryController implements Initializable {
             return;
         }
         
-        if (!"COMPLETED".equals(selectedTest.getStatus())) {
+        if (selectedTest.getStatus() != LabTestStatus.COMPLETED) {
             showStatus("Test must be completed before sending to doctor", "-fx-text-fill: #e74c3c;");
             return;
         }
@@ -0,0 +1,84 @@
+package hu_hospital.management.system;
+
+import hu_hospital.management.system.services.HospitalEventBus;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
+
+/**
+ * Helpers for screens that follow HospitalEvents: patch a table's rows in place
+ * instead of reloading it, and unsubscribe once the window showing it is closed.
+ */
+final class LiveTables {
+
+    private LiveTables() {
+    }
+
+    /**
+     * Insert a row, or replace the row with the same key, keeping the list sorted.
+     * Replacing also redraws the row when the item is the same (mutated) instance.
+     */
+    static <T, K> void upsert(ObservableList<T> rows, T item, Function<T, K> key, Comparator<? super T> order) {
+        remove(rows, key, key.apply(item));
+        int position = Collections.binarySearch(rows, item, order);
+        rows.add(position < 0 ? -position - 1 : position, item);
+    }
+
+    static <T, K> void remove(ObservableList<T> rows, Function<T, K> key, K value) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (Objects.equals(key.apply(rows.get(i)), value)) {
+                rows.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wrap a refresh so a burst of requests, from any thread, runs it once on the FX
+     * thread: requests made before the queued run starts are folded into it.
+     */
+    static Runnable coalescing(Runnable refresh) {
+        AtomicBoolean queued = new AtomicBoolean();
+        return () -> {
+            if (queued.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    queued.set(false);
+                    refresh.run();
+                });
+            }
+        };
+    }
+
+    /**
+     * Close the subscriptions when the window that ends up containing node is hidden
+     */
+    static void closeWithWindow(Node node, HospitalEventBus.Subscription... subscriptions) {
+        List<HospitalEventBus.Subscription> toClose = List.of(subscriptions);
+        node.sceneProperty().addListener((sceneObs, oldScene, scene) -> {
+            if (scene == null) {
+                return;
+            }
+            if (scene.getWindow() != null) {
+                closeWhenHidden(scene.getWindow(), toClose);
+            }
+            scene.windowProperty().addListener((windowObs, oldWindow, window) -> {
+                if (window != null) {
+                    closeWhenHidden(window, toClose);
+                }
+            });
+        });
+    }
+
+    private static void closeWhenHidden(Window window, List<HospitalEventBus.Subscription> subscriptions) {
+        window.addEventHandler(WindowEvent.WINDOW_HIDDEN,
+                e -> subscriptions.forEach(HospitalEventBus.Subscription::close));
+    }
+}
@@ -0,0 +1,97 @@
+package hu_hospital.management.system;
+
+import hu_hospital.management.system.services.AsyncHospitalService;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+
+/**
+ * Rows for a TableView that are fetched a page at a time as the user scrolls.
+ *
+ * The table asks for the next page when it lays out a row within half a page of
+ * the end of what is loaded. Pages are keyset pages: the loader gets the last
+ * loaded row (null for the first page) and returns the rows that follow it.
+ * Loading runs through AsyncHospitalService, so the FX thread never waits on it.
+ */
+final class PagedTableRows<S, T> {
+    private final ObservableList<T> rows = FXCollections.observableArrayList();
+    private final AsyncHospitalService<S> asyncService;
+    private final BiFunction<S, T, List<T>> nextPage;
+    private final int pageSize;
+    private final String refreshKey;
+    private boolean loading;
+    private boolean exhausted;
+    private CompletableFuture<List<T>> currentLoad;
+
+    private PagedTableRows(AsyncHospitalService<S> asyncService, int pageSize, BiFunction<S, T, List<T>> nextPage) {
+        this.asyncService = asyncService;
+        this.pageSize = pageSize;
+        this.nextPage = nextPage;
+        this.refreshKey = "page-" + System.identityHashCode(this);
+    }
+
+    /**
+     * Back the table with paged rows and load the first page
+     */
+    static <S, T> PagedTableRows<S, T> attach(TableView<T> table, AsyncHospitalService<S> asyncService,
+                                              int pageSize, BiFunction<S, T, List<T>> nextPage) {
+        PagedTableRows<S, T> paged = new PagedTableRows<>(asyncService, pageSize, nextPage);
+        table.setItems(paged.rows);
+        table.setRowFactory(tv -> new TableRow<>() {
+            @Override
+            public void updateIndex(int index) {
+                super.updateIndex(index);
+                // Empty rows below the last loaded one count too, so a tall table fills itself
+                if (index >= 0 && index >= paged.rows.size() - pageSize / 2) {
+                    paged.loadMore();
+                }
+            }
+        });
+        paged.loadMore();
+        return paged;
+    }
+
+    ObservableList<T> getRows() {
+        return rows;
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Drop everything loaded so far and start again from the first page
+     */
+    void reload() {
+        rows.clear();
+        exhausted = false;
+        loading = false;
+        loadMore();
+    }
+
+    private void loadMore() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        T last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        // Keyed refresh: a reload cancels the page still loading for the old list
+        CompletableFuture<List<T>> load = asyncService.refresh(refreshKey, service -> nextPage.apply(service, last), page -> {
+            loading = false;
+            exhausted = page.size() < pageSize;
+            rows.addAll(page);
+        });
+        currentLoad = load;
+        // A failed page leaves the rows as they were; the next scroll or reload asks again
+        load.whenCompleteAsync((page, error) -> {
+            if (error != null && currentLoad == load) {
+                loading = false;
+            }
+        }, Platform::runLater);
+    }
+}
@@ -1,17 +1,26 @@
 package hu_hospital.management.system;
 
+import hu_hospital.management.system.models.Doctor;
 import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.PatientStatus;
+import hu_hospital.management.system.models.TriageLevel;
 import hu_hospital.management.system.services.HospitalService;
 import java.net.URL;
+import java.util.List;
+import java.util.Objects;
 import java.util.ResourceBundle;
 import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
 
 public class PatientRegistrationController implements Initializable {
     
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final String ANY_DOCTOR = "Any doctor";
+    
     @FXML private TextField searchPhoneField;
     @FXML private Label searchResultLabel;
     @FXML private TextField firstNameField;
@@ -23,10 +32,13 @@ public class PatientRegistrationController implements Initializable {
     @FXML private TextField addressField;
     @FXML private TextField emergencyContactField;
     @FXML private TextArea medicalHistoryArea;
+    @FXML private ComboBox<String> departmentComboBox;
+    @FXML private ComboBox<TriageLevel> triageComboBox;
     @FXML private Label registrationStatusLabel;
     
     private HospitalService hospitalService;
     private Patient existingPatient;
+    private final ContextMenu suggestions = new ContextMenu();
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
@@ -35,9 +47,49 @@ public class PatientRegistrationController implements Initializable {
         // Initialize gender combo box
         genderComboBox.setItems(FXCollections.observableArrayList("Male", "Female", "Other"));
         
+        // Patients wait for a doctor of the chosen specialization, or for whoever is free
+        departmentComboBox.getItems().add(ANY_DOCTOR);
+        hospitalService.getAllDoctors().stream()
+                .map(Doctor::getSpecialization)
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .forEach(departmentComboBox.getItems()::add);
+        
+        // Urgent patients are seen ahead of earlier arrivals
+        triageComboBox.setItems(FXCollections.observableArrayList(TriageLevel.values()));
+        
+        // Search as you type by name, phone or patient ID
+        searchPhoneField.textProperty().addListener((obs, oldText, newText) -> showSuggestions(newText));
+        searchPhoneField.focusedProperty().addListener((obs, wasFocused, focused) -> {
+            if (!focused) {
+                suggestions.hide();
+            }
+        });
+        
         clearForm();
     }
     
+    private void showSuggestions(String query) {
+        List<Patient> matches = query == null || query.isBlank()
+                ? List.of() : hospitalService.searchPatients(query, MAX_SUGGESTIONS);
+        if (matches.isEmpty()) {
+            suggestions.hide();
+            return;
+        }
+        
+        suggestions.getItems().clear();
+        for (Patient patient : matches) {
+            MenuItem item = new MenuItem(patient.getFullName() + "  ·  " + patient.getPhoneNumber()
+                    + "  ·  " + patient.getPatientId());
+            item.setOnAction(e -> showExistingPatient(patient));
+            suggestions.getItems().add(item);
+        }
+        if (!suggestions.isShowing() && searchPhoneField.getScene() != null) {
+            suggestions.show(searchPhoneField, Side.BOTTOM, 0, 0);
+        }
+    }
+    
     @FXML
     private void searchPatient(ActionEvent event) {
         String phoneNumber = searchPhoneField.getText().trim();
@@ -48,30 +100,12 @@ public class PatientRegistrationController implements Initializable {
             return;
         }
         
-        existingPatient = hospitalService.findPatientByPhone(phoneNumber);
+        Patient patient = hospitalService.findPatientByPhone(phoneNumber);
         
-        if (existingPatient != null) {
-            // Patient found - populate form with existing data
-            searchResultLabel.setText("Patient found: " + existingPatient.getFullName());
-            searchResultLabel.setStyle("-fx-text-fill: #2ecc71;");
-            
-            firstNameField.setText(existingPatient.getFirstName());
-            lastNameField.setText(existingPatient.getLastName());
-            dobPicker.setValue(existingPatient.getDateOfBirth());
-            genderComboBox.setValue(existingPatient.getGender());
-            phoneField.setText(existingPatient.getPhoneNumber());
-            emailField.setText(existingPatient.getEmail());
-            addressField.setText(existingPatient.getAddress());
-            emergencyContactField.setText(existingPatient.getEmergencyContact());
-            medicalHistoryArea.setText(existingPatient.getMedicalHistory());
-            
-            // Disable editing of basic info for existing patients
-            firstNameField.setDisable(true);
-            lastNameField.setDisable(true);
-            dobPicker.setDisable(true);
-            genderComboBox.setDisable(true);
-            phoneField.setDisable(true);
+        if (patient != null) {
+            showExistingPatient(patient);
         } else {
+            existingPatient = null;
             searchResultLabel.setText("Patient not found. You can register as new patient.");
             searchResultLabel.setStyle("-fx-text-fill: #f39c12;");
             
@@ -81,6 +115,32 @@ public class PatientRegistrationController implements Initializable {
         }
     }
     
+    private void showExistingPatient(Patient patient) {
+        suggestions.hide();
+        existingPatient = patient;
+        
+        // Patient found - populate form with existing data
+        searchResultLabel.setText("Patient found: " + existingPatient.getFullName());
+        searchResultLabel.setStyle("-fx-text-fill: #2ecc71;");
+        
+        firstNameField.setText(existingPatient.getFirstName());
+        lastNameField.setText(existingPatient.getLastName());
+        dobPicker.setValue(existingPatient.getDateOfBirth());
+        genderComboBox.setValue(existingPatient.getGender());
+        phoneField.setText(existingPatient.getPhoneNumber());
+        emailField.setText(existingPatient.getEmail());
+        addressField.setText(existingPatient.getAddress());
+        emergencyContactField.setText(existingPatient.getEmergencyContact());
+        medicalHistoryArea.setText(existingPatient.getMedicalHistory());
+        
+        // Disable editing of basic info for existing patients
+        firstNameField.setDisable(true);
+        lastNameField.setDisable(true);
+        dobPicker.setDisable(true);
+        genderComboBox.setDisable(true);
+        phoneField.setDisable(true);
+    }
+    
     @FXML
     private void registerPatient(ActionEvent event) {
         if (!validateForm()) {
@@ -89,9 +149,9 @@ public class PatientRegistrationController implements Initializable {
         
         try {
             if (existingPatient != null) {
-                // Existing patient - just update queue and status
-                existingPatient.setStatus("WAITING");
-                existingPatient.setQueueNumber(hospitalService.getWaitingPatients().size() + 1);
+                // Existing patient - just update queue, status and triage level
+                hospitalService.setTriageLevel(existingPatient.getPatientId(), selectedTriageLevel());
+                hospitalService.requeuePatient(existingPatient.getPatientId(), selectedDepartment());
                 
                 registrationStatusLabel.setText("Patient " + existingPatient.getFullName() + 
                     " registered successfully! Queue Number: " + existingPatient.getQueueNumber());
@@ -108,9 +168,10 @@ public class PatientRegistrationController implements Initializable {
                 newPatient.setAddress(addressField.getText().trim());
                 newPatient.setEmergencyContact(emergencyContactField.getText().trim());
                 newPatient.setMedicalHistory(medicalHistoryArea.getText().trim());
-                newPatient.setStatus("WAITING");
+                newPatient.setStatus(PatientStatus.WAITING);
+                newPatient.setTriageLevel(selectedTriageLevel());
                 
-                String patientId = hospitalService.registerPatient(newPatient);
+                String patientId = hospitalService.registerPatient(newPatient, selectedDepartment());
                 
                 registrationStatusLabel.setText("Patient registered successfully! Patient ID: " + patientId + 
                     ", Queue Number: " + newPatient.getQueueNumber());
@@ -146,12 +207,24 @@ public class PatientRegistrationController implements Initializable {
         addressField.clear();
         emergencyContactField.clear();
         medicalHistoryArea.clear();
+        departmentComboBox.setValue(ANY_DOCTOR);
+        triageComboBox.setValue(TriageLevel.STANDARD);
         registrationStatusLabel.setText("");
         
         existingPatient = null;
         enableAllFields();
     }
     
+    private String selectedDepartment() {
+        String department = departmentComboBox.getValue();
+        return ANY_DOCTOR.equals(department) ? null : department;
+    }
+    
+    private TriageLevel selectedTriageLevel() {
+        TriageLevel level = triageComboBox.getValue();
+        return level != null ? level : TriageLevel.STANDARD;
+    }
+    
     private void enableAllFields() {
         firstNameField.setDisable(false);
         lastNameField.setDisable(false);
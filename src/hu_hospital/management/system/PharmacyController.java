@@ -1,11 +1,18 @@
 package hu_hospital.management.system;
 
 import hu_hospital.management.system.models.*;
+import hu_hospital.management.system.services.AsyncHospitalService;
+import hu_hospital.management.system.services.HospitalEvent;
+import hu_hospital.management.system.services.HospitalEventBus;
 import hu_hospital.management.system.services.HospitalService;
+import hu_hospital.management.system.services.PharmacyInventory;
 import java.net.URL;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ResourceBundle;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -13,15 +20,16 @@ import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.GridPane;
 
 public class PharmacyController implements Initializable {
     
-    @FXML private TableView<Prescription> pendingPrescriptionsTable;
-    @FXML private TableColumn<Prescription, String> prescriptionIdColumn;
-    @FXML private TableColumn<Prescription, String> patientNameColumn;
-    @FXML private TableColumn<Prescription, String> doctorNameColumn;
-    @FXML private TableColumn<Prescription, String> prescriptionDateColumn;
-    @FXML private TableColumn<Prescription, String> statusColumn;
+    @FXML private TableView<PrescriptionSummary> pendingPrescriptionsTable;
+    @FXML private TableColumn<PrescriptionSummary, String> prescriptionIdColumn;
+    @FXML private TableColumn<PrescriptionSummary, String> patientNameColumn;
+    @FXML private TableColumn<PrescriptionSummary, String> doctorNameColumn;
+    @FXML private TableColumn<PrescriptionSummary, String> prescriptionDateColumn;
+    @FXML private TableColumn<PrescriptionSummary, String> statusColumn;
     
     @FXML private Label selectedPrescriptionIdLabel;
     @FXML private Label selectedPatientLabel;
@@ -39,19 +47,26 @@ public class PharmacyController implements Initializable {
     @FXML private TextArea pharmacistNotesArea;
     @FXML private Label pharmacyStatusLabel;
     
+    private static final Comparator<PrescriptionSummary> DATE_ORDER =
+            Comparator.comparing(PrescriptionSummary::getPrescriptionDate)
+                      .thenComparing(PrescriptionSummary::getPrescriptionId);
+    
     private HospitalService hospitalService;
-    private ObservableList<Prescription> pendingPrescriptions;
+    private AsyncHospitalService<HospitalService> asyncService;
+    private ObservableList<PrescriptionSummary> pendingPrescriptions;
     private ObservableList<Medication> medications;
-    private Prescription selectedPrescription;
+    private PrescriptionSummary selectedPrescription;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         hospitalService = HospitalService.getInstance();
+        asyncService = AsyncHospitalService.inMemory();
         pendingPrescriptions = FXCollections.observableArrayList();
         medications = FXCollections.observableArrayList();
         
         setupPrescriptionsTable();
         setupMedicationsTable();
+        subscribeToChanges();
         refreshPendingPrescriptions();
         clearSelectedPrescription();
     }
@@ -60,21 +75,11 @@ public class PharmacyController implements Initializable {
         prescriptionIdColumn.setCellValueFactory(new PropertyValueFactory<>("prescriptionId"));
         statusColumn.setCellValueFactory(new PropertyValueFactory<>("status"));
         
-        // Custom cell factories
-        patientNameColumn.setCellValueFactory(cellData -> {
-            Patient patient = hospitalService.findPatientById(cellData.getValue().getPatientId());
-            return new javafx.beans.property.SimpleStringProperty(
-                patient != null ? patient.getFullName() : "Unknown Patient"
-            );
-        });
-        
-        doctorNameColumn.setCellValueFactory(cellData -> {
-            Doctor doctor = hospitalService.findDoctorById(cellData.getValue().getDoctorId());
-            return new javafx.beans.property.SimpleStringProperty(
-                doctor != null ? doctor.getFullName() : "Unknown Doctor"
-            );
-        });
+        // Names are already joined into the summaries, so recycled cells do no lookups
+        patientNameColumn.setCellValueFactory(new PropertyValueFactory<>("patientName"));
+        doctorNameColumn.setCellValueFactory(new PropertyValueFactory<>("doctorName"));
         
+        // Custom cell factories
         prescriptionDateColumn.setCellValueFactory(cellData -> {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd HH:mm");
             return new javafx.beans.property.SimpleStringProperty(
@@ -104,13 +109,28 @@ public class PharmacyController implements Initializable {
         medicationsTable.setItems(medications);
     }
     
+    /**
+     * Patch the pending list as prescriptions are written and dispensed at any station
+     */
+    private void subscribeToChanges() {
+        HospitalEventBus bus = hospitalService.getEventBus();
+        LiveTables.closeWithWindow(pendingPrescriptionsTable,
+            bus.subscribe(HospitalEvent.PrescriptionCreated.class,
+                e -> LiveTables.upsert(pendingPrescriptions, hospitalService.summarize(e.prescription()),
+                        PrescriptionSummary::getPrescriptionId, DATE_ORDER), Platform::runLater),
+            bus.subscribe(HospitalEvent.PrescriptionDispensed.class,
+                e -> LiveTables.remove(pendingPrescriptions, PrescriptionSummary::getPrescriptionId,
+                        e.prescription().getPrescriptionId()), Platform::runLater),
+            bus.subscribe(HospitalEvent.StockLow.class,
+                e -> showStatus("⚠️ Low stock: " + e.level(), "-fx-text-fill: #e67e22;"), Platform::runLater));
+    }
+    
     private void refreshPendingPrescriptions() {
-        pendingPrescriptions.clear();
-        List<Prescription> prescriptions = hospitalService.getPendingPrescriptions();
-        pendingPrescriptions.addAll(prescriptions);
+        asyncService.refresh("pendingPrescriptions", HospitalService::getPendingPrescriptionSummaries,
+                pendingPrescriptions::setAll);
     }
     
-    private void loadPrescriptionDetails(Prescription prescription) {
+    private void loadPrescriptionDetails(PrescriptionSummary prescription) {
         selectedPrescription = prescription;
         
         selectedPrescriptionIdLabel.setText(prescription.getPrescriptionId());
@@ -119,15 +139,12 @@ public class PharmacyController implements Initializable {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm");
         selectedDateLabel.setText(prescription.getPrescriptionDate().format(formatter));
         
-        Patient patient = hospitalService.findPatientById(prescription.getPatientId());
-        selectedPatientLabel.setText(patient != null ? patient.getFullName() : "Unknown Patient");
-        
-        Doctor doctor = hospitalService.findDoctorById(prescription.getDoctorId());
-        selectedDoctorLabel.setText(doctor != null ? doctor.getFullName() : "Unknown Doctor");
+        selectedPatientLabel.setText(prescription.getPatientName());
+        selectedDoctorLabel.setText(prescription.getDoctorName());
         
         // Load medications
         medications.clear();
-        medications.addAll(prescription.getMedications());
+        medications.addAll(prescription.getPrescription().getMedications());
         
         // Clear notes
         pharmacistNotesArea.clear();
@@ -157,16 +174,13 @@ public class PharmacyController implements Initializable {
         alert.setTitle("Prescription Details");
         alert.setHeaderText("Prescription ID: " + selectedPrescription.getPrescriptionId());
         
-        Patient patient = hospitalService.findPatientById(selectedPrescription.getPatientId());
-        Doctor doctor = hospitalService.findDoctorById(selectedPrescription.getDoctorId());
-        
         StringBuilder content = new StringBuilder();
-        content.append("Patient: ").append(patient != null ? patient.getFullName() : "Unknown").append("\n");
-        content.append("Doctor: ").append(doctor != null ? doctor.getFullName() : "Unknown").append("\n");
+        content.append("Patient: ").append(selectedPrescription.getPatientName()).append("\n");
+        content.append("Doctor: ").append(selectedPrescription.getDoctorName()).append("\n");
         content.append("Diagnosis: ").append(selectedPrescription.getDiagnosis()).append("\n\n");
         content.append("Medications:\n");
         
-        for (Medication med : selectedPrescription.getMedications()) {
+        for (Medication med : selectedPrescription.getPrescription().getMedications()) {
             content.append("• ").append(med.getMedicationName())
                    .append(" - ").append(med.getDosage())
                    .append(" (").append(med.getFrequency())
@@ -193,13 +207,38 @@ public class PharmacyController implements Initializable {
         alert.setHeaderText("Confirm Dispensing");
         alert.setContentText("Are you sure you want to dispense all medications for this prescription?");
         
-        if (alert.showAndWait().get() == ButtonType.OK) {
-            selectedPrescription.setStatus("DISPENSED");
+        if (alert.showAndWait().get() == ButtonType.OK && dispenseSelected()) {
             showStatus("Medications dispensed for prescription " + selectedPrescription.getPrescriptionId(), 
                       "-fx-text-fill: #2ecc71;");
         }
     }
     
+    /**
+     * Dispense the selected prescription from stock; explains why not if it could not be
+     */
+    private boolean dispenseSelected() {
+        Prescription prescription = selectedPrescription.getPrescription();
+        if (hospitalService.dispensePrescription(prescription.getPrescriptionId())) {
+            return true;
+        }
+        
+        StringBuilder shortages = new StringBuilder();
+        for (PharmacyInventory.Availability line : hospitalService.checkStock(prescription.getMedications())) {
+            if (!line.isAvailable()) {
+                shortages.append(shortages.length() > 0 ? ", " : "").append(line.medication().getMedicationName())
+                         .append(" (need ").append(line.needed())
+                         .append(", have ").append(line.stock() != null ? line.stock().getAvailable() : 0).append(")");
+            }
+        }
+        if (shortages.length() > 0) {
+            showStatus("Cannot dispense, short of " + shortages, "-fx-text-fill: #e74c3c;");
+        } else {
+            showStatus("Prescription " + prescription.getPrescriptionId() + " was already dispensed",
+                      "-fx-text-fill: #e74c3c;");
+        }
+        return false;
+    }
+    
     @FXML
     private void checkInventory(ActionEvent event) {
         if (selectedPrescription == null) {
@@ -207,7 +246,6 @@ public class PharmacyController implements Initializable {
             return;
         }
         
-        // Simulate inventory check
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle("Inventory Check");
         alert.setHeaderText("Medication Availability");
@@ -215,11 +253,24 @@ public class PharmacyController implements Initializable {
         StringBuilder content = new StringBuilder();
         content.append("Inventory Status:\n\n");
         
-        for (Medication med : selectedPrescription.getMedications()) {
-            // Simulate random availability
-            boolean available = Math.random() > 0.2; // 80% chance of being available
-            content.append("• ").append(med.getMedicationName())
-                   .append(": ").append(available ? "✓ Available" : "✗ Out of Stock").append("\n");
+        List<PharmacyInventory.Availability> lines = hospitalService.checkStock(selectedPrescription.getPrescription().getMedications());
+        for (PharmacyInventory.Availability line : lines) {
+            StockLevel stock = line.stock();
+            content.append("• ").append(line.medication().getMedicationName())
+                   .append(" ").append(line.medication().getDosage()).append(": ");
+            if (stock == null) {
+                content.append("✗ Not stocked\n");
+                continue;
+            }
+            content.append(line.isAvailable() ? "✓ Available" : "✗ Short")
+                   .append(" (need ").append(line.needed()).append(", have ").append(stock.getAvailable()).append(")");
+            if (stock.getNextExpiry() != null) {
+                content.append(", next lot expires ").append(stock.getNextExpiry());
+            }
+            if (stock.isLow()) {
+                content.append(", ⚠️ below reorder level ").append(stock.getReorderLevel());
+            }
+            content.append("\n");
         }
         
         alert.setContentText(content.toString());
@@ -240,13 +291,11 @@ public class PharmacyController implements Initializable {
         alert.setTitle("Print Medication Labels");
         alert.setHeaderText("Medication Labels Preview");
         
-        Patient patient = hospitalService.findPatientById(selectedPrescription.getPatientId());
-        
         StringBuilder content = new StringBuilder();
-        content.append("Patient: ").append(patient != null ? patient.getFullName() : "Unknown").append("\n");
+        content.append("Patient: ").append(selectedPrescription.getPatientName()).append("\n");
         content.append("Prescription ID: ").append(selectedPrescription.getPrescriptionId()).append("\n\n");
         
-        for (Medication med : selectedPrescription.getMedications()) {
+        for (Medication med : selectedPrescription.getPrescription().getMedications()) {
             content.append("MEDICATION LABEL\n");
             content.append("================\n");
             content.append("Medication: ").append(med.getMedicationName()).append("\n");
@@ -273,15 +322,66 @@ public class PharmacyController implements Initializable {
             return;
         }
         
-        hospitalService.dispensePrescription(selectedPrescription.getPrescriptionId());
+        // Dispense now unless that was already done with the Dispense button
+        if (selectedPrescription.getPrescription().getStatus() == PrescriptionStatus.PRESCRIBED && !dispenseSelected()) {
+            return;
+        }
         
         showStatus("Prescription " + selectedPrescription.getPrescriptionId() + " completed successfully", 
                   "-fx-text-fill: #2ecc71;");
         
-        refreshPendingPrescriptions();
         clearSelectedPrescription();
     }
     
+    @FXML
+    private void receiveStock(ActionEvent event) {
+        TextField nameField = new TextField();
+        TextField strengthField = new TextField();
+        TextField lotField = new TextField();
+        DatePicker expiryPicker = new DatePicker(LocalDate.now().plusYears(1));
+        TextField quantityField = new TextField();
+        
+        // Prefill from the selected medication, the usual reason to restock
+        Medication selected = medicationsTable.getSelectionModel().getSelectedItem();
+        if (selected != null) {
+            nameField.setText(selected.getMedicationName());
+            strengthField.setText(selected.getDosage());
+        }
+        
+        GridPane form = new GridPane();
+        form.setHgap(10);
+        form.setVgap(10);
+        form.addRow(0, new Label("Medication:"), nameField);
+        form.addRow(1, new Label("Strength:"), strengthField);
+        form.addRow(2, new Label("Lot number:"), lotField);
+        form.addRow(3, new Label("Expiry date:"), expiryPicker);
+        form.addRow(4, new Label("Quantity:"), quantityField);
+        
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Receive Stock");
+        dialog.setHeaderText("Record a delivery");
+        dialog.getDialogPane().setContent(form);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        
+        if (dialog.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            return;
+        }
+        try {
+            StockLot lot = new StockLot(nameField.getText().trim(), strengthField.getText().trim(),
+                    lotField.getText().trim(), expiryPicker.getValue(), Integer.parseInt(quantityField.getText().trim()));
+            if (lot.getMedicationName().isEmpty() || lot.getLotNumber().isEmpty()) {
+                showStatus("Please enter the medication and lot number", "-fx-text-fill: #e74c3c;");
+                return;
+            }
+            hospitalService.receiveStock(lot);
+            showStatus("Received " + lot, "-fx-text-fill: #2ecc71;");
+        } catch (NumberFormatException e) {
+            showStatus("Please enter a whole number for the quantity", "-fx-text-fill: #e74c3c;");
+        } catch (IllegalArgumentException e) {
+            showStatus(e.getMessage(), "-fx-text-fill: #e74c3c;");
+        }
+    }
+    
     private void showStatus(String message, String style) {
         pharmacyStatusLabel.setText(message);
         pharmacyStatusLabel.setStyle(style + " -fx-font-weight: bold;");
@@ -1,5 +1,6 @@
 package hu_hospital.management.system;
 
+import hu_hospital.management.system.models.DashboardSnapshot;
 import hu_hospital.management.system.models.Patient;
 import hu_hospital.management.system.services.HospitalService;
 import javafx.application.Application;
@@ -158,13 +159,13 @@ public class ProgrammaticHospitalApp extends Application {
     }
     
     private void refreshDashboard() {
-        totalPatientsLabel.setText("Total Patients: " + hospitalService.getAllPatients().size());
-        waitingPatientsLabel.setText("Waiting Patients: " + hospitalService.getWaitingPatients().size());
-        activeDoctorsLabel.setText("Active Doctors: " + hospitalService.getAllDoctors().size());
-        pendingTestsLabel.setText("Pending Tests: " + hospitalService.getPendingLabTests().size());
+        DashboardSnapshot snapshot = hospitalService.getDashboardSnapshot();
+        totalPatientsLabel.setText("Total Patients: " + snapshot.getTotalPatients());
+        waitingPatientsLabel.setText("Waiting Patients: " + snapshot.getWaitingPatients());
+        activeDoctorsLabel.setText("Active Doctors: " + snapshot.getActiveDoctors());
+        pendingTestsLabel.setText("Pending Tests: " + snapshot.getPendingLabTests());
         
-        queueData.clear();
-        queueData.addAll(hospitalService.getWaitingPatients());
+        queueData.setAll(snapshot.getQueue());
     }
     
     private void showMessage(String title, String message) {
@@ -1,7 +1,10 @@
 package hu_hospital.management.system;
 
 import hu_hospital.management.system.models.*;
+import hu_hospital.management.system.services.HospitalJournal;
 import hu_hospital.management.system.services.HospitalService;
+import hu_hospital.management.system.services.LabResultIngestor;
+import hu_hospital.management.system.services.PharmacyInventory;
 import javafx.application.Application;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -14,6 +17,8 @@ import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Optional;
@@ -21,6 +26,7 @@ import java.util.Optional;
 public class StandaloneHospitalApp extends Application {
     
     private HospitalService hospitalService;
+    private LabResultIngestor labResultIngestor;
     private ObservableList<Patient> queueData;
     private Label totalPatientsLabel, waitingPatientsLabel, activeDoctorsLabel, pendingTestsLabel;
     private TableView<Patient> queueTableView;
@@ -28,6 +34,12 @@ public class StandaloneHospitalApp extends Application {
     @Override
     public void start(Stage primaryStage) {
         hospitalService = HospitalService.getInstance();
+        try {
+            hospitalService.enableJournal(HospitalJournal.defaultDirectory());
+        } catch (IOException e) {
+            System.err.println("⚠️ Journal unavailable, changes will not survive a restart: " + e.getMessage());
+        }
+        startLabResultIngestion();
         queueData = FXCollections.observableArrayList();
         
         // Create main layout
@@ -75,6 +87,37 @@ public class StandaloneHospitalApp extends Application {
         System.out.println("👨‍⚕️ " + hospitalService.getAllDoctors().size() + " doctors available");
     }
     
+    @Override
+    public void stop() {
+        if (labResultIngestor != null) {
+            labResultIngestor.close();
+        }
+        hospitalService.closeJournal();
+    }
+    
+    /**
+     * Take analyzer results from -Dhospital.lab.inbox (a directory) and -Dhospital.lab.port
+     * (a local TCP port) when either is set
+     */
+    private void startLabResultIngestion() {
+        String inbox = System.getProperty("hospital.lab.inbox");
+        Integer port = Integer.getInteger("hospital.lab.port");
+        if (inbox == null && port == null) {
+            return;
+        }
+        labResultIngestor = new LabResultIngestor(hospitalService::completeLabTests);
+        try {
+            if (inbox != null) {
+                labResultIngestor.watch(Path.of(inbox));
+            }
+            if (port != null) {
+                labResultIngestor.listen(port);
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Analyzer results cannot be received: " + e.getMessage());
+        }
+    }
+    
     private VBox createStatsBox() {
         VBox statsBox = new VBox(10);
         statsBox.setStyle("-fx-background-color: #ecf0f1; -fx-padding: 15; -fx-background-radius: 5;");
@@ -176,13 +219,13 @@ public class StandaloneHospitalApp extends Application {
     }
     
     private void refreshDashboard() {
-        totalPatientsLabel.setText("Total Patients: " + hospitalService.getAllPatients().size());
-        waitingPatientsLabel.setText("Waiting Patients: " + hospitalService.getWaitingPatients().size());
-        activeDoctorsLabel.setText("Active Doctors: " + hospitalService.getAllDoctors().size());
-        pendingTestsLabel.setText("Pending Tests: " + hospitalService.getPendingLabTests().size());
+        DashboardSnapshot snapshot = hospitalService.getDashboardSnapshot();
+        totalPatientsLabel.setText("Total Patients: " + snapshot.getTotalPatients());
+        waitingPatientsLabel.setText("Waiting Patients: " + snapshot.getWaitingPatients());
+        activeDoctorsLabel.setText("Active Doctors: " + snapshot.getActiveDoctors());
+        pendingTestsLabel.setText("Pending Tests: " + snapshot.getPendingLabTests());
         
-        queueData.clear();
-        queueData.addAll(hospitalService.getWaitingPatients());
+        queueData.setAll(snapshot.getQueue());
     }
     
     private void openPatientRegistration(Stage parentStage) {
@@ -241,7 +284,7 @@ public class StandaloneHospitalApp extends Application {
             patient.setPhoneNumber(phoneField.getText());
             patient.setEmail(emailField.getText());
             patient.setAddress(addressArea.getText());
-            patient.setStatus("WAITING");
+            patient.setStatus(PatientStatus.WAITING);
             
             String patientId = hospitalService.registerPatient(patient);
             showAlert("Success", "Patient registered successfully!\nPatient ID: " + patientId + 
@@ -363,9 +406,10 @@ public class StandaloneHospitalApp extends Application {
         final Patient[] currentPatient = {null};
         
         callNextBtn.setOnAction(e -> {
-            if (!waitingPatients.isEmpty()) {
-                currentPatient[0] = waitingPatients.get(0);
-                hospitalService.updatePatientStatus(currentPatient[0].getPatientId(), "WITH_DOCTOR");
+            // This screen works as DOC001; the scheduler marks the patient WITH_DOCTOR
+            Patient next = hospitalService.callNextPatient("DOC001");
+            if (next != null) {
+                currentPatient[0] = next;
                 currentPatientLabel.setText(currentPatient[0].getFullName());
                 patientDetailsLabel.setText("ID: " + currentPatient[0].getPatientId() + 
                                           " | Phone: " + currentPatient[0].getPhoneNumber());
@@ -441,7 +485,7 @@ public class StandaloneHospitalApp extends Application {
                 return;
             }
             
-            hospitalService.updatePatientStatus(currentPatient[0].getPatientId(), "COMPLETED");
+            hospitalService.updatePatientStatus(currentPatient[0].getPatientId(), PatientStatus.COMPLETED);
             showAlert("Success", "Consultation completed for " + currentPatient[0].getFullName());
             
             currentPatient[0] = null;
@@ -568,12 +612,11 @@ public class StandaloneHospitalApp extends Application {
                 return;
             }
             
-            if (!"ORDERED".equals(selectedTest[0].getStatus())) {
+            if (!hospitalService.startLabTest(selectedTest[0].getTestId())) {
                 showAlert("Error", "Test is already in progress or completed.");
                 return;
             }
             
-            selectedTest[0].setStatus("IN_PROGRESS");
             showAlert("Success", "Test " + selectedTest[0].getTestId() + " started.");
             
             pendingTests.clear();
@@ -634,35 +677,25 @@ public class StandaloneHospitalApp extends Application {
         Label prescriptionsTitle = new Label("Pending Prescriptions");
         prescriptionsTitle.setFont(Font.font("System", FontWeight.BOLD, 14));
         
-        TableView<Prescription> prescriptionsTable = new TableView<>();
+        TableView<PrescriptionSummary> prescriptionsTable = new TableView<>();
         prescriptionsTable.setPrefHeight(200);
         
-        TableColumn<Prescription, String> prescIdCol = new TableColumn<>("Prescription ID");
+        TableColumn<PrescriptionSummary, String> prescIdCol = new TableColumn<>("Prescription ID");
         prescIdCol.setPrefWidth(120);
         prescIdCol.setCellValueFactory(new PropertyValueFactory<>("prescriptionId"));
         
-        TableColumn<Prescription, String> patientCol = new TableColumn<>("Patient");
+        TableColumn<PrescriptionSummary, String> patientCol = new TableColumn<>("Patient");
         patientCol.setPrefWidth(120);
-        patientCol.setCellValueFactory(cellData -> {
-            Patient patient = hospitalService.findPatientById(cellData.getValue().getPatientId());
-            return new javafx.beans.property.SimpleStringProperty(
-                patient != null ? patient.getFullName() : "Unknown"
-            );
-        });
+        patientCol.setCellValueFactory(new PropertyValueFactory<>("patientName"));
         
-        TableColumn<Prescription, String> doctorCol = new TableColumn<>("Doctor");
+        TableColumn<PrescriptionSummary, String> doctorCol = new TableColumn<>("Doctor");
         doctorCol.setPrefWidth(120);
-        doctorCol.setCellValueFactory(cellData -> {
-            Doctor doctor = hospitalService.findDoctorById(cellData.getValue().getDoctorId());
-            return new javafx.beans.property.SimpleStringProperty(
-                doctor != null ? doctor.getFullName() : "Unknown"
-            );
-        });
+        doctorCol.setCellValueFactory(new PropertyValueFactory<>("doctorName"));
         
         prescriptionsTable.getColumns().addAll(prescIdCol, patientCol, doctorCol);
         
-        ObservableList<Prescription> pendingPrescriptions = FXCollections.observableArrayList();
-        pendingPrescriptions.addAll(hospitalService.getPendingPrescriptions());
+        ObservableList<PrescriptionSummary> pendingPrescriptions = FXCollections.observableArrayList();
+        pendingPrescriptions.addAll(hospitalService.getPendingPrescriptionSummaries());
         prescriptionsTable.setItems(pendingPrescriptions);
         
         Button dispenseBtn = new Button("Dispense Medication");
@@ -734,22 +767,19 @@ public class StandaloneHospitalApp extends Application {
         layout.setCenter(rightPanel);
         
         // Event handlers
-        final Prescription[] selectedPrescription = {null};
+        final PrescriptionSummary[] selectedPrescription = {null};
         
         prescriptionsTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
             if (newSelection != null) {
                 selectedPrescription[0] = newSelection;
                 selectedPrescLabel.setText(newSelection.getPrescriptionId());
                 
-                Patient patient = hospitalService.findPatientById(newSelection.getPatientId());
-                Doctor doctor = hospitalService.findDoctorById(newSelection.getDoctorId());
-                
-                prescDetailsLabel.setText("Patient: " + (patient != null ? patient.getFullName() : "Unknown") +
-                                        "\nDoctor: " + (doctor != null ? doctor.getFullName() : "Unknown"));
+                prescDetailsLabel.setText("Patient: " + newSelection.getPatientName() +
+                                        "\nDoctor: " + newSelection.getDoctorName());
                 diagnosisLabel.setText("Diagnosis: " + newSelection.getDiagnosis());
                 
                 medications.clear();
-                medications.addAll(newSelection.getMedications());
+                medications.addAll(newSelection.getPrescription().getMedications());
             }
         });
         
@@ -760,11 +790,16 @@ public class StandaloneHospitalApp extends Application {
             }
             
             StringBuilder inventory = new StringBuilder("Medication Inventory Status:\n\n");
-            for (Medication med : selectedPrescription[0].getMedications()) {
-                boolean available = Math.random() > 0.2; // 80% chance available
-                inventory.append("• ").append(med.getMedicationName())
-                        .append(": ").append(available ? "✓ Available" : "✗ Out of Stock")
-                        .append("\n");
+            for (PharmacyInventory.Availability line :
+                    hospitalService.checkStock(selectedPrescription[0].getPrescription().getMedications())) {
+                inventory.append("• ").append(line.medication().getMedicationName())
+                        .append(": ").append(line.isAvailable() ? "✓ Available" : "✗ Out of Stock")
+                        .append(" (need ").append(line.needed())
+                        .append(", have ").append(line.stock() != null ? line.stock().getAvailable() : 0).append(")");
+                if (line.stock() != null && line.stock().isLow()) {
+                    inventory.append(" ⚠️ low");
+                }
+                inventory.append("\n");
             }
             
             showAlert("Inventory Check", inventory.toString());
@@ -777,12 +812,10 @@ public class StandaloneHospitalApp extends Application {
             }
             
             StringBuilder labels = new StringBuilder("Medication Labels:\n\n");
-            Patient patient = hospitalService.findPatientById(selectedPrescription[0].getPatientId());
-            
-            for (Medication med : selectedPrescription[0].getMedications()) {
+            for (Medication med : selectedPrescription[0].getPrescription().getMedications()) {
                 labels.append("MEDICATION LABEL\n")
                       .append("================\n")
-                      .append("Patient: ").append(patient != null ? patient.getFullName() : "Unknown").append("\n")
+                      .append("Patient: ").append(selectedPrescription[0].getPatientName()).append("\n")
                       .append("Medication: ").append(med.getMedicationName()).append("\n")
                       .append("Dosage: ").append(med.getDosage()).append("\n")
                       .append("Frequency: ").append(med.getFrequency()).append("\n")
@@ -805,12 +838,15 @@ public class StandaloneHospitalApp extends Application {
             
             Optional<ButtonType> result = confirmAlert.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
-                hospitalService.dispensePrescription(selectedPrescription[0].getPrescriptionId());
+                if (!hospitalService.dispensePrescription(selectedPrescription[0].getPrescriptionId())) {
+                    showAlert("Error", "Not enough stock to dispense this prescription. Use Check Inventory to see what is short.");
+                    return;
+                }
                 showAlert("Success", "Medications dispensed successfully for prescription " + 
                          selectedPrescription[0].getPrescriptionId());
                 
                 pendingPrescriptions.clear();
-                pendingPrescriptions.addAll(hospitalService.getPendingPrescriptions());
+                pendingPrescriptions.addAll(hospitalService.getPendingPrescriptionSummaries());
                 
                 selectedPrescription[0] = null;
                 selectedPrescLabel.setText("No prescription selected");
@@ -0,0 +1,530 @@
+package hu_hospital.management.system.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded JDBC connection pool shared by all DAOs.
+ *
+ * Callers borrow with {@link #borrow()} and give the connection back by calling
+ * {@code close()} on it, so the existing try-with-resources blocks in the DAOs
+ * return connections to the pool instead of tearing them down.
+ *
+ * Each physical connection also keeps its most recently used prepared statements
+ * open, keyed by SQL text. A DAO that prepares the same query on a later borrow gets
+ * the already-prepared statement back, and closing it returns it to that cache.
+ */
+public class ConnectionPool {
+
+    /**
+     * Opens a new physical connection to the database
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // Idle connections, most recently returned first so the tail ages out
+    private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+    private final ScheduledExecutorService evictor;
+
+    // Metrics
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    /**
+     * @param statementCacheSize prepared statements kept open per connection, 0 to disable
+     */
+    public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, int validationTimeoutSeconds,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        this.factory = factory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hospital-db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open connections up to the configured minimum
+     */
+    public void warmUp() throws SQLException {
+        while (openCount.get() < minSize && !shutdown.get()) {
+            idle.offerFirst(new PooledEntry(openPhysical()));
+        }
+    }
+
+    /**
+     * Borrow a connection, waiting at most the configured borrow timeout
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown.get()) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        if (!acquired) {
+            borrowTimeouts.increment();
+            throw new SQLException("Timed out after " + borrowTimeoutMillis
+                    + " ms waiting for a database connection (pool max " + maxSize + ")");
+        }
+
+        try {
+            PooledEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (isValid(entry.physical)) {
+                    break;
+                }
+                validationFailures.increment();
+                closePhysical(entry.physical);
+            }
+            if (entry == null) {
+                entry = new PooledEntry(openPhysical());
+            }
+            borrowCount.increment();
+            return entry.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close every idle connection and refuse further borrows. Connections that are
+     * still checked out are closed when they are returned.
+     */
+    public void shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return;
+        }
+        evictor.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            closePhysical(entry.physical);
+        }
+    }
+
+    public boolean isShutdown() { return shutdown.get(); }
+
+    // Metrics
+    public int getOpenCount() { return openCount.get(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getActiveCount() { return maxSize - permits.availablePermits(); }
+    public int getMinSize() { return minSize; }
+    public int getMaxSize() { return maxSize; }
+    public long getBorrowCount() { return borrowCount.sum(); }
+    public long getBorrowTimeouts() { return borrowTimeouts.sum(); }
+    public long getCreatedCount() { return createdCount.sum(); }
+    public long getEvictedCount() { return evictedCount.sum(); }
+    public long getValidationFailures() { return validationFailures.sum(); }
+    public double getMaxBorrowWaitMillis() { return maxBorrowWaitNanos.get() / 1_000_000.0; }
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public long getStatementCacheHits() { return statementHits.sum(); }
+    public long getStatementCacheMisses() { return statementMisses.sum(); }
+    public long getStatementCacheEvictions() { return statementEvictions.sum(); }
+
+    public double getAverageBorrowWaitMillis() {
+        long borrows = borrowCount.sum() + borrowTimeouts.sum();
+        return borrows == 0 ? 0 : borrowWaitNanos.sum() / 1_000_000.0 / borrows;
+    }
+
+    public double getStatementCacheHitRate() {
+        long hits = statementHits.sum();
+        long lookups = hits + statementMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private void recordWait(long nanos) {
+        borrowWaitNanos.add(nanos);
+        maxBorrowWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection conn = factory.create();
+        openCount.incrementAndGet();
+        createdCount.increment();
+        return conn;
+    }
+
+    private void closePhysical(Connection conn) {
+        openCount.decrementAndGet();
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private boolean isValid(Connection conn) {
+        try {
+            return !conn.isClosed() && conn.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledEntry entry, boolean broken) {
+        try {
+            entry.reclaimStatements();
+            if (shutdown.get() || broken || !resetState(entry.physical)) {
+                closePhysical(entry.physical);
+            } else {
+                entry.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Undo anything a borrower may have left behind before reusing the connection
+     */
+    private boolean resetState(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            conn.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<PooledEntry> it = idle.descendingIterator();
+        while (it.hasNext() && openCount.get() > minSize) {
+            PooledEntry entry = it.next();
+            if (entry.lastUsed < cutoff && idle.removeLastOccurrence(entry)) {
+                evictedCount.increment();
+                closePhysical(entry.physical);
+            }
+        }
+    }
+
+    /**
+     * A physical connection plus the bookkeeping needed to hand it out again.
+     * The statement cache is only touched by the current borrower; handing the
+     * entry over through the idle deque publishes it to the next one.
+     */
+    private final class PooledEntry {
+        final Connection physical;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        // Access-ordered, so the eldest entry is the least recently prepared statement
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                statementEvictions.increment();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+
+        PooledEntry(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new LeaseHandler(this));
+        }
+
+        /**
+         * Hand out the cached statement for this SQL, preparing it on first use. If the
+         * borrower already has it open (e.g. a nested query), a plain uncached
+         * statement is returned instead.
+         */
+        PreparedStatement prepare(String sql, Connection leased) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && cached.lease == null) {
+                statementHits.increment();
+                return cached.lend(leased);
+            }
+            statementMisses.increment();
+            PreparedStatement statement = physical.prepareStatement(sql);
+            if (cached != null) {
+                return statement;
+            }
+            cached = new CachedStatement(sql, statement);
+            statements.put(sql, cached);
+            return cached.lend(leased);
+        }
+
+        /**
+         * Take back statements the borrower forgot to close before returning the connection
+         */
+        void reclaimStatements() {
+            for (CachedStatement cached : statements.values().toArray(new CachedStatement[0])) {
+                if (cached.lease != null) {
+                    cached.giveBack();
+                }
+            }
+        }
+
+        void discard(CachedStatement cached) {
+            statements.remove(cached.sql, cached);
+            closeQuietly(cached.physical);
+        }
+
+        /**
+         * A prepared statement that stays open between borrows
+         */
+        private final class CachedStatement {
+            final String sql;
+            final PreparedStatement physical;
+            StatementLease lease;
+            boolean evicted;
+            boolean dirty;
+
+            CachedStatement(String sql, PreparedStatement physical) {
+                this.sql = sql;
+                this.physical = physical;
+            }
+
+            PreparedStatement lend(Connection leased) {
+                lease = new StatementLease(this, leased);
+                return (PreparedStatement) Proxy.newProxyInstance(
+                        ConnectionPool.class.getClassLoader(),
+                        new Class<?>[] { PreparedStatement.class },
+                        lease);
+            }
+
+            void evict() {
+                evicted = true;
+                if (lease == null) {
+                    closeQuietly(physical);
+                }
+            }
+
+            /**
+             * Clear what the borrower left on the statement so the next one starts fresh.
+             * Statements whose settings were changed are dropped rather than reset.
+             */
+            void giveBack() {
+                lease = null;
+                if (evicted) {
+                    closeQuietly(physical);
+                    return;
+                }
+                try {
+                    ResultSet open = physical.getResultSet();
+                    if (open != null) {
+                        open.close();
+                    }
+                    physical.clearParameters();
+                    physical.clearBatch();
+                    physical.clearWarnings();
+                } catch (SQLException e) {
+                    dirty = true;
+                }
+                if (dirty) {
+                    discard(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forwards calls to a cached statement until the borrower closes it
+     */
+    private static final class StatementLease implements InvocationHandler {
+        // Setters whose effect would leak into the next borrower of the statement
+        private static final Set<String> STICKY_SETTINGS = Set.of(
+                "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows", "setMaxFieldSize",
+                "setQueryTimeout", "setEscapeProcessing", "setCursorName", "setPoolable",
+                "closeOnCompletion");
+
+        private final PooledEntry.CachedStatement cached;
+        private final Connection connection;
+
+        StatementLease(PooledEntry.CachedStatement cached, Connection connection) {
+            this.cached = cached;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean closed = cached.lease != this;
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        cached.giveBack();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.physical.isClosed();
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.sql + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement has already been closed");
+            }
+            if (STICKY_SETTINGS.contains(method.getName())) {
+                cached.dirty = true;
+            }
+
+            try {
+                return method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Forwards calls to the physical connection until the borrower closes it
+     */
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private volatile boolean broken;
+
+        LeaseHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(entry, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || entry.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + entry.physical + "]";
+                default:
+                    break;
+            }
+
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            try {
+                if (statementCacheSize > 0 && args != null && args.length == 1
+                        && method.getName().equals("prepareStatement")) {
+                    return entry.prepare((String) args[0], (Connection) proxy);
+                }
+                return method.invoke(entry.physical, args);
+            } catch (InvocationTargetException e) {
+                throw markIfBroken(e.getCause());
+            } catch (SQLException e) {
+                throw markIfBroken(e);
+            }
+        }
+
+        private Throwable markIfBroken(Throwable cause) {
+            if (cause instanceof SQLException && isConnectionError((SQLException) cause)) {
+                broken = true;
+            }
+            return cause;
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+
+    /**
+     * SQLState class 08 means the connection itself is unusable
+     */
+    private static boolean isConnectionError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+}
@@ -0,0 +1,142 @@
+package hu_hospital.management.system.database;
+
+import hu_hospital.management.system.models.Medication;
+import hu_hospital.management.system.models.Prescription;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.StringJoiner;
+
+/**
+ * Nightly CSV export of the patients, lab_tests and prescriptions tables.
+ *
+ * Rows are streamed from a server-side cursor straight into the files, so memory
+ * use stays the same however many rows the tables hold.
+ *
+ * Usage: java hu_hospital.management.system.database.CsvExport [output-directory]
+ * (-Dhospital.db.fetchSize sets the rows fetched per round trip)
+ */
+public class CsvExport {
+
+    private final PatientDAO patientDAO = new PatientDAO();
+    private final LabTestDAO labTestDAO = new LabTestDAO();
+    private final PrescriptionDAO prescriptionDAO = new PrescriptionDAO();
+    private final int fetchSize;
+
+    public CsvExport(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Write every patient to file. Returns the number of rows written.
+     */
+    public long exportPatients(Path file) throws SQLException, IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRow(out, "patient_id", "first_name", "last_name", "date_of_birth", "gender", "phone_number",
+                    "email", "address", "emergency_contact", "queue_number", "status", "registration_date");
+            return patientDAO.streamPatients(fetchSize, patient -> writeRow(out,
+                    patient.getPatientId(), patient.getFirstName(), patient.getLastName(),
+                    format(patient.getDateOfBirth()), patient.getGender(), patient.getPhoneNumber(),
+                    patient.getEmail(), patient.getAddress(), patient.getEmergencyContact(),
+                    String.valueOf(patient.getQueueNumber()), format(patient.getStatus()),
+                    format(patient.getRegistrationDate())));
+        }
+    }
+
+    /**
+     * Write every lab test to file. Returns the number of rows written.
+     */
+    public long exportLabTests(Path file) throws SQLException, IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRow(out, "test_id", "patient_id", "test_type", "description", "status", "ordered_by",
+                    "order_date", "completion_date", "results");
+            return labTestDAO.streamLabTests(fetchSize, test -> writeRow(out,
+                    test.getTestId(), test.getPatientId(), test.getTestType(), test.getDescription(),
+                    format(test.getStatus()), test.getOrderedBy(), format(test.getOrderDate()),
+                    format(test.getCompletionDate()), test.getResults()));
+        }
+    }
+
+    /**
+     * Write every prescription to file, its medications joined into one column.
+     * Returns the number of rows written.
+     */
+    public long exportPrescriptions(Path file) throws SQLException, IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRow(out, "prescription_id", "patient_id", "doctor_id", "prescription_date", "diagnosis",
+                    "instructions", "status", "medications");
+            return prescriptionDAO.streamPrescriptions(fetchSize, prescription -> writeRow(out,
+                    prescription.getPrescriptionId(), prescription.getPatientId(), prescription.getDoctorId(),
+                    format(prescription.getPrescriptionDate()), prescription.getDiagnosis(),
+                    prescription.getInstructions(), format(prescription.getStatus()), medications(prescription)));
+        }
+    }
+
+    public static void main(String[] args) {
+        Path directory = Path.of(args.length > 0 ? args[0] : ".");
+        String date = LocalDate.now().toString();
+        CsvExport export = new CsvExport(DatabaseConfig.STREAM_FETCH_SIZE);
+
+        System.out.println("📤 Exporting hospital data to " + directory.toAbsolutePath());
+        try {
+            Files.createDirectories(directory);
+            report("patients", () -> export.exportPatients(directory.resolve("patients-" + date + ".csv")));
+            report("lab tests", () -> export.exportLabTests(directory.resolve("lab_tests-" + date + ".csv")));
+            report("prescriptions",
+                    () -> export.exportPrescriptions(directory.resolve("prescriptions-" + date + ".csv")));
+        } catch (SQLException | IOException e) {
+            System.err.println("❌ Export failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            DatabaseConfig.closeConnection();
+        }
+    }
+
+    private interface ExportStep {
+        long run() throws SQLException, IOException;
+    }
+
+    private static void report(String what, ExportStep step) throws SQLException, IOException {
+        long start = System.nanoTime();
+        long rows = step.run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("✅ Exported " + rows + " " + what + " in " + millis + " ms");
+    }
+
+    private static String medications(Prescription prescription) {
+        StringJoiner joined = new StringJoiner("; ");
+        for (Medication medication : prescription.getMedications()) {
+            joined.add(medication.getMedicationName() + " " + medication.getDosage() + " "
+                    + medication.getFrequency() + " for " + medication.getDuration() + " days");
+        }
+        return joined.toString();
+    }
+
+    private static String format(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static void writeRow(BufferedWriter out, String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(escape(values[i]));
+        }
+        out.newLine();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
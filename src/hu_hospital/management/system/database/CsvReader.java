@@ -0,0 +1,85 @@
+package hu_hospital.management.system.database;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 reader: quoted fields may contain commas, doubled quotes and line breaks.
+ * Records are read one at a time, so a file of any size is streamed.
+ */
+public final class CsvReader {
+    private final BufferedReader in;
+    private long line;
+    private long recordLine;
+
+    public CsvReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    /**
+     * Line the last record returned by next() started on
+     */
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    /**
+     * The fields of the next record, or null at the end of the input; blank lines are skipped
+     */
+    public List<String> next() throws IOException {
+        String text = in.readLine();
+        while (text != null && text.isBlank()) {
+            line++;
+            text = in.readLine();
+        }
+        if (text == null) {
+            return null;
+        }
+        line++;
+        recordLine = line;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == text.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // Line break inside a quoted field
+                String more = in.readLine();
+                if (more == null) {
+                    throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                }
+                line++;
+                field.append('\n');
+                text = more;
+                i = 0;
+                continue;
+            }
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c == '"' && i < text.length() && text.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
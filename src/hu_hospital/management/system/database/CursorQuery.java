@@ -0,0 +1,73 @@
+package hu_hospital.management.system.database;
+
+import java.io.IOException;
+import java.sql.*;
+
+/**
+ * Runs a read-only query through a server-side cursor, so rows arrive fetchSize at
+ * a time instead of the driver buffering the whole result. PgJDBC only does this for
+ * forward-only statements with autocommit off, so the query runs in a short read
+ * transaction that is always ended before the connection goes back to the pool.
+ */
+final class CursorQuery {
+
+    /**
+     * Maps the current row. Implementations look their column positions up once,
+     * when they are created for a result set, and then read by index.
+     */
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    interface RowMapperFactory<T> {
+        RowMapper<T> bind(ResultSet rs) throws SQLException;
+    }
+
+    interface ResultReader<R> {
+        R read(ResultSet rs) throws SQLException, IOException;
+    }
+
+    private CursorQuery() {
+    }
+
+    /**
+     * Map every row and hand it to the handler. Returns the number of rows handled.
+     */
+    static <T> long forEach(String sql, int fetchSize, RowMapperFactory<T> mapperFactory,
+                            RowHandler<? super T> handler) throws SQLException, IOException {
+        return query(sql, fetchSize, rs -> {
+            RowMapper<T> mapper = mapperFactory.bind(rs);
+            long rows = 0;
+            while (rs.next()) {
+                handler.handle(mapper.map(rs));
+                rows++;
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * Run the query and let the reader walk the result set itself
+     */
+    static <R> R query(String sql, int fetchSize, ResultReader<R> reader) throws SQLException, IOException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                                                                ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(fetchSize);
+                R result;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    result = reader.read(rs);
+                }
+                conn.commit();
+                return result;
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package hu_hospital.management.system.database;
+
+import hu_hospital.management.system.models.DashboardSnapshot;
+import hu_hospital.management.system.models.Patient;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for the dashboard - all counters and today's queue in one statement
+ */
+public class DashboardDAO {
+
+    /**
+     * Load the dashboard counters and the waiting queue in a single round trip.
+     * The counters repeat on every queue row; with an empty queue the LEFT JOIN
+     * still returns one row carrying just the counters. The queue comes most urgent
+     * triage level first, then by queue number, like PatientDAO.getWaitingPatients,
+     * and is read from idx_patients_waiting.
+     */
+    public DashboardSnapshot getDashboardSnapshot() throws SQLException {
+        String sql = """
+            WITH stats AS (
+                SELECT COUNT(*) AS total_patients,
+                       COUNT(*) FILTER (WHERE status IN ('REGISTERED', 'WAITING')) AS waiting_patients,
+                       (SELECT COUNT(*) FROM doctors) AS active_doctors,
+                       (SELECT COUNT(*) FROM lab_tests WHERE status IN ('ORDERED', 'IN_PROGRESS')) AS pending_tests
+                FROM patients
+            )
+            SELECT s.*, q.*
+            FROM stats s
+            LEFT JOIN patients q ON q.status IN ('REGISTERED', 'WAITING')
+            ORDER BY q.triage_level, q.queue_number
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            if (!rs.next()) {
+                return DashboardSnapshot.empty();
+            }
+
+            int totalPatients = rs.getInt("total_patients");
+            int waitingPatients = rs.getInt("waiting_patients");
+            int activeDoctors = rs.getInt("active_doctors");
+            int pendingTests = rs.getInt("pending_tests");
+
+            PatientDAO.PatientColumns columns = new PatientDAO.PatientColumns(rs);
+            int patientIdColumn = rs.findColumn("patient_id");
+            List<Patient> queue = new ArrayList<>();
+            do {
+                if (rs.getObject(patientIdColumn) == null) {
+                    break;
+                }
+                queue.add(columns.map(rs));
+            } while (rs.next());
+
+            return new DashboardSnapshot(totalPatients, waitingPatients, activeDoctors, pendingTests, queue);
+        }
+    }
+}
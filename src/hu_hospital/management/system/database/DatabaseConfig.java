@@ -14,57 +14,93 @@ public class DatabaseConfig {
     private static final String DB_HOST = "localhost";
     private static final String DB_PORT = "5432";
     private static final String DB_NAME = "HU_Hospital_Management_System"; // Change this to match your actual database name
-    private static final String DB_USER = "postgres"; // Change to your PostgreSQL username
-    private static final String DB_PASSWORD = "123321"; // Change to your PostgreSQL password
+    private static final String DB_USER = System.getProperty("hospital.db.user", "postgres"); // Change to your PostgreSQL username
+    private static final String DB_PASSWORD = System.getProperty("hospital.db.password", "123321"); // Change to your PostgreSQL password
     
-    private static final String DB_URL = "jdbc:postgresql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME;
+    // -Dhospital.db.url/user/password point the app (or the benchmarks) at another server
+    private static final String DB_URL = System.getProperty("hospital.db.url",
+            "jdbc:postgresql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME);
     
-    private static Connection connection = null;
+    // Connection pool settings - shared by every DAO and UI station in this process
+    private static final int POOL_MIN_SIZE = 2;
+    private static final int POOL_MAX_SIZE = 10;
+    private static final long POOL_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final long POOL_BORROW_TIMEOUT_MS = 10 * 1000;
+    private static final int POOL_VALIDATION_TIMEOUT_SECONDS = 2;
+    // Prepared statements kept open per pooled connection; -Dhospital.db.statementCacheSize=0 turns it off
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("hospital.db.statementCacheSize", 64);
+    
+    // Minimum word similarity for fuzzy patient name search (pg_trgm's <% operator)
+    private static final String NAME_SEARCH_THRESHOLD = System.getProperty("hospital.search.nameThreshold", "0.45");
+    
+    // Rows per round trip when DAOs stream a whole table; -Dhospital.db.fetchSize overrides it
+    public static final int STREAM_FETCH_SIZE = Integer.getInteger("hospital.db.fetchSize", 1000);
+    
+    private static ConnectionPool pool = null;
     
     /**
-     * Get database connection
+     * Get a pooled database connection. Closing it returns it to the pool.
      */
     public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
+        return getPool().borrow();
+    }
+    
+    /**
+     * Get the shared connection pool, creating it on first use
+     */
+    public static synchronized ConnectionPool getPool() throws SQLException {
+        if (pool == null || pool.isShutdown()) {
             try {
                 // Load PostgreSQL JDBC driver
                 Class.forName("org.postgresql.Driver");
-                
-                // Connection properties
-                Properties props = new Properties();
-                props.setProperty("user", DB_USER);
-                props.setProperty("password", DB_PASSWORD);
-                props.setProperty("ssl", "false");
-                props.setProperty("autoReconnect", "true");
-                
-                // Create connection
-                connection = DriverManager.getConnection(DB_URL, props);
-                
-                System.out.println("✅ Connected to PostgreSQL database: " + DB_NAME);
-                
             } catch (ClassNotFoundException e) {
                 throw new SQLException("PostgreSQL JDBC Driver not found. Add postgresql-xx.x.x.jar to classpath", e);
+            }
+            
+            ConnectionPool newPool = new ConnectionPool(DatabaseConfig::openPhysicalConnection,
+                    POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT_MS,
+                    POOL_BORROW_TIMEOUT_MS, POOL_VALIDATION_TIMEOUT_SECONDS, POOL_STATEMENT_CACHE_SIZE);
+            try {
+                newPool.warmUp();
             } catch (SQLException e) {
+                newPool.shutdown();
                 System.err.println("❌ Failed to connect to database: " + e.getMessage());
                 System.err.println("💡 Make sure PostgreSQL is running and credentials are correct");
                 throw e;
             }
+            
+            pool = newPool;
+            System.out.println("✅ Connected to PostgreSQL database: " + DB_URL
+                    + " (pool " + POOL_MIN_SIZE + "-" + POOL_MAX_SIZE + " connections)");
         }
         
-        return connection;
+        return pool;
     }
     
     /**
-     * Close database connection
+     * Open a new physical connection, bypassing the pool. Also used for LISTEN
+     * sessions, which hold session state and must never go back into the pool.
      */
-    public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("🔌 Database connection closed");
-            } catch (SQLException e) {
-                System.err.println("Error closing database connection: " + e.getMessage());
-            }
+    static Connection openPhysicalConnection() throws SQLException {
+        // Connection properties
+        Properties props = new Properties();
+        props.setProperty("user", DB_USER);
+        props.setProperty("password", DB_PASSWORD);
+        props.setProperty("ssl", "false");
+        // Patient search: the default of 0.6 misses a single typo in a short name ("fatma")
+        props.setProperty("options", "-c pg_trgm.word_similarity_threshold=" + NAME_SEARCH_THRESHOLD);
+        
+        return DriverManager.getConnection(DB_URL, props);
+    }
+    
+    /**
+     * Close all pooled database connections
+     */
+    public static synchronized void closeConnection() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+            System.out.println("🔌 Database connection pool closed");
         }
     }
     
@@ -72,8 +108,7 @@ public class DatabaseConfig {
      * Test database connection
      */
     public static boolean testConnection() {
-        try {
-            Connection conn = getConnection();
+        try (Connection conn = getConnection()) {
             boolean isValid = conn != null && !conn.isClosed();
             if (isValid) {
                 System.out.println("✅ Database connection test successful");
@@ -97,4 +132,27 @@ public class DatabaseConfig {
         System.out.println("   User: " + DB_USER);
         System.out.println("   URL: " + DB_URL);
     }
+    
+    /**
+     * Print connection pool metrics
+     */
+    public static synchronized void printPoolStats() {
+        if (pool == null) {
+            System.out.println("📊 Connection pool not started");
+            return;
+        }
+        System.out.println("📊 Connection Pool:");
+        System.out.println("   Open: " + pool.getOpenCount() + " (active " + pool.getActiveCount()
+                + ", idle " + pool.getIdleCount() + ", max " + pool.getMaxSize() + ")");
+        System.out.println("   Borrows: " + pool.getBorrowCount() + ", timeouts: " + pool.getBorrowTimeouts());
+        System.out.println(String.format("   Borrow wait: avg %.2f ms, max %.2f ms",
+                pool.getAverageBorrowWaitMillis(), pool.getMaxBorrowWaitMillis()));
+        System.out.println("   Created: " + pool.getCreatedCount() + ", evicted idle: " + pool.getEvictedCount()
+                + ", failed validation: " + pool.getValidationFailures());
+        if (pool.getStatementCacheSize() > 0) {
+            System.out.println(String.format("   Statement cache: hits %d, misses %d (%.1f%% hit rate), evicted %d",
+                    pool.getStatementCacheHits(), pool.getStatementCacheMisses(),
+                    pool.getStatementCacheHitRate() * 100, pool.getStatementCacheEvictions()));
+        }
+    }
 }
\ No newline at end of file
@@ -57,7 +57,7 @@ public class DatabaseDoctorDAO {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return mapResultSetToDoctor(rs);
+                return mapResultSetToDoctor(rs, availableColumn(rs.getMetaData()));
             }
             
             return null;
@@ -72,11 +72,12 @@ public class DatabaseDoctorDAO {
         List<Doctor> doctors = new ArrayList<>();
         
         try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
             
+            int available = availableColumn(rs.getMetaData());
             while (rs.next()) {
-                doctors.add(mapResultSetToDoctor(rs));
+                doctors.add(mapResultSetToDoctor(rs, available));
             }
         }
         
@@ -113,9 +114,32 @@ public class DatabaseDoctorDAO {
     }
     
     /**
-     * Map ResultSet to Doctor object
+     * Put a doctor on or off duty. Needs an is_available column on the doctor table:
+     * ALTER TABLE doctor ADD COLUMN is_available BOOLEAN NOT NULL DEFAULT TRUE
      */
-    private Doctor mapResultSetToDoctor(ResultSet rs) throws SQLException {
+    public void updateAvailability(String doctorId, boolean available) throws SQLException {
+        int numericId = Integer.parseInt(doctorId.substring(3));
+        
+        String sql = "UPDATE doctor SET is_available = ? WHERE doctor_id = ?";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setBoolean(1, available);
+            stmt.setInt(2, numericId);
+            
+            int rowsAffected = stmt.executeUpdate();
+            if (rowsAffected == 0) {
+                throw new SQLException("Doctor not found: " + doctorId);
+            }
+        }
+    }
+    
+    /**
+     * Map ResultSet to Doctor object; available is the is_available column from
+     * availableColumn, looked up once per result set
+     */
+    private Doctor mapResultSetToDoctor(ResultSet rs, int available) throws SQLException {
         Doctor doctor = new Doctor();
         
         doctor.setDoctorId("DOC" + String.format("%03d", rs.getInt("doctor_id")));
@@ -124,8 +148,21 @@ public class DatabaseDoctorDAO {
         doctor.setSpecialization(rs.getString("specialization"));
         doctor.setPhoneNumber(rs.getString("phone"));
         doctor.setEmail(rs.getString("email"));
-        doctor.setAvailable(true); // Default to available
+        // Databases created before the is_available column treat every doctor as on duty
+        doctor.setAvailable(available == 0 || rs.getBoolean(available));
         
         return doctor;
     }
+    
+    /**
+     * Index of the is_available column, or 0 if the doctor table predates it
+     */
+    private static int availableColumn(ResultSetMetaData meta) throws SQLException {
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if ("is_available".equalsIgnoreCase(meta.getColumnLabel(i))) {
+                return i;
+            }
+        }
+        return 0;
+    }
 }
\ No newline at end of file
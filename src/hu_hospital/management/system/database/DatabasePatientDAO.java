@@ -1,6 +1,8 @@
 package hu_hospital.management.system.database;
 
 import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.PatientStatus;
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -12,8 +14,13 @@ import java.util.List;
  */
 public class DatabasePatientDAO {
     
+    // Columns PatientColumns reads; paged and streamed listings fetch nothing else
+    private static final String PATIENT_COLUMNS =
+            "patient_id, first_name, last_name, gender, age, phone, address, registration_date";
+    
     /**
-     * Insert a new patient into the database
+     * Insert a new patient into the database. The patient table has no queue column, so
+     * no queue number is taken from today's counter: one could never be read back.
      */
     public String insertPatient(Patient patient) throws SQLException {
         String sql = """
@@ -41,8 +48,7 @@ public class DatabasePatientDAO {
             if (rs.next()) {
                 int patientId = rs.getInt("patient_id");
                 patient.setPatientId("PAT" + String.format("%04d", patientId));
-                patient.setQueueNumber(getNextQueueNumber());
-                patient.setStatus("WAITING");
+                patient.setStatus(PatientStatus.WAITING);
                 
                 return patient.getPatientId();
             }
@@ -67,7 +73,7 @@ public class DatabasePatientDAO {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return mapResultSetToPatient(rs);
+                return new PatientColumns(rs).map(rs);
             }
             
             return null;
@@ -87,7 +93,7 @@ public class DatabasePatientDAO {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return mapResultSetToPatient(rs);
+                return new PatientColumns(rs).map(rs);
             }
             
             return null;
@@ -102,11 +108,45 @@ public class DatabasePatientDAO {
         List<Patient> patients = new ArrayList<>();
         
         try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
             
+            PatientColumns columns = new PatientColumns(rs);
             while (rs.next()) {
-                patients.add(mapResultSetToPatient(rs));
+                patients.add(columns.map(rs));
+            }
+        }
+        
+        return patients;
+    }
+    
+    /**
+     * One page of patients, newest registration first. Pass the registration date and
+     * ID of the last row of the previous page (both null for the first page); the next
+     * page starts right after that row, so deep pages cost the same as the first one.
+     */
+    public List<Patient> getPatientsPage(LocalDateTime afterRegistrationDate, String afterId, int limit) throws SQLException {
+        boolean firstPage = afterRegistrationDate == null || afterId == null;
+        String sql = "SELECT " + PATIENT_COLUMNS + " FROM patient "
+                + (firstPage ? "" : "WHERE (registration_date, patient_id) < (?, ?) ")
+                + "ORDER BY registration_date DESC, patient_id DESC LIMIT ?";
+        List<Patient> patients = new ArrayList<>(limit);
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            if (!firstPage) {
+                stmt.setDate(index++, Date.valueOf(afterRegistrationDate.toLocalDate()));
+                stmt.setInt(index++, Integer.parseInt(afterId.substring(3)));
+            }
+            stmt.setInt(index, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                PatientColumns columns = new PatientColumns(rs);
+                while (rs.next()) {
+                    patients.add(columns.map(rs));
+                }
             }
         }
         
@@ -114,7 +154,17 @@ public class DatabasePatientDAO {
     }
     
     /**
-     * Get waiting patients (simulate queue)
+     * Hand every patient to the handler, oldest registration first, through a server-side
+     * cursor so only fetchSize rows are in memory at a time. Returns the number handled.
+     */
+    public long streamPatients(int fetchSize, RowHandler<? super Patient> handler) throws SQLException, IOException {
+        String sql = "SELECT " + PATIENT_COLUMNS + " FROM patient ORDER BY registration_date, patient_id";
+        return CursorQuery.forEach(sql, fetchSize, PatientColumns::new, handler);
+    }
+    
+    /**
+     * Get waiting patients (simulate queue). Without a stored queue number, each patient's
+     * queue number is their position in today's registrations.
      */
     public List<Patient> getWaitingPatients() throws SQLException {
         String sql = """
@@ -125,14 +175,15 @@ public class DatabasePatientDAO {
         List<Patient> patients = new ArrayList<>();
         
         try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
             
+            PatientColumns columns = new PatientColumns(rs);
             int queueNum = 1;
             while (rs.next()) {
-                Patient patient = mapResultSetToPatient(rs);
+                Patient patient = columns.map(rs);
                 patient.setQueueNumber(queueNum++);
-                patient.setStatus("WAITING");
+                patient.setStatus(PatientStatus.WAITING);
                 patients.add(patient);
             }
         }
@@ -176,46 +227,59 @@ public class DatabasePatientDAO {
     }
     
     /**
-     * Get next queue number for today
+     * Get the last queue number issued today (0 if nobody has registered yet)
      */
-    private int getNextQueueNumber() throws SQLException {
-        String sql = "SELECT COUNT(*) + 1 as next_queue FROM patient WHERE registration_date = CURRENT_DATE";
+    public int getCurrentQueueNumber() throws SQLException {
+        String sql = "SELECT last_number FROM queue_counters WHERE queue_date = CURRENT_DATE";
         
         try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
             
-            if (rs.next()) {
-                return rs.getInt("next_queue");
-            }
-            return 1;
+            return rs.next() ? rs.getInt("last_number") : 0;
         }
     }
     
     /**
-     * Map ResultSet to Patient object
+     * Column positions of a patient result set, looked up once so every row is read by index
      */
-    private Patient mapResultSetToPatient(ResultSet rs) throws SQLException {
-        Patient patient = new Patient();
-        
-        patient.setPatientId("PAT" + String.format("%04d", rs.getInt("patient_id")));
-        patient.setFirstName(rs.getString("first_name"));
-        patient.setLastName(rs.getString("last_name"));
-        patient.setGender(rs.getString("gender"));
-        patient.setPhoneNumber(rs.getString("phone"));
-        patient.setAddress(rs.getString("address"));
+    private static final class PatientColumns implements CursorQuery.RowMapper<Patient> {
+        private final int patientId, firstName, lastName, gender, phone, address, age, registrationDate;
         
-        // Calculate date of birth from age (approximate)
-        int age = rs.getInt("age");
-        if (age > 0) {
-            patient.setDateOfBirth(LocalDate.now().minusYears(age));
+        PatientColumns(ResultSet rs) throws SQLException {
+            patientId = rs.findColumn("patient_id");
+            firstName = rs.findColumn("first_name");
+            lastName = rs.findColumn("last_name");
+            gender = rs.findColumn("gender");
+            phone = rs.findColumn("phone");
+            address = rs.findColumn("address");
+            age = rs.findColumn("age");
+            registrationDate = rs.findColumn("registration_date");
         }
         
-        Date regDate = rs.getDate("registration_date");
-        if (regDate != null) {
-            patient.setRegistrationDate(regDate.toLocalDate().atStartOfDay());
+        @Override
+        public Patient map(ResultSet rs) throws SQLException {
+            Patient patient = new Patient();
+            
+            patient.setPatientId("PAT" + String.format("%04d", rs.getInt(patientId)));
+            patient.setFirstName(rs.getString(firstName));
+            patient.setLastName(rs.getString(lastName));
+            patient.setGender(rs.getString(gender));
+            patient.setPhoneNumber(rs.getString(phone));
+            patient.setAddress(rs.getString(address));
+            
+            // Calculate date of birth from age (approximate)
+            int years = rs.getInt(age);
+            if (years > 0) {
+                patient.setDateOfBirth(LocalDate.now().minusYears(years));
+            }
+            
+            Date regDate = rs.getDate(registrationDate);
+            if (regDate != null) {
+                patient.setRegistrationDate(regDate.toLocalDate().atStartOfDay());
+            }
+            
+            return patient;
         }
-        
-        return patient;
     }
 }
\ No newline at end of file
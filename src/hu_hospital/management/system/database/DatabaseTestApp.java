@@ -1,6 +1,7 @@
 package hu_hospital.management.system.database;
 
 import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.PatientStatus;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
@@ -34,14 +35,14 @@ public class DatabaseTestApp {
         PatientDAO patientDAO = new PatientDAO();
         
         try {
-            // Test 1: Get all patients
+            // Test 1: Get the newest patients (first keyset page)
             System.out.println("2. Testing patient retrieval...");
-            List<Patient> allPatients = patientDAO.getAllPatients();
-            System.out.println("✅ Found " + allPatients.size() + " patients in database");
+            List<Patient> newestPatients = patientDAO.getPatientsPage(null, null, 3);
+            System.out.println("✅ Loaded " + newestPatients.size() + " most recent patients");
             
             // Display first few patients
-            for (int i = 0; i < Math.min(3, allPatients.size()); i++) {
-                Patient p = allPatients.get(i);
+            for (int i = 0; i < newestPatients.size(); i++) {
+                Patient p = newestPatients.get(i);
                 System.out.println("   - " + p.getPatientId() + ": " + p.getFullName() + 
                                  " (Status: " + p.getStatus() + ")");
             }
@@ -72,7 +73,7 @@ public class DatabaseTestApp {
             newPatient.setAddress("123 Test Street");
             newPatient.setEmergencyContact("Emergency Contact");
             newPatient.setMedicalHistory("No known allergies");
-            newPatient.setStatus("WAITING");
+            newPatient.setStatus(PatientStatus.WAITING);
             
             String patientId = patientDAO.insertPatient(newPatient);
             System.out.println("✅ New patient registered with ID: " + patientId);
@@ -95,7 +96,7 @@ public class DatabaseTestApp {
             
             // Test 5: Update patient status
             System.out.println("6. Testing status update...");
-            patientDAO.updatePatientStatus(patientId, "WITH_DOCTOR");
+            patientDAO.updatePatientStatus(patientId, PatientStatus.WITH_DOCTOR);
             Patient updatedPatient = patientDAO.findPatientById(patientId);
             System.out.println("✅ Patient status updated to: " + updatedPatient.getStatus());
             
@@ -118,7 +119,8 @@ public class DatabaseTestApp {
             System.err.println("❌ Database operation failed: " + e.getMessage());
             e.printStackTrace();
         } finally {
-            // Close connection
+            // Close connection pool
+            DatabaseConfig.printPoolStats();
             DatabaseConfig.closeConnection();
         }
     }
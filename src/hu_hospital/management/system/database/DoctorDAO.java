@@ -0,0 +1,142 @@
+package hu_hospital.management.system.database;
+
+import hu_hospital.management.system.models.Doctor;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for Doctor operations on the doctors table, which lab_tests and
+ * prescriptions reference
+ */
+public class DoctorDAO {
+    
+    /**
+     * Insert a new doctor into the database; the doctor gets a new ID
+     */
+    public String insertDoctor(Doctor doctor) throws SQLException {
+        String sql = """
+            INSERT INTO doctors (doctor_id, first_name, last_name, specialization, phone_number, email, is_available)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            String doctorId = IdAllocator.DOCTORS.nextId(conn);
+            stmt.setString(1, doctorId);
+            stmt.setString(2, doctor.getFirstName());
+            stmt.setString(3, doctor.getLastName());
+            stmt.setString(4, doctor.getSpecialization());
+            stmt.setString(5, doctor.getPhoneNumber());
+            stmt.setString(6, doctor.getEmail());
+            stmt.setBoolean(7, doctor.isAvailable());
+            stmt.executeUpdate();
+            
+            doctor.setDoctorId(doctorId);
+            return doctorId;
+        }
+    }
+    
+    /**
+     * Find doctor by ID
+     */
+    public Doctor findDoctorById(String doctorId) throws SQLException {
+        String sql = "SELECT * FROM doctors WHERE doctor_id = ?";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, doctorId);
+            ResultSet rs = stmt.executeQuery();
+            
+            if (rs.next()) {
+                return mapResultSetToDoctor(rs);
+            }
+            
+            return null;
+        }
+    }
+    
+    /**
+     * Get all doctors
+     */
+    public List<Doctor> getAllDoctors() throws SQLException {
+        String sql = "SELECT * FROM doctors ORDER BY last_name, first_name";
+        List<Doctor> doctors = new ArrayList<>();
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            while (rs.next()) {
+                doctors.add(mapResultSetToDoctor(rs));
+            }
+        }
+        
+        return doctors;
+    }
+    
+    /**
+     * Update doctor information
+     */
+    public void updateDoctor(Doctor doctor) throws SQLException {
+        String sql = """
+            UPDATE doctors SET 
+                first_name = ?, last_name = ?, specialization = ?, phone_number = ?, email = ?
+            WHERE doctor_id = ?
+            """;
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, doctor.getFirstName());
+            stmt.setString(2, doctor.getLastName());
+            stmt.setString(3, doctor.getSpecialization());
+            stmt.setString(4, doctor.getPhoneNumber());
+            stmt.setString(5, doctor.getEmail());
+            stmt.setString(6, doctor.getDoctorId());
+            
+            int rowsAffected = stmt.executeUpdate();
+            if (rowsAffected == 0) {
+                throw new SQLException("Doctor not found: " + doctor.getDoctorId());
+            }
+        }
+    }
+    
+    /**
+     * Put a doctor on or off duty
+     */
+    public void updateAvailability(String doctorId, boolean available) throws SQLException {
+        String sql = "UPDATE doctors SET is_available = ? WHERE doctor_id = ?";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setBoolean(1, available);
+            stmt.setString(2, doctorId);
+            
+            int rowsAffected = stmt.executeUpdate();
+            if (rowsAffected == 0) {
+                throw new SQLException("Doctor not found: " + doctorId);
+            }
+        }
+    }
+    
+    /**
+     * Map ResultSet to Doctor object
+     */
+    private Doctor mapResultSetToDoctor(ResultSet rs) throws SQLException {
+        Doctor doctor = new Doctor();
+        
+        doctor.setDoctorId(rs.getString("doctor_id"));
+        doctor.setFirstName(rs.getString("first_name"));
+        doctor.setLastName(rs.getString("last_name"));
+        doctor.setSpecialization(rs.getString("specialization"));
+        doctor.setPhoneNumber(rs.getString("phone_number"));
+        doctor.setEmail(rs.getString("email"));
+        doctor.setAvailable(rs.getBoolean("is_available"));
+        
+        return doctor;
+    }
+}
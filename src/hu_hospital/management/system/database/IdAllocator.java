@@ -0,0 +1,110 @@
+package hu_hospital.management.system.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out formatted IDs (PAT1001, TEST0001, ...) from PostgreSQL sequences.
+ *
+ * Each sequence in hospital_schema.sql is declared with INCREMENT BY {@link #BLOCK_SIZE},
+ * so one nextval() reserves a whole block of IDs that this class then hands out
+ * without going back to the database. IDs stay unique across stations because
+ * every station reserves its own blocks; they are not guaranteed to be contiguous.
+ */
+public class IdAllocator {
+
+    /** Must match INCREMENT BY on the sequences in hospital_schema.sql */
+    public static final int BLOCK_SIZE = 50;
+
+    public static final IdAllocator PATIENTS = new IdAllocator("patient_id_seq", "PAT", 4);
+    public static final IdAllocator DOCTORS = new IdAllocator("doctor_id_seq", "DOC", 3);
+    public static final IdAllocator LAB_TESTS = new IdAllocator("lab_test_id_seq", "TEST", 4);
+    public static final IdAllocator PRESCRIPTIONS = new IdAllocator("prescription_id_seq", "PRES", 4);
+    public static final IdAllocator LAB_BATCHES = new IdAllocator("lab_batch_id_seq", "BATCH", 4);
+
+    private final String sequenceName;
+    private final String prefix;
+    private final int digits;
+
+    // Current block is [next, limit)
+    private long next;
+    private long limit;
+
+    public IdAllocator(String sequenceName, String prefix, int digits) {
+        this.sequenceName = sequenceName;
+        this.prefix = prefix;
+        this.digits = digits;
+    }
+
+    /**
+     * Get the next ID, reserving a new block through the given connection if needed
+     */
+    public synchronized String nextId(Connection conn) throws SQLException {
+        if (next >= limit) {
+            long start = reserveBlocks(conn, 1).get(0);
+            next = start;
+            limit = start + BLOCK_SIZE;
+        }
+        return format(next++);
+    }
+
+    /**
+     * Get several IDs at once. Whatever is left of the current block is used first and
+     * the remainder is reserved with a single round trip.
+     */
+    public synchronized List<String> nextIds(Connection conn, int count) throws SQLException {
+        List<String> ids = new ArrayList<>(count);
+        while (ids.size() < count && next < limit) {
+            ids.add(format(next++));
+        }
+
+        int missing = count - ids.size();
+        if (missing > 0) {
+            int blocks = (missing + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            for (long start : reserveBlocks(conn, blocks)) {
+                long end = start + BLOCK_SIZE;
+                long value = start;
+                while (value < end && ids.size() < count) {
+                    ids.add(format(value++));
+                }
+                // Keep the tail of the last block for later calls
+                next = value;
+                limit = end;
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Format a raw sequence value, e.g. 1001 -> PAT1001
+     */
+    public String format(long value) {
+        return prefix + String.format("%0" + digits + "d", value);
+    }
+
+    private List<Long> reserveBlocks(Connection conn, int blocks) throws SQLException {
+        String sql = "SELECT nextval(?::regclass) FROM generate_series(1, ?)";
+        List<Long> starts = new ArrayList<>(blocks);
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, sequenceName);
+            stmt.setInt(2, blocks);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    starts.add(rs.getLong(1));
+                }
+            }
+        }
+
+        if (starts.size() != blocks) {
+            throw new SQLException("Could not reserve IDs from sequence " + sequenceName);
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,423 @@
+package hu_hospital.management.system.database;
+
+import hu_hospital.management.system.models.LabTest;
+import hu_hospital.management.system.models.LabTestStatus;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data Access Object for Lab Test operations
+ */
+public class LabTestDAO {
+
+    /**
+     * Insert a new lab test order
+     */
+    public String insertLabTest(LabTest labTest) throws SQLException {
+        String sql = """
+            INSERT INTO lab_tests (test_id, patient_id, test_type, description, order_date, status, ordered_by)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            String testId = IdAllocator.LAB_TESTS.nextId(conn);
+            stmt.setString(1, testId);
+            stmt.setString(2, labTest.getPatientId());
+            stmt.setString(3, labTest.getTestType());
+            stmt.setString(4, labTest.getDescription());
+            stmt.setTimestamp(5, Timestamp.valueOf(labTest.getOrderDate()));
+            stmt.setString(6, LabTestStatus.toColumn(labTest.getStatus()));
+            stmt.setString(7, labTest.getOrderedBy());
+
+            stmt.executeUpdate();
+            labTest.setTestId(testId);
+            return testId;
+        }
+    }
+
+    /**
+     * Find lab test by ID
+     */
+    public LabTest findLabTestById(String testId) throws SQLException {
+        String sql = "SELECT * FROM lab_tests WHERE test_id = ?";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, testId);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                return new LabTestColumns(rs).map(rs);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Get one page of pending lab tests (ORDERED or IN_PROGRESS), oldest order first
+     */
+    public List<LabTest> getPendingLabTests(int offset, int limit) throws SQLException {
+        String sql = """
+            SELECT test_id, patient_id, test_type, description, order_date, status, ordered_by,
+                   batch_id, started_date
+            FROM pending_lab_tests
+            ORDER BY order_date, test_id
+            LIMIT ? OFFSET ?
+            """;
+        List<LabTest> tests = new ArrayList<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, limit);
+            stmt.setInt(2, offset);
+            ResultSet rs = stmt.executeQuery();
+
+            LabTestColumns columns = new LabTestColumns(rs);
+            while (rs.next()) {
+                tests.add(columns.map(rs));
+            }
+        }
+
+        return tests;
+    }
+
+    /**
+     * The oldest ordered tests of one type that are in no batch yet, oldest order first:
+     * the head of that type's work list, read from idx_lab_tests_worklist
+     */
+    public List<LabTest> getOrderedLabTests(String testType, int limit) throws SQLException {
+        String sql = """
+            SELECT test_id, patient_id, test_type, description, order_date, status, ordered_by
+            FROM lab_tests
+            WHERE test_type = ? AND status = 'ORDERED' AND batch_id IS NULL
+            ORDER BY order_date, test_id
+            LIMIT ?
+            """;
+
+        List<LabTest> tests = new ArrayList<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, testType);
+            stmt.setInt(2, limit);
+            ResultSet rs = stmt.executeQuery();
+
+            LabTestColumns columns = new LabTestColumns(rs);
+            while (rs.next()) {
+                tests.add(columns.map(rs));
+            }
+        }
+
+        return tests;
+    }
+
+    /**
+     * The oldest ordered tests of every type that are in no batch yet, at most limit per
+     * type, grouped by type and oldest order first within each; one index range scan of
+     * idx_lab_tests_worklist per type
+     */
+    public List<LabTest> getOrderedLabTests(int limit) throws SQLException {
+        String sql = """
+            SELECT t.*
+            FROM (SELECT DISTINCT test_type FROM lab_tests WHERE status = 'ORDERED') types
+            CROSS JOIN LATERAL (
+                SELECT test_id, patient_id, test_type, description, order_date, status, ordered_by
+                FROM lab_tests l
+                WHERE l.test_type = types.test_type AND l.status = 'ORDERED' AND l.batch_id IS NULL
+                ORDER BY l.order_date, l.test_id
+                LIMIT ?
+            ) t
+            ORDER BY t.test_type, t.order_date, t.test_id
+            """;
+
+        List<LabTest> tests = new ArrayList<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, limit);
+            ResultSet rs = stmt.executeQuery();
+
+            LabTestColumns columns = new LabTestColumns(rs);
+            while (rs.next()) {
+                tests.add(columns.map(rs));
+            }
+        }
+
+        return tests;
+    }
+
+    /**
+     * Hand every lab test to the handler, oldest order first, through a server-side
+     * cursor so only fetchSize rows are in memory at a time. Returns the number handled.
+     */
+    public long streamLabTests(int fetchSize, RowHandler<? super LabTest> handler) throws SQLException, IOException {
+        String sql = """
+            SELECT test_id, patient_id, test_type, description, order_date, status, ordered_by,
+                   results, completion_date, batch_id, started_date
+            FROM lab_tests
+            ORDER BY order_date, test_id
+            """;
+        return CursorQuery.forEach(sql, fetchSize, LabTestColumns::new, handler);
+    }
+
+    /**
+     * Move an ordered test to IN_PROGRESS. Returns false if it was not in ORDERED state.
+     */
+    public boolean startLabTest(String testId) throws SQLException {
+        String sql = "UPDATE lab_tests SET status = 'IN_PROGRESS' WHERE test_id = ? AND status = ANY(?)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, testId);
+            stmt.setArray(2, conn.createArrayOf("varchar", LabTestStatus.columnsAdvancingTo(LabTestStatus.IN_PROGRESS)));
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Record results and mark the test completed. Returns false if it was already completed.
+     */
+    public boolean completeLabTest(String testId, String results) throws SQLException {
+        String sql = """
+            UPDATE lab_tests SET results = ?, status = 'COMPLETED', completion_date = CURRENT_TIMESTAMP,
+                   turnaround_seconds = EXTRACT(EPOCH FROM LOCALTIMESTAMP - order_date)
+            WHERE test_id = ? AND status = ANY(?)
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, results);
+            stmt.setString(2, testId);
+            stmt.setArray(3, conn.createArrayOf("varchar", LabTestStatus.columnsAdvancingTo(LabTestStatus.COMPLETED)));
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Start the given ordered tests as one analyzer batch in one transaction. Returns the
+     * batch ID, or null (and changes nothing) if any of them was no longer ORDERED.
+     */
+    public String startLabBatch(List<String> testIds) throws SQLException {
+        String sql = """
+            UPDATE lab_tests SET status = 'IN_PROGRESS', batch_id = ?, started_date = CURRENT_TIMESTAMP
+            WHERE test_id = ANY(?) AND status = ANY(?)
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                String batchId = IdAllocator.LAB_BATCHES.nextId(conn);
+                stmt.setString(1, batchId);
+                stmt.setArray(2, conn.createArrayOf("varchar", testIds.toArray()));
+                stmt.setArray(3, conn.createArrayOf("varchar", LabTestStatus.columnsAdvancingTo(LabTestStatus.IN_PROGRESS)));
+                if (stmt.executeUpdate() != testIds.size()) {
+                    conn.rollback();
+                    return null;
+                }
+                conn.commit();
+                return batchId;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Record the results of every test of a running batch in one transaction; results maps
+     * test IDs to their results and must cover the whole batch. Returns false (and
+     * changes nothing) if a test is missing or no longer IN_PROGRESS in this batch.
+     */
+    public boolean completeLabBatch(String batchId, Map<String, String> results) throws SQLException {
+        String sql = """
+            UPDATE lab_tests SET results = ?, status = 'COMPLETED', completion_date = CURRENT_TIMESTAMP,
+                   turnaround_seconds = EXTRACT(EPOCH FROM LOCALTIMESTAMP - order_date)
+            WHERE test_id = ? AND batch_id = ? AND status = ANY(?)
+            """;
+        String remainingSql = "SELECT COUNT(*) FROM lab_tests WHERE batch_id = ? AND status = ANY(?)";
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql);
+                 PreparedStatement remaining = conn.prepareStatement(remainingSql)) {
+
+                Array completable = conn.createArrayOf("varchar", LabTestStatus.columnsAdvancingTo(LabTestStatus.COMPLETED));
+                // All updates go to the server in a single round trip
+                for (Map.Entry<String, String> result : results.entrySet()) {
+                    stmt.setString(1, result.getValue());
+                    stmt.setString(2, result.getKey());
+                    stmt.setString(3, batchId);
+                    stmt.setArray(4, completable);
+                    stmt.addBatch();
+                }
+                int completed = 0;
+                for (int rows : stmt.executeBatch()) {
+                    completed += rows;
+                }
+
+                remaining.setString(1, batchId);
+                remaining.setArray(2, completable);
+                ResultSet rs = remaining.executeQuery();
+                rs.next();
+                if (completed != results.size() || rs.getInt(1) > 0) {
+                    conn.rollback();
+                    return false;
+                }
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Record the results of many tests, e.g. a run read from an analyzer, in one statement.
+     * Tests that do not exist or are already completed are skipped; returns the IDs of
+     * the tests that were completed.
+     */
+    public Set<String> completeLabTests(Map<String, String> results) throws SQLException {
+        String sql = """
+            UPDATE lab_tests l SET results = r.results, status = 'COMPLETED', completion_date = CURRENT_TIMESTAMP,
+                   turnaround_seconds = EXTRACT(EPOCH FROM LOCALTIMESTAMP - l.order_date)
+            FROM unnest(?::varchar[], ?::text[]) AS r(test_id, results)
+            WHERE l.test_id = r.test_id AND l.status = ANY(?)
+            RETURNING l.test_id
+            """;
+        Set<String> completed = new HashSet<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setArray(1, conn.createArrayOf("varchar", results.keySet().toArray()));
+            stmt.setArray(2, conn.createArrayOf("text", results.values().toArray()));
+            stmt.setArray(3, conn.createArrayOf("varchar", LabTestStatus.columnsAdvancingTo(LabTestStatus.COMPLETED)));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                completed.add(rs.getString(1));
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * The tests of an analyzer batch, oldest order first
+     */
+    public List<LabTest> getLabBatch(String batchId) throws SQLException {
+        String sql = """
+            SELECT test_id, patient_id, test_type, description, order_date, status, ordered_by,
+                   results, completion_date, batch_id, started_date
+            FROM lab_tests
+            WHERE batch_id = ?
+            ORDER BY order_date, test_id
+            """;
+        List<LabTest> tests = new ArrayList<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, batchId);
+            ResultSet rs = stmt.executeQuery();
+
+            LabTestColumns columns = new LabTestColumns(rs);
+            while (rs.next()) {
+                tests.add(columns.map(rs));
+            }
+        }
+
+        return tests;
+    }
+
+    /**
+     * Column positions of a lab test result set, looked up once per result set. Works for
+     * both lab_tests rows and the pending_lab_tests view, which has no results or
+     * completion date (their positions stay 0, as do those of any batch columns not selected).
+     */
+    private static final class LabTestColumns implements CursorQuery.RowMapper<LabTest> {
+        private final int testId, patientId, testType, description, status, orderedBy, orderDate;
+        private final int results, completionDate, batchId, startedDate;
+
+        LabTestColumns(ResultSet rs) throws SQLException {
+            testId = rs.findColumn("test_id");
+            patientId = rs.findColumn("patient_id");
+            testType = rs.findColumn("test_type");
+            description = rs.findColumn("description");
+            status = rs.findColumn("status");
+            orderedBy = rs.findColumn("ordered_by");
+            orderDate = rs.findColumn("order_date");
+            results = optionalColumn(rs, "results");
+            completionDate = optionalColumn(rs, "completion_date");
+            batchId = optionalColumn(rs, "batch_id");
+            startedDate = optionalColumn(rs, "started_date");
+        }
+
+        @Override
+        public LabTest map(ResultSet rs) throws SQLException {
+            LabTest labTest = new LabTest();
+
+            labTest.setTestId(rs.getString(testId));
+            labTest.setPatientId(rs.getString(patientId));
+            labTest.setTestType(rs.getString(testType));
+            labTest.setDescription(rs.getString(description));
+            labTest.setStatus(LabTestStatus.fromColumn(rs.getString(status)));
+            labTest.setOrderedBy(rs.getString(orderedBy));
+
+            Timestamp ordered = rs.getTimestamp(orderDate);
+            if (ordered != null) {
+                labTest.setOrderDate(ordered.toLocalDateTime());
+            }
+
+            if (results > 0) {
+                labTest.setResults(rs.getString(results));
+            }
+            if (completionDate > 0) {
+                Timestamp completed = rs.getTimestamp(completionDate);
+                if (completed != null) {
+                    labTest.setCompletionDate(completed.toLocalDateTime());
+                }
+            }
+            if (batchId > 0) {
+                labTest.setBatchId(rs.getString(batchId));
+            }
+            if (startedDate > 0) {
+                Timestamp started = rs.getTimestamp(startedDate);
+                if (started != null) {
+                    labTest.setStartDate(started.toLocalDateTime());
+                }
+            }
+
+            return labTest;
+        }
+
+        private static int optionalColumn(ResultSet rs, String column) throws SQLException {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                if (column.equalsIgnoreCase(meta.getColumnLabel(i))) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+    }
+}
\ No newline at end of file
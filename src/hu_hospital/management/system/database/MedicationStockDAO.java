@@ -0,0 +1,260 @@
+package hu_hospital.management.system.database;
+
+import hu_hospital.management.system.models.Medication;
+import hu_hospital.management.system.models.StockLevel;
+import hu_hospital.management.system.models.StockLot;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Data Access Object for the pharmacy's stock: the medication catalog and the lots
+ * held of each item
+ */
+public class MedicationStockDAO {
+
+    private static final int DEFAULT_REORDER_LEVEL = Integer.getInteger("hospital.pharmacy.reorderLevel", 100);
+
+    private record Lot(int stockId, LocalDate expiryDate, int quantity) {}
+
+    /**
+     * The unexpired lots of one item, first to expire first
+     */
+    private static final class ItemLots {
+        String medicationName;
+        String strength;
+        int reorderLevel;
+        long available;
+        final List<Lot> lots = new ArrayList<>();
+    }
+
+    /**
+     * Add a delivery to stock, adding the item to the catalog if it is new. Units of a
+     * lot already held are added to it.
+     */
+    public void receiveStock(StockLot delivery) throws SQLException {
+        if (delivery.getExpiryDate() == null || delivery.getQuantity() <= 0) {
+            throw new IllegalArgumentException("A delivery needs an expiry date and a positive quantity: " + delivery);
+        }
+        String lotSql = """
+            INSERT INTO medication_stock (item_key, lot_number, expiry_date, quantity)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (item_key, lot_number)
+            DO UPDATE SET quantity = medication_stock.quantity + EXCLUDED.quantity,
+                          expiry_date = EXCLUDED.expiry_date
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(lotSql)) {
+                String itemKey = addToCatalog(conn, delivery.getMedicationName(), delivery.getStrength());
+                stmt.setString(1, itemKey);
+                stmt.setString(2, delivery.getLotNumber());
+                stmt.setDate(3, Date.valueOf(delivery.getExpiryDate()));
+                stmt.setInt(4, delivery.getQuantity());
+                stmt.executeUpdate();
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Set the level below which an item counts as low, adding it to the catalog if it is new
+     */
+    public void setReorderLevel(String medicationName, String strength, int reorderLevel) throws SQLException {
+        String sql = """
+            INSERT INTO medication_catalog (item_key, medication_name, strength, reorder_level)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (item_key) DO UPDATE SET reorder_level = EXCLUDED.reorder_level
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, Medication.stockKey(medicationName, strength));
+            stmt.setString(2, medicationName.trim());
+            stmt.setString(3, strength == null ? "" : strength.trim());
+            stmt.setInt(4, reorderLevel);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Stock of the given catalog items by item key; items the pharmacy does not carry are missing
+     */
+    public Map<String, StockLevel> getStockLevels(Collection<String> itemKeys) throws SQLException {
+        Map<String, StockLevel> levels = new HashMap<>();
+        if (itemKeys.isEmpty()) {
+            return levels;
+        }
+
+        String sql = """
+            SELECT item_key, medication_name, strength, available, reorder_level, next_expiry
+            FROM stock_levels
+            WHERE item_key = ANY(?)
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setArray(1, conn.createArrayOf("varchar", itemKeys.toArray()));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                levels.put(rs.getString("item_key"), mapLevel(rs));
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Every catalog item, by name and strength
+     */
+    public List<StockLevel> getStockLevels() throws SQLException {
+        return queryLevels("SELECT * FROM stock_levels");
+    }
+
+    /**
+     * Items below their reorder level, emptiest first
+     */
+    public List<StockLevel> getLowStock() throws SQLException {
+        return queryLevels("SELECT * FROM stock_levels WHERE is_low ORDER BY available");
+    }
+
+    /**
+     * Take the units the medications need out of stock on the caller's transaction,
+     * first-expiring unexpired lots first. The lots are locked in item and expiry order,
+     * so concurrent dispenses queue on shared items instead of deadlocking.
+     * Returns null, having changed nothing, if any item is short or not carried;
+     * otherwise the items that have just fallen below their reorder level.
+     */
+    List<StockLevel> drawStock(Connection conn, List<Medication> medications) throws SQLException {
+        Map<String, Integer> needs = new TreeMap<>();
+        for (Medication medication : medications) {
+            needs.merge(medication.getStockKey(), medication.getUnitsNeeded(), Integer::sum);
+        }
+        if (needs.isEmpty()) {
+            return List.of();
+        }
+
+        String lotsSql = """
+            SELECT s.stock_id, s.item_key, s.expiry_date, s.quantity,
+                   c.medication_name, c.strength, c.reorder_level
+            FROM medication_stock s
+            JOIN medication_catalog c ON c.item_key = s.item_key
+            WHERE s.item_key = ANY(?) AND s.quantity > 0 AND s.expiry_date >= CURRENT_DATE
+            ORDER BY s.item_key, s.expiry_date, s.lot_number
+            FOR UPDATE OF s
+            """;
+        String updateSql = "UPDATE medication_stock SET quantity = ? WHERE stock_id = ?";
+
+        Map<String, ItemLots> items = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(lotsSql)) {
+            stmt.setArray(1, conn.createArrayOf("varchar", needs.keySet().toArray()));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                ItemLots item = items.computeIfAbsent(rs.getString("item_key"), k -> new ItemLots());
+                if (item.lots.isEmpty()) {
+                    item.medicationName = rs.getString("medication_name");
+                    item.strength = rs.getString("strength");
+                    item.reorderLevel = rs.getInt("reorder_level");
+                }
+                Lot lot = new Lot(rs.getInt("stock_id"), rs.getDate("expiry_date").toLocalDate(), rs.getInt("quantity"));
+                item.lots.add(lot);
+                item.available += lot.quantity();
+            }
+        }
+
+        for (Map.Entry<String, Integer> need : needs.entrySet()) {
+            ItemLots item = items.get(need.getKey());
+            if (item == null || item.available < need.getValue()) {
+                return null;
+            }
+        }
+
+        List<StockLevel> nowLow = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(updateSql)) {
+            for (Map.Entry<String, Integer> need : needs.entrySet()) {
+                ItemLots item = items.get(need.getKey());
+                int needed = need.getValue();
+                LocalDate nextExpiry = null;
+                for (Lot lot : item.lots) {
+                    int take = Math.min(needed, lot.quantity());
+                    if (take > 0) {
+                        stmt.setInt(1, lot.quantity() - take);
+                        stmt.setInt(2, lot.stockId());
+                        stmt.addBatch();
+                        needed -= take;
+                    }
+                    if (nextExpiry == null && lot.quantity() > take) {
+                        nextExpiry = lot.expiryDate();
+                    }
+                }
+
+                long left = item.available - need.getValue();
+                if (item.available >= item.reorderLevel && left < item.reorderLevel) {
+                    nowLow.add(new StockLevel(item.medicationName, item.strength, left, item.reorderLevel, nextExpiry));
+                }
+            }
+            stmt.executeBatch();
+        }
+        return nowLow;
+    }
+
+    /**
+     * Make sure the item is in the catalog; returns its key
+     */
+    private String addToCatalog(Connection conn, String medicationName, String strength) throws SQLException {
+        if (medicationName == null || medicationName.isBlank()) {
+            throw new IllegalArgumentException("A stock item needs a medication name");
+        }
+        String sql = """
+            INSERT INTO medication_catalog (item_key, medication_name, strength, reorder_level)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (item_key) DO NOTHING
+            """;
+        String itemKey = Medication.stockKey(medicationName, strength);
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, itemKey);
+            stmt.setString(2, medicationName.trim());
+            stmt.setString(3, strength == null ? "" : strength.trim());
+            stmt.setInt(4, DEFAULT_REORDER_LEVEL);
+            stmt.executeUpdate();
+        }
+        return itemKey;
+    }
+
+    private List<StockLevel> queryLevels(String sql) throws SQLException {
+        List<StockLevel> levels = new ArrayList<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                levels.add(mapLevel(rs));
+            }
+        }
+        return levels;
+    }
+
+    private static StockLevel mapLevel(ResultSet rs) throws SQLException {
+        Date nextExpiry = rs.getDate("next_expiry");
+        return new StockLevel(
+                rs.getString("medication_name"),
+                rs.getString("strength"),
+                rs.getLong("available"),
+                rs.getInt("reorder_level"),
+                nextExpiry != null ? nextExpiry.toLocalDate() : null);
+    }
+}
@@ -1,10 +1,14 @@
 package hu_hospital.management.system.database;
 
 import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.PatientStatus;
+import hu_hospital.management.system.models.TriageLevel;
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -12,6 +16,11 @@ import java.util.List;
  */
 public class PatientDAO {
     
+    // Columns PatientColumns reads (no created_at / updated_at)
+    private static final String PATIENT_COLUMNS = """
+            patient_id, first_name, last_name, date_of_birth, gender, phone_number, email,
+            address, emergency_contact, medical_history, queue_number, status, triage_level, registration_date""";
+    
     /**
      * Insert a new patient into the database
      */
@@ -19,24 +28,27 @@ public class PatientDAO {
         String sql = """
             INSERT INTO patients (patient_id, first_name, last_name, date_of_birth, gender, 
                                 phone_number, email, address, emergency_contact, medical_history, 
-                                queue_number, status)
-            VALUES (generate_patient_id(), ?, ?, ?, ?, ?, ?, ?, ?, ?, get_next_queue_number(), ?)
+                                queue_number, status, triage_level)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, get_next_queue_number(), ?, ?)
             RETURNING patient_id, queue_number
             """;
         
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setString(1, patient.getFirstName());
-            stmt.setString(2, patient.getLastName());
-            stmt.setDate(3, Date.valueOf(patient.getDateOfBirth()));
-            stmt.setString(4, patient.getGender());
-            stmt.setString(5, patient.getPhoneNumber());
-            stmt.setString(6, patient.getEmail());
-            stmt.setString(7, patient.getAddress());
-            stmt.setString(8, patient.getEmergencyContact());
-            stmt.setString(9, patient.getMedicalHistory());
-            stmt.setString(10, patient.getStatus());
+            // IDs come from pre-fetched sequence blocks, so this is usually not a round trip
+            stmt.setString(1, IdAllocator.PATIENTS.nextId(conn));
+            stmt.setString(2, patient.getFirstName());
+            stmt.setString(3, patient.getLastName());
+            stmt.setDate(4, Date.valueOf(patient.getDateOfBirth()));
+            stmt.setString(5, patient.getGender());
+            stmt.setString(6, patient.getPhoneNumber());
+            stmt.setString(7, patient.getEmail());
+            stmt.setString(8, patient.getAddress());
+            stmt.setString(9, patient.getEmergencyContact());
+            stmt.setString(10, patient.getMedicalHistory());
+            stmt.setString(11, PatientStatus.toColumn(patient.getStatus()));
+            stmt.setInt(12, TriageLevel.toColumn(patient.getTriageLevel()));
             
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
@@ -66,7 +78,7 @@ public class PatientDAO {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return mapResultSetToPatient(rs);
+                return new PatientColumns(rs).map(rs);
             }
             
             return null;
@@ -86,13 +98,58 @@ public class PatientDAO {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return mapResultSetToPatient(rs);
+                return new PatientColumns(rs).map(rs);
             }
             
             return null;
         }
     }
     
+    /**
+     * Patients for a search-as-you-type query, best matches first: phone number and
+     * patient ID prefixes, then names by pg_trgm word similarity, which tolerates typos
+     * and half-typed words. The trigram and prefix indexes in hospital_schema.sql keep
+     * every branch of the OR on an index.
+     */
+    public List<Patient> searchPatients(String query, int limit) throws SQLException {
+        String sql = "SELECT " + PATIENT_COLUMNS + " FROM patients "
+                + "WHERE phone_number LIKE ? OR patient_id LIKE ? "
+                + "OR ? <% lower(first_name || ' ' || last_name) "
+                + "ORDER BY (phone_number LIKE ? OR patient_id LIKE ?) DESC, "
+                + "? <<-> lower(first_name || ' ' || last_name), registration_date DESC LIMIT ?";
+        String trimmed = query.trim();
+        String phonePrefix = likePrefix(trimmed);
+        String idPrefix = likePrefix(trimmed.toUpperCase());
+        String name = trimmed.toLowerCase();
+        List<Patient> patients = new ArrayList<>(limit);
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, phonePrefix);
+            stmt.setString(2, idPrefix);
+            stmt.setString(3, name);
+            stmt.setString(4, phonePrefix);
+            stmt.setString(5, idPrefix);
+            stmt.setString(6, name);
+            stmt.setInt(7, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                PatientColumns columns = new PatientColumns(rs);
+                while (rs.next()) {
+                    patients.add(columns.map(rs));
+                }
+            }
+        }
+        
+        return patients;
+    }
+    
+    // LIKE pattern matching values that start with prefix, taken literally
+    private static String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+    
     /**
      * Get all patients
      */
@@ -101,11 +158,45 @@ public class PatientDAO {
         List<Patient> patients = new ArrayList<>();
         
         try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
             
+            PatientColumns columns = new PatientColumns(rs);
             while (rs.next()) {
-                patients.add(mapResultSetToPatient(rs));
+                patients.add(columns.map(rs));
+            }
+        }
+        
+        return patients;
+    }
+    
+    /**
+     * One page of patients, newest registration first. Pass the registration time and
+     * ID of the last row of the previous page (both null for the first page); the
+     * (registration_date, patient_id) index makes every page a short range scan.
+     */
+    public List<Patient> getPatientsPage(LocalDateTime afterRegistrationDate, String afterId, int limit) throws SQLException {
+        boolean firstPage = afterRegistrationDate == null || afterId == null;
+        String sql = "SELECT " + PATIENT_COLUMNS + " FROM patients "
+                + (firstPage ? "" : "WHERE (registration_date, patient_id) < (?, ?) ")
+                + "ORDER BY registration_date DESC, patient_id DESC LIMIT ?";
+        List<Patient> patients = new ArrayList<>(limit);
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            if (!firstPage) {
+                stmt.setTimestamp(index++, Timestamp.valueOf(afterRegistrationDate));
+                stmt.setString(index++, afterId);
+            }
+            stmt.setInt(index, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                PatientColumns columns = new PatientColumns(rs);
+                while (rs.next()) {
+                    patients.add(columns.map(rs));
+                }
             }
         }
         
@@ -113,22 +204,32 @@ public class PatientDAO {
     }
     
     /**
-     * Get waiting patients (in queue)
+     * Hand every patient to the handler, oldest registration first, through a server-side
+     * cursor: only fetchSize rows are in memory at a time, however large the table is.
+     * Returns the number of patients handled.
+     */
+    public long streamPatients(int fetchSize, RowHandler<? super Patient> handler) throws SQLException, IOException {
+        String sql = "SELECT " + PATIENT_COLUMNS + " FROM patients ORDER BY registration_date, patient_id";
+        return CursorQuery.forEach(sql, fetchSize, PatientColumns::new, handler);
+    }
+    
+    /**
+     * Get waiting patients (in queue), most urgent triage level first; served from
+     * idx_patients_waiting without a sort
      */
     public List<Patient> getWaitingPatients() throws SQLException {
-        String sql = """
-            SELECT * FROM patients 
-            WHERE status IN ('WAITING', 'REGISTERED') 
-            ORDER BY queue_number
-            """;
+        String sql = "SELECT " + PATIENT_COLUMNS + " FROM patients "
+                + "WHERE status IN ('WAITING', 'REGISTERED') "
+                + "ORDER BY triage_level, queue_number";
         List<Patient> patients = new ArrayList<>();
         
         try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
             
+            PatientColumns columns = new PatientColumns(rs);
             while (rs.next()) {
-                patients.add(mapResultSetToPatient(rs));
+                patients.add(columns.map(rs));
             }
         }
         
@@ -136,15 +237,63 @@ public class PatientDAO {
     }
     
     /**
-     * Update patient status
+     * Move a patient to status if PatientStatus allows it from the status they are in now.
+     * Returns false if the patient does not exist, is already there or may not move there;
+     * the check and the update are one statement, so concurrent moves cannot skip a step.
      */
-    public void updatePatientStatus(String patientId, String status) throws SQLException {
-        String sql = "UPDATE patients SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE patient_id = ?";
+    public boolean updatePatientStatus(String patientId, PatientStatus status) throws SQLException {
+        String sql = "UPDATE patients SET status = ?, updated_at = CURRENT_TIMESTAMP "
+                + "WHERE patient_id = ? AND (status IS NULL OR status = ANY(?))";
         
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setString(1, status);
+            stmt.setString(1, PatientStatus.toColumn(status));
+            stmt.setString(2, patientId);
+            stmt.setArray(3, conn.createArrayOf("varchar", PatientStatus.columnsAdvancingTo(status)));
+            return stmt.executeUpdate() > 0;
+        }
+    }
+    
+    /**
+     * Move the patients the given lab tests were ordered for to status, where
+     * PatientStatus allows it; returns the IDs of the patients that moved
+     */
+    public List<String> updatePatientStatusForLabTests(Collection<String> testIds, PatientStatus status) throws SQLException {
+        String sql = """
+            UPDATE patients SET status = ?, updated_at = CURRENT_TIMESTAMP
+            WHERE patient_id IN (SELECT patient_id FROM lab_tests WHERE test_id = ANY(?))
+              AND (status IS NULL OR status = ANY(?))
+            RETURNING patient_id
+            """;
+        List<String> moved = new ArrayList<>();
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, PatientStatus.toColumn(status));
+            stmt.setArray(2, conn.createArrayOf("varchar", testIds.toArray()));
+            stmt.setArray(3, conn.createArrayOf("varchar", PatientStatus.columnsAdvancingTo(status)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    moved.add(rs.getString(1));
+                }
+            }
+        }
+        
+        return moved;
+    }
+    
+    /**
+     * Update a patient's triage level
+     */
+    public void updateTriageLevel(String patientId, TriageLevel level) throws SQLException {
+        String sql = "UPDATE patients SET triage_level = ?, updated_at = CURRENT_TIMESTAMP WHERE patient_id = ?";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, TriageLevel.toColumn(level));
             stmt.setString(2, patientId);
             
             int rowsAffected = stmt.executeUpdate();
@@ -162,7 +311,7 @@ public class PatientDAO {
             UPDATE patients SET 
                 first_name = ?, last_name = ?, date_of_birth = ?, gender = ?,
                 phone_number = ?, email = ?, address = ?, emergency_contact = ?,
-                medical_history = ?, status = ?, updated_at = CURRENT_TIMESTAMP
+                medical_history = ?, status = ?, triage_level = ?, updated_at = CURRENT_TIMESTAMP
             WHERE patient_id = ?
             """;
         
@@ -178,8 +327,9 @@ public class PatientDAO {
             stmt.setString(7, patient.getAddress());
             stmt.setString(8, patient.getEmergencyContact());
             stmt.setString(9, patient.getMedicalHistory());
-            stmt.setString(10, patient.getStatus());
-            stmt.setString(11, patient.getPatientId());
+            stmt.setString(10, PatientStatus.toColumn(patient.getStatus()));
+            stmt.setInt(11, TriageLevel.toColumn(patient.getTriageLevel()));
+            stmt.setString(12, patient.getPatientId());
             
             int rowsAffected = stmt.executeUpdate();
             if (rowsAffected == 0) {
@@ -207,29 +357,68 @@ public class PatientDAO {
     }
     
     /**
-     * Map ResultSet to Patient object
+     * Get the last queue number issued today (0 if nobody has registered yet)
+     */
+    public int getCurrentQueueNumber() throws SQLException {
+        String sql = "SELECT last_number FROM queue_counters WHERE queue_date = CURRENT_DATE";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            return rs.next() ? rs.getInt("last_number") : 0;
+        }
+    }
+    
+    /**
+     * Column positions of a patients result set, looked up once so every row is read by
+     * index. Package-private because DashboardDAO maps its queue rows with it.
      */
-    private Patient mapResultSetToPatient(ResultSet rs) throws SQLException {
-        Patient patient = new Patient();
-        
-        patient.setPatientId(rs.getString("patient_id"));
-        patient.setFirstName(rs.getString("first_name"));
-        patient.setLastName(rs.getString("last_name"));
-        patient.setDateOfBirth(rs.getDate("date_of_birth").toLocalDate());
-        patient.setGender(rs.getString("gender"));
-        patient.setPhoneNumber(rs.getString("phone_number"));
-        patient.setEmail(rs.getString("email"));
-        patient.setAddress(rs.getString("address"));
-        patient.setEmergencyContact(rs.getString("emergency_contact"));
-        patient.setMedicalHistory(rs.getString("medical_history"));
-        patient.setQueueNumber(rs.getInt("queue_number"));
-        patient.setStatus(rs.getString("status"));
-        
-        Timestamp regDate = rs.getTimestamp("registration_date");
-        if (regDate != null) {
-            patient.setRegistrationDate(regDate.toLocalDateTime());
+    static final class PatientColumns implements CursorQuery.RowMapper<Patient> {
+        private final int patientId, firstName, lastName, dateOfBirth, gender, phoneNumber, email,
+                address, emergencyContact, medicalHistory, queueNumber, status, triageLevel, registrationDate;
+        
+        PatientColumns(ResultSet rs) throws SQLException {
+            patientId = rs.findColumn("patient_id");
+            firstName = rs.findColumn("first_name");
+            lastName = rs.findColumn("last_name");
+            dateOfBirth = rs.findColumn("date_of_birth");
+            gender = rs.findColumn("gender");
+            phoneNumber = rs.findColumn("phone_number");
+            email = rs.findColumn("email");
+            address = rs.findColumn("address");
+            emergencyContact = rs.findColumn("emergency_contact");
+            medicalHistory = rs.findColumn("medical_history");
+            queueNumber = rs.findColumn("queue_number");
+            status = rs.findColumn("status");
+            triageLevel = rs.findColumn("triage_level");
+            registrationDate = rs.findColumn("registration_date");
         }
         
-        return patient;
+        @Override
+        public Patient map(ResultSet rs) throws SQLException {
+            Patient patient = new Patient();
+            
+            patient.setPatientId(rs.getString(patientId));
+            patient.setFirstName(rs.getString(firstName));
+            patient.setLastName(rs.getString(lastName));
+            patient.setDateOfBirth(rs.getDate(dateOfBirth).toLocalDate());
+            patient.setGender(rs.getString(gender));
+            patient.setPhoneNumber(rs.getString(phoneNumber));
+            patient.setEmail(rs.getString(email));
+            patient.setAddress(rs.getString(address));
+            patient.setEmergencyContact(rs.getString(emergencyContact));
+            patient.setMedicalHistory(rs.getString(medicalHistory));
+            patient.setQueueNumber(rs.getInt(queueNumber));
+            patient.setStatus(PatientStatus.fromColumn(rs.getString(status)));
+            patient.setTriageLevel(TriageLevel.fromColumn(rs.getInt(triageLevel)));
+            
+            Timestamp regDate = rs.getTimestamp(registrationDate);
+            if (regDate != null) {
+                patient.setRegistrationDate(regDate.toLocalDateTime());
+            }
+            
+            return patient;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,367 @@
+package hu_hospital.management.system.database;
+
+import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.PatientStatus;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bulk import of patient records from CSV, e.g. when migrating the paper-era registry.
+ *
+ * The file is read in batches. While one batch is being inserted, the next one is
+ * already being validated in parallel against the same rules as the patients table
+ * (NOT NULL columns, lengths, the gender and status CHECK constraints). Valid rows go
+ * in with a single JDBC batch per transaction, their IDs taken from IdAllocator in
+ * blocks; imported patients get no queue number. Rows that fail validation, repeat a
+ * phone number or collide with one already in the database are reported with their
+ * line number instead of failing the import.
+ *
+ * Usage: java hu_hospital.management.system.database.PatientImporter file.csv [batch-size]
+ *
+ * The header row names the columns: first_name, last_name, date_of_birth, gender and
+ * phone_number are required; email, address, emergency_contact, medical_history,
+ * status and registration_date are optional.
+ */
+public class PatientImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** Must match the CHECK constraint on patients.gender in hospital_schema.sql */
+    private static final Set<String> GENDERS = Set.of("Male", "Female", "Other");
+
+    // Historical records must not land in today's waiting queue
+    private static final PatientStatus DEFAULT_STATUS = PatientStatus.COMPLETED;
+
+    private static final List<String> REQUIRED_COLUMNS =
+            List.of("first_name", "last_name", "date_of_birth", "gender", "phone_number");
+
+    private static final String INSERT_SQL = """
+        INSERT INTO patients (patient_id, first_name, last_name, date_of_birth, gender, phone_number,
+                              email, address, emergency_contact, medical_history, status, registration_date)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, COALESCE(?, CURRENT_TIMESTAMP))
+        ON CONFLICT (phone_number) DO NOTHING
+        """;
+
+    /**
+     * A row that was not imported, by its line number in the file
+     */
+    public record Rejection(long line, String reason) {
+    }
+
+    /**
+     * Totals and rejected rows of one import
+     */
+    public static class ImportReport {
+        private final List<Rejection> rejections = new ArrayList<>();
+        private long rowsRead;
+        private long rowsInserted;
+        private int batches;
+        private long elapsedNanos;
+
+        public long getRowsRead() { return rowsRead; }
+
+        public long getRowsInserted() { return rowsInserted; }
+
+        public int getBatches() { return batches; }
+
+        public List<Rejection> getRejections() { return Collections.unmodifiableList(rejections); }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+
+    // One CSV record on its way through the pipeline: raw fields, then a patient or the reason it was rejected
+    private record Row(long line, List<String> fields, Patient patient, String error) {
+    }
+
+    private final int batchSize;
+
+    public PatientImporter(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import every record in file. Returns the report once the last batch is committed.
+     */
+    public ImportReport importCsv(Path file) throws IOException, SQLException {
+        ImportReport report = new ImportReport();
+        Set<String> phonesInFile = new HashSet<>();
+        long start = System.nanoTime();
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             Connection conn = DatabaseConfig.getConnection()) {
+
+            CsvReader csv = new CsvReader(in);
+            Map<String, Integer> columns = readHeader(csv);
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                CompletableFuture<List<Row>> next = validateAsync(readBatch(csv), columns);
+                while (true) {
+                    List<Row> batch = next.join();
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    // Validate the next batch while this one is inserted
+                    next = validateAsync(readBatch(csv), columns);
+                    insertBatch(conn, stmt, batch, phonesInFile, report);
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        // Database rejections are found after validation ones; list them all in file order
+        report.rejections.sort(Comparator.comparingLong(Rejection::line));
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private Map<String, Integer> readHeader(CsvReader csv) throws IOException {
+        List<String> header = csv.next();
+        if (header == null) {
+            throw new IOException("File is empty");
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(required)) {
+                throw new IOException("Missing required column: " + required);
+            }
+        }
+        return columns;
+    }
+
+    private List<Row> readBatch(CsvReader csv) throws IOException {
+        List<Row> batch = new ArrayList<>(batchSize);
+        List<String> fields;
+        while (batch.size() < batchSize && (fields = csv.next()) != null) {
+            batch.add(new Row(csv.getRecordLine(), fields, null, null));
+        }
+        return batch;
+    }
+
+    private static CompletableFuture<List<Row>> validateAsync(List<Row> batch, Map<String, Integer> columns) {
+        return CompletableFuture.supplyAsync(() -> batch.parallelStream()
+                .map(row -> validate(row, columns))
+                .toList());
+    }
+
+    /**
+     * Turn raw fields into a Patient, or into the reason the database would refuse them
+     */
+    private static Row validate(Row raw, Map<String, Integer> columns) {
+        List<String> fields = raw.fields();
+        try {
+            Patient patient = new Patient();
+            patient.setFirstName(required(fields, columns, "first_name", 50));
+            patient.setLastName(required(fields, columns, "last_name", 50));
+            patient.setPhoneNumber(required(fields, columns, "phone_number", 20));
+            patient.setEmail(optional(fields, columns, "email", 100));
+            patient.setAddress(optional(fields, columns, "address", Integer.MAX_VALUE));
+            patient.setEmergencyContact(optional(fields, columns, "emergency_contact", 100));
+            patient.setMedicalHistory(optional(fields, columns, "medical_history", Integer.MAX_VALUE));
+
+            String gender = required(fields, columns, "gender", 10);
+            if (!GENDERS.contains(gender)) {
+                return reject(raw, "gender must be Male, Female or Other: " + gender);
+            }
+            patient.setGender(gender);
+
+            String status = optional(fields, columns, "status", 20);
+            try {
+                patient.setStatus(status == null ? DEFAULT_STATUS : PatientStatus.valueOf(status.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return reject(raw, "unknown status: " + status);
+            }
+
+            LocalDate dateOfBirth = LocalDate.parse(required(fields, columns, "date_of_birth", 10));
+            if (dateOfBirth.isAfter(LocalDate.now())) {
+                return reject(raw, "date_of_birth is in the future: " + dateOfBirth);
+            }
+            patient.setDateOfBirth(dateOfBirth);
+
+            String registered = optional(fields, columns, "registration_date", 30);
+            patient.setRegistrationDate(registered == null ? null
+                    : registered.length() == 10 ? LocalDate.parse(registered).atStartOfDay()
+                    : LocalDateTime.parse(registered));
+
+            return new Row(raw.line(), null, patient, null);
+        } catch (IllegalArgumentException e) {
+            return reject(raw, e.getMessage());
+        } catch (DateTimeParseException e) {
+            return reject(raw, "invalid date: " + e.getParsedString());
+        }
+    }
+
+    private static String required(List<String> fields, Map<String, Integer> columns, String column, int maxLength) {
+        String value = optional(fields, columns, column, maxLength);
+        if (value == null) {
+            throw new IllegalArgumentException(column + " is required");
+        }
+        return value;
+    }
+
+    private static String optional(List<String> fields, Map<String, Integer> columns, String column, int maxLength) {
+        Integer index = columns.get(column);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        if (value.isEmpty()) {
+            return null;
+        }
+        if (value.length() > maxLength) {
+            throw new IllegalArgumentException(column + " is longer than " + maxLength + " characters");
+        }
+        return value;
+    }
+
+    private static Row reject(Row raw, String reason) {
+        return new Row(raw.line(), null, null, reason);
+    }
+
+    /**
+     * Insert the valid rows of one batch in a single transaction and report how it went
+     */
+    private void insertBatch(Connection conn, PreparedStatement stmt, List<Row> batch,
+                             Set<String> phonesInFile, ImportReport report) throws SQLException {
+        long start = System.nanoTime();
+        int rejectedBefore = report.rejections.size();
+        List<Row> accepted = new ArrayList<>(batch.size());
+
+        // Duplicates inside the file are caught here, in file order, not during parallel validation
+        for (Row row : batch) {
+            if (row.patient() == null) {
+                report.rejections.add(new Rejection(row.line(), row.error()));
+            } else if (!phonesInFile.add(row.patient().getPhoneNumber())) {
+                report.rejections.add(new Rejection(row.line(),
+                        "phone number appears earlier in the file: " + row.patient().getPhoneNumber()));
+            } else {
+                accepted.add(row);
+            }
+        }
+
+        int inserted = 0;
+        if (!accepted.isEmpty()) {
+            try {
+                // One NOTIFY for the whole batch instead of one per row from the trigger
+                try (Statement quiet = conn.createStatement()) {
+                    quiet.execute("SELECT set_config('hospital.suppress_notify', 'on', true)");
+                }
+
+                List<String> ids = IdAllocator.PATIENTS.nextIds(conn, accepted.size());
+                for (int i = 0; i < accepted.size(); i++) {
+                    bind(stmt, ids.get(i), accepted.get(i).patient());
+                    stmt.addBatch();
+                }
+                int[] counts = stmt.executeBatch();
+
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        report.rejections.add(new Rejection(accepted.get(i).line(),
+                                "phone number already registered: " + accepted.get(i).patient().getPhoneNumber()));
+                    } else {
+                        inserted++;
+                    }
+                }
+
+                try (PreparedStatement notify = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+                    notify.setString(1, PgNotificationListener.CHANNEL);
+                    notify.setString(2, "patients|IMPORT|" + inserted + "||");
+                    notify.execute();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                stmt.clearBatch();
+                SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+                inserted = 0;
+                for (Row row : accepted) {
+                    report.rejections.add(new Rejection(row.line(), "batch failed: " + cause.getMessage()));
+                }
+            }
+        }
+
+        report.rowsRead += batch.size();
+        report.rowsInserted += inserted;
+        report.batches++;
+
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println(String.format("📦 Batch %d: %d rows, %d inserted, %d rejected in %d ms (%.0f rows/s)",
+                report.batches, batch.size(), inserted, report.rejections.size() - rejectedBefore,
+                millis, batch.size() * 1000.0 / millis));
+    }
+
+    private static void bind(PreparedStatement stmt, String patientId, Patient patient) throws SQLException {
+        stmt.setString(1, patientId);
+        stmt.setString(2, patient.getFirstName());
+        stmt.setString(3, patient.getLastName());
+        stmt.setDate(4, Date.valueOf(patient.getDateOfBirth()));
+        stmt.setString(5, patient.getGender());
+        stmt.setString(6, patient.getPhoneNumber());
+        stmt.setString(7, patient.getEmail());
+        stmt.setString(8, patient.getAddress());
+        stmt.setString(9, patient.getEmergencyContact());
+        stmt.setString(10, patient.getMedicalHistory());
+        stmt.setString(11, PatientStatus.toColumn(patient.getStatus()));
+        stmt.setTimestamp(12, patient.getRegistrationDate() == null ? null
+                : Timestamp.valueOf(patient.getRegistrationDate()));
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: PatientImporter file.csv [batch-size]");
+            System.exit(2);
+        }
+        Path file = Path.of(args[0]);
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+
+        System.out.println("📥 Importing patients from " + file.toAbsolutePath());
+        try {
+            ImportReport report = new PatientImporter(batchSize).importCsv(file);
+            System.out.println(String.format("✅ Imported %d of %d rows in %d batches (%.0f rows/s)",
+                    report.getRowsInserted(), report.getRowsRead(), report.getBatches(), report.getRowsPerSecond()));
+
+            if (!report.getRejections().isEmpty()) {
+                Path rejected = file.resolveSibling(file.getFileName() + ".rejected.csv");
+                try (BufferedWriter out = Files.newBufferedWriter(rejected, StandardCharsets.UTF_8)) {
+                    out.write("line,reason");
+                    out.newLine();
+                    for (Rejection rejection : report.getRejections()) {
+                        out.write(rejection.line() + ",\"" + rejection.reason().replace("\"", "\"\"") + "\"");
+                        out.newLine();
+                    }
+                }
+                System.out.println("⚠️ " + report.getRejections().size() + " rows rejected, see " + rejected);
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("❌ Import failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            DatabaseConfig.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package hu_hospital.management.system.database;
+
+import java.sql.*;
+import java.util.function.Consumer;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Listens on the hospital_events channel that the notify_hospital_change()
+ * triggers publish to, and hands every change to a callback on a background thread.
+ *
+ * Uses its own physical connection because LISTEN is tied to the session. If the
+ * connection drops, the listener reconnects with a growing delay; changes made
+ * while it was disconnected are not replayed, so screens should reload once after
+ * onReconnect fires.
+ */
+public class PgNotificationListener implements AutoCloseable {
+    public static final String CHANNEL = "hospital_events";
+
+    private static final int POLL_TIMEOUT_MS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+
+    /**
+     * One row change as sent by the trigger: table|operation|id|old status|new status.
+     * A status the row did not have (e.g. the old status of an insert) is null.
+     */
+    public record Change(String table, String operation, String id, String oldStatus, String newStatus) {
+        static Change parse(String payload) {
+            String[] parts = payload.split("\\|", -1);
+            if (parts.length != 5) {
+                return null;
+            }
+            return new Change(parts[0], parts[1], parts[2], emptyToNull(parts[3]), emptyToNull(parts[4]));
+        }
+
+        private static String emptyToNull(String value) {
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    private final Consumer<Change> onChange;
+    private final Runnable onReconnect;
+    private final Thread thread;
+    private volatile boolean running;
+
+    public PgNotificationListener(Consumer<Change> onChange, Runnable onReconnect) {
+        this.onChange = onChange;
+        this.onReconnect = onReconnect;
+        this.thread = new Thread(this::run, "pg-notification-listener");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        long reconnectDelay = 1000;
+        boolean connectedBefore = false;
+
+        while (running) {
+            try (Connection conn = DatabaseConfig.openPhysicalConnection()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                System.out.println("📡 Listening for database changes on " + CHANNEL);
+
+                if (connectedBefore) {
+                    onReconnect.run();
+                }
+                connectedBefore = true;
+                reconnectDelay = 1000;
+
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                System.err.println("⚠️ Change notifications interrupted: " + e.getMessage()
+                        + " (retrying in " + reconnectDelay / 1000 + "s)");
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        Change change = Change.parse(payload);
+        if (change == null) {
+            System.err.println("⚠️ Ignoring malformed change notification: " + payload);
+            return;
+        }
+        try {
+            onChange.accept(change);
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Change handler failed for " + payload + ": " + e.getMessage());
+        }
+    }
+}
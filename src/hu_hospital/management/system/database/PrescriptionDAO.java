@@ -0,0 +1,331 @@
+package hu_hospital.management.system.database;
+
+import hu_hospital.management.system.models.Medication;
+import hu_hospital.management.system.models.Prescription;
+import hu_hospital.management.system.models.PrescriptionStatus;
+import hu_hospital.management.system.models.PrescriptionSummary;
+import hu_hospital.management.system.models.StockLevel;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object for Prescription operations
+ */
+public class PrescriptionDAO {
+
+    private final MedicationStockDAO stockDAO = new MedicationStockDAO();
+
+    /**
+     * Insert a prescription together with all its medications in one transaction
+     */
+    public String insertPrescription(Prescription prescription) throws SQLException {
+        String prescriptionSql = """
+            INSERT INTO prescriptions (prescription_id, patient_id, doctor_id, prescription_date,
+                                       diagnosis, instructions, status)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+        String medicationSql = """
+            INSERT INTO medications (prescription_id, medication_name, dosage, frequency, duration, instructions)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(prescriptionSql);
+                 PreparedStatement medStmt = conn.prepareStatement(medicationSql)) {
+
+                String prescriptionId = IdAllocator.PRESCRIPTIONS.nextId(conn);
+                stmt.setString(1, prescriptionId);
+                stmt.setString(2, prescription.getPatientId());
+                stmt.setString(3, prescription.getDoctorId());
+                stmt.setTimestamp(4, Timestamp.valueOf(prescription.getPrescriptionDate()));
+                stmt.setString(5, prescription.getDiagnosis());
+                stmt.setString(6, prescription.getInstructions());
+                stmt.setString(7, PrescriptionStatus.toColumn(prescription.getStatus()));
+                stmt.executeUpdate();
+
+                // All medications go to the server in a single round trip
+                for (Medication medication : prescription.getMedications()) {
+                    medStmt.setString(1, prescriptionId);
+                    medStmt.setString(2, medication.getMedicationName());
+                    medStmt.setString(3, medication.getDosage());
+                    medStmt.setString(4, medication.getFrequency());
+                    medStmt.setInt(5, medication.getDuration());
+                    medStmt.setString(6, medication.getInstructions());
+                    medStmt.addBatch();
+                }
+                medStmt.executeBatch();
+
+                conn.commit();
+                prescription.setPrescriptionId(prescriptionId);
+                return prescriptionId;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Find prescription by ID, including its medications
+     */
+    public Prescription findPrescriptionById(String prescriptionId) throws SQLException {
+        String sql = "SELECT * FROM prescriptions WHERE prescription_id = ?";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, prescriptionId);
+            ResultSet rs = stmt.executeQuery();
+
+            if (!rs.next()) {
+                return null;
+            }
+
+            Prescription prescription = new PrescriptionColumns(rs).map(rs);
+            Map<String, Prescription> byId = new LinkedHashMap<>();
+            byId.put(prescriptionId, prescription);
+            loadMedications(conn, byId);
+            return prescription;
+        }
+    }
+
+    /**
+     * Get one page of prescriptions waiting to be dispensed, oldest first
+     */
+    public List<Prescription> getPendingPrescriptions(int offset, int limit) throws SQLException {
+        List<Prescription> prescriptions = new ArrayList<>();
+        for (PrescriptionSummary summary : getPendingPrescriptionSummaries(offset, limit)) {
+            prescriptions.add(summary.getPrescription());
+        }
+        return prescriptions;
+    }
+
+    /**
+     * Get one page of pending prescriptions with patient and doctor names already
+     * joined by the pending_prescriptions view. Medications for the whole page are
+     * loaded with a single extra query.
+     */
+    public List<PrescriptionSummary> getPendingPrescriptionSummaries(int offset, int limit) throws SQLException {
+        String sql = """
+            SELECT prescription_id, patient_id, patient_name, doctor_id, doctor_name,
+                   diagnosis, prescription_date, status, instructions
+            FROM pending_prescriptions
+            ORDER BY prescription_date, prescription_id
+            LIMIT ? OFFSET ?
+            """;
+        Map<String, Prescription> byId = new LinkedHashMap<>();
+        List<PrescriptionSummary> summaries = new ArrayList<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, limit);
+            stmt.setInt(2, offset);
+            ResultSet rs = stmt.executeQuery();
+
+            PrescriptionColumns columns = new PrescriptionColumns(rs);
+            int patientName = rs.findColumn("patient_name");
+            int doctorName = rs.findColumn("doctor_name");
+            while (rs.next()) {
+                Prescription prescription = columns.map(rs);
+                byId.put(prescription.getPrescriptionId(), prescription);
+                summaries.add(new PrescriptionSummary(prescription,
+                        rs.getString(patientName),
+                        "Dr. " + rs.getString(doctorName)));
+            }
+
+            loadMedications(conn, byId);
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Hand every prescription, with its medications, to the handler, oldest first.
+     * Prescriptions and medications come back as one joined, ordered result through a
+     * server-side cursor; a prescription is handed over as soon as its last medication
+     * row has been read, so only fetchSize rows are in memory at a time.
+     * Returns the number of prescriptions handled.
+     */
+    public long streamPrescriptions(int fetchSize, RowHandler<? super Prescription> handler)
+            throws SQLException, IOException {
+        String sql = """
+            SELECT p.prescription_id, p.patient_id, p.doctor_id, p.diagnosis, p.instructions,
+                   p.status, p.prescription_date,
+                   m.medication_name, m.dosage, m.frequency, m.duration,
+                   m.instructions AS medication_instructions
+            FROM prescriptions p
+            LEFT JOIN medications m ON m.prescription_id = p.prescription_id
+            ORDER BY p.prescription_date, p.prescription_id, m.medication_id
+            """;
+
+        return CursorQuery.query(sql, fetchSize, rs -> {
+            PrescriptionColumns columns = new PrescriptionColumns(rs);
+            MedicationColumns medicationColumns = new MedicationColumns(rs, "medication_instructions");
+            int medicationName = rs.findColumn("medication_name");
+            long count = 0;
+            Prescription current = null;
+
+            while (rs.next()) {
+                String prescriptionId = rs.getString(columns.prescriptionId);
+                if (current == null || !current.getPrescriptionId().equals(prescriptionId)) {
+                    if (current != null) {
+                        handler.handle(current);
+                        count++;
+                    }
+                    current = columns.map(rs);
+                }
+                // A prescription without medications joins to one row of NULLs
+                if (rs.getString(medicationName) != null) {
+                    current.addMedication(medicationColumns.map(rs));
+                }
+            }
+            if (current != null) {
+                handler.handle(current);
+                count++;
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Mark a prescription as dispensed and take its medications out of stock in one
+     * transaction. Returns null, changing nothing, if it is not waiting to be dispensed
+     * or the pharmacy is short of any of its medications; otherwise the stock items that
+     * have just fallen below their reorder level.
+     */
+    public List<StockLevel> dispensePrescription(String prescriptionId) throws SQLException {
+        String sql = "UPDATE prescriptions SET status = 'DISPENSED' WHERE prescription_id = ? AND status = ANY(?)";
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                // The row lock also keeps a second window from dispensing it meanwhile
+                stmt.setString(1, prescriptionId);
+                stmt.setArray(2, conn.createArrayOf("varchar",
+                        PrescriptionStatus.columnsAdvancingTo(PrescriptionStatus.DISPENSED)));
+                if (stmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    return null;
+                }
+
+                Prescription prescription = new Prescription();
+                prescription.setPrescriptionId(prescriptionId);
+                Map<String, Prescription> byId = new LinkedHashMap<>();
+                byId.put(prescriptionId, prescription);
+                loadMedications(conn, byId);
+
+                List<StockLevel> nowLow = stockDAO.drawStock(conn, prescription.getMedications());
+                if (nowLow == null) {
+                    conn.rollback();
+                    return null;
+                }
+                conn.commit();
+                return nowLow;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Attach medications to the given prescriptions with one query for all of them
+     */
+    private void loadMedications(Connection conn, Map<String, Prescription> byId) throws SQLException {
+        if (byId.isEmpty()) {
+            return;
+        }
+
+        String sql = """
+            SELECT prescription_id, medication_name, dosage, frequency, duration, instructions
+            FROM medications
+            WHERE prescription_id = ANY(?)
+            ORDER BY medication_id
+            """;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("varchar", byId.keySet().toArray()));
+            ResultSet rs = stmt.executeQuery();
+
+            MedicationColumns columns = new MedicationColumns(rs, "instructions");
+            while (rs.next()) {
+                Prescription prescription = byId.get(rs.getString(columns.prescriptionId));
+                if (prescription != null) {
+                    prescription.addMedication(columns.map(rs));
+                }
+            }
+        }
+    }
+
+    /**
+     * Column positions of a prescription result set, looked up once per result set
+     * (medications are loaded separately)
+     */
+    private static final class PrescriptionColumns implements CursorQuery.RowMapper<Prescription> {
+        private final int prescriptionId, patientId, doctorId, diagnosis, instructions, status, prescriptionDate;
+
+        PrescriptionColumns(ResultSet rs) throws SQLException {
+            prescriptionId = rs.findColumn("prescription_id");
+            patientId = rs.findColumn("patient_id");
+            doctorId = rs.findColumn("doctor_id");
+            diagnosis = rs.findColumn("diagnosis");
+            instructions = rs.findColumn("instructions");
+            status = rs.findColumn("status");
+            prescriptionDate = rs.findColumn("prescription_date");
+        }
+
+        @Override
+        public Prescription map(ResultSet rs) throws SQLException {
+            Prescription prescription = new Prescription();
+
+            prescription.setPrescriptionId(rs.getString(prescriptionId));
+            prescription.setPatientId(rs.getString(patientId));
+            prescription.setDoctorId(rs.getString(doctorId));
+            prescription.setDiagnosis(rs.getString(diagnosis));
+            prescription.setInstructions(rs.getString(instructions));
+            prescription.setStatus(PrescriptionStatus.fromColumn(rs.getString(status)));
+
+            Timestamp prescribed = rs.getTimestamp(prescriptionDate);
+            if (prescribed != null) {
+                prescription.setPrescriptionDate(prescribed.toLocalDateTime());
+            }
+
+            return prescription;
+        }
+    }
+
+    /**
+     * Column positions of medication rows; the instructions column is named by the
+     * caller because it is aliased when joined with prescriptions
+     */
+    private static final class MedicationColumns implements CursorQuery.RowMapper<Medication> {
+        private final int prescriptionId, medicationName, dosage, frequency, duration, instructions;
+
+        MedicationColumns(ResultSet rs, String instructionsColumn) throws SQLException {
+            prescriptionId = rs.findColumn("prescription_id");
+            medicationName = rs.findColumn("medication_name");
+            dosage = rs.findColumn("dosage");
+            frequency = rs.findColumn("frequency");
+            duration = rs.findColumn("duration");
+            instructions = rs.findColumn(instructionsColumn);
+        }
+
+        @Override
+        public Medication map(ResultSet rs) throws SQLException {
+            return new Medication(
+                    rs.getString(medicationName),
+                    rs.getString(dosage),
+                    rs.getString(frequency),
+                    rs.getInt(duration),
+                    rs.getString(instructions));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package hu_hospital.management.system.database;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time from the DAO stream methods. Exports write each row
+ * straight to their output, so an IOException is allowed to stop the stream.
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+    void handle(T row) throws IOException;
+}
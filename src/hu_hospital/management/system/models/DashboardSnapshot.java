@@ -0,0 +1,51 @@
+package hu_hospital.management.system.models;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the dashboard shows, read in one go: the headline counters and the
+ * waiting queue, so the numbers and the table always describe the same moment.
+ */
+public class DashboardSnapshot {
+    private final int totalPatients;
+    private final int waitingPatients;
+    private final int activeDoctors;
+    private final int pendingLabTests;
+    private final List<Patient> queue;
+    private final LocalDateTime takenAt;
+
+    public DashboardSnapshot(int totalPatients, int waitingPatients, int activeDoctors,
+                             int pendingLabTests, List<Patient> queue) {
+        this.totalPatients = totalPatients;
+        this.waitingPatients = waitingPatients;
+        this.activeDoctors = activeDoctors;
+        this.pendingLabTests = pendingLabTests;
+        this.queue = Collections.unmodifiableList(queue);
+        this.takenAt = LocalDateTime.now();
+    }
+
+    public static DashboardSnapshot empty() {
+        return new DashboardSnapshot(0, 0, 0, 0, Collections.emptyList());
+    }
+
+    // Getters
+    public int getTotalPatients() { return totalPatients; }
+
+    public int getWaitingPatients() { return waitingPatients; }
+
+    public int getActiveDoctors() { return activeDoctors; }
+
+    public int getPendingLabTests() { return pendingLabTests; }
+
+    public List<Patient> getQueue() { return queue; }
+
+    public LocalDateTime getTakenAt() { return takenAt; }
+
+    @Override
+    public String toString() {
+        return "Patients: " + totalPatients + ", Waiting: " + waitingPatients +
+               ", Doctors: " + activeDoctors + ", Pending Tests: " + pendingLabTests;
+    }
+}
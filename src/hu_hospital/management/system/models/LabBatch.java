@@ -0,0 +1,65 @@
+package hu_hospital.management.system.models;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lab tests of one type that go through an analyzer together. A batch proposed by the
+ * work list has no ID yet; it gets one when its tests are started.
+ */
+public class LabBatch {
+    private final String batchId;
+    private final String testType;
+    private final List<LabTest> tests;
+    private final LocalDateTime startedAt;
+    private final boolean ready;
+    
+    public LabBatch(String batchId, String testType, List<LabTest> tests, LocalDateTime startedAt, boolean ready) {
+        this.batchId = batchId;
+        this.testType = testType;
+        this.tests = Collections.unmodifiableList(new ArrayList<>(tests));
+        this.startedAt = startedAt;
+        this.ready = ready;
+    }
+    
+    /**
+     * Null for a proposed batch
+     */
+    public String getBatchId() { return batchId; }
+    
+    public String getTestType() { return testType; }
+    
+    /**
+     * The tests in order date order; read-only
+     */
+    public List<LabTest> getTests() { return tests; }
+    
+    public int getSize() { return tests.size(); }
+    
+    public LocalDateTime getStartedAt() { return startedAt; }
+    
+    /**
+     * True when the batch is full or its oldest test has waited the whole batching window,
+     * so there is no point in waiting for more samples
+     */
+    public boolean isReady() { return ready; }
+    
+    public LocalDateTime getOldestOrderDate() {
+        return tests.isEmpty() ? null : tests.get(0).getOrderDate();
+    }
+    
+    public List<String> getTestIds() {
+        List<String> ids = new ArrayList<>(tests.size());
+        for (LabTest test : tests) {
+            ids.add(test.getTestId());
+        }
+        return ids;
+    }
+    
+    @Override
+    public String toString() {
+        return (batchId != null ? batchId + " " : "") + testType + " (" + tests.size() + ")";
+    }
+}
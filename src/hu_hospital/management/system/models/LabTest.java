@@ -1,6 +1,8 @@
 package hu_hospital.management.system.models;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
 public class LabTest {
     private String testId;
@@ -8,14 +10,17 @@ public class LabTest {
     private String testType;
     private String description;
     private LocalDateTime orderDate;
+    private LocalDateTime startDate;
     private LocalDateTime completionDate;
     private String results;
-    private String status; // ORDERED, IN_PROGRESS, COMPLETED
+    private volatile Supplier<String> resultsLoader; // Until first read, when loaded lazily
+    private volatile LabTestStatus status;
     private String orderedBy; // Doctor ID
+    private String batchId; // Analyzer run the test went through, if it was batched
     
     public LabTest() {
         this.orderDate = LocalDateTime.now();
-        this.status = "ORDERED";
+        this.status = LabTestStatus.ORDERED;
     }
     
     public LabTest(String testId, String patientId, String testType, String description, String orderedBy) {
@@ -43,15 +48,43 @@ public class LabTest {
     public LocalDateTime getOrderDate() { return orderDate; }
     public void setOrderDate(LocalDateTime orderDate) { this.orderDate = orderDate; }
     
+    public LocalDateTime getStartDate() { return startDate; }
+    public void setStartDate(LocalDateTime startDate) { this.startDate = startDate; }
+    
     public LocalDateTime getCompletionDate() { return completionDate; }
     public void setCompletionDate(LocalDateTime completionDate) { this.completionDate = completionDate; }
     
-    public String getResults() { return results; }
-    public void setResults(String results) { this.results = results; }
+    /**
+     * Time from order to result, or null until the test is completed
+     */
+    public Duration getTurnaround() {
+        return orderDate != null && completionDate != null ? Duration.between(orderDate, completionDate) : null;
+    }
     
-    public String getStatus() { return status; }
-    public void setStatus(String status) { this.status = status; }
+    public String getResults() {
+        Supplier<String> loader = resultsLoader;
+        if (loader != null) {
+            results = loader.get();
+            resultsLoader = null;
+        }
+        return results;
+    }
+    public void setResults(String results) {
+        this.resultsLoader = null;
+        this.results = results;
+    }
+    
+    /**
+     * Read the value through loader the first time it is asked for
+     */
+    public void setResultsLoader(Supplier<String> loader) { this.resultsLoader = loader; }
+    
+    public LabTestStatus getStatus() { return status; }
+    public void setStatus(LabTestStatus status) { this.status = status; }
     
     public String getOrderedBy() { return orderedBy; }
     public void setOrderedBy(String orderedBy) { this.orderedBy = orderedBy; }
+    
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
 }
\ No newline at end of file
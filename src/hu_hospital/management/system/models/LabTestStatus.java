@@ -0,0 +1,73 @@
+package hu_hospital.management.system.models;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Progress of a lab test. The names are the values allowed by the CHECK constraint
+ * on lab_tests.status.
+ */
+public enum LabTestStatus {
+    ORDERED, IN_PROGRESS, COMPLETED;
+    
+    private static final Map<LabTestStatus, Set<LabTestStatus>> NEXT = new EnumMap<>(LabTestStatus.class);
+    
+    static {
+        NEXT.put(ORDERED, EnumSet.of(IN_PROGRESS, COMPLETED));
+        NEXT.put(IN_PROGRESS, EnumSet.of(COMPLETED));
+        NEXT.put(COMPLETED, EnumSet.noneOf(LabTestStatus.class));
+    }
+    
+    /**
+     * True if a test in this status may move to next; staying put is always allowed
+     */
+    public boolean canMoveTo(LabTestStatus next) {
+        return next == this || NEXT.get(this).contains(next);
+    }
+    
+    /**
+     * True if a test in this status may move on to next, a status other than this one
+     */
+    public boolean canAdvanceTo(LabTestStatus next) {
+        return next != this && canMoveTo(next);
+    }
+    
+    /**
+     * The column values of every status that may advance to next, for the
+     * status = ANY(?) guard of a conditional UPDATE
+     */
+    public static String[] columnsAdvancingTo(LabTestStatus next) {
+        List<String> columns = new ArrayList<>();
+        for (LabTestStatus status : values()) {
+            if (status.canAdvanceTo(next)) {
+                columns.add(toColumn(status));
+            }
+        }
+        return columns.toArray(new String[0]);
+    }
+    
+    /**
+     * Ordered or in progress, i.e. still on the lab's work list
+     */
+    public boolean isPending() {
+        return this != COMPLETED;
+    }
+    
+    /**
+     * The status stored in a status column, or null for a null column
+     */
+    public static LabTestStatus fromColumn(String value) {
+        return value == null ? null : valueOf(value);
+    }
+    
+    /**
+     * The value to store in a status column
+     */
+    public static String toColumn(LabTestStatus status) {
+        return status == null ? null : status.name();
+    }
+}
@@ -1,6 +1,13 @@
 package hu_hospital.management.system.models;
 
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class Medication {
+    private static final Pattern TIMES_A_DAY = Pattern.compile("(\\d+)\\s*(x|times)");
+    private static final Pattern EVERY_HOURS = Pattern.compile("every\\s+(\\d+)\\s*h");
+    
     private String medicationName;
     private String dosage;
     private String frequency;
@@ -34,6 +41,57 @@ public class Medication {
     public String getInstructions() { return instructions; }
     public void setInstructions(String instructions) { this.instructions = instructions; }
     
+    /**
+     * Doses a day as the frequency reads: "Once daily" 1, "Twice daily" 2, "Three times
+     * daily" or "3x daily" 3, "Every 8 hours" 3; anything else (e.g. "As needed") counts as 1
+     */
+    public int getDosesPerDay() {
+        String text = frequency == null ? "" : frequency.trim().toLowerCase(Locale.ROOT);
+        Matcher times = TIMES_A_DAY.matcher(text);
+        if (times.find()) {
+            return Math.max(1, Integer.parseInt(times.group(1)));
+        }
+        Matcher every = EVERY_HOURS.matcher(text);
+        if (every.find()) {
+            int hours = Integer.parseInt(every.group(1));
+            return hours > 0 ? Math.max(1, 24 / hours) : 1;
+        }
+        if (text.startsWith("twice")) {
+            return 2;
+        }
+        if (text.startsWith("three times") || text.startsWith("thrice")) {
+            return 3;
+        }
+        if (text.startsWith("four times")) {
+            return 4;
+        }
+        return 1;
+    }
+    
+    /**
+     * Units the pharmacy hands out: one per dose for the whole course, at least one
+     */
+    public int getUnitsNeeded() {
+        return getDosesPerDay() * Math.max(1, duration);
+    }
+    
+    /**
+     * The pharmacy catalog entry this medication is dispensed from (name and dosage)
+     */
+    public String getStockKey() {
+        return stockKey(medicationName, dosage);
+    }
+    
+    /**
+     * Catalog key of a medication and strength: case, and spaces inside the strength,
+     * do not matter, so "Metformin" "500 mg" and "metformin" "500mg" are one item
+     */
+    public static String stockKey(String medicationName, String strength) {
+        String name = medicationName == null ? "" : medicationName.trim().replaceAll("\\s+", " ");
+        String dose = strength == null ? "" : strength.replaceAll("\\s+", "");
+        return (name + " " + dose).trim().toLowerCase(Locale.ROOT);
+    }
+    
     @Override
     public String toString() {
         return medicationName + " - " + dosage + " (" + frequency + " for " + duration + " days)";
@@ -2,6 +2,7 @@ package hu_hospital.management.system.models;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
 public class Patient {
     private String patientId;
@@ -15,12 +16,15 @@ public class Patient {
     private String emergencyContact;
     private LocalDateTime registrationDate;
     private String medicalHistory;
+    private volatile Supplier<String> medicalHistoryLoader; // Until first read, when loaded lazily
     private int queueNumber;
-    private String status; // REGISTERED, WAITING, WITH_DOCTOR, IN_LAB, PRESCRIPTION_READY, COMPLETED
+    private volatile PatientStatus status;
+    private volatile TriageLevel triageLevel;
     
     public Patient() {
         this.registrationDate = LocalDateTime.now();
-        this.status = "REGISTERED";
+        this.status = PatientStatus.REGISTERED;
+        this.triageLevel = TriageLevel.STANDARD;
     }
     
     public Patient(String patientId, String firstName, String lastName, LocalDate dateOfBirth, 
@@ -70,14 +74,32 @@ public class Patient {
     public LocalDateTime getRegistrationDate() { return registrationDate; }
     public void setRegistrationDate(LocalDateTime registrationDate) { this.registrationDate = registrationDate; }
     
-    public String getMedicalHistory() { return medicalHistory; }
-    public void setMedicalHistory(String medicalHistory) { this.medicalHistory = medicalHistory; }
+    public String getMedicalHistory() {
+        Supplier<String> loader = medicalHistoryLoader;
+        if (loader != null) {
+            medicalHistory = loader.get();
+            medicalHistoryLoader = null;
+        }
+        return medicalHistory;
+    }
+    public void setMedicalHistory(String medicalHistory) {
+        this.medicalHistoryLoader = null;
+        this.medicalHistory = medicalHistory;
+    }
+    
+    /**
+     * Read the value through loader the first time it is asked for
+     */
+    public void setMedicalHistoryLoader(Supplier<String> loader) { this.medicalHistoryLoader = loader; }
     
     public int getQueueNumber() { return queueNumber; }
     public void setQueueNumber(int queueNumber) { this.queueNumber = queueNumber; }
     
-    public String getStatus() { return status; }
-    public void setStatus(String status) { this.status = status; }
+    public PatientStatus getStatus() { return status; }
+    public void setStatus(PatientStatus status) { this.status = status; }
+    
+    public TriageLevel getTriageLevel() { return triageLevel; }
+    public void setTriageLevel(TriageLevel triageLevel) { this.triageLevel = triageLevel; }
     
     @Override
     public String toString() {
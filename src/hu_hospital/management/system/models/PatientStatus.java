@@ -0,0 +1,77 @@
+package hu_hospital.management.system.models;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where a patient is in today's visit. The names are the values allowed by the
+ * CHECK constraint on patients.status.
+ */
+public enum PatientStatus {
+    REGISTERED, WAITING, WITH_DOCTOR, IN_LAB, PRESCRIPTION_READY, COMPLETED;
+    
+    private static final Map<PatientStatus, Set<PatientStatus>> NEXT = new EnumMap<>(PatientStatus.class);
+    
+    static {
+        NEXT.put(REGISTERED, EnumSet.of(WAITING, WITH_DOCTOR, COMPLETED));
+        NEXT.put(WAITING, EnumSet.of(WITH_DOCTOR, IN_LAB, PRESCRIPTION_READY, COMPLETED));
+        NEXT.put(WITH_DOCTOR, EnumSet.of(WAITING, IN_LAB, PRESCRIPTION_READY, COMPLETED));
+        NEXT.put(IN_LAB, EnumSet.of(WAITING, PRESCRIPTION_READY, COMPLETED));
+        NEXT.put(PRESCRIPTION_READY, EnumSet.of(WAITING, COMPLETED));
+        // A finished visit can only start over in the queue
+        NEXT.put(COMPLETED, EnumSet.of(WAITING));
+    }
+    
+    /**
+     * True if a patient in this status may move to next; staying put is always allowed
+     */
+    public boolean canMoveTo(PatientStatus next) {
+        return next == this || NEXT.get(this).contains(next);
+    }
+    
+    /**
+     * True if a patient in this status may move on to next, a status other than this one
+     */
+    public boolean canAdvanceTo(PatientStatus next) {
+        return next != this && canMoveTo(next);
+    }
+    
+    /**
+     * The column values of every status that may advance to next, for the
+     * status = ANY(?) guard of a conditional UPDATE
+     */
+    public static String[] columnsAdvancingTo(PatientStatus next) {
+        List<String> columns = new ArrayList<>();
+        for (PatientStatus status : values()) {
+            if (status.canAdvanceTo(next)) {
+                columns.add(toColumn(status));
+            }
+        }
+        return columns.toArray(new String[0]);
+    }
+    
+    /**
+     * Registered or waiting, i.e. still in the queue to see a doctor
+     */
+    public boolean isWaiting() {
+        return this == REGISTERED || this == WAITING;
+    }
+    
+    /**
+     * The status stored in a status column, or null for a null column
+     */
+    public static PatientStatus fromColumn(String value) {
+        return value == null ? null : valueOf(value);
+    }
+    
+    /**
+     * The value to store in a status column
+     */
+    public static String toColumn(PatientStatus status) {
+        return status == null ? null : status.name();
+    }
+}
@@ -12,12 +12,12 @@ public class Prescription {
     private String diagnosis;
     private List<Medication> medications;
     private String instructions;
-    private String status; // PRESCRIBED, DISPENSED, COMPLETED
+    private volatile PrescriptionStatus status;
     
     public Prescription() {
         this.prescriptionDate = LocalDateTime.now();
         this.medications = new ArrayList<>();
-        this.status = "PRESCRIBED";
+        this.status = PrescriptionStatus.PRESCRIBED;
     }
     
     public Prescription(String prescriptionId, String patientId, String doctorId, String diagnosis) {
@@ -50,8 +50,8 @@ public class Prescription {
     public String getInstructions() { return instructions; }
     public void setInstructions(String instructions) { this.instructions = instructions; }
     
-    public String getStatus() { return status; }
-    public void setStatus(String status) { this.status = status; }
+    public PrescriptionStatus getStatus() { return status; }
+    public void setStatus(PrescriptionStatus status) { this.status = status; }
     
     public void addMedication(Medication medication) {
         this.medications.add(medication);
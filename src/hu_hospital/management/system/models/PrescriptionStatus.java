@@ -0,0 +1,66 @@
+package hu_hospital.management.system.models;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Progress of a prescription. The names are the values allowed by the CHECK
+ * constraint on prescriptions.status.
+ */
+public enum PrescriptionStatus {
+    PRESCRIBED, DISPENSED, COMPLETED;
+    
+    private static final Map<PrescriptionStatus, Set<PrescriptionStatus>> NEXT = new EnumMap<>(PrescriptionStatus.class);
+    
+    static {
+        NEXT.put(PRESCRIBED, EnumSet.of(DISPENSED));
+        NEXT.put(DISPENSED, EnumSet.of(COMPLETED));
+        NEXT.put(COMPLETED, EnumSet.noneOf(PrescriptionStatus.class));
+    }
+    
+    /**
+     * True if a prescription in this status may move to next; staying put is always allowed
+     */
+    public boolean canMoveTo(PrescriptionStatus next) {
+        return next == this || NEXT.get(this).contains(next);
+    }
+    
+    /**
+     * True if a prescription in this status may move on to next, a status other than this one
+     */
+    public boolean canAdvanceTo(PrescriptionStatus next) {
+        return next != this && canMoveTo(next);
+    }
+    
+    /**
+     * The column values of every status that may advance to next, for the
+     * status = ANY(?) guard of a conditional UPDATE
+     */
+    public static String[] columnsAdvancingTo(PrescriptionStatus next) {
+        List<String> columns = new ArrayList<>();
+        for (PrescriptionStatus status : values()) {
+            if (status.canAdvanceTo(next)) {
+                columns.add(toColumn(status));
+            }
+        }
+        return columns.toArray(new String[0]);
+    }
+    
+    /**
+     * The status stored in a status column, or null for a null column
+     */
+    public static PrescriptionStatus fromColumn(String value) {
+        return value == null ? null : valueOf(value);
+    }
+    
+    /**
+     * The value to store in a status column
+     */
+    public static String toColumn(PrescriptionStatus status) {
+        return status == null ? null : status.name();
+    }
+}
@@ -0,0 +1,43 @@
+package hu_hospital.management.system.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read model for prescription lists: a prescription already joined with the
+ * patient and doctor display names, so table cells never look them up again.
+ */
+public class PrescriptionSummary {
+    private final Prescription prescription;
+    private final String patientName;
+    private final String doctorName;
+
+    public PrescriptionSummary(Prescription prescription, String patientName, String doctorName) {
+        this.prescription = prescription;
+        this.patientName = patientName != null ? patientName : "Unknown Patient";
+        this.doctorName = doctorName != null ? doctorName : "Unknown Doctor";
+    }
+
+    // Getters
+    public Prescription getPrescription() { return prescription; }
+
+    public String getPatientName() { return patientName; }
+
+    public String getDoctorName() { return doctorName; }
+
+    public String getPrescriptionId() { return prescription.getPrescriptionId(); }
+
+    public String getPatientId() { return prescription.getPatientId(); }
+
+    public String getDoctorId() { return prescription.getDoctorId(); }
+
+    public LocalDateTime getPrescriptionDate() { return prescription.getPrescriptionDate(); }
+
+    public String getDiagnosis() { return prescription.getDiagnosis(); }
+
+    public PrescriptionStatus getStatus() { return prescription.getStatus(); }
+
+    @Override
+    public String toString() {
+        return getPrescriptionId() + " - " + patientName;
+    }
+}
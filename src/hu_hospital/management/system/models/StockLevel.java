@@ -0,0 +1,49 @@
+package hu_hospital.management.system.models;
+
+import java.time.LocalDate;
+
+/**
+ * Stock of one catalog item at a point in time: units in unexpired lots, the level at
+ * which it should be reordered and the earliest expiry among its lots
+ */
+public class StockLevel {
+    private final String medicationName;
+    private final String strength;
+    private final long available;
+    private final int reorderLevel;
+    private final LocalDate nextExpiry;
+    
+    public StockLevel(String medicationName, String strength, long available, int reorderLevel, LocalDate nextExpiry) {
+        this.medicationName = medicationName;
+        this.strength = strength;
+        this.available = available;
+        this.reorderLevel = reorderLevel;
+        this.nextExpiry = nextExpiry;
+    }
+    
+    public String getMedicationName() { return medicationName; }
+    
+    public String getStrength() { return strength; }
+    
+    public long getAvailable() { return available; }
+    
+    public int getReorderLevel() { return reorderLevel; }
+    
+    /**
+     * Null when nothing is in stock
+     */
+    public LocalDate getNextExpiry() { return nextExpiry; }
+    
+    public boolean isLow() {
+        return available < reorderLevel;
+    }
+    
+    public boolean isOutOfStock() {
+        return available == 0;
+    }
+    
+    @Override
+    public String toString() {
+        return medicationName + " " + strength + ": " + available + " left (reorder at " + reorderLevel + ")";
+    }
+}
@@ -0,0 +1,53 @@
+package hu_hospital.management.system.models;
+
+import java.time.LocalDate;
+
+/**
+ * Units of one delivery of a medication, all with the same expiry date. Lots are
+ * immutable; a change in quantity makes a new lot with withQuantity.
+ */
+public class StockLot {
+    private final String medicationName;
+    private final String strength;
+    private final String lotNumber;
+    private final LocalDate expiryDate;
+    private final int quantity;
+    
+    public StockLot(String medicationName, String strength, String lotNumber, LocalDate expiryDate, int quantity) {
+        this.medicationName = medicationName;
+        this.strength = strength;
+        this.lotNumber = lotNumber;
+        this.expiryDate = expiryDate;
+        this.quantity = quantity;
+    }
+    
+    public String getMedicationName() { return medicationName; }
+    
+    public String getStrength() { return strength; }
+    
+    public String getLotNumber() { return lotNumber; }
+    
+    public LocalDate getExpiryDate() { return expiryDate; }
+    
+    public int getQuantity() { return quantity; }
+    
+    public String getStockKey() {
+        return Medication.stockKey(medicationName, strength);
+    }
+    
+    /**
+     * A lot may be used up to and including its expiry date
+     */
+    public boolean isExpired(LocalDate today) {
+        return expiryDate.isBefore(today);
+    }
+    
+    public StockLot withQuantity(int quantity) {
+        return new StockLot(medicationName, strength, lotNumber, expiryDate, quantity);
+    }
+    
+    @Override
+    public String toString() {
+        return medicationName + " " + strength + " lot " + lotNumber + " (" + quantity + ", expires " + expiryDate + ")";
+    }
+}
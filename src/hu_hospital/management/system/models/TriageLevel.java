@@ -0,0 +1,46 @@
+package hu_hospital.management.system.models;
+
+import java.time.Duration;
+
+/**
+ * How urgently a patient needs to see a doctor, with the longest wait the
+ * Manchester triage scale allows for each level. Walk-in patients are STANDARD.
+ * Stored in patients.triage_level as the scale's number, 1 (IMMEDIATE) to 5.
+ */
+public enum TriageLevel {
+    IMMEDIATE(0), VERY_URGENT(10), URGENT(60), STANDARD(120), NON_URGENT(240);
+    
+    private final int maxWaitMinutes;
+    
+    TriageLevel(int maxWaitMinutes) {
+        this.maxWaitMinutes = maxWaitMinutes;
+    }
+    
+    public int getMaxWaitMinutes() { return maxWaitMinutes; }
+    
+    public Duration getMaxWait() { return Duration.ofMinutes(maxWaitMinutes); }
+    
+    /**
+     * The level's number on the triage scale, 1 for the most urgent
+     */
+    public int getLevel() { return ordinal() + 1; }
+    
+    /**
+     * The level stored in a triage_level column; 0 (SQL NULL) means STANDARD
+     */
+    public static TriageLevel fromColumn(int level) {
+        return level == 0 ? STANDARD : values()[level - 1];
+    }
+    
+    /**
+     * The value to store in a triage_level column
+     */
+    public static int toColumn(TriageLevel level) {
+        return (level == null ? STANDARD : level).getLevel();
+    }
+    
+    @Override
+    public String toString() {
+        return getLevel() + " - " + name().charAt(0) + name().substring(1).toLowerCase().replace('_', ' ');
+    }
+}
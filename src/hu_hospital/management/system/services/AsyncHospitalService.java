@@ -0,0 +1,124 @@
+package hu_hospital.management.system.services;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javafx.application.Platform;
+
+/**
+ * Runs HospitalService / DatabaseHospitalService calls off the JavaFX application
+ * thread and hands the results back to it, so a slow query never freezes a screen.
+ *
+ * Calls run on virtual threads; the connection pool is what bounds how many of them
+ * talk to the database at once. Refreshes are keyed: starting a refresh cancels the
+ * one still running under the same key, and a superseded result is never applied.
+ */
+public class AsyncHospitalService<S> {
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hospital-async-", 0).factory());
+
+    private final S service;
+    private final Executor uiExecutor;
+    private final Map<String, CompletableFuture<?>> inFlight;
+
+    public AsyncHospitalService(S service) {
+        this(service, Platform::runLater);
+    }
+
+    public AsyncHospitalService(S service, Executor uiExecutor) {
+        this.service = service;
+        this.uiExecutor = uiExecutor;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+
+    public static AsyncHospitalService<HospitalService> inMemory() {
+        return new AsyncHospitalService<>(HospitalService.getInstance());
+    }
+
+    public static AsyncHospitalService<DatabaseHospitalService> database() {
+        return new AsyncHospitalService<>(DatabaseHospitalService.getInstance());
+    }
+
+    /**
+     * Run a service call in the background. Cancelling the returned future stops a call
+     * that has not started yet; one already running is left to finish and its result is
+     * dropped. It is never interrupted: interrupting a thread blocked in JDBC closes the
+     * socket and breaks the pooled connection it holds.
+     */
+    public <T> CompletableFuture<T> supply(Function<S, T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = EXECUTOR.submit(() -> {
+            try {
+                result.complete(call.apply(service));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Run a service call in the background and pass its result to onResult on the FX thread
+     */
+    public <T> CompletableFuture<T> call(Function<S, T> call, Consumer<T> onResult) {
+        CompletableFuture<T> result = supply(call);
+        result.whenCompleteAsync((value, error) -> {
+            if (error == null) {
+                onResult.accept(value);
+            } else {
+                reportFailure(error);
+            }
+        }, uiExecutor);
+        return result;
+    }
+
+    /**
+     * Like call, but only the latest refresh per key is applied. Must be called from
+     * the FX thread, which is also where results are checked against the latest one.
+     */
+    public <T> CompletableFuture<T> refresh(String key, Function<S, T> call, Consumer<T> onResult) {
+        CompletableFuture<T> result = supply(call);
+        CompletableFuture<?> previous = inFlight.put(key, result);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+
+        result.whenCompleteAsync((value, error) -> {
+            // A newer refresh may have started while this one was finishing
+            if (!inFlight.remove(key, result)) {
+                return;
+            }
+            if (error == null) {
+                onResult.accept(value);
+            } else {
+                reportFailure(error);
+            }
+        }, uiExecutor);
+        return result;
+    }
+
+    /**
+     * Cancel every refresh still running, e.g. when the window closes
+     */
+    public void cancelAll() {
+        inFlight.values().forEach(future -> future.cancel(false));
+        inFlight.clear();
+    }
+
+    public S getService() {
+        return service;
+    }
+
+    private static void reportFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!(cause instanceof CancellationException)) {
+            System.err.println("❌ Background service call failed: " + cause.getMessage());
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.Doctor;
+import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.TriageLevel;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which waiting patient a doctor sees next.
+ *
+ * Patients referred to a specialization wait in that specialization's queue, everyone
+ * else in the general queue that every doctor draws from. Each queue is a lock-free
+ * skip list. IMMEDIATE and then VERY_URGENT patients are always called first, in
+ * arrival order, as the triage-ordered waiting list shows them. The lower levels are
+ * ordered by deadline: arrival time plus the longest wait the level allows, so a
+ * STANDARD patient who has waited past their limit is called before an URGENT one
+ * who only just arrived, but never before an IMMEDIATE or VERY_URGENT patient.
+ * Deadlines are fixed on arrival, so no queue has to be re-sorted as time passes.
+ *
+ * Calling the next patient looks only at the heads of the doctor's own queue and the
+ * general queue, O(log n). Specialists see their referrals first and help out with the
+ * general queue when their own is empty or a general patient is overdue. When two
+ * doctors race for the same patient only one claim succeeds; the other moves on.
+ */
+public class ConsultationScheduler {
+
+    private static final String GENERAL = "";
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final Comparator<Ticket> CALL_ORDER =
+            Comparator.comparingInt((Ticket t) -> t.band)
+                      .thenComparingLong(t -> t.deadline)
+                      .thenComparingLong(t -> t.sequence);
+
+    /**
+     * One patient's place in one queue. Claimed exactly once, by a doctor or by a removal;
+     * a claimed ticket still found in a queue is dropped by whoever sees it next.
+     */
+    private static final class Ticket {
+        final Patient patient;
+        final Queue queue;
+        final TriageLevel triage;
+        final long arrival;
+        final long deadline;
+        // IMMEDIATE and VERY_URGENT get a band each; aging only reorders the levels below
+        final int band;
+        final long sequence;
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        Ticket(Patient patient, Queue queue, TriageLevel triage, long arrival, long sequence) {
+            this.patient = patient;
+            this.queue = queue;
+            this.triage = triage;
+            this.arrival = arrival;
+            this.deadline = arrival + triage.getMaxWaitMinutes() * MINUTE_MILLIS;
+            this.band = Math.min(triage.ordinal(), TriageLevel.URGENT.ordinal());
+            this.sequence = sequence;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    private static final class Queue {
+        final String specialization;
+        final ConcurrentSkipListMap<Ticket, Boolean> waiting = new ConcurrentSkipListMap<>(CALL_ORDER);
+        // Skip-list size() is a full walk
+        final AtomicInteger size = new AtomicInteger();
+
+        Queue(String specialization) {
+            this.specialization = specialization;
+        }
+
+        Ticket head() {
+            Map.Entry<Ticket, Boolean> first = waiting.firstEntry();
+            return first != null ? first.getKey() : null;
+        }
+
+        void add(Ticket ticket) {
+            waiting.put(ticket, Boolean.TRUE);
+            size.incrementAndGet();
+        }
+
+        void remove(Ticket ticket) {
+            if (waiting.remove(ticket) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Queue> queues = new ConcurrentHashMap<>();
+    // The live ticket of every waiting patient, so a patient who leaves is removed in O(log n)
+    private final ConcurrentMap<String, Ticket> tickets = new ConcurrentHashMap<>();
+    // Specialization each referred patient waits for, until the visit ends
+    private final ConcurrentMap<String, String> referrals = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Metrics
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder waitMillis = new LongAdder();
+    private final LongAdder overdueCalls = new LongAdder();
+
+    /**
+     * Put a patient at the back of their queue for their triage level, replacing any
+     * place they already had. Referred patients go to their specialization's queue.
+     */
+    public void enqueue(Patient patient, TriageLevel triage) {
+        String patientId = patient.getPatientId();
+        Queue queue = queue(referrals.get(patientId));
+        Ticket ticket = new Ticket(patient, queue, triage, System.currentTimeMillis(), sequence.getAndIncrement());
+        withdraw(tickets.put(patientId, ticket));
+        queue.add(ticket);
+    }
+
+    /**
+     * Send a patient to the queue of a specialization, or back to the general queue for
+     * null, for the rest of the visit. A waiting patient keeps the time already waited.
+     */
+    public void refer(String patientId, String specialization) {
+        if (key(specialization).equals(GENERAL)) {
+            referrals.remove(patientId);
+        } else {
+            referrals.put(patientId, specialization);
+        }
+
+        Ticket current = tickets.get(patientId);
+        if (current != null) {
+            move(current, queue(specialization), current.triage);
+        }
+    }
+
+    /**
+     * Change a waiting patient's triage level; they keep the time already waited
+     */
+    public void reprioritize(String patientId, TriageLevel triage) {
+        Ticket current = tickets.get(patientId);
+        if (current != null) {
+            move(current, current.queue, triage);
+        }
+    }
+
+    private void move(Ticket current, Queue target, TriageLevel triage) {
+        if ((current.queue == target && current.triage == triage) || !current.claim()) {
+            return;
+        }
+        current.queue.remove(current);
+        Ticket moved = new Ticket(current.patient, target, triage, current.arrival, current.sequence);
+        if (tickets.replace(current.patient.getPatientId(), current, moved)) {
+            target.add(moved);
+        }
+    }
+
+    /**
+     * Take the patient out of the queue, e.g. when they were called some other way or left
+     */
+    public boolean remove(String patientId) {
+        return withdraw(tickets.remove(patientId));
+    }
+
+    public boolean isQueued(String patientId) {
+        return tickets.containsKey(patientId);
+    }
+
+    /**
+     * The visit is over: leave the queue and forget any referral
+     */
+    public void discharge(String patientId) {
+        referrals.remove(patientId);
+        remove(patientId);
+    }
+
+    /**
+     * Claim the patient the doctor should see next, or null if nobody is waiting for
+     * them. Doctors who are not available are never given a patient.
+     */
+    public Patient callNext(Doctor doctor) {
+        if (!doctor.isAvailable()) {
+            return null;
+        }
+        Queue own = queues.get(key(doctor.getSpecialization()));
+        Queue general = queues.get(GENERAL);
+        if (own == general) {
+            own = null;
+        }
+
+        while (true) {
+            Ticket fromOwn = own != null ? own.head() : null;
+            Ticket fromGeneral = general != null ? general.head() : null;
+            Ticket next = fromOwn;
+            if (fromOwn == null || (fromGeneral != null && fromGeneral.deadline < System.currentTimeMillis()
+                    && CALL_ORDER.compare(fromGeneral, fromOwn) < 0)) {
+                next = fromGeneral;
+            }
+            if (next == null) {
+                return null;
+            }
+            boolean won = next.claim();
+            next.queue.remove(next);
+            if (won) {
+                tickets.remove(next.patient.getPatientId(), next);
+                recordCall(next);
+                return next.patient;
+            }
+        }
+    }
+
+    private boolean withdraw(Ticket ticket) {
+        if (ticket == null || !ticket.claim()) {
+            return false;
+        }
+        ticket.queue.remove(ticket);
+        return true;
+    }
+
+    private Queue queue(String specialization) {
+        return queues.computeIfAbsent(key(specialization),
+                key -> new Queue(key.equals(GENERAL) ? null : specialization.trim()));
+    }
+
+    private static String key(String specialization) {
+        return specialization == null ? GENERAL : specialization.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void recordCall(Ticket ticket) {
+        long now = System.currentTimeMillis();
+        calls.increment();
+        waitMillis.add(now - ticket.arrival);
+        if (now > ticket.deadline) {
+            overdueCalls.increment();
+        }
+    }
+
+    // Metrics
+    public int getWaitingCount() { return tickets.size(); }
+    public long getCallCount() { return calls.sum(); }
+    public long getOverdueCallCount() { return overdueCalls.sum(); }
+
+    /**
+     * Patients waiting for the specialization, or in the general queue for null
+     */
+    public int getWaitingCount(String specialization) {
+        Queue queue = queues.get(key(specialization));
+        return queue != null ? queue.size.get() : 0;
+    }
+
+    /**
+     * Waiting patients per specialization, with the general queue under "General"
+     */
+    public Map<String, Integer> getQueueSizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        for (Queue queue : queues.values()) {
+            sizes.merge(queue.specialization != null ? queue.specialization : "General", queue.size.get(), Integer::sum);
+        }
+        return sizes;
+    }
+
+    public double getAverageWaitMinutes() {
+        long called = calls.sum();
+        return called == 0 ? 0 : (double) waitMillis.sum() / MINUTE_MILLIS / called;
+    }
+}
@@ -3,40 +3,64 @@ package hu_hospital.management.system.services;
 import hu_hospital.management.system.database.*;
 import hu_hospital.management.system.models.*;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Hospital service that uses PostgreSQL database instead of in-memory storage
  */
 public class DatabaseHospitalService {
-    private static DatabaseHospitalService instance;
     
-    private DatabasePatientDAO patientDAO;
-    private DatabaseDoctorDAO doctorDAO;
-    private AtomicInteger testIdCounter;
-    private AtomicInteger prescriptionIdCounter;
+    // Page size for the no-argument pending list methods
+    public static final int PENDING_PAGE_SIZE = 100;
     
-    // In-memory storage for lab tests and prescriptions (can be moved to database later)
-    private Map<String, LabTest> labTests;
-    private Map<String, Prescription> prescriptions;
+    // Patient rows are re-read many times per visit; doctors almost never change
+    private static final int PATIENT_CACHE_SIZE = Integer.getInteger("hospital.cache.patients", 2000);
+    private static final long PATIENT_CACHE_TTL_SECONDS = 60;
+    private static final int DOCTOR_CACHE_SIZE = Integer.getInteger("hospital.cache.doctors", 200);
+    private static final long DOCTOR_CACHE_TTL_SECONDS = 15 * 60;
+    
+    private PatientDAO patientDAO;
+    private DoctorDAO doctorDAO;
+    private LabTestDAO labTestDAO;
+    private PrescriptionDAO prescriptionDAO;
+    private MedicationStockDAO stockDAO;
+    private DashboardDAO dashboardDAO;
+    
+    private final ReadThroughCache<String, Patient> patientCache;
+    private final ReadThroughCache<String, Doctor> doctorCache;
+    
+    // Mirror of today's queue_counters row, so the current number needs no query
+    private final QueueCounter queueCounter = new QueueCounter();
+    
+    private final HospitalEventBus eventBus = new HospitalEventBus();
+    private PgNotificationListener changeListener;
     
     private DatabaseHospitalService() {
-        patientDAO = new DatabasePatientDAO();
-        doctorDAO = new DatabaseDoctorDAO();
-        testIdCounter = new AtomicInteger(1);
-        prescriptionIdCounter = new AtomicInteger(1);
-        labTests = new HashMap<>();
-        prescriptions = new HashMap<>();
+        patientDAO = new PatientDAO();
+        doctorDAO = new DoctorDAO();
+        labTestDAO = new LabTestDAO();
+        prescriptionDAO = new PrescriptionDAO();
+        stockDAO = new MedicationStockDAO();
+        dashboardDAO = new DashboardDAO();
+        
+        patientCache = new ReadThroughCache<>("Patients", PATIENT_CACHE_SIZE,
+                PATIENT_CACHE_TTL_SECONDS, TimeUnit.SECONDS, patientDAO::findPatientById);
+        doctorCache = new ReadThroughCache<>("Doctors", DOCTOR_CACHE_SIZE,
+                DOCTOR_CACHE_TTL_SECONDS, TimeUnit.SECONDS, doctorDAO::findDoctorById);
         
         initializeSampleData();
+        seedQueueCounter();
+    }
+    
+    // Initialized on first use; class initialization guarantees safe publication
+    private static class InstanceHolder {
+        private static final DatabaseHospitalService INSTANCE = new DatabaseHospitalService();
     }
     
     public static DatabaseHospitalService getInstance() {
-        if (instance == null) {
-            instance = new DatabaseHospitalService();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
     
     private void initializeSampleData() {
@@ -60,10 +84,22 @@ public class DatabaseHospitalService {
         }
     }
     
+    /**
+     * Seed the queue counter mirror from today's counter in the database
+     */
+    private void seedQueueCounter() {
+        try {
+            queueCounter.observe(patientDAO.getCurrentQueueNumber());
+        } catch (SQLException e) {
+            System.err.println("⚠️ Could not read today's queue counter: " + e.getMessage());
+        }
+    }
+    
     // Patient Management
     public String registerPatient(Patient patient) {
         try {
             String patientId = patientDAO.insertPatient(patient);
+            queueCounter.observe(patient.getQueueNumber());
             System.out.println("✅ Patient registered in database: " + patientId);
             return patientId;
         } catch (SQLException e) {
@@ -73,9 +109,13 @@ public class DatabaseHospitalService {
         }
     }
     
+    /**
+     * Cached read; the record may be up to a minute old if another station changed it
+     * and no change notification arrived
+     */
     public Patient findPatientById(String patientId) {
         try {
-            return patientDAO.findPatientById(patientId);
+            return patientCache.get(patientId);
         } catch (SQLException e) {
             System.err.println("❌ Failed to find patient: " + e.getMessage());
             return null;
@@ -91,6 +131,21 @@ public class DatabaseHospitalService {
         }
     }
     
+    /**
+     * Patients matching a phone or ID prefix or a similar name, best matches first
+     */
+    public List<Patient> searchPatients(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            return new ArrayList<>();
+        }
+        try {
+            return patientDAO.searchPatients(query, limit);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to search patients: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
     public List<Patient> getAllPatients() {
         try {
             return patientDAO.getAllPatients();
@@ -100,6 +155,37 @@ public class DatabaseHospitalService {
         }
     }
     
+    /**
+     * One page of patients, newest first, starting after the given row (nulls for the first page)
+     */
+    public List<Patient> getPatientsPage(LocalDateTime afterRegistrationDate, String afterId, int limit) {
+        try {
+            return patientDAO.getPatientsPage(afterRegistrationDate, afterId, limit);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to get patients page: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    public void updatePatient(Patient patient) {
+        try {
+            patientDAO.updatePatient(patient);
+            System.out.println("✅ Patient updated: " + patient.getPatientId());
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to update patient: " + e.getMessage());
+        } finally {
+            patientCache.invalidate(patient.getPatientId());
+        }
+    }
+    
+    /**
+     * Last queue number issued today as this station knows it, without a query: the
+     * database's count at startup or this station's latest registration since
+     */
+    public int getCurrentQueueNumber() {
+        return queueCounter.current();
+    }
+    
     public List<Patient> getWaitingPatients() {
         try {
             return patientDAO.getWaitingPatients();
@@ -109,6 +195,17 @@ public class DatabaseHospitalService {
         }
     }
     
+    public void setTriageLevel(String patientId, TriageLevel level) {
+        try {
+            patientDAO.updateTriageLevel(patientId, level);
+            System.out.println("✅ Patient " + patientId + " triaged as " + level);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to update triage level: " + e.getMessage());
+        } finally {
+            patientCache.invalidate(patientId);
+        }
+    }
+    
     // Doctor Management
     public void addDoctor(Doctor doctor) {
         try {
@@ -130,71 +227,472 @@ public class DatabaseHospitalService {
     
     public Doctor findDoctorById(String doctorId) {
         try {
-            return doctorDAO.findDoctorById(doctorId);
+            return doctorCache.get(doctorId);
         } catch (SQLException e) {
             System.err.println("❌ Failed to find doctor: " + e.getMessage());
             return null;
         }
     }
     
-    // Lab Test Management (still in-memory for now)
+    public void updateDoctor(Doctor doctor) {
+        try {
+            doctorDAO.updateDoctor(doctor);
+            System.out.println("✅ Doctor updated: " + doctor.getFullName());
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to update doctor: " + e.getMessage());
+        } finally {
+            doctorCache.invalidate(doctor.getDoctorId());
+        }
+    }
+    
+    public void setDoctorAvailable(String doctorId, boolean available) {
+        try {
+            doctorDAO.updateAvailability(doctorId, available);
+            System.out.println("✅ Doctor " + doctorId + (available ? " is on duty" : " is off duty"));
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to update doctor availability: " + e.getMessage());
+        } finally {
+            doctorCache.invalidate(doctorId);
+        }
+    }
+    
+    // Lab Test Management
     public String orderLabTest(LabTest labTest) {
-        String testId = "TEST" + String.format("%04d", testIdCounter.getAndIncrement());
-        labTest.setTestId(testId);
-        labTests.put(testId, labTest);
-        
-        System.out.println("✅ Lab test ordered: " + testId);
-        return testId;
+        try {
+            String testId = labTestDAO.insertLabTest(labTest);
+            System.out.println("✅ Lab test ordered: " + testId);
+            transitionPatient(labTest.getPatientId(), PatientStatus.IN_LAB, false);
+            return testId;
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to order lab test: " + e.getMessage());
+            return null;
+        }
     }
     
+    /**
+     * First page of pending lab tests; use the paged overload for longer work lists
+     */
     public List<LabTest> getPendingLabTests() {
-        return labTests.values().stream()
-                .filter(test -> "ORDERED".equals(test.getStatus()) || "IN_PROGRESS".equals(test.getStatus()))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        return getPendingLabTests(0, PENDING_PAGE_SIZE);
+    }
+    
+    public List<LabTest> getPendingLabTests(int offset, int limit) {
+        try {
+            return labTestDAO.getPendingLabTests(offset, limit);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to get pending lab tests: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Move an ordered test to IN_PROGRESS. Returns false if another station already started it.
+     */
+    public boolean startLabTest(String testId) {
+        try {
+            return labTestDAO.startLabTest(testId);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to start lab test: " + e.getMessage());
+            return false;
+        }
     }
     
     public void completeLabTest(String testId, String results) {
-        LabTest test = labTests.get(testId);
-        if (test != null) {
-            test.setResults(results);
-            test.setStatus("COMPLETED");
-            test.setCompletionDate(java.time.LocalDateTime.now());
-            System.out.println("✅ Lab test completed: " + testId);
+        try {
+            if (labTestDAO.completeLabTest(testId, results)) {
+                System.out.println("✅ Lab test completed: " + testId);
+                labTestsCompleted(List.of(testId));
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to complete lab test: " + e.getMessage());
         }
     }
     
-    // Prescription Management (still in-memory for now)
+    /**
+     * The oldest ordered tests of each type that are in no batch yet, up to a page per
+     * type, grouped into analyzer batches
+     */
+    public List<LabBatch> getLabBatches() {
+        try {
+            return LabWorklist.proposeAll(labTestDAO.getOrderedLabTests(PENDING_PAGE_SIZE),
+                    LabWorklist.MAX_BATCH_SIZE, LabWorklist.BATCH_WINDOW, LocalDateTime.now());
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to get lab batches: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Start the oldest batch of this test type in one transaction. Returns null if none
+     * is waiting or another station started one of its tests first.
+     */
+    public LabBatch startLabBatch(String testType) {
+        try {
+            List<LabTest> ordered = labTestDAO.getOrderedLabTests(testType.trim(), LabWorklist.MAX_BATCH_SIZE);
+            List<LabBatch> proposals = LabWorklist.propose(ordered, LabWorklist.MAX_BATCH_SIZE,
+                    LabWorklist.BATCH_WINDOW, LocalDateTime.now(), 1);
+            if (proposals.isEmpty()) {
+                return null;
+            }
+            LabBatch proposal = proposals.get(0);
+            String batchId = labTestDAO.startLabBatch(proposal.getTestIds());
+            if (batchId == null) {
+                System.err.println("⚠️ Lab batch not started: another station took some of its tests");
+                return null;
+            }
+            System.out.println("✅ Lab batch started: " + batchId + " (" + proposal.getSize() + " tests)");
+            return new LabBatch(batchId, proposal.getTestType(), labTestDAO.getLabBatch(batchId),
+                    LocalDateTime.now(), true);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to start lab batch: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Record the results of a whole running batch in one transaction; false if results
+     * do not cover every test still running in it
+     */
+    public boolean completeLabBatch(String batchId, Map<String, String> results) {
+        try {
+            if (labTestDAO.completeLabBatch(batchId, results)) {
+                System.out.println("✅ Lab batch completed: " + batchId);
+                labTestsCompleted(results.keySet());
+                return true;
+            }
+            return false;
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to complete lab batch: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Record many results in one statement; returns the IDs of the tests completed, which
+     * leaves out unknown and already completed tests. Throws IllegalStateException if the
+     * results could not be written at all, so a caller such as LabResultIngestor does not
+     * take an outage for a batch of unknown tests.
+     */
+    public Set<String> completeLabTests(Map<String, String> results) {
+        Set<String> completed;
+        try {
+            completed = labTestDAO.completeLabTests(results);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to complete lab tests: " + e.getMessage());
+            throw new IllegalStateException("Database error: " + e.getMessage(), e);
+        }
+        if (!completed.isEmpty()) {
+            labTestsCompleted(completed);
+        }
+        return completed;
+    }
+    
+    /**
+     * Send the patients of completed tests back to wait for their doctor
+     */
+    private void labTestsCompleted(Collection<String> testIds) {
+        try {
+            for (String patientId : patientDAO.updatePatientStatusForLabTests(testIds, PatientStatus.WAITING)) {
+                patientCache.invalidate(patientId);
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to update patient status: " + e.getMessage());
+        }
+    }
+    
+    // Prescription Management
     public String createPrescription(Prescription prescription) {
-        String prescriptionId = "PRES" + String.format("%04d", prescriptionIdCounter.getAndIncrement());
-        prescription.setPrescriptionId(prescriptionId);
-        prescriptions.put(prescriptionId, prescription);
-        
-        System.out.println("✅ Prescription created: " + prescriptionId);
-        return prescriptionId;
+        try {
+            String prescriptionId = prescriptionDAO.insertPrescription(prescription);
+            System.out.println("✅ Prescription created: " + prescriptionId);
+            transitionPatient(prescription.getPatientId(), PatientStatus.PRESCRIPTION_READY, false);
+            return prescriptionId;
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to create prescription: " + e.getMessage());
+            return null;
+        }
     }
     
+    /**
+     * First page of pending prescriptions; use the paged overload for longer lists
+     */
     public List<Prescription> getPendingPrescriptions() {
-        return prescriptions.values().stream()
-                .filter(p -> "PRESCRIBED".equals(p.getStatus()))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        return getPendingPrescriptions(0, PENDING_PAGE_SIZE);
+    }
+    
+    public List<Prescription> getPendingPrescriptions(int offset, int limit) {
+        try {
+            return prescriptionDAO.getPendingPrescriptions(offset, limit);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to get pending prescriptions: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Pending prescriptions with patient and doctor names, joined by the
+     * pending_prescriptions view in the same query that pages them.
+     */
+    public List<PrescriptionSummary> getPendingPrescriptionSummaries() {
+        return getPendingPrescriptionSummaries(0, PENDING_PAGE_SIZE);
+    }
+    
+    public List<PrescriptionSummary> getPendingPrescriptionSummaries(int offset, int limit) {
+        try {
+            return prescriptionDAO.getPendingPrescriptionSummaries(offset, limit);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to get pending prescriptions: " + e.getMessage());
+            return new ArrayList<>();
+        }
     }
     
-    public void dispensePrescription(String prescriptionId) {
-        Prescription prescription = prescriptions.get(prescriptionId);
-        if (prescription != null) {
-            prescription.setStatus("DISPENSED");
+    /**
+     * Dispense a prescription and take its medications out of stock in one transaction.
+     * Returns false if it is not waiting to be dispensed or any medication is short.
+     */
+    public boolean dispensePrescription(String prescriptionId) {
+        try {
+            List<StockLevel> nowLow = prescriptionDAO.dispensePrescription(prescriptionId);
+            if (nowLow == null) {
+                return false;
+            }
             System.out.println("✅ Prescription dispensed: " + prescriptionId);
+            reportLowStock(nowLow);
+            Prescription prescription = prescriptionDAO.findPrescriptionById(prescriptionId);
+            if (prescription != null) {
+                transitionPatient(prescription.getPatientId(), PatientStatus.COMPLETED, false);
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to dispense prescription: " + e.getMessage());
+            return false;
         }
     }
     
     public Prescription findPrescriptionById(String prescriptionId) {
-        return prescriptions.get(prescriptionId);
+        try {
+            return prescriptionDAO.findPrescriptionById(prescriptionId);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to find prescription: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // Pharmacy Inventory
+    /**
+     * Each medication against the stock of its item, with one query for all of them
+     */
+    public List<PharmacyInventory.Availability> checkStock(List<Medication> medications) {
+        Map<String, Integer> needs = new HashMap<>();
+        for (Medication medication : medications) {
+            needs.merge(medication.getStockKey(), medication.getUnitsNeeded(), Integer::sum);
+        }
+        Map<String, StockLevel> levels;
+        try {
+            levels = stockDAO.getStockLevels(needs.keySet());
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to check stock: " + e.getMessage());
+            levels = Map.of();
+        }
+        List<PharmacyInventory.Availability> availability = new ArrayList<>();
+        for (Medication medication : medications) {
+            availability.add(new PharmacyInventory.Availability(medication,
+                    needs.get(medication.getStockKey()), levels.get(medication.getStockKey())));
+        }
+        return availability;
+    }
+    
+    public void receiveStock(StockLot delivery) {
+        try {
+            stockDAO.receiveStock(delivery);
+            System.out.println("📦 Stock received: " + delivery);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to receive stock: " + e.getMessage());
+        }
+    }
+    
+    public void setReorderLevel(String medicationName, String strength, int reorderLevel) {
+        try {
+            stockDAO.setReorderLevel(medicationName, strength, reorderLevel);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to set reorder level: " + e.getMessage());
+        }
+    }
+    
+    public List<StockLevel> getLowStock() {
+        try {
+            return stockDAO.getLowStock();
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to get low stock: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    private void reportLowStock(List<StockLevel> levels) {
+        for (StockLevel level : levels) {
+            System.out.println("⚠️ Low stock: " + level);
+            eventBus.publish(new HospitalEvent.StockLow(level));
+        }
+    }
+    
+    // Dashboard
+    /**
+     * All dashboard counters and today's queue from a single query
+     */
+    public DashboardSnapshot getDashboardSnapshot() {
+        try {
+            return dashboardDAO.getDashboardSnapshot();
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to load dashboard: " + e.getMessage());
+            return DashboardSnapshot.empty();
+        }
+    }
+    
+    // Status Management
+    /**
+     * Move a patient to status. Throws IllegalStateException for a move the workflow does
+     * not allow, e.g. COMPLETED to IN_LAB.
+     */
+    public void updatePatientStatus(String patientId, PatientStatus status) {
+        if (transitionPatient(patientId, status, true)) {
+            System.out.println("📝 Patient status updated: " + patientId + " -> " + status);
+        }
     }
     
-    // Status Management (simplified for now)
-    public void updatePatientStatus(String patientId, String status) {
-        System.out.println("📝 Patient status updated: " + patientId + " -> " + status);
-        // In a full implementation, this would update the database
+    /**
+     * Move a patient with one conditional UPDATE that only matches the statuses
+     * PatientStatus allows to move to status, as HospitalService.transitionPatient does in
+     * memory. An illegal move throws when strict; otherwise the patient stays where they are.
+     */
+    private boolean transitionPatient(String patientId, PatientStatus status, boolean strict) {
+        if (patientId == null) {
+            return false;
+        }
+        try {
+            if (patientDAO.updatePatientStatus(patientId, status)) {
+                return true;
+            }
+            if (strict) {
+                Patient patient = patientDAO.findPatientById(patientId);
+                if (patient != null && patient.getStatus() != status) {
+                    throw new IllegalStateException("Patient " + patientId + " cannot move from "
+                            + patient.getStatus() + " to " + status);
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to update patient status: " + e.getMessage());
+            return false;
+        } finally {
+            patientCache.invalidate(patientId);
+        }
+    }
+    
+    // Caches
+    public ReadThroughCache<String, Patient> getPatientCache() {
+        return patientCache;
+    }
+    
+    public ReadThroughCache<String, Doctor> getDoctorCache() {
+        return doctorCache;
+    }
+    
+    /**
+     * Forget every cached row, e.g. after missing change notifications
+     */
+    public void invalidateCaches() {
+        patientCache.invalidateAll();
+        doctorCache.invalidateAll();
+    }
+    
+    /**
+     * Print cache hit rates, evictions and load latency
+     */
+    public void printCacheStats() {
+        System.out.println("📊 Caches:");
+        System.out.println("   " + patientCache);
+        System.out.println("   " + doctorCache);
+    }
+    
+    // Change Notifications
+    public HospitalEventBus getEventBus() {
+        return eventBus;
+    }
+    
+    /**
+     * Start turning LISTEN/NOTIFY messages from the database triggers into events on the bus,
+     * so every station sees lab test and prescription changes made anywhere
+     */
+    public synchronized void startChangeNotifications() {
+        if (changeListener == null) {
+            changeListener = new PgNotificationListener(this::onDatabaseChange, () -> {
+                // Changes made while disconnected were not delivered
+                invalidateCaches();
+                eventBus.publish(new HospitalEvent.ResyncRequired());
+            });
+            changeListener.start();
+        }
+    }
+    
+    public synchronized void stopChangeNotifications() {
+        if (changeListener != null) {
+            changeListener.close();
+            changeListener = null;
+        }
+    }
+    
+    /**
+     * Translate one trigger notification into a typed event, loading the changed row
+     */
+    private void onDatabaseChange(PgNotificationListener.Change change) {
+        try {
+            HospitalEvent event = switch (change.table()) {
+                case "patients" -> {
+                    // A bulk import announces itself once; too many rows to load one by one
+                    if ("IMPORT".equals(change.operation())) {
+                        patientCache.invalidateAll();
+                        yield new HospitalEvent.ResyncRequired();
+                    }
+                    patientCache.invalidate(change.id());
+                    Patient patient = patientDAO.findPatientById(change.id());
+                    if (patient == null) {
+                        yield null;
+                    }
+                    yield "INSERT".equals(change.operation())
+                            ? new HospitalEvent.PatientRegistered(patient)
+                            : new HospitalEvent.StatusChanged(patient,
+                                    PatientStatus.fromColumn(change.oldStatus()),
+                                    PatientStatus.fromColumn(change.newStatus()));
+                }
+                case "lab_tests" -> {
+                    LabTest test = labTestDAO.findLabTestById(change.id());
+                    if (test == null) {
+                        yield null;
+                    }
+                    LabTestStatus status = LabTestStatus.fromColumn(change.newStatus());
+                    yield status == LabTestStatus.IN_PROGRESS ? new HospitalEvent.LabTestStarted(test)
+                            : status == LabTestStatus.COMPLETED ? new HospitalEvent.LabTestCompleted(test)
+                            : new HospitalEvent.LabTestOrdered(test);
+                }
+                case "prescriptions" -> {
+                    Prescription prescription = prescriptionDAO.findPrescriptionById(change.id());
+                    if (prescription == null) {
+                        yield null;
+                    }
+                    yield PrescriptionStatus.fromColumn(change.newStatus()) == PrescriptionStatus.PRESCRIBED
+                            ? new HospitalEvent.PrescriptionCreated(prescription)
+                            : new HospitalEvent.PrescriptionDispensed(prescription);
+                }
+                default -> null;
+            };
+            if (event != null) {
+                eventBus.publish(event);
+            }
+        } catch (SQLException e) {
+            System.err.println("⚠️ Could not load changed row " + change + ": " + e.getMessage());
+            invalidateCaches();
+            eventBus.publish(new HospitalEvent.ResyncRequired());
+        }
     }
     
     // Database connection test
@@ -0,0 +1,41 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.LabTest;
+import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.PatientStatus;
+import hu_hospital.management.system.models.Prescription;
+import hu_hospital.management.system.models.StockLevel;
+import hu_hospital.management.system.models.TriageLevel;
+
+/**
+ * Domain events published on the HospitalEventBus after a change has been applied.
+ * Screens subscribe to the ones they display and patch their tables in place.
+ */
+public sealed interface HospitalEvent {
+
+    record PatientRegistered(Patient patient) implements HospitalEvent {}
+
+    record StatusChanged(Patient patient, PatientStatus oldStatus, PatientStatus newStatus) implements HospitalEvent {}
+
+    record TriageChanged(Patient patient, TriageLevel oldLevel, TriageLevel newLevel) implements HospitalEvent {}
+
+    record LabTestOrdered(LabTest labTest) implements HospitalEvent {}
+
+    record LabTestStarted(LabTest labTest) implements HospitalEvent {}
+
+    record LabTestCompleted(LabTest labTest) implements HospitalEvent {}
+
+    record PrescriptionCreated(Prescription prescription) implements HospitalEvent {}
+
+    record PrescriptionDispensed(Prescription prescription) implements HospitalEvent {}
+
+    /**
+     * A pharmacy item fell below its reorder level; raised once until it is restocked
+     */
+    record StockLow(StockLevel level) implements HospitalEvent {}
+
+    /**
+     * Changes may have been missed (e.g. the database connection dropped); reload from scratch
+     */
+    record ResyncRequired() implements HospitalEvent {}
+}
@@ -0,0 +1,61 @@
+package hu_hospital.management.system.services;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Publishes HospitalEvents to subscribers. Events are delivered on the publishing
+ * thread unless the subscriber asks for an executor (e.g. Platform::runLater).
+ * A failing subscriber is reported and never stops delivery to the others.
+ */
+public class HospitalEventBus {
+
+    /**
+     * Handle returned by subscribe; closing it stops delivery
+     */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final List<Listener<?>> listeners = new CopyOnWriteArrayList<>();
+
+    public <E extends HospitalEvent> Subscription subscribe(Class<E> type, Consumer<? super E> handler) {
+        return subscribe(type, handler, Runnable::run);
+    }
+
+    public <E extends HospitalEvent> Subscription subscribe(Class<E> type, Consumer<? super E> handler,
+                                                            Executor executor) {
+        Listener<E> listener = new Listener<>(type, handler, executor);
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    public void publish(HospitalEvent event) {
+        for (Listener<?> listener : listeners) {
+            listener.deliver(event);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return listeners.size();
+    }
+
+    private record Listener<E extends HospitalEvent>(Class<E> type, Consumer<? super E> handler, Executor executor) {
+        void deliver(HospitalEvent event) {
+            if (!type.isInstance(event)) {
+                return;
+            }
+            E typed = type.cast(event);
+            executor.execute(() -> {
+                try {
+                    handler.accept(typed);
+                } catch (RuntimeException e) {
+                    System.err.println("⚠️ Event handler failed for " + event + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,889 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal that makes the in-memory HospitalService survive restarts.
+ *
+ * Every mutation is encoded into an in-memory buffer and the caller returns at once;
+ * a background thread writes whatever has accumulated to journal.log and forces it
+ * to disk, so one fsync covers every record appended while the previous one was in
+ * flight (group commit). A crash can lose at most the records of the last few
+ * milliseconds; call sync() where that matters, e.g. on shutdown.
+ *
+ * Records are framed as [length][CRC32][type][fields]. On startup the snapshot is
+ * replayed first, then the log; a torn record at the end of the log (power loss
+ * mid-write) is cut off. Once the log passes COMPACT_THRESHOLD_BYTES the current
+ * state is written as a new HospitalSnapshot and the log starts again from empty.
+ * Every record sets state rather than changing it, so replaying a record twice is harmless.
+ *
+ * -Dhospital.snapshot.lazy=true leaves medical histories and lab results in the mapped
+ * snapshot until they are read. Windows cannot replace a file that is still mapped, so
+ * there compaction may fail until those values have been read or collected; the log
+ * then simply keeps growing until the next attempt.
+ */
+public class HospitalJournal implements AutoCloseable {
+    public static final String LOG_FILE = "journal.log";
+    public static final String SNAPSHOT_FILE = "snapshot.dat";
+    public static final long COMPACT_THRESHOLD_BYTES = 64L * 1024 * 1024;
+    public static final boolean LAZY_SNAPSHOT = Boolean.getBoolean("hospital.snapshot.lazy");
+
+    private static final int HEADER_BYTES = 8;
+
+    private static final byte DOCTOR_ADDED = 1;
+    private static final byte PATIENT_REGISTERED = 2;
+    private static final byte PATIENT_STATUS_CHANGED = 3;
+    private static final byte LAB_TEST_ORDERED = 4;
+    private static final byte LAB_TEST_STARTED = 5;
+    private static final byte LAB_TEST_COMPLETED = 6;
+    private static final byte PRESCRIPTION_CREATED = 7;
+    private static final byte PRESCRIPTION_DISPENSED = 8;
+    private static final byte PATIENT_TRIAGED = 9;
+    private static final byte LAB_BATCH_STARTED = 10;
+    private static final byte LAB_BATCH_COMPLETED = 11;
+    private static final byte STOCK_ITEM_SET = 12;
+    private static final byte STOCK_LOT_SET = 13;
+
+    /**
+     * One method per journaled mutation. Records are replayed into a Handler on startup,
+     * and a snapshot is the current state written out through one.
+     */
+    public interface Handler {
+        void doctorAdded(Doctor doctor);
+
+        void patientRegistered(Patient patient);
+
+        void patientStatusChanged(String patientId, PatientStatus status, int queueNumber);
+
+        void patientTriaged(String patientId, TriageLevel level);
+
+        void labTestOrdered(LabTest test);
+
+        void labTestStarted(String testId);
+
+        void labTestCompleted(String testId, String results, LocalDateTime completedAt);
+
+        /** One record for the whole batch, so after a crash either all of it started or none */
+        void labBatchStarted(String batchId, List<String> testIds, LocalDateTime startedAt);
+
+        /**
+         * results maps test IDs to their results, in one record like labBatchStarted; batchId
+         * is null for results completed in bulk outside a batch, e.g. from an analyzer
+         */
+        void labBatchCompleted(String batchId, Map<String, String> results, LocalDateTime completedAt);
+
+        void prescriptionCreated(Prescription prescription);
+
+        /** drawn holds the stock lots the medications came from, in their state after the draw */
+        void prescriptionDispensed(String prescriptionId, List<StockLot> drawn);
+
+        /** A pharmacy catalog item and its reorder level */
+        void stockItemSet(String medicationName, String strength, int reorderLevel);
+
+        /** A stock lot in its new state; a lot whose quantity is 0 is gone */
+        void stockLotSet(StockLot lot);
+    }
+
+    private final Path directory;
+    private final FileChannel log;
+    private final Consumer<Handler> snapshotSource;
+    private final Thread flusher;
+
+    // Guarded by this
+    private final Encoder pending = new Encoder();
+    private ByteBuffer spare = ByteBuffer.allocate(pending.buffer.capacity());
+    private long appendedRecords;
+    private long flushedRecords;
+    private long logSize;
+    private boolean compactRequested;
+    private boolean flusherIdle;
+    private boolean closed;
+    private IOException failure;
+
+    private HospitalJournal(Path directory, FileChannel log, long logSize, Consumer<Handler> snapshotSource) {
+        this.directory = directory;
+        this.log = log;
+        this.logSize = logSize;
+        this.snapshotSource = snapshotSource;
+        this.compactRequested = logSize > COMPACT_THRESHOLD_BYTES;
+        this.flusher = new Thread(this::flushLoop, "hospital-journal");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Directory used by the standalone app; -Dhospital.data.dir overrides it
+     */
+    public static Path defaultDirectory() {
+        return Path.of(System.getProperty("hospital.data.dir",
+                Path.of(System.getProperty("user.home"), ".hu-hospital").toString()));
+    }
+
+    /**
+     * Replay the snapshot and the log in directory into replay, then start journaling.
+     * snapshotSource must write the complete current state into the handler it is given.
+     */
+    public static HospitalJournal open(Path directory, Handler replay, Consumer<Handler> snapshotSource)
+            throws IOException {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+
+        long records = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                if (HospitalSnapshot.isSnapshot(channel)) {
+                    records += HospitalSnapshot.read(channel, replay, LAZY_SNAPSHOT);
+                } else {
+                    // Snapshots from before the binary format are plain journal records
+                    ReplayResult result = replay(channel, replay);
+                    if (result.validBytes() != channel.size()) {
+                        throw new IOException("Snapshot " + snapshot + " is damaged at byte " + result.validBytes());
+                    }
+                    records += result.records();
+                }
+            }
+        }
+
+        FileChannel log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ReplayResult tail = replay(log, replay);
+        records += tail.records();
+        if (tail.validBytes() < log.size()) {
+            System.err.println("⚠️ Journal ends with a torn record; dropping the last "
+                    + (log.size() - tail.validBytes()) + " bytes");
+            log.truncate(tail.validBytes());
+            log.force(true);
+        }
+        log.position(tail.validBytes());
+
+        System.out.println("💾 Recovered " + records + " journal records from " + directory + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        HospitalJournal journal = new HospitalJournal(directory, log, tail.validBytes(), snapshotSource);
+        journal.flusher.start();
+        return journal;
+    }
+
+    // Appending - called by HospitalService while it holds the record being changed
+
+    public synchronized void doctorAdded(Doctor doctor) {
+        pending.doctorAdded(doctor);
+        appended();
+    }
+
+    public synchronized void patientRegistered(Patient patient) {
+        pending.patientRegistered(patient);
+        appended();
+    }
+
+    public synchronized void patientStatusChanged(String patientId, PatientStatus status, int queueNumber) {
+        pending.patientStatusChanged(patientId, status, queueNumber);
+        appended();
+    }
+
+    public synchronized void patientTriaged(String patientId, TriageLevel level) {
+        pending.patientTriaged(patientId, level);
+        appended();
+    }
+
+    public synchronized void labTestOrdered(LabTest test) {
+        pending.labTestOrdered(test);
+        appended();
+    }
+
+    public synchronized void labTestStarted(String testId) {
+        pending.labTestStarted(testId);
+        appended();
+    }
+
+    public synchronized void labTestCompleted(String testId, String results, LocalDateTime completedAt) {
+        pending.labTestCompleted(testId, results, completedAt);
+        appended();
+    }
+
+    public synchronized void labBatchStarted(String batchId, List<String> testIds, LocalDateTime startedAt) {
+        pending.labBatchStarted(batchId, testIds, startedAt);
+        appended();
+    }
+
+    public synchronized void labBatchCompleted(String batchId, Map<String, String> results, LocalDateTime completedAt) {
+        pending.labBatchCompleted(batchId, results, completedAt);
+        appended();
+    }
+
+    public synchronized void prescriptionCreated(Prescription prescription) {
+        pending.prescriptionCreated(prescription);
+        appended();
+    }
+
+    public synchronized void prescriptionDispensed(String prescriptionId, List<StockLot> drawn) {
+        pending.prescriptionDispensed(prescriptionId, drawn);
+        appended();
+    }
+
+    public synchronized void stockItemSet(String medicationName, String strength, int reorderLevel) {
+        pending.stockItemSet(medicationName, strength, reorderLevel);
+        appended();
+    }
+
+    public synchronized void stockLotSet(StockLot lot) {
+        pending.stockLotSet(lot);
+        appended();
+    }
+
+    private void appended() {
+        appendedRecords++;
+        // Only the first record of a batch needs to wake the flusher
+        if (flusherIdle) {
+            flusherIdle = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until every record appended so far is on disk. Throws while writes are failing
+     * (the flusher keeps retrying them) or if the flusher has stopped with records unwritten.
+     */
+    public synchronized void sync() throws IOException, InterruptedException {
+        long target = appendedRecords;
+        while (flushedRecords < target && failure == null && flusher.isAlive()) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (flushedRecords < target) {
+            throw new IOException("Journal writer has stopped; " + (target - flushedRecords) + " records were not written");
+        }
+    }
+
+    /**
+     * Write a fresh snapshot and empty the log at the next opportunity
+     */
+    public synchronized void requestCompaction() {
+        compactRequested = true;
+        notifyAll();
+    }
+
+    public synchronized long getLogSize() {
+        return logSize;
+    }
+
+    /**
+     * Flush what is pending and close the log; throws if the last write had failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            flushBatches();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Journal writer stopped: " + e);
+            synchronized (this) {
+                failure = new IOException("Journal writer stopped", e);
+                notifyAll();
+            }
+        }
+    }
+
+    private void flushBatches() {
+        while (true) {
+            ByteBuffer batch;
+            long batchRecords;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !compactRequested && !closed) {
+                        flusherIdle = true;
+                        wait();
+                    }
+                    flusherIdle = false;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (compactRequested) {
+                    compactLocked();
+                    if (closed && failure != null) {
+                        return; // the log could not be emptied; close reports the failure
+                    }
+                    continue;
+                }
+                if (pending.isEmpty()) {
+                    return; // closed and nothing left to write
+                }
+                // Appenders fill the spare buffer while this batch is written
+                batch = pending.swap(spare);
+                spare = null;
+                batchRecords = appendedRecords;
+            }
+
+            boolean written;
+            try {
+                batch.flip();
+                written = writeBatch(batch, batchRecords);
+            } finally {
+                batch.clear();
+                synchronized (this) {
+                    spare = batch;
+                }
+            }
+            if (!written) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write one batch, retrying until it is on disk. A failed write may leave part of the
+     * batch in the log, and replay stops at a torn record, so the log is cut back to its
+     * last good size before each retry. Meanwhile the failure is latched for sync and
+     * close. Returns false if the journal was closed, or interrupted, before the batch
+     * could be written.
+     */
+    private boolean writeBatch(ByteBuffer batch, long batchRecords) {
+        int bytes = batch.remaining();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                while (batch.hasRemaining()) {
+                    log.write(batch);
+                }
+                log.force(false);
+                synchronized (this) {
+                    failure = null;
+                    flushedRecords = batchRecords;
+                    logSize += bytes;
+                    compactRequested = logSize > COMPACT_THRESHOLD_BYTES;
+                    notifyAll();
+                }
+                return true;
+            } catch (IOException e) {
+                System.err.println("❌ Journal write failed (attempt " + attempt + "): " + e.getMessage());
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                    if (closed) {
+                        return false;
+                    }
+                    try {
+                        wait(Math.min(attempt * 100L, 5000L));
+                    } catch (InterruptedException interrupted) {
+                        return false;
+                    }
+                }
+                try {
+                    long goodSize = getLogSize();
+                    log.truncate(goodSize);
+                    log.position(goodSize);
+                } catch (IOException ignored) {
+                    // The next attempt fails the same way and waits again
+                }
+                batch.rewind();
+            }
+        }
+    }
+
+    /**
+     * Write the current state as the new snapshot and start an empty log. Appenders wait
+     * meanwhile. Records still pending go into the fresh log with the next flush: the
+     * snapshot may already hold their changes, but replaying a record twice is harmless.
+     */
+    private void compactLocked() {
+        compactRequested = false;
+        long start = System.nanoTime();
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            HospitalSnapshot.Writer writer = new HospitalSnapshot.Writer(out);
+            snapshotSource.accept(writer);
+            writer.finish();
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            // The old snapshot and log are untouched, so nothing is lost; try again later
+            System.err.println("❌ Journal compaction failed: " + e);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+
+        try {
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("❌ Journal compaction failed: " + e.getMessage());
+            return;
+        }
+        try {
+            log.truncate(0);
+            log.position(0);
+            log.force(true);
+        } catch (IOException e) {
+            // Replaying the old log over the new snapshot would roll changes back, so
+            // writes stay failed until a later compaction empties the log
+            System.err.println("❌ Journal compaction failed: " + e.getMessage());
+            failure = e;
+            compactRequested = true;
+            notifyAll();
+            try {
+                wait(1000);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        long dropped = logSize;
+        logSize = 0;
+        failure = null;
+        System.out.println("💾 Journal compacted (" + dropped / 1024 + " KB log folded into snapshot) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Reading
+
+    private record ReplayResult(long records, long validBytes) {
+    }
+
+    /**
+     * Replay every intact record of the file; stops at the first torn or corrupt one
+     */
+    private static ReplayResult replay(FileChannel channel, Handler handler) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return new ReplayResult(0, 0);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32 crc = new CRC32();
+        long records = 0;
+
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int recordStart = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                return new ReplayResult(records, recordStart);
+            }
+
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return new ReplayResult(records, recordStart);
+            }
+
+            decode(payload, handler);
+            buffer.position(buffer.position() + length);
+            records++;
+        }
+        return new ReplayResult(records, buffer.position());
+    }
+
+    private static void decode(ByteBuffer in, Handler handler) throws IOException {
+        byte type = in.get();
+        switch (type) {
+            case DOCTOR_ADDED -> {
+                Doctor doctor = new Doctor(getString(in), getString(in), getString(in), getString(in),
+                        getString(in), getString(in));
+                doctor.setAvailable(in.get() != 0);
+                handler.doctorAdded(doctor);
+            }
+            case PATIENT_REGISTERED -> {
+                Patient patient = new Patient();
+                patient.setPatientId(getString(in));
+                patient.setFirstName(getString(in));
+                patient.setLastName(getString(in));
+                patient.setDateOfBirth(getDate(in));
+                patient.setGender(getString(in));
+                patient.setPhoneNumber(getString(in));
+                patient.setEmail(getString(in));
+                patient.setAddress(getString(in));
+                patient.setEmergencyContact(getString(in));
+                patient.setMedicalHistory(getString(in));
+                patient.setRegistrationDate(getDateTime(in));
+                patient.setQueueNumber(in.getInt());
+                patient.setStatus(PatientStatus.fromColumn(getString(in)));
+                // Records written before triage levels existed end here
+                if (in.hasRemaining()) {
+                    patient.setTriageLevel(TriageLevel.values()[in.get()]);
+                }
+                handler.patientRegistered(patient);
+            }
+            case PATIENT_STATUS_CHANGED -> handler.patientStatusChanged(getString(in),
+                    PatientStatus.fromColumn(getString(in)), in.getInt());
+            case PATIENT_TRIAGED -> handler.patientTriaged(getString(in), TriageLevel.values()[in.get()]);
+            case LAB_TEST_ORDERED -> {
+                LabTest test = new LabTest();
+                test.setTestId(getString(in));
+                test.setPatientId(getString(in));
+                test.setTestType(getString(in));
+                test.setDescription(getString(in));
+                test.setOrderDate(getDateTime(in));
+                test.setCompletionDate(getDateTime(in));
+                test.setResults(getString(in));
+                test.setStatus(LabTestStatus.fromColumn(getString(in)));
+                test.setOrderedBy(getString(in));
+                handler.labTestOrdered(test);
+            }
+            case LAB_TEST_STARTED -> handler.labTestStarted(getString(in));
+            case LAB_TEST_COMPLETED -> handler.labTestCompleted(getString(in), getString(in), getDateTime(in));
+            case LAB_BATCH_STARTED -> {
+                String batchId = getString(in);
+                LocalDateTime startedAt = getDateTime(in);
+                int count = in.getInt();
+                List<String> testIds = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    testIds.add(getString(in));
+                }
+                handler.labBatchStarted(batchId, testIds, startedAt);
+            }
+            case LAB_BATCH_COMPLETED -> {
+                String batchId = getString(in);
+                LocalDateTime completedAt = getDateTime(in);
+                int count = in.getInt();
+                Map<String, String> results = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    results.put(getString(in), getString(in));
+                }
+                handler.labBatchCompleted(batchId, results, completedAt);
+            }
+            case PRESCRIPTION_CREATED -> {
+                Prescription prescription = new Prescription();
+                prescription.setPrescriptionId(getString(in));
+                prescription.setPatientId(getString(in));
+                prescription.setDoctorId(getString(in));
+                prescription.setPrescriptionDate(getDateTime(in));
+                prescription.setDiagnosis(getString(in));
+                prescription.setInstructions(getString(in));
+                prescription.setStatus(PrescriptionStatus.fromColumn(getString(in)));
+                int medications = in.getInt();
+                for (int i = 0; i < medications; i++) {
+                    prescription.addMedication(new Medication(getString(in), getString(in), getString(in),
+                            in.getInt(), getString(in)));
+                }
+                handler.prescriptionCreated(prescription);
+            }
+            case PRESCRIPTION_DISPENSED -> {
+                String prescriptionId = getString(in);
+                // Records written before the pharmacy kept stock end here
+                List<StockLot> drawn = new ArrayList<>();
+                if (in.hasRemaining()) {
+                    int count = in.getInt();
+                    for (int i = 0; i < count; i++) {
+                        drawn.add(getLot(in));
+                    }
+                }
+                handler.prescriptionDispensed(prescriptionId, drawn);
+            }
+            case STOCK_ITEM_SET -> handler.stockItemSet(getString(in), getString(in), in.getInt());
+            case STOCK_LOT_SET -> handler.stockLotSet(getLot(in));
+            default -> throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static StockLot getLot(ByteBuffer in) {
+        return new StockLot(getString(in), getString(in), getString(in), getDate(in), in.getInt());
+    }
+
+    private static LocalDate getDate(ByteBuffer in) {
+        return in.get() == 0 ? null : LocalDate.ofEpochDay(in.getLong());
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer in) {
+        return in.get() == 0 ? null : LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+    }
+
+    // Writing
+
+    /**
+     * Encodes records into a growable buffer
+     */
+    private static final class Encoder implements Handler {
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private int recordStart;
+
+        boolean isEmpty() {
+            return buffer.position() == 0;
+        }
+
+        void clear() {
+            buffer.clear();
+        }
+
+        /**
+         * Hand out the filled buffer and continue in replacement
+         */
+        ByteBuffer swap(ByteBuffer replacement) {
+            ByteBuffer filled = buffer;
+            buffer = replacement;
+            return filled;
+        }
+
+        @Override
+        public void doctorAdded(Doctor doctor) {
+            begin(DOCTOR_ADDED);
+            putString(doctor.getDoctorId());
+            putString(doctor.getFirstName());
+            putString(doctor.getLastName());
+            putString(doctor.getSpecialization());
+            putString(doctor.getPhoneNumber());
+            putString(doctor.getEmail());
+            ensure(1);
+            buffer.put((byte) (doctor.isAvailable() ? 1 : 0));
+            end();
+        }
+
+        @Override
+        public void patientRegistered(Patient patient) {
+            begin(PATIENT_REGISTERED);
+            putString(patient.getPatientId());
+            putString(patient.getFirstName());
+            putString(patient.getLastName());
+            putDate(patient.getDateOfBirth());
+            putString(patient.getGender());
+            putString(patient.getPhoneNumber());
+            putString(patient.getEmail());
+            putString(patient.getAddress());
+            putString(patient.getEmergencyContact());
+            putString(patient.getMedicalHistory());
+            putDateTime(patient.getRegistrationDate());
+            putInt(patient.getQueueNumber());
+            putString(PatientStatus.toColumn(patient.getStatus()));
+            ensure(1);
+            buffer.put((byte) patient.getTriageLevel().ordinal());
+            end();
+        }
+
+        @Override
+        public void patientStatusChanged(String patientId, PatientStatus status, int queueNumber) {
+            begin(PATIENT_STATUS_CHANGED);
+            putString(patientId);
+            putString(PatientStatus.toColumn(status));
+            putInt(queueNumber);
+            end();
+        }
+
+        @Override
+        public void patientTriaged(String patientId, TriageLevel level) {
+            begin(PATIENT_TRIAGED);
+            putString(patientId);
+            ensure(1);
+            buffer.put((byte) level.ordinal());
+            end();
+        }
+
+        @Override
+        public void labTestOrdered(LabTest test) {
+            begin(LAB_TEST_ORDERED);
+            putString(test.getTestId());
+            putString(test.getPatientId());
+            putString(test.getTestType());
+            putString(test.getDescription());
+            putDateTime(test.getOrderDate());
+            putDateTime(test.getCompletionDate());
+            putString(test.getResults());
+            putString(LabTestStatus.toColumn(test.getStatus()));
+            putString(test.getOrderedBy());
+            end();
+        }
+
+        @Override
+        public void labTestStarted(String testId) {
+            begin(LAB_TEST_STARTED);
+            putString(testId);
+            end();
+        }
+
+        @Override
+        public void labTestCompleted(String testId, String results, LocalDateTime completedAt) {
+            begin(LAB_TEST_COMPLETED);
+            putString(testId);
+            putString(results);
+            putDateTime(completedAt);
+            end();
+        }
+
+        @Override
+        public void labBatchStarted(String batchId, List<String> testIds, LocalDateTime startedAt) {
+            begin(LAB_BATCH_STARTED);
+            putString(batchId);
+            putDateTime(startedAt);
+            putInt(testIds.size());
+            for (String testId : testIds) {
+                putString(testId);
+            }
+            end();
+        }
+
+        @Override
+        public void labBatchCompleted(String batchId, Map<String, String> results, LocalDateTime completedAt) {
+            begin(LAB_BATCH_COMPLETED);
+            putString(batchId);
+            putDateTime(completedAt);
+            putInt(results.size());
+            for (Map.Entry<String, String> result : results.entrySet()) {
+                putString(result.getKey());
+                putString(result.getValue());
+            }
+            end();
+        }
+
+        @Override
+        public void prescriptionCreated(Prescription prescription) {
+            begin(PRESCRIPTION_CREATED);
+            putString(prescription.getPrescriptionId());
+            putString(prescription.getPatientId());
+            putString(prescription.getDoctorId());
+            putDateTime(prescription.getPrescriptionDate());
+            putString(prescription.getDiagnosis());
+            putString(prescription.getInstructions());
+            putString(PrescriptionStatus.toColumn(prescription.getStatus()));
+            putInt(prescription.getMedications().size());
+            for (Medication medication : prescription.getMedications()) {
+                putString(medication.getMedicationName());
+                putString(medication.getDosage());
+                putString(medication.getFrequency());
+                putInt(medication.getDuration());
+                putString(medication.getInstructions());
+            }
+            end();
+        }
+
+        @Override
+        public void prescriptionDispensed(String prescriptionId, List<StockLot> drawn) {
+            begin(PRESCRIPTION_DISPENSED);
+            putString(prescriptionId);
+            putInt(drawn.size());
+            for (StockLot lot : drawn) {
+                putLot(lot);
+            }
+            end();
+        }
+
+        @Override
+        public void stockItemSet(String medicationName, String strength, int reorderLevel) {
+            begin(STOCK_ITEM_SET);
+            putString(medicationName);
+            putString(strength);
+            putInt(reorderLevel);
+            end();
+        }
+
+        @Override
+        public void stockLotSet(StockLot lot) {
+            begin(STOCK_LOT_SET);
+            putLot(lot);
+            end();
+        }
+
+        private void putLot(StockLot lot) {
+            putString(lot.getMedicationName());
+            putString(lot.getStrength());
+            putString(lot.getLotNumber());
+            putDate(lot.getExpiryDate());
+            putInt(lot.getQuantity());
+        }
+
+        private void begin(byte type) {
+            ensure(HEADER_BYTES + 1);
+            recordStart = buffer.position();
+            buffer.putInt(0).putInt(0).put(type);
+        }
+
+        private void end() {
+            int length = buffer.position() - recordStart - HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), recordStart + HEADER_BYTES, length);
+            buffer.putInt(recordStart, length);
+            buffer.putInt(recordStart + 4, (int) crc.getValue());
+        }
+
+        private void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        private void putDate(LocalDate value) {
+            ensure(9);
+            if (value == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1).putLong(value.toEpochDay());
+            }
+        }
+
+        private void putDateTime(LocalDateTime value) {
+            ensure(13);
+            if (value == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1).putLong(value.toEpochSecond(ZoneOffset.UTC)).putInt(value.getNano());
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
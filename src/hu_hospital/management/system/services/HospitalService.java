@@ -1,37 +1,198 @@
 package hu_hospital.management.system.services;
 
 import hu_hospital.management.system.models.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * In-memory hospital store. Safe to use from several stations and background
+ * threads at once: every status transition is applied atomically per record
+ * through ConcurrentHashMap.compute*, so concurrent updates are never lost.
+ *
+ * Lookups by phone, the status queues and patient search are served from secondary indexes that
+ * every mutation below keeps in sync, so the dashboard's frequent reads never
+ * scan or sort the whole store. Change statuses through this service rather than
+ * on the model objects, otherwise the indexes go stale. Patient, lab test and
+ * prescription statuses only move along the transitions their status enums allow.
+ *
+ * Waiting patients are also kept in a TriageQueue, which is the order the waiting list
+ * is shown in, and in a ConsultationScheduler, which picks the next patient for each
+ * doctor by specialization and triage level. Ordered lab tests are kept in a
+ * LabWorklist, which groups them into analyzer batches by test type; a batch is
+ * started and completed as a whole, under one journal record. Dispensing a prescription
+ * draws its medications from the PharmacyInventory in the same step, or not at all.
+ *
+ * Every change is published on the event bus once it has been applied, so open
+ * screens can patch their tables instead of reloading them.
+ *
+ * With enableJournal, every change is also appended to a HospitalJournal while the
+ * record is still held, so the journal sees the changes of one record in the order
+ * they were applied, and the store is rebuilt from it on the next start.
+ */
 public class HospitalService {
-    private static HospitalService instance;
-    private Map<String, Patient> patients;
-    private Map<String, Doctor> doctors;
-    private Map<String, LabTest> labTests;
-    private Map<String, Prescription> prescriptions;
-    private AtomicInteger queueCounter;
-    private AtomicInteger patientIdCounter;
-    private AtomicInteger testIdCounter;
-    private AtomicInteger prescriptionIdCounter;
+    private static final Comparator<Patient> QUEUE_ORDER =
+            Comparator.comparingInt(Patient::getQueueNumber).thenComparing(Patient::getPatientId);
+    private static final Comparator<LabTest> LAB_TEST_ORDER =
+            Comparator.comparing(LabTest::getOrderDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+                      .thenComparing(LabTest::getTestId);
+    private static final Comparator<Prescription> PRESCRIPTION_ORDER =
+            Comparator.comparing(Prescription::getPrescriptionDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+                      .thenComparing(Prescription::getPrescriptionId);
+    
+    private final Map<String, Patient> patients;
+    private final Map<String, Doctor> doctors;
+    private final Map<String, LabTest> labTests;
+    private final Map<String, Prescription> prescriptions;
+    private final QueueCounter queueCounter;
+    private final AtomicInteger patientIdCounter;
+    private final AtomicInteger testIdCounter;
+    private final AtomicInteger prescriptionIdCounter;
+    
+    // Secondary indexes
+    private final Map<String, Patient> patientsByPhone;
+    private final Map<PatientStatus, NavigableSet<Patient>> patientsByStatus;
+    private final NavigableSet<LabTest> pendingLabTests;
+    private final NavigableSet<Prescription> pendingPrescriptions;
+    // Replaced when the journal is opened and rebuilt in the background; see enableJournal
+    private volatile PatientSearchIndex searchIndex;
+    private final TriageQueue waitingQueue;
+    private final ConsultationScheduler scheduler;
+    // Replaced when the journal is opened, like searchIndex
+    private volatile LabWorklist labWorklist;
+    // Replaced before replay, like the lab worklist
+    private volatile PharmacyInventory inventory;
+    // Serializes starting and completing whole batches
+    private final Object labBatchLock = new Object();
+    // Set while the journal is replayed; the queues are filled once replay is done
+    private volatile boolean replaying;
+    
+    // Dashboard counters, kept in step with the indexes (skip-list size() is a full walk)
+    private final AtomicInteger pendingLabTestCount;
+    
+    private final HospitalEventBus eventBus;
+    
+    // Null until enableJournal; the store is then durable
+    private volatile HospitalJournal journal;
     
     private HospitalService() {
-        patients = new HashMap<>();
-        doctors = new HashMap<>();
-        labTests = new HashMap<>();
-        prescriptions = new HashMap<>();
-        queueCounter = new AtomicInteger(1);
+        patients = new ConcurrentHashMap<>();
+        doctors = new ConcurrentHashMap<>();
+        labTests = new ConcurrentHashMap<>();
+        prescriptions = new ConcurrentHashMap<>();
+        queueCounter = new QueueCounter();
         patientIdCounter = new AtomicInteger(1001);
         testIdCounter = new AtomicInteger(1);
         prescriptionIdCounter = new AtomicInteger(1);
+        patientsByPhone = new ConcurrentHashMap<>();
+        // One bucket per status, created here and never replaced, so EnumMap reads need no locking
+        patientsByStatus = new EnumMap<>(PatientStatus.class);
+        for (PatientStatus status : PatientStatus.values()) {
+            patientsByStatus.put(status, new ConcurrentSkipListSet<>(QUEUE_ORDER));
+        }
+        pendingLabTests = new ConcurrentSkipListSet<>(LAB_TEST_ORDER);
+        pendingPrescriptions = new ConcurrentSkipListSet<>(PRESCRIPTION_ORDER);
+        searchIndex = new PatientSearchIndex();
+        waitingQueue = new TriageQueue();
+        scheduler = new ConsultationScheduler();
+        labWorklist = new LabWorklist();
+        pendingLabTestCount = new AtomicInteger();
+        eventBus = new HospitalEventBus();
+        inventory = new PharmacyInventory(this::writeJournal);
         initializeSampleData();
     }
     
+    // Initialized on first use; class initialization guarantees safe publication
+    private static class InstanceHolder {
+        private static final HospitalService INSTANCE = new HospitalService();
+    }
+    
     public static HospitalService getInstance() {
-        if (instance == null) {
-            instance = new HospitalService();
+        return InstanceHolder.INSTANCE;
+    }
+    
+    public HospitalEventBus getEventBus() {
+        return eventBus;
+    }
+    
+    /**
+     * Rebuild the store from the journal in directory and journal every change from now on
+     */
+    public synchronized void enableJournal(Path directory) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("Journal already enabled");
+        }
+        // Replay does not feed the search index or the queues; they are filled afterwards
+        searchIndex = null;
+        inventory = new PharmacyInventory(this::writeJournal);
+        replaying = true;
+        try {
+            journal = HospitalJournal.open(directory, new JournalReplay(), this::writeSnapshot);
+        } finally {
+            replaying = false;
+            for (Patient patient : mergeInQueueOrder(statusBucket(PatientStatus.REGISTERED),
+                    statusBucket(PatientStatus.WAITING))) {
+                schedule(patient, patient.getStatus());
+            }
+            LabWorklist worklist = new LabWorklist();
+            labTests.values().forEach(worklist::add);
+            worklist.restoreRunning(labTests.values());
+            labWorklist = worklist;
+            rebuildSearchIndex();
+            if (journal != null && inventory.isEmpty()) {
+                // A new journal starts with the sample stock
+                stockSampleMedications();
+            }
+            reportLowStock(inventory.writeOffExpired());
+        }
+    }
+    
+    /**
+     * Index every patient on a background thread. Patients registered meanwhile go
+     * straight into the new index, so searches only miss records that are still loading.
+     */
+    private void rebuildSearchIndex() {
+        PatientSearchIndex index = new PatientSearchIndex();
+        searchIndex = index;
+        Thread builder = new Thread(() -> {
+            long start = System.nanoTime();
+            for (Patient patient : patients.values()) {
+                index.add(patient);
+            }
+            System.out.println("🔎 Patient search index ready: " + patients.size() + " patients in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }, "patient-search-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+    
+    /**
+     * Wait for pending journal records to reach the disk, then close the journal
+     */
+    public synchronized void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            System.err.println("❌ Journal records were not all written: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("❌ Could not close the journal cleanly: " + e.getMessage());
+        } finally {
+            journal = null;
         }
-        return instance;
     }
     
     private void initializeSampleData() {
@@ -39,131 +200,863 @@ public class HospitalService {
         addDoctor(new Doctor("DOC001", "John", "Smith", "General Medicine", "123-456-7890", "john.smith@hospital.com"));
         addDoctor(new Doctor("DOC002", "Sarah", "Johnson", "Cardiology", "123-456-7891", "sarah.johnson@hospital.com"));
         addDoctor(new Doctor("DOC003", "Michael", "Brown", "Pediatrics", "123-456-7892", "michael.brown@hospital.com"));
+        stockSampleMedications();
+    }
+    
+    private void stockSampleMedications() {
+        LocalDate expiry = LocalDate.now().plusYears(1);
+        String[][] medications = {
+            {"Paracetamol", "500mg"}, {"Amoxicillin", "500mg"}, {"Ibuprofen", "400mg"}, {"Metformin", "500mg"},
+            {"Glipizide", "5mg"}, {"Lisinopril", "10mg"}, {"Amlodipine", "5mg"}
+        };
+        for (int i = 0; i < medications.length; i++) {
+            receiveStock(new StockLot(medications[i][0], medications[i][1], "SAMPLE" + (i + 1), expiry, 500));
+        }
     }
     
     // Patient Management
     public String registerPatient(Patient patient) {
+        return registerPatient(patient, null);
+    }
+    
+    /**
+     * Register a patient who waits for a doctor of this specialization, or any doctor for
+     * null. The referral is in place before they join a queue, so no other doctor can call
+     * them in between.
+     */
+    public String registerPatient(Patient patient, String specialization) {
         String patientId = "PAT" + String.format("%04d", patientIdCounter.getAndIncrement());
         patient.setPatientId(patientId);
-        patient.setQueueNumber(queueCounter.getAndIncrement());
-        patients.put(patientId, patient);
+        patient.setQueueNumber(queueCounter.next());
+        scheduler.refer(patientId, specialization);
+        insert(patients, patientId, patient, p -> {
+            indexPatient(p);
+            writeJournal(j -> j.patientRegistered(p));
+        });
+        eventBus.publish(new HospitalEvent.PatientRegistered(patient));
         return patientId;
     }
     
+    /**
+     * Put a returning patient back in the queue with a fresh queue number; they keep
+     * any referral from earlier in the visit
+     */
+    public int requeuePatient(String patientId) {
+        return requeuePatient(patientId, false, null);
+    }
+    
+    /**
+     * Put a returning patient back in the queue of this specialization, or the general
+     * queue for null, with a fresh queue number
+     */
+    public int requeuePatient(String patientId, String specialization) {
+        return requeuePatient(patientId, true, specialization);
+    }
+    
+    private int requeuePatient(String patientId, boolean refer, String specialization) {
+        PatientStatus[] oldStatus = new PatientStatus[1];
+        Patient patient = patients.computeIfPresent(patientId, (id, p) -> {
+            oldStatus[0] = p.getStatus();
+            unindexStatus(p);
+            // Back of the queue
+            waitingQueue.remove(id);
+            scheduler.remove(id);
+            if (refer) {
+                scheduler.refer(id, specialization);
+            }
+            p.setQueueNumber(queueCounter.next());
+            p.setStatus(PatientStatus.WAITING);
+            indexStatus(p);
+            writeJournal(j -> j.patientStatusChanged(id, PatientStatus.WAITING, p.getQueueNumber()));
+            return p;
+        });
+        if (patient == null) {
+            return -1;
+        }
+        eventBus.publish(new HospitalEvent.StatusChanged(patient, oldStatus[0], PatientStatus.WAITING));
+        return patient.getQueueNumber();
+    }
+    
     public Patient findPatientById(String patientId) {
-        return patients.get(patientId);
+        return patientId != null ? patients.get(patientId) : null;
     }
     
     public Patient findPatientByPhone(String phoneNumber) {
-        return patients.values().stream()
-                .filter(p -> p.getPhoneNumber().equals(phoneNumber))
-                .findFirst()
-                .orElse(null);
+        return phoneNumber != null ? patientsByPhone.get(phoneNumber) : null;
+    }
+    
+    /**
+     * Patients matching a phone or ID prefix or a possibly misspelt name, best matches
+     * first; meant to be called on every keystroke
+     */
+    public List<Patient> searchPatients(String query, int limit) {
+        PatientSearchIndex index = searchIndex;
+        return index != null ? index.search(query, limit) : new ArrayList<>();
     }
     
     public List<Patient> getAllPatients() {
         return new ArrayList<>(patients.values());
     }
     
+    /**
+     * Registered and waiting patients, most urgent triage level first and in order of
+     * arrival within a level. The list is read-only.
+     */
     public List<Patient> getWaitingPatients() {
-        return patients.values().stream()
-                .filter(p -> "WAITING".equals(p.getStatus()) || "REGISTERED".equals(p.getStatus()))
-                .sorted(Comparator.comparingInt(Patient::getQueueNumber))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        return waitingQueue.inOrder();
+    }
+    
+    public List<Patient> getPatientsByStatus(PatientStatus status) {
+        return new ArrayList<>(statusBucket(status));
+    }
+    
+    /**
+     * Take the patient the doctor should see next off the queue and mark them WITH_DOCTOR.
+     * Returns null if nobody is waiting for this doctor or the doctor is not available.
+     */
+    public Patient callNextPatient(String doctorId) {
+        Doctor doctor = findDoctorById(doctorId);
+        if (doctor == null) {
+            return null;
+        }
+        Patient next;
+        // A patient whose status changed after being claimed (e.g. just completed) is skipped
+        do {
+            next = scheduler.callNext(doctor);
+        } while (next != null && !transitionPatient(next.getPatientId(), PatientStatus.WITH_DOCTOR, false));
+        return next;
+    }
+    
+    /**
+     * Change a patient's triage level. A waiting patient moves up or down the queue but
+     * keeps the time already waited.
+     */
+    public void setTriageLevel(String patientId, TriageLevel level) {
+        TriageLevel[] oldLevel = new TriageLevel[1];
+        Patient patient = patients.computeIfPresent(patientId, (id, p) -> {
+            oldLevel[0] = p.getTriageLevel();
+            if (oldLevel[0] != level) {
+                p.setTriageLevel(level);
+                waitingQueue.reprioritize(id, level);
+                scheduler.reprioritize(id, level);
+                writeJournal(j -> j.patientTriaged(id, level));
+            }
+            return p;
+        });
+        if (patient != null && oldLevel[0] != level) {
+            eventBus.publish(new HospitalEvent.TriageChanged(patient, oldLevel[0], level));
+        }
+    }
+    
+    /**
+     * Have the patient wait for a doctor of this specialization (null for any doctor)
+     * until their visit is completed
+     */
+    public void referPatient(String patientId, String specialization) {
+        if (patients.containsKey(patientId)) {
+            scheduler.refer(patientId, specialization);
+        }
+    }
+    
+    public ConsultationScheduler getScheduler() {
+        return scheduler;
     }
     
     // Doctor Management
     public void addDoctor(Doctor doctor) {
-        doctors.put(doctor.getDoctorId(), doctor);
+        insert(doctors, doctor.getDoctorId(), doctor, d -> writeJournal(j -> j.doctorAdded(d)));
     }
     
     public List<Doctor> getAllDoctors() {
         return new ArrayList<>(doctors.values());
     }
     
+    /**
+     * Mark a doctor as on or off duty; doctors off duty are not called patients
+     */
+    public void setDoctorAvailable(String doctorId, boolean available) {
+        doctors.computeIfPresent(doctorId, (id, doctor) -> {
+            doctor.setAvailable(available);
+            writeJournal(j -> j.doctorAdded(doctor));
+            return doctor;
+        });
+    }
+    
     public Doctor findDoctorById(String doctorId) {
-        return doctors.get(doctorId);
+        return doctorId != null ? doctors.get(doctorId) : null;
     }
     
     // Lab Test Management
     public String orderLabTest(LabTest labTest) {
         String testId = "TEST" + String.format("%04d", testIdCounter.getAndIncrement());
         labTest.setTestId(testId);
-        labTests.put(testId, labTest);
+        insert(labTests, testId, labTest, t -> {
+            if (isPending(t) && pendingLabTests.add(t)) {
+                pendingLabTestCount.incrementAndGet();
+            }
+            labWorklist.add(t);
+            writeJournal(j -> j.labTestOrdered(t));
+        });
+        eventBus.publish(new HospitalEvent.LabTestOrdered(labTest));
         
         // Update patient status
-        Patient patient = findPatientById(labTest.getPatientId());
-        if (patient != null) {
-            patient.setStatus("IN_LAB");
-        }
+        transitionPatient(labTest.getPatientId(), PatientStatus.IN_LAB, false);
         
         return testId;
     }
     
     public List<LabTest> getPendingLabTests() {
-        return labTests.values().stream()
-                .filter(test -> "ORDERED".equals(test.getStatus()) || "IN_PROGRESS".equals(test.getStatus()))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        return new ArrayList<>(pendingLabTests);
+    }
+    
+    /**
+     * Move an ordered test to IN_PROGRESS. Returns false if another station already started it.
+     */
+    public boolean startLabTest(String testId) {
+        boolean[] started = new boolean[1];
+        LabTest test = labTests.computeIfPresent(testId, (id, t) -> {
+            if (t.getStatus().canAdvanceTo(LabTestStatus.IN_PROGRESS)) {
+                t.setStatus(LabTestStatus.IN_PROGRESS);
+                writeJournal(j -> j.labTestStarted(id));
+                started[0] = true;
+            }
+            return t;
+        });
+        if (started[0]) {
+            labWorklist.remove(test);
+            eventBus.publish(new HospitalEvent.LabTestStarted(test));
+        }
+        return started[0];
     }
     
     public void completeLabTest(String testId, String results) {
-        LabTest test = labTests.get(testId);
-        if (test != null) {
-            test.setResults(results);
-            test.setStatus("COMPLETED");
-            test.setCompletionDate(java.time.LocalDateTime.now());
+        boolean[] completed = new boolean[1];
+        LabTest test = labTests.computeIfPresent(testId, (id, t) -> {
+            // Two stations completing the same test must not both move the patient on
+            if (t.getStatus().canAdvanceTo(LabTestStatus.COMPLETED)) {
+                t.setResults(results);
+                t.setStatus(LabTestStatus.COMPLETED);
+                t.setCompletionDate(LocalDateTime.now());
+                if (pendingLabTests.remove(t)) {
+                    pendingLabTestCount.decrementAndGet();
+                }
+                writeJournal(j -> j.labTestCompleted(id, results, t.getCompletionDate()));
+                completed[0] = true;
+            }
+            return t;
+        });
+        
+        if (completed[0]) {
+            labWorklist.completed(test);
+            eventBus.publish(new HospitalEvent.LabTestCompleted(test));
             
             // Update patient status back to waiting for doctor
-            Patient patient = findPatientById(test.getPatientId());
-            if (patient != null) {
-                patient.setStatus("WAITING");
+            transitionPatient(test.getPatientId(), PatientStatus.WAITING, false);
+        }
+    }
+    
+    /**
+     * Ordered tests grouped into the batches the analyzers would run, longest-waiting first
+     */
+    public List<LabBatch> getLabBatches() {
+        return labWorklist.getBatches(LocalDateTime.now());
+    }
+    
+    public List<LabBatch> getRunningLabBatches() {
+        return labWorklist.getRunningBatches();
+    }
+    
+    public LabWorklist getLabWorklist() {
+        return labWorklist;
+    }
+    
+    /**
+     * Start the next batch of this test type: its tests move to IN_PROGRESS together under
+     * one batch ID and one journal record. Tests another station started meanwhile are
+     * left out. Returns null when no test of the type is waiting.
+     */
+    public LabBatch startLabBatch(String testType) {
+        List<LabTest> started = new ArrayList<>();
+        LabBatch batch;
+        synchronized (labBatchLock) {
+            LocalDateTime startedAt = LocalDateTime.now();
+            LabBatch proposal = labWorklist.nextBatch(testType, startedAt);
+            if (proposal == null) {
+                return null;
+            }
+            String batchId = labWorklist.nextBatchId();
+            for (LabTest candidate : labWorklist.claim(proposal)) {
+                labTests.computeIfPresent(candidate.getTestId(), (id, t) -> {
+                    if (t.getStatus().canAdvanceTo(LabTestStatus.IN_PROGRESS)) {
+                        t.setStatus(LabTestStatus.IN_PROGRESS);
+                        t.setBatchId(batchId);
+                        t.setStartDate(startedAt);
+                        started.add(t);
+                    }
+                    return t;
+                });
+            }
+            if (started.isEmpty()) {
+                return null;
+            }
+            batch = new LabBatch(batchId, proposal.getTestType(), started, startedAt, true);
+            labWorklist.started(batch);
+            writeJournal(j -> j.labBatchStarted(batchId, batch.getTestIds(), startedAt));
+        }
+        
+        for (LabTest test : started) {
+            eventBus.publish(new HospitalEvent.LabTestStarted(test));
+        }
+        return batch;
+    }
+    
+    /**
+     * Complete every test of a running batch at once, under one journal record. results
+     * maps test IDs to their results; a test missing from it keeps the results already
+     * saved on it. If any test would be left without results nothing changes and false
+     * is returned.
+     */
+    public boolean completeLabBatch(String batchId, Map<String, String> results) {
+        List<LabTest> completed = new ArrayList<>();
+        synchronized (labBatchLock) {
+            LabBatch batch = labWorklist.getRunningBatch(batchId);
+            if (batch == null) {
+                return false;
+            }
+            Map<String, String> outcome = new LinkedHashMap<>();
+            for (LabTest test : batch.getTests()) {
+                if (!test.getStatus().canAdvanceTo(LabTestStatus.COMPLETED)) {
+                    continue; // completed on its own meanwhile
+                }
+                String result = results.getOrDefault(test.getTestId(), test.getResults());
+                if (result == null || result.isBlank()) {
+                    return false;
+                }
+                outcome.put(test.getTestId(), result);
+            }
+            
+            LocalDateTime completedAt = LocalDateTime.now();
+            Map<String, String> applied = new LinkedHashMap<>();
+            outcome.forEach((testId, result) -> labTests.computeIfPresent(testId, (id, t) -> {
+                if (t.getStatus().canAdvanceTo(LabTestStatus.COMPLETED)) {
+                    t.setResults(result);
+                    t.setStatus(LabTestStatus.COMPLETED);
+                    t.setCompletionDate(completedAt);
+                    if (pendingLabTests.remove(t)) {
+                        pendingLabTestCount.decrementAndGet();
+                    }
+                    completed.add(t);
+                    applied.put(id, result);
+                }
+                return t;
+            }));
+            for (LabTest test : completed) {
+                labWorklist.completed(test);
             }
+            if (!applied.isEmpty()) {
+                writeJournal(j -> j.labBatchCompleted(batchId, applied, completedAt));
+            }
+        }
+        
+        for (LabTest test : completed) {
+            eventBus.publish(new HospitalEvent.LabTestCompleted(test));
+            transitionPatient(test.getPatientId(), PatientStatus.WAITING, false);
         }
+        return true;
+    }
+    
+    /**
+     * Complete many tests at once, e.g. results read from an analyzer, under one journal
+     * record. Unlike completeLabBatch the tests need not share a batch, and tests that are
+     * unknown or already completed are skipped. Returns the IDs of the tests completed.
+     */
+    public Set<String> completeLabTests(Map<String, String> results) {
+        List<LabTest> completed = new ArrayList<>(results.size());
+        Map<String, String> applied = new LinkedHashMap<>();
+        LocalDateTime completedAt = LocalDateTime.now();
+        results.forEach((testId, result) -> labTests.computeIfPresent(testId, (id, t) -> {
+            if (t.getStatus().canAdvanceTo(LabTestStatus.COMPLETED)) {
+                t.setResults(result);
+                t.setStatus(LabTestStatus.COMPLETED);
+                t.setCompletionDate(completedAt);
+                if (pendingLabTests.remove(t)) {
+                    pendingLabTestCount.decrementAndGet();
+                }
+                completed.add(t);
+                applied.put(id, result);
+            }
+            return t;
+        }));
+        if (applied.isEmpty()) {
+            return Set.of();
+        }
+        // Each test was claimed inside its own compute, so no other completion journals it
+        writeJournal(j -> j.labBatchCompleted(null, applied, completedAt));
+    
+        for (LabTest test : completed) {
+            labWorklist.completed(test);
+            eventBus.publish(new HospitalEvent.LabTestCompleted(test));
+            transitionPatient(test.getPatientId(), PatientStatus.WAITING, false);
+        }
+        return applied.keySet();
     }
     
     // Prescription Management
     public String createPrescription(Prescription prescription) {
         String prescriptionId = "PRES" + String.format("%04d", prescriptionIdCounter.getAndIncrement());
         prescription.setPrescriptionId(prescriptionId);
-        prescriptions.put(prescriptionId, prescription);
+        insert(prescriptions, prescriptionId, prescription, p -> {
+            if (p.getStatus() == PrescriptionStatus.PRESCRIBED) {
+                pendingPrescriptions.add(p);
+            }
+            writeJournal(j -> j.prescriptionCreated(p));
+        });
+        eventBus.publish(new HospitalEvent.PrescriptionCreated(prescription));
         
         // Update patient status
-        Patient patient = findPatientById(prescription.getPatientId());
-        if (patient != null) {
-            patient.setStatus("PRESCRIPTION_READY");
-        }
+        transitionPatient(prescription.getPatientId(), PatientStatus.PRESCRIPTION_READY, false);
         
         return prescriptionId;
     }
     
     public List<Prescription> getPendingPrescriptions() {
-        return prescriptions.values().stream()
-                .filter(p -> "PRESCRIBED".equals(p.getStatus()))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        return new ArrayList<>(pendingPrescriptions);
     }
     
-    public void dispensePrescription(String prescriptionId) {
-        Prescription prescription = prescriptions.get(prescriptionId);
-        if (prescription != null) {
-            prescription.setStatus("DISPENSED");
+    /**
+     * Dispense a prescription and take its medications out of stock in the same step.
+     * Returns false, and takes nothing, if it is not waiting to be dispensed or any of
+     * its medications is short (checkStock tells which).
+     */
+    public boolean dispensePrescription(String prescriptionId) {
+        boolean[] dispensed = new boolean[1];
+        List<StockLevel> nowLow = new ArrayList<>();
+        Prescription prescription = prescriptions.computeIfPresent(prescriptionId, (id, p) -> {
+            // Dispensing twice must not hand out the medication twice
+            if (p.getStatus().canAdvanceTo(PrescriptionStatus.DISPENSED)) {
+                List<StockLevel> low = inventory.draw(p.getMedications(), drawn -> {
+                    p.setStatus(PrescriptionStatus.DISPENSED);
+                    pendingPrescriptions.remove(p);
+                    writeJournal(j -> j.prescriptionDispensed(id, drawn));
+                    dispensed[0] = true;
+                });
+                if (low != null) {
+                    nowLow.addAll(low);
+                }
+            }
+            return p;
+        });
+        
+        if (dispensed[0]) {
+            eventBus.publish(new HospitalEvent.PrescriptionDispensed(prescription));
+            reportLowStock(nowLow);
             
             // Update patient status to completed
-            Patient patient = findPatientById(prescription.getPatientId());
-            if (patient != null) {
-                patient.setStatus("COMPLETED");
-            }
+            transitionPatient(prescription.getPatientId(), PatientStatus.COMPLETED, false);
+        }
+        return dispensed[0];
+    }
+    
+    /**
+     * Pending prescriptions already joined with patient and doctor names, for list screens
+     */
+    public List<PrescriptionSummary> getPendingPrescriptionSummaries() {
+        List<PrescriptionSummary> summaries = new ArrayList<>();
+        for (Prescription prescription : pendingPrescriptions) {
+            summaries.add(summarize(prescription));
         }
+        return summaries;
+    }
+    
+    /**
+     * Join one prescription with its patient and doctor names
+     */
+    public PrescriptionSummary summarize(Prescription prescription) {
+        Patient patient = findPatientById(prescription.getPatientId());
+        Doctor doctor = findDoctorById(prescription.getDoctorId());
+        return new PrescriptionSummary(prescription,
+                patient != null ? patient.getFullName() : null,
+                doctor != null ? doctor.getFullName() : null);
     }
     
     public Prescription findPrescriptionById(String prescriptionId) {
-        return prescriptions.get(prescriptionId);
+        return prescriptionId != null ? prescriptions.get(prescriptionId) : null;
+    }
+    
+    // Pharmacy Inventory
+    public PharmacyInventory getInventory() {
+        return inventory;
+    }
+    
+    /**
+     * Each medication against the stock of its item, one lookup per medication
+     */
+    public List<PharmacyInventory.Availability> checkStock(List<Medication> medications) {
+        return inventory.check(medications);
+    }
+    
+    public void receiveStock(StockLot delivery) {
+        StockLevel low = inventory.receive(delivery);
+        if (low != null) {
+            reportLowStock(List.of(low));
+        }
+    }
+    
+    public void setReorderLevel(String medicationName, String strength, int reorderLevel) {
+        StockLevel low = inventory.setReorderLevel(medicationName, strength, reorderLevel);
+        if (low != null) {
+            reportLowStock(List.of(low));
+        }
+    }
+    
+    public List<StockLevel> getLowStock() {
+        return inventory.getLowStock();
+    }
+    
+    private void reportLowStock(List<StockLevel> levels) {
+        for (StockLevel level : levels) {
+            System.out.println("⚠️ Low stock: " + level);
+            eventBus.publish(new HospitalEvent.StockLow(level));
+        }
+    }
+    
+    // Dashboard
+    /**
+     * All dashboard counters plus the waiting queue, without copying or counting whole collections
+     */
+    public DashboardSnapshot getDashboardSnapshot() {
+        List<Patient> queue = getWaitingPatients();
+        return new DashboardSnapshot(patients.size(), queue.size(), doctors.size(),
+                pendingLabTestCount.get(), queue);
     }
     
     // Queue Management
-    public void updatePatientStatus(String patientId, String status) {
-        Patient patient = findPatientById(patientId);
-        if (patient != null) {
+    public int nextQueueNumber() {
+        return queueCounter.next();
+    }
+    
+    /**
+     * Seed the in-process queue counter with the last number the database issued today,
+     * so numbers handed out here never collide with ones already given to patients.
+     */
+    public void seedQueueCounter(int lastIssued) {
+        queueCounter.observe(lastIssued);
+    }
+    
+    public int getCurrentQueueNumber() {
+        return queueCounter.current();
+    }
+    
+    /**
+     * Move a patient to status. Throws IllegalStateException for a move the workflow does
+     * not allow, e.g. COMPLETED to IN_LAB.
+     */
+    public void updatePatientStatus(String patientId, PatientStatus status) {
+        transitionPatient(patientId, status, true);
+    }
+    
+    /**
+     * Change a patient's status atomically with respect to other transitions of the same patient.
+     * An illegal move throws when strict; otherwise the patient stays where they are, as when
+     * a lab result arrives for a patient whose visit the doctor has already closed.
+     */
+    private boolean transitionPatient(String patientId, PatientStatus status, boolean strict) {
+        if (patientId == null) {
+            return false;
+        }
+        PatientStatus[] oldStatus = new PatientStatus[1];
+        boolean[] moved = new boolean[1];
+        Patient updated = patients.computeIfPresent(patientId, (id, patient) -> {
+            PatientStatus current = patient.getStatus();
+            if (current == status) {
+                return patient; // nothing to index, journal or announce
+            }
+            if (current != null && !current.canMoveTo(status)) {
+                if (strict) {
+                    throw new IllegalStateException("Patient " + id + " cannot move from " + current + " to " + status);
+                }
+                return patient;
+            }
+            oldStatus[0] = current;
+            moved[0] = true;
+            unindexStatus(patient);
             patient.setStatus(status);
+            indexStatus(patient);
+            writeJournal(j -> j.patientStatusChanged(id, status, patient.getQueueNumber()));
+            return patient;
+        });
+        if (moved[0]) {
+            eventBus.publish(new HospitalEvent.StatusChanged(updated, oldStatus[0], status));
+        }
+        return moved[0];
+    }
+    
+    /**
+     * Add a new record, then index and journal it while holding its entry. The entry is
+     * put in place first: ConcurrentHashMap iteration skips an entry that is still being
+     * computed, so a snapshot taken while the record is journaled from inside compute
+     * would miss the object, and compaction would then drop its only record. Nobody else
+     * knows the new ID yet, so nothing can change the record in between.
+     */
+    private static <V> void insert(Map<String, V> map, String id, V value, Consumer<V> whileHeld) {
+        map.put(id, value);
+        map.computeIfPresent(id, (key, held) -> {
+            whileHeld.accept(held);
+            return held;
+        });
+    }
+    
+    private void writeJournal(Consumer<HospitalJournal> append) {
+        HospitalJournal current = journal;
+        if (current != null) {
+            append.accept(current);
+        }
+    }
+    
+    /**
+     * Write the whole store through out, one creation record per object in its current state.
+     * Patients go out in queue order, so on reload every status bucket is filled at its end.
+     */
+    private record Queued(int queueNumber, String patientId, Patient patient) {
+    }
+    
+    private void writeSnapshot(HospitalJournal.Handler out) {
+        doctors.values().forEach(out::doctorAdded);
+        // Queue numbers change while the snapshot is written, so sort on a copy of each;
+        // sorting the patients themselves could see an inconsistent order and throw
+        List<Queued> inQueueOrder = new ArrayList<>();
+        patients.values().forEach(p -> inQueueOrder.add(new Queued(p.getQueueNumber(), p.getPatientId(), p)));
+        inQueueOrder.sort(Comparator.comparingInt(Queued::queueNumber).thenComparing(Queued::patientId));
+        inQueueOrder.forEach(q -> out.patientRegistered(q.patient()));
+        labTests.values().forEach(out::labTestOrdered);
+        prescriptions.values().forEach(out::prescriptionCreated);
+        inventory.writeTo(out);
+    }
+    
+    /**
+     * Applies recovered journal records straight to the maps and indexes: no events are
+     * published and nothing is journaled again. ID and queue counters move past every
+     * recovered record.
+     */
+    private final class JournalReplay implements HospitalJournal.Handler {
+        private final LocalDate today = LocalDate.now();
+        
+        @Override
+        public void doctorAdded(Doctor doctor) {
+            doctors.put(doctor.getDoctorId(), doctor);
+        }
+        
+        @Override
+        public void patientRegistered(Patient patient) {
+            patients.compute(patient.getPatientId(), (id, previous) -> {
+                if (previous != null) {
+                    unindexStatus(previous);
+                    if (previous.getPhoneNumber() != null) {
+                        patientsByPhone.remove(previous.getPhoneNumber(), previous);
+                    }
+                }
+                indexPatient(patient);
+                return patient;
+            });
+            advance(patientIdCounter, patient.getPatientId());
+            if (patient.getRegistrationDate() != null && today.equals(patient.getRegistrationDate().toLocalDate())) {
+                queueCounter.observe(patient.getQueueNumber());
+            }
+        }
+        
+        @Override
+        public void patientStatusChanged(String patientId, PatientStatus status, int queueNumber) {
+            patients.computeIfPresent(patientId, (id, patient) -> {
+                unindexStatus(patient);
+                patient.setQueueNumber(queueNumber);
+                patient.setStatus(status);
+                indexStatus(patient);
+                return patient;
+            });
+        }
+        
+        @Override
+        public void patientTriaged(String patientId, TriageLevel level) {
+            patients.computeIfPresent(patientId, (id, patient) -> {
+                patient.setTriageLevel(level);
+                return patient;
+            });
+        }
+        
+        @Override
+        public void labTestOrdered(LabTest test) {
+            labTests.compute(test.getTestId(), (id, previous) -> {
+                if (previous != null && pendingLabTests.remove(previous)) {
+                    pendingLabTestCount.decrementAndGet();
+                }
+                if (isPending(test) && pendingLabTests.add(test)) {
+                    pendingLabTestCount.incrementAndGet();
+                }
+                return test;
+            });
+            advance(testIdCounter, test.getTestId());
+        }
+        
+        @Override
+        public void labTestStarted(String testId) {
+            labTests.computeIfPresent(testId, (id, test) -> {
+                test.setStatus(LabTestStatus.IN_PROGRESS);
+                return test;
+            });
+        }
+        
+        @Override
+        public void labTestCompleted(String testId, String results, LocalDateTime completedAt) {
+            labTests.computeIfPresent(testId, (id, test) -> {
+                test.setResults(results);
+                test.setStatus(LabTestStatus.COMPLETED);
+                test.setCompletionDate(completedAt);
+                if (pendingLabTests.remove(test)) {
+                    pendingLabTestCount.decrementAndGet();
+                }
+                return test;
+            });
+        }
+        
+        @Override
+        public void labBatchStarted(String batchId, List<String> testIds, LocalDateTime startedAt) {
+            for (String testId : testIds) {
+                labTests.computeIfPresent(testId, (id, test) -> {
+                    // A test completed on its own before the batch record was written stays completed
+                    if (test.getStatus().canAdvanceTo(LabTestStatus.IN_PROGRESS)) {
+                        test.setStatus(LabTestStatus.IN_PROGRESS);
+                    }
+                    test.setBatchId(batchId);
+                    test.setStartDate(startedAt);
+                    return test;
+                });
+            }
+        }
+        
+        @Override
+        public void labBatchCompleted(String batchId, Map<String, String> results, LocalDateTime completedAt) {
+            results.forEach((testId, result) -> labTestCompleted(testId, result, completedAt));
+        }
+        
+        @Override
+        public void prescriptionCreated(Prescription prescription) {
+            prescriptions.compute(prescription.getPrescriptionId(), (id, previous) -> {
+                if (previous != null) {
+                    pendingPrescriptions.remove(previous);
+                }
+                if (prescription.getStatus() == PrescriptionStatus.PRESCRIBED) {
+                    pendingPrescriptions.add(prescription);
+                }
+                return prescription;
+            });
+            advance(prescriptionIdCounter, prescription.getPrescriptionId());
+        }
+        
+        @Override
+        public void prescriptionDispensed(String prescriptionId, List<StockLot> drawn) {
+            prescriptions.computeIfPresent(prescriptionId, (id, prescription) -> {
+                prescription.setStatus(PrescriptionStatus.DISPENSED);
+                pendingPrescriptions.remove(prescription);
+                return prescription;
+            });
+            drawn.forEach(inventory::applyLot);
+        }
+        
+        @Override
+        public void stockItemSet(String medicationName, String strength, int reorderLevel) {
+            inventory.applyItem(medicationName, strength, reorderLevel);
+        }
+        
+        @Override
+        public void stockLotSet(StockLot lot) {
+            inventory.applyLot(lot);
+        }
+        
+        /**
+         * Make sure counter hands out numbers above the one in id (e.g. PAT1042 -> 1043)
+         */
+        private void advance(AtomicInteger counter, String id) {
+            int digits = 0;
+            while (digits < id.length() && !Character.isDigit(id.charAt(digits))) {
+                digits++;
+            }
+            if (digits < id.length()) {
+                int number = Integer.parseInt(id.substring(digits));
+                counter.accumulateAndGet(number + 1, Math::max);
+            }
+        }
+    }
+    
+    // Index maintenance - always called while holding the patient's map entry
+    private void indexPatient(Patient patient) {
+        if (patient.getPhoneNumber() != null) {
+            patientsByPhone.putIfAbsent(patient.getPhoneNumber(), patient);
+        }
+        PatientSearchIndex index = searchIndex;
+        if (index != null) {
+            index.add(patient);
+        }
+        indexStatus(patient);
+    }
+    
+    private void indexStatus(Patient patient) {
+        PatientStatus status = patient.getStatus();
+        if (status == null) {
+            return;
+        }
+        statusBucket(status).add(patient);
+        if (!replaying) {
+            schedule(patient, status);
         }
     }
+    
+    private void schedule(Patient patient, PatientStatus status) {
+        // Moving between the waiting statuses keeps the patient's place in the queue
+        if (status.isWaiting()) {
+            if (waitingQueue.add(patient)) {
+                scheduler.enqueue(patient, patient.getTriageLevel());
+            }
+            return;
+        }
+        waitingQueue.remove(patient.getPatientId());
+        if (status == PatientStatus.COMPLETED) {
+            scheduler.discharge(patient.getPatientId());
+        } else {
+            scheduler.remove(patient.getPatientId());
+        }
+    }
+    
+    private void unindexStatus(Patient patient) {
+        if (patient.getStatus() != null) {
+            statusBucket(patient.getStatus()).remove(patient);
+        }
+    }
+    
+    private NavigableSet<Patient> statusBucket(PatientStatus status) {
+        return patientsByStatus.get(status);
+    }
+    
+    private static boolean isPending(LabTest test) {
+        return test.getStatus() != null && test.getStatus().isPending();
+    }
+    
+    private static List<Patient> mergeInQueueOrder(Collection<Patient> first, Collection<Patient> second) {
+        List<Patient> merged = new ArrayList<>();
+        Iterator<Patient> a = first.iterator();
+        Iterator<Patient> b = second.iterator();
+        Patient nextA = a.hasNext() ? a.next() : null;
+        Patient nextB = b.hasNext() ? b.next() : null;
+        
+        while (nextA != null || nextB != null) {
+            if (nextB == null || (nextA != null && QUEUE_ORDER.compare(nextA, nextB) <= 0)) {
+                merged.add(nextA);
+                nextA = a.hasNext() ? a.next() : null;
+            } else {
+                merged.add(nextB);
+                nextB = b.hasNext() ? b.next() : null;
+            }
+        }
+        
+        return merged;
+    }
 }
\ No newline at end of file
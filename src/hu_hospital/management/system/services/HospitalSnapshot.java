@@ -0,0 +1,620 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary image of the whole in-memory store, written by journal compaction
+ * and mapped into memory on startup.
+ *
+ * Layout: [magic][base second] records... [dictionary][dictionary offset][CRC32][magic].
+ * Numbers are varints. Strings that repeat (statuses, genders, specializations, test
+ * types, doctor IDs, batch IDs, medication names, dosages and frequencies) are written
+ * as an index into the dictionary, which sits at the end so the writer can stream
+ * records as it goes. Free text (names, contact details, histories, descriptions,
+ * results, diagnoses and instructions) is written inline as length-prefixed UTF-8, so
+ * the dictionary does not grow with every distinct note. Lab tests and prescriptions name
+ * their patient by position among the patients written before them. A patient whose
+ * triage level is not STANDARD is followed by a triage record, and a lab test that went
+ * through an analyzer batch by a record with the batch ID and start time. Each pharmacy
+ * stock item is followed by its lots (lot number, expiry and quantity). Date-times are
+ * seconds from the base second plus an optional nano part. The CRC covers everything
+ * before it; a snapshot is used whole or not at all.
+ *
+ * Repeated values come back as one shared instance, which keeps the rebuilt store small.
+ * Version 1 snapshots ("HUS1") kept free text in the dictionary too and are still read.
+ *
+ * With lazy loading, medical histories and lab results stay in the mapped file
+ * until something reads them.
+ */
+final class HospitalSnapshot {
+    static final int MAGIC = 0x48555332; // "HUS2"
+    private static final int MAGIC_V1 = 0x48555331; // "HUS1", free text in the dictionary
+
+    private static final int TRAILER_BYTES = 16;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private static final byte DOCTOR = 1;
+    private static final byte PATIENT = 2;
+    private static final byte LAB_TEST = 3;
+    private static final byte PRESCRIPTION = 4;
+    private static final byte TRIAGE = 5;
+    private static final byte LAB_BATCH = 6;
+    private static final byte STOCK_ITEM = 7;
+    private static final byte STOCK_LOT = 8;
+
+    private HospitalSnapshot() {
+    }
+
+    /**
+     * True when the file starts like a snapshot (older snapshots are journal records)
+     */
+    static boolean isSnapshot(FileChannel channel) throws IOException {
+        if (channel.size() < 4) {
+            return false;
+        }
+        ByteBuffer head = ByteBuffer.allocate(4);
+        channel.read(head, 0);
+        return head.getInt(0) == MAGIC || head.getInt(0) == MAGIC_V1;
+    }
+
+    /**
+     * Map the snapshot and pass every object in it to handler. Returns the number of objects.
+     */
+    static long read(FileChannel channel, HospitalJournal.Handler handler, boolean lazy) throws IOException {
+        long size = channel.size();
+        if (size < 4 + TRAILER_BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot has an impossible size of " + size + " bytes");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int magic = buffer.getInt(0);
+        int trailer = (int) size - TRAILER_BYTES;
+        long dictionaryOffset = buffer.getLong(trailer);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, trailer + 8));
+        if ((magic != MAGIC && magic != MAGIC_V1) || buffer.getInt(trailer + 12) != magic || (int) crc.getValue() != buffer.getInt(trailer + 8)
+                || dictionaryOffset < 4 || dictionaryOffset > trailer) {
+            throw new IOException("Snapshot is damaged");
+        }
+
+        Reader in = new Reader(buffer, lazy, magic == MAGIC);
+        in.position((int) dictionaryOffset);
+        in.readDictionary();
+        in.position(4);
+        in.base = in.varLong();
+
+        long objects = 0;
+        while (in.position() < dictionaryOffset) {
+            in.readObject(handler);
+            objects++;
+        }
+        return objects;
+    }
+
+    // Reading
+
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final boolean lazy;
+        private final boolean inlineText;
+        private final List<String> patientIds = new ArrayList<>();
+        // A LAB_BATCH record belongs to the lab test just before it
+        private String lastTestId;
+        // STOCK_LOT records belong to the stock item before them
+        private String lastItemName;
+        private String lastItemStrength;
+        private final LocalDate[] recentDays = new LocalDate[1024];
+        private String[] dictionary;
+        private long base;
+
+        Reader(ByteBuffer buffer, boolean lazy, boolean inlineText) {
+            this.buffer = buffer;
+            this.lazy = lazy;
+            this.inlineText = inlineText;
+        }
+
+        int position() {
+            return buffer.position();
+        }
+
+        void position(int position) {
+            buffer.position(position);
+        }
+
+        void readDictionary() {
+            int size = varInt();
+            dictionary = new String[size + 1]; // index 0 is null
+            for (int i = 1; i <= size; i++) {
+                dictionary[i] = string();
+            }
+        }
+
+        void readObject(HospitalJournal.Handler handler) throws IOException {
+            byte type = buffer.get();
+            switch (type) {
+                case DOCTOR -> {
+                    Doctor doctor = new Doctor(string(), string(), string(), word(), string(), string());
+                    doctor.setAvailable(buffer.get() != 0);
+                    handler.doctorAdded(doctor);
+                }
+                case PATIENT -> {
+                    Patient patient = new Patient();
+                    patient.setPatientId(string());
+                    patientIds.add(patient.getPatientId());
+                    patient.setFirstName(string());
+                    patient.setLastName(string());
+                    patient.setDateOfBirth(date());
+                    patient.setGender(word());
+                    patient.setPhoneNumber(string());
+                    patient.setEmail(string());
+                    patient.setAddress(string());
+                    patient.setEmergencyContact(string());
+                    if (lazy) {
+                        patient.setMedicalHistoryLoader(lazyString());
+                    } else {
+                        patient.setMedicalHistory(string());
+                    }
+                    patient.setRegistrationDate(dateTime());
+                    patient.setQueueNumber(varInt());
+                    patient.setStatus(PatientStatus.fromColumn(word()));
+                    handler.patientRegistered(patient);
+                }
+                case TRIAGE -> handler.patientTriaged(patientId(), TriageLevel.values()[buffer.get()]);
+                case LAB_TEST -> {
+                    LabTest test = new LabTest();
+                    test.setTestId(string());
+                    lastTestId = test.getTestId();
+                    test.setPatientId(patientId());
+                    test.setTestType(word());
+                    test.setDescription(text());
+                    test.setOrderDate(dateTime());
+                    test.setCompletionDate(dateTime());
+                    if (lazy) {
+                        test.setResultsLoader(lazyString());
+                    } else {
+                        test.setResults(string());
+                    }
+                    test.setStatus(LabTestStatus.fromColumn(word()));
+                    test.setOrderedBy(word());
+                    handler.labTestOrdered(test);
+                }
+                case LAB_BATCH -> handler.labBatchStarted(word(), List.of(lastTestId), dateTime());
+                case PRESCRIPTION -> {
+                    Prescription prescription = new Prescription();
+                    prescription.setPrescriptionId(string());
+                    prescription.setPatientId(patientId());
+                    prescription.setDoctorId(word());
+                    prescription.setPrescriptionDate(dateTime());
+                    prescription.setDiagnosis(text());
+                    prescription.setInstructions(text());
+                    prescription.setStatus(PrescriptionStatus.fromColumn(word()));
+                    int medications = varInt();
+                    for (int i = 0; i < medications; i++) {
+                        prescription.addMedication(new Medication(word(), word(), word(), zigZagInt(), text()));
+                    }
+                    handler.prescriptionCreated(prescription);
+                }
+                case STOCK_ITEM -> {
+                    lastItemName = word();
+                    lastItemStrength = word();
+                    handler.stockItemSet(lastItemName, lastItemStrength, varInt());
+                }
+                case STOCK_LOT -> handler.stockLotSet(new StockLot(lastItemName, lastItemStrength, string(), date(), varInt()));
+                default -> throw new IOException("Unknown snapshot record type " + type);
+            }
+        }
+
+        private String word() {
+            return dictionary[varInt()];
+        }
+
+        /**
+         * Free text: inline, or a dictionary entry in a version 1 snapshot
+         */
+        private String text() {
+            return inlineText ? string() : word();
+        }
+
+        private String patientId() {
+            int index = varInt();
+            return index == 0 ? string() : patientIds.get(index - 1);
+        }
+
+        private String string() {
+            int length = varInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Skip over a string and return a loader for it; null strings need no loader
+         */
+        private Supplier<String> lazyString() {
+            int length = varInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            int offset = buffer.position();
+            buffer.position(offset + length);
+            return new MappedString(buffer, offset, length);
+        }
+
+        private LocalDate date() {
+            long value = varLong();
+            return value == 0 ? null : day(unZigZag(value - 1));
+        }
+
+        private LocalDateTime dateTime() {
+            long value = varLong();
+            if (value == 0) {
+                return null;
+            }
+            value--;
+            int nanos = (value & 1) == 0 ? 0 : varInt();
+            long second = base + unZigZag(value >>> 1);
+            long epochDay = Math.floorDiv(second, 86400);
+            long secondOfDay = Math.floorMod(second, 86400);
+            return LocalDateTime.of(day(epochDay), LocalTime.ofNanoOfDay(secondOfDay * 1_000_000_000L + nanos));
+        }
+
+        /**
+         * Most dates fall on a few hundred days, so recently seen days are shared
+         */
+        private LocalDate day(long epochDay) {
+            int slot = (int) (epochDay & (recentDays.length - 1));
+            LocalDate day = recentDays[slot];
+            if (day == null || day.toEpochDay() != epochDay) {
+                day = LocalDate.ofEpochDay(epochDay);
+                recentDays[slot] = day;
+            }
+            return day;
+        }
+
+        private int zigZagInt() {
+            return (int) unZigZag(varLong());
+        }
+
+        private int varInt() {
+            return (int) varLong();
+        }
+
+        private long varLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * A string still in the mapped file. Absolute reads leave the shared buffer's position alone.
+     */
+    private record MappedString(ByteBuffer buffer, int offset, int length) implements Supplier<String> {
+        @Override
+        public String get() {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Writing
+
+    /**
+     * Streams a snapshot into a file. Give it every object through the creation methods,
+     * then call finish.
+     */
+    static final class Writer implements HospitalJournal.Handler {
+        private final FileChannel out;
+        private final CRC32 crc = new CRC32();
+        private final Map<String, Integer> dictionaryIndex = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> patientIndex = new HashMap<>();
+        private final long base;
+        private String lastItemKey;
+        private ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES + 64 * 1024);
+        private long written;
+
+        Writer(FileChannel out) {
+            this.out = out;
+            // Recent timestamps then need only a few bytes
+            this.base = LocalDate.now().withDayOfYear(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+            ensure(4 + 10);
+            buffer.putInt(MAGIC);
+            putVarLong(base);
+        }
+
+        @Override
+        public void doctorAdded(Doctor doctor) {
+            ensure(1);
+            buffer.put(DOCTOR);
+            putString(doctor.getDoctorId());
+            putString(doctor.getFirstName());
+            putString(doctor.getLastName());
+            putWord(doctor.getSpecialization());
+            putString(doctor.getPhoneNumber());
+            putString(doctor.getEmail());
+            ensure(1);
+            buffer.put((byte) (doctor.isAvailable() ? 1 : 0));
+            flushIfFull();
+        }
+
+        @Override
+        public void patientRegistered(Patient patient) {
+            ensure(1);
+            buffer.put(PATIENT);
+            putString(patient.getPatientId());
+            patientIndex.putIfAbsent(patient.getPatientId(), patientIndex.size() + 1);
+            putString(patient.getFirstName());
+            putString(patient.getLastName());
+            putDate(patient.getDateOfBirth());
+            putWord(patient.getGender());
+            putString(patient.getPhoneNumber());
+            putString(patient.getEmail());
+            putString(patient.getAddress());
+            putString(patient.getEmergencyContact());
+            putString(patient.getMedicalHistory());
+            putDateTime(patient.getRegistrationDate());
+            putVarLong(patient.getQueueNumber() & 0xFFFFFFFFL);
+            putWord(PatientStatus.toColumn(patient.getStatus()));
+            if (patient.getTriageLevel() != TriageLevel.STANDARD) {
+                ensure(1);
+                buffer.put(TRIAGE);
+                putPatientId(patient.getPatientId());
+                ensure(1);
+                buffer.put((byte) patient.getTriageLevel().ordinal());
+            }
+            flushIfFull();
+        }
+
+        @Override
+        public void labTestOrdered(LabTest test) {
+            ensure(1);
+            buffer.put(LAB_TEST);
+            putString(test.getTestId());
+            putPatientId(test.getPatientId());
+            putWord(test.getTestType());
+            putString(test.getDescription());
+            putDateTime(test.getOrderDate());
+            putDateTime(test.getCompletionDate());
+            putString(test.getResults());
+            putWord(LabTestStatus.toColumn(test.getStatus()));
+            putWord(test.getOrderedBy());
+            if (test.getBatchId() != null) {
+                ensure(1);
+                buffer.put(LAB_BATCH);
+                putWord(test.getBatchId());
+                putDateTime(test.getStartDate());
+            }
+            flushIfFull();
+        }
+
+        @Override
+        public void prescriptionCreated(Prescription prescription) {
+            ensure(1);
+            buffer.put(PRESCRIPTION);
+            putString(prescription.getPrescriptionId());
+            putPatientId(prescription.getPatientId());
+            putWord(prescription.getDoctorId());
+            putDateTime(prescription.getPrescriptionDate());
+            putString(prescription.getDiagnosis());
+            putString(prescription.getInstructions());
+            putWord(PrescriptionStatus.toColumn(prescription.getStatus()));
+            putVarLong(prescription.getMedications().size());
+            for (Medication medication : prescription.getMedications()) {
+                putWord(medication.getMedicationName());
+                putWord(medication.getDosage());
+                putWord(medication.getFrequency());
+                putVarLong(zigZag(medication.getDuration()));
+                putString(medication.getInstructions());
+            }
+            flushIfFull();
+        }
+
+        @Override
+        public void stockItemSet(String medicationName, String strength, int reorderLevel) {
+            ensure(1);
+            buffer.put(STOCK_ITEM);
+            putWord(medicationName);
+            putWord(strength);
+            putVarLong(reorderLevel);
+            lastItemKey = Medication.stockKey(medicationName, strength);
+            flushIfFull();
+        }
+
+        /**
+         * A lot of the stock item written just before it
+         */
+        @Override
+        public void stockLotSet(StockLot lot) {
+            if (!lot.getStockKey().equals(lastItemKey)) {
+                throw new IllegalStateException("Stock lot " + lot.getLotNumber() + " does not follow its item");
+            }
+            ensure(1);
+            buffer.put(STOCK_LOT);
+            putString(lot.getLotNumber());
+            putDate(lot.getExpiryDate());
+            putVarLong(lot.getQuantity());
+            flushIfFull();
+        }
+
+        // A snapshot holds objects in their current state, never changes to them
+
+        @Override
+        public void patientStatusChanged(String patientId, PatientStatus status, int queueNumber) {
+            throw new UnsupportedOperationException("Snapshots hold no status changes");
+        }
+
+        @Override
+        public void patientTriaged(String patientId, TriageLevel level) {
+            throw new UnsupportedOperationException("Snapshots hold no status changes");
+        }
+
+        @Override
+        public void labTestStarted(String testId) {
+            throw new UnsupportedOperationException("Snapshots hold no status changes");
+        }
+
+        @Override
+        public void labTestCompleted(String testId, String results, LocalDateTime completedAt) {
+            throw new UnsupportedOperationException("Snapshots hold no status changes");
+        }
+
+        @Override
+        public void labBatchStarted(String batchId, List<String> testIds, LocalDateTime startedAt) {
+            throw new UnsupportedOperationException("Snapshots hold no status changes");
+        }
+
+        @Override
+        public void labBatchCompleted(String batchId, Map<String, String> results, LocalDateTime completedAt) {
+            throw new UnsupportedOperationException("Snapshots hold no status changes");
+        }
+
+        @Override
+        public void prescriptionDispensed(String prescriptionId, List<StockLot> drawn) {
+            throw new UnsupportedOperationException("Snapshots hold no status changes");
+        }
+
+        /**
+         * Write the dictionary and trailer. The caller forces the file to disk.
+         */
+        void finish() throws IOException {
+            long dictionaryOffset = written + buffer.position();
+            putVarLong(dictionary.size());
+            for (String word : dictionary) {
+                putString(word);
+                flushIfFull();
+            }
+            ensure(TRAILER_BYTES);
+            buffer.putLong(dictionaryOffset);
+            drain();
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            trailer.putInt((int) crc.getValue()).putInt(MAGIC).flip();
+            while (trailer.hasRemaining()) {
+                out.write(trailer);
+            }
+        }
+
+        private void flushIfFull() {
+            if (buffer.position() >= CHUNK_BYTES) {
+                try {
+                    drain();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            written += buffer.limit();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void putWord(String value) {
+            if (value == null) {
+                putVarLong(0);
+                return;
+            }
+            Integer index = dictionaryIndex.get(value);
+            if (index == null) {
+                dictionary.add(value);
+                index = dictionary.size();
+                dictionaryIndex.put(value, index);
+            }
+            putVarLong(index);
+        }
+
+        private void putPatientId(String patientId) {
+            Integer index = patientIndex.get(patientId);
+            if (index == null) {
+                putVarLong(0);
+                putString(patientId);
+            } else {
+                putVarLong(index);
+            }
+        }
+
+        private void putString(String value) {
+            if (value == null) {
+                putVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(bytes.length + 1L);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void putDate(LocalDate value) {
+            putVarLong(value == null ? 0 : zigZag(value.toEpochDay()) + 1);
+        }
+
+        private void putDateTime(LocalDateTime value) {
+            if (value == null) {
+                putVarLong(0);
+                return;
+            }
+            long seconds = zigZag(value.toEpochSecond(ZoneOffset.UTC) - base);
+            int nanos = value.getNano();
+            putVarLong(((seconds << 1) | (nanos == 0 ? 0 : 1)) + 1);
+            if (nanos != 0) {
+                putVarLong(nanos);
+            }
+        }
+
+        private void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.database.CsvReader;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds analyzer results into the store in bulk instead of one completeLabTest call per
+ * test. A run arrives either as a file dropped into an inbox directory, which is watched
+ * with a WatchService, or as a stream sent to a TCP port on the loopback interface.
+ *
+ * Every source is parsed line by line, so a run of any size is never held in memory.
+ * Parsed results go through a bounded queue to a single writer, which completes whatever
+ * has queued up, at most batchSize tests per call to the sink. When the writer falls
+ * behind the queue fills up and the readers block, which for a socket also stops reading
+ * from it, so a fast analyzer is slowed down instead of results piling up in memory.
+ *
+ * Two formats are accepted, told apart by the first line:
+ * - CSV with a header row naming a test_id column and either a results column or
+ *   analyte and value columns (units, reference_range and flag are optional)
+ * - HL7-like pipe-delimited segments: OBR names the test in field 3 (filler order
+ *   number) or else field 2 (placer order number), and each OBX after it is one
+ *   analyte: 3 identifier, 5 value, 6 units, 7 reference range, 8 abnormal flags
+ *
+ * Consecutive rows for one test ID become one result, one analyte per line. Results
+ * for unknown or already completed tests are reported like malformed rows. Analyzers
+ * should write a file under another name (e.g. with a .tmp suffix) and rename it into
+ * place once complete; only .csv, .hl7 and .txt files are picked up. An ingested file
+ * is moved to processed/, with its rejected rows next to it if there were any. A file
+ * that could not be read, or with results the sink failed to write, is moved to
+ * failed/ instead; moving it back into the inbox retries it, and the results already
+ * written are then rejected as already completed. A socket source gets a one-line
+ * summary back before it is closed.
+ */
+public class LabResultIngestor implements AutoCloseable {
+
+    /** Most results written per call to the sink; -Dhospital.lab.ingestBatchSize overrides it */
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("hospital.lab.ingestBatchSize", 200);
+
+    // Results the queue holds per batch the writer can take, before readers block
+    private static final int QUEUED_BATCHES = 4;
+    // Rejections kept per report; later ones are only counted
+    private static final int MAX_REJECTIONS = 1000;
+    private static final int RECENT_REPORTS = 50;
+    private static final Set<String> EXTENSIONS = Set.of("csv", "hl7", "txt");
+
+    /**
+     * Where the results go, e.g. HospitalService::completeLabTests
+     */
+    @FunctionalInterface
+    public interface ResultSink {
+        /** Complete the given tests, returning the IDs of those that were completed */
+        Set<String> completeLabTests(Map<String, String> results);
+    }
+
+    /**
+     * A row that was not applied, by its line number in the source
+     */
+    public record Rejection(long line, String reason) {
+    }
+
+    /**
+     * Totals of one file or connection. The reader counts lines and results; the writer
+     * settles each result as completed or rejected.
+     */
+    public static class Report {
+        private final String source;
+        private final List<Rejection> rejections = new ArrayList<>();
+        private final long start = System.nanoTime();
+        private volatile long lines;
+        private volatile long results;
+        // Guarded by this
+        private long completed;
+        private long rejected;
+        private long notWritten;
+        private long settled;
+        private long elapsedNanos;
+
+        Report(String source) {
+            this.source = source;
+        }
+
+        public String getSource() { return source; }
+
+        public long getLines() { return lines; }
+
+        public long getResults() { return results; }
+
+        public synchronized long getCompleted() { return completed; }
+
+        public synchronized long getRejected() { return rejected; }
+
+        /** Results rejected because the sink failed, not because of the result itself */
+        public synchronized long getNotWritten() { return notWritten; }
+
+        public synchronized List<Rejection> getRejections() { return new ArrayList<>(rejections); }
+
+        public synchronized double getResultsPerSecond() {
+            return elapsedNanos == 0 ? 0 : completed * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        public synchronized long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+        synchronized void reject(long line, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_REJECTIONS) {
+                rejections.add(new Rejection(line, reason));
+            }
+        }
+
+        synchronized void settle(boolean wasCompleted, boolean wasWritten, long line, String reason) {
+            if (wasCompleted) {
+                completed++;
+            } else {
+                reject(line, reason);
+            }
+            if (!wasWritten) {
+                notWritten++;
+            }
+            settled++;
+            if (settled >= results) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait until the writer has dealt with every result read, then stop the clock
+         */
+        synchronized void finish() throws InterruptedException {
+            while (settled < results) {
+                wait();
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: %d of %d results completed, %d rejected, %d lines in %d ms (%.0f results/s)",
+                    source, completed, results, rejected, lines, getElapsedMillis(), getResultsPerSecond());
+        }
+    }
+
+    // One test's results on their way from a reader to the writer
+    private record Result(String testId, String text, long line, Report report) {
+    }
+
+    private final ResultSink sink;
+    private final int batchSize;
+    private final BlockingQueue<Result> queue;
+    private final Deque<Report> recentReports = new ArrayDeque<>();
+    private final Set<Thread> readers = ConcurrentHashMap.newKeySet();
+    private final Thread writer;
+    private volatile boolean running;
+    private WatchService watchService;
+    private ServerSocket serverSocket;
+
+    public LabResultIngestor(ResultSink sink) {
+        this(sink, DEFAULT_BATCH_SIZE);
+    }
+
+    public LabResultIngestor(ResultSink sink, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(batchSize * QUEUED_BATCHES);
+        this.writer = new Thread(this::writeResults, "lab-result-writer");
+        this.writer.setDaemon(true);
+        this.running = true;
+        this.writer.start();
+    }
+
+    /**
+     * Ingest the files already in inbox, then every file that appears in it
+     */
+    public synchronized void watch(Path inbox) throws IOException {
+        Files.createDirectories(inbox.resolve("processed"));
+        Files.createDirectories(inbox.resolve("failed"));
+        watchService = inbox.getFileSystem().newWatchService();
+        // Registered before the scan, so a file arriving in between is not missed
+        inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        WatchService service = watchService;
+        startReader("lab-inbox-watcher", () -> watchInbox(inbox, service));
+        System.out.println("📂 Watching " + inbox.toAbsolutePath() + " for analyzer results");
+    }
+
+    /**
+     * Accept result streams on port of the loopback interface, one reader per connection
+     */
+    public synchronized void listen(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        ServerSocket server = serverSocket;
+        startReader("lab-result-listener", () -> acceptConnections(server));
+        System.out.println("🔌 Listening for analyzer results on " + server.getLocalSocketAddress());
+    }
+
+    public synchronized int getPort() {
+        ServerSocket server = serverSocket;
+        return server != null ? server.getLocalPort() : -1;
+    }
+
+    /**
+     * Read one file on the calling thread and return its report once all of its results
+     * are written. The file itself is left where it is.
+     */
+    public Report ingest(Path file) throws IOException, InterruptedException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return ingest(in, file.getFileName().toString());
+        }
+    }
+
+    /**
+     * Read a stream to its end on the calling thread; see ingest(Path)
+     */
+    public Report ingest(InputStream in, String source) throws IOException, InterruptedException {
+        Report report = new Report(source);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            if (isHl7(reader)) {
+                readHl7(reader, report);
+            } else {
+                readCsv(reader, report);
+            }
+        } finally {
+            // Whatever was queued before a failure still gets written and settled
+            report.finish();
+            remember(report);
+        }
+        System.out.println("📥 " + report);
+        return report;
+    }
+
+    /**
+     * The latest reports, newest first
+     */
+    public synchronized List<Report> getReports() {
+        return new ArrayList<>(recentReports);
+    }
+
+    /**
+     * Results read but not yet written
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stop watching and listening. Readers are interrupted, so a file that was being read
+     * stays in the inbox; results already queued are still written.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+            try {
+                if (watchService != null) {
+                    watchService.close();
+                }
+                if (serverSocket != null) {
+                    serverSocket.close();
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not close lab result ingestion: " + e.getMessage());
+            }
+        }
+        readers.forEach(Thread::interrupt);
+        writer.interrupt();
+    }
+
+    /**
+     * Run against the database: watch an inbox directory and optionally listen on a port
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: LabResultIngestor inbox-directory [port]");
+            System.exit(2);
+        }
+        LabResultIngestor ingestor = new LabResultIngestor(DatabaseHospitalService.getInstance()::completeLabTests);
+        ingestor.watch(Path.of(args[0]));
+        if (args.length > 1) {
+            ingestor.listen(Integer.parseInt(args[1]));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(ingestor::close));
+        Thread.currentThread().join();
+    }
+
+    // Reading
+
+    private void watchInbox(Path inbox, WatchService service) {
+        try {
+            ingestWaiting(inbox);
+            while (running) {
+                WatchKey key = service.take();
+                boolean overflow = false;
+                List<Path> arrived = new ArrayList<>();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        arrived.add(inbox.resolve((Path) event.context()));
+                    }
+                }
+                key.reset();
+                if (overflow) {
+                    // Events were lost, so look at everything that is there
+                    ingestWaiting(inbox);
+                } else {
+                    for (Path file : arrived) {
+                        ingestFile(inbox, file);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed
+        } catch (IOException e) {
+            System.err.println("❌ Stopped watching " + inbox + ": " + e.getMessage());
+        }
+    }
+
+    private void ingestWaiting(Path inbox) throws IOException, InterruptedException {
+        Set<Path> files = new TreeSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(inbox)) {
+            entries.forEach(files::add);
+        }
+        for (Path file : files) {
+            ingestFile(inbox, file);
+        }
+    }
+
+    /**
+     * Ingest one inbox file and move it out of the inbox. A modify event may follow the
+     * create event of a file already dealt with, so files that are gone are skipped.
+     */
+    private void ingestFile(Path inbox, Path file) throws InterruptedException {
+        if (!Files.isRegularFile(file) || !EXTENSIONS.contains(extension(file))) {
+            return;
+        }
+        Path target;
+        Report report = null;
+        try {
+            report = ingest(file);
+            if (report.getNotWritten() > 0) {
+                System.err.println("❌ " + report.getNotWritten() + " results of " + file.getFileName()
+                        + " were not written; moving it to failed/");
+                target = inbox.resolve("failed");
+            } else {
+                target = inbox.resolve("processed");
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Could not read " + file.getFileName() + ": " + e.getMessage());
+            target = inbox.resolve("failed");
+        }
+        try {
+            Path moved = Files.move(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            if (report != null && report.getRejected() > 0) {
+                writeRejections(report, moved.resolveSibling(moved.getFileName() + ".rejected.csv"));
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not move " + file.getFileName() + " out of the inbox: " + e.getMessage());
+        }
+    }
+
+    private void acceptConnections(ServerSocket server) {
+        int connections = 0;
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                String source = "tcp#" + (++connections) + " " + socket.getRemoteSocketAddress();
+                startReader("lab-result-connection-" + connections, () -> ingestConnection(socket, source));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("❌ Could not accept analyzer connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void ingestConnection(Socket socket, String source) {
+        try (socket) {
+            Report report = ingest(socket.getInputStream(), source);
+            OutputStream out = socket.getOutputStream();
+            out.write(String.format("OK completed=%d rejected=%d%n", report.getCompleted(), report.getRejected())
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("❌ Analyzer connection " + source + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Look at the first line without consuming it
+     */
+    private static boolean isHl7(BufferedReader reader) throws IOException {
+        reader.mark(8192);
+        String first = reader.readLine();
+        while (first != null && first.isBlank()) {
+            first = reader.readLine();
+        }
+        reader.reset();
+        return first != null && first.strip().matches("(?i)(MSH|PID|ORC|OBR|OBX)\\|.*");
+    }
+
+    private void readHl7(BufferedReader reader, Report report) throws IOException, InterruptedException {
+        String testId = null;
+        long testLine = 0;
+        StringBuilder text = new StringBuilder();
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            report.lines = ++lineNumber;
+            String[] fields = line.strip().split("\\|", -1);
+            switch (fields[0].toUpperCase(Locale.ROOT)) {
+                case "MSH", "OBR" -> {
+                    emit(testId, text, testLine, report);
+                    testId = null;
+                    if (fields[0].equalsIgnoreCase("OBR")) {
+                        String filler = component(field(fields, 3), 0);
+                        testId = filler.isEmpty() ? component(field(fields, 2), 0) : filler;
+                        testLine = lineNumber;
+                        if (testId.isEmpty()) {
+                            report.reject(lineNumber, "OBR segment without a test ID");
+                            testId = null;
+                        }
+                    }
+                }
+                case "OBX" -> {
+                    if (testId == null) {
+                        report.reject(lineNumber, "OBX segment outside a test");
+                    } else if (field(fields, 5).isEmpty()) {
+                        report.reject(lineNumber, "OBX segment without a value");
+                    } else {
+                        String analyte = component(field(fields, 3), 1);
+                        appendAnalyte(text, analyte.isEmpty() ? component(field(fields, 3), 0) : analyte,
+                                field(fields, 5), field(fields, 6), field(fields, 7), field(fields, 8));
+                    }
+                }
+                default -> {
+                    // PID, ORC, NTE and the like carry nothing the results need
+                }
+            }
+        }
+        emit(testId, text, testLine, report);
+    }
+
+    private void readCsv(BufferedReader reader, Report report) throws IOException, InterruptedException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).strip().toLowerCase(Locale.ROOT), i);
+        }
+        Integer idColumn = columns.get("test_id");
+        Integer resultsColumn = columns.containsKey("results") ? columns.get("results") : columns.get("result");
+        Integer valueColumn = columns.get("value");
+        if (idColumn == null || (resultsColumn == null && valueColumn == null)) {
+            throw new IOException("CSV header must name test_id and either results or value columns");
+        }
+
+        String testId = null;
+        long testLine = 0;
+        StringBuilder text = new StringBuilder();
+        List<String> row;
+        while ((row = csv.next()) != null) {
+            long lineNumber = csv.getRecordLine();
+            String id = cell(row, idColumn);
+            String value = cell(row, resultsColumn != null ? resultsColumn : valueColumn);
+            if (id.isEmpty() || value.isEmpty()) {
+                report.reject(lineNumber, id.isEmpty() ? "Missing test_id" : "Missing result for " + id);
+            } else {
+                if (!id.equals(testId)) {
+                    emit(testId, text, testLine, report);
+                    testId = id;
+                    testLine = lineNumber;
+                }
+                if (resultsColumn != null) {
+                    appendLine(text, value);
+                } else {
+                    appendAnalyte(text, cell(row, columns.get("analyte")), value, cell(row, columns.get("units")),
+                            cell(row, columns.get("reference_range")), cell(row, columns.get("flag")));
+                }
+            }
+            report.lines = lineNumber;
+        }
+        emit(testId, text, testLine, report);
+    }
+
+    /**
+     * Hand one test's results to the writer, blocking while the queue is full
+     */
+    private void emit(String testId, StringBuilder text, long line, Report report) throws InterruptedException {
+        if (testId == null || text.length() == 0) {
+            return;
+        }
+        queue.put(new Result(testId, text.toString(), line, report));
+        // Counted once queued, so an interrupted put leaves nothing for finish to wait on
+        report.results++;
+        text.setLength(0);
+    }
+
+    // Writing
+
+    private void writeResults() {
+        List<Result> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Result first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // Closing: write what is left, then stop
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Result> batch) {
+        Map<String, String> results = new LinkedHashMap<>();
+        for (Result result : batch) {
+            results.putIfAbsent(result.testId(), result.text());
+        }
+        Set<String> completed;
+        String failure = null;
+        try {
+            completed = sink.completeLabTests(results);
+        } catch (RuntimeException e) {
+            System.err.println("❌ Could not write " + results.size() + " lab results: " + e.getMessage());
+            completed = Set.of();
+            failure = "Not written: " + e.getMessage();
+        }
+
+        Set<String> claimed = new HashSet<>();
+        for (Result result : batch) {
+            // A test appearing twice in one batch is completed once, by its first result
+            boolean applied = completed.contains(result.testId()) && claimed.add(result.testId());
+            String reason = failure != null ? failure : "Unknown or already completed test " + result.testId();
+            result.report().settle(applied, failure == null, result.line(), reason);
+        }
+    }
+
+    // Helpers
+
+    private void startReader(String name, Runnable task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } finally {
+                readers.remove(Thread.currentThread());
+            }
+        }, name);
+        thread.setDaemon(true);
+        readers.add(thread);
+        thread.start();
+    }
+
+    private synchronized void remember(Report report) {
+        recentReports.addFirst(report);
+        if (recentReports.size() > RECENT_REPORTS) {
+            recentReports.removeLast();
+        }
+    }
+
+    private static void writeRejections(Report report, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("line,reason");
+            out.newLine();
+            for (Rejection rejection : report.getRejections()) {
+                out.write(rejection.line() + ",\"" + rejection.reason().replace("\"", "\"\"") + "\"");
+                out.newLine();
+            }
+        }
+    }
+
+    private static void appendAnalyte(StringBuilder text, String analyte, String value, String units,
+                                      String range, String flag) {
+        StringBuilder line = new StringBuilder();
+        if (!analyte.isEmpty()) {
+            line.append(analyte).append(": ");
+        }
+        line.append(value);
+        if (!units.isEmpty()) {
+            line.append(' ').append(units);
+        }
+        if (!range.isEmpty()) {
+            line.append(" (").append(range).append(')');
+        }
+        if (!flag.isEmpty() && !flag.equalsIgnoreCase("N")) {
+            line.append(' ').append(flag);
+        }
+        appendLine(text, line.toString());
+    }
+
+    private static void appendLine(StringBuilder text, String line) {
+        if (text.length() > 0) {
+            text.append('\n');
+        }
+        text.append(line);
+    }
+
+    private static String field(String[] fields, int index) {
+        return index < fields.length ? fields[index].strip() : "";
+    }
+
+    private static String component(String field, int index) {
+        String[] components = field.split("\\^", -1);
+        return index < components.length ? components[index].strip() : "";
+    }
+
+    private static String cell(List<String> row, Integer column) {
+        return column != null && column < row.size() ? row.get(column).strip() : "";
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,303 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.LabBatch;
+import hu_hospital.management.system.models.LabTest;
+import hu_hospital.management.system.models.LabTestStatus;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The lab's work list, organised the way analyzers run: ordered tests wait per test
+ * type, oldest first, and are proposed as batches of at most maxBatchSize tests ordered
+ * within one batching window of each other. A batch is ready once it is full or its
+ * oldest test has waited the whole window.
+ *
+ * HospitalService moves the tests of a batch through their statuses; this class only
+ * keeps the index of what is waiting and running, so proposing batches reads the head
+ * of each type's queue instead of filtering every lab test. It also keeps turnaround
+ * times (order to result) per test type.
+ */
+public class LabWorklist {
+
+    /** Most tests an analyzer takes in one run; -Dhospital.lab.batchSize overrides it */
+    public static final int MAX_BATCH_SIZE = Integer.getInteger("hospital.lab.batchSize", 12);
+    /** How long the first test of a batch may wait for others; -Dhospital.lab.batchWindowMinutes */
+    public static final Duration BATCH_WINDOW = Duration.ofMinutes(Long.getLong("hospital.lab.batchWindowMinutes", 30));
+
+    private static final Comparator<LabTest> ORDER =
+            Comparator.comparing(LabTest::getOrderDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+                      .thenComparing(LabTest::getTestId);
+
+    private static final class Turnaround {
+        final String testType;
+        final LongAdder tests = new LongAdder();
+        final LongAdder seconds = new LongAdder();
+        final LongAccumulator maxSeconds = new LongAccumulator(Math::max, 0);
+
+        Turnaround(String testType) {
+            this.testType = testType;
+        }
+    }
+
+    private final int maxBatchSize;
+    private final Duration window;
+
+    // Ordered tests not yet in a batch, per test type
+    private final ConcurrentMap<String, NavigableSet<LabTest>> waiting = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LabBatch> running = new ConcurrentHashMap<>();
+    private final AtomicLong batchSequence = new AtomicLong(1);
+    private final ConcurrentMap<String, Turnaround> turnarounds = new ConcurrentHashMap<>();
+
+    public LabWorklist() {
+        this(MAX_BATCH_SIZE, BATCH_WINDOW);
+    }
+
+    public LabWorklist(int maxBatchSize, Duration window) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+    }
+
+    /**
+     * Track a lab test in whatever state it is in: ordered tests join their type's
+     * queue, started tests of a batch join that batch, completed tests count towards
+     * the turnaround times.
+     */
+    void add(LabTest test) {
+        if (test.getStatus() == LabTestStatus.ORDERED && test.getBatchId() == null) {
+            waiting.computeIfAbsent(key(test.getTestType()), k -> new ConcurrentSkipListSet<>(ORDER)).add(test);
+        } else if (test.getStatus() == LabTestStatus.COMPLETED) {
+            recordTurnaround(test);
+        }
+        observeBatchId(test.getBatchId());
+    }
+
+    /**
+     * Take a test off the queue of its type, e.g. when it is started on its own.
+     * Returns false if it was not waiting, so only one caller claims each test.
+     */
+    boolean remove(LabTest test) {
+        NavigableSet<LabTest> queue = waiting.get(key(test.getTestType()));
+        return queue != null && queue.remove(test);
+    }
+
+    /**
+     * Take the tests of a proposed batch off their queue; returns those this caller claimed
+     */
+    List<LabTest> claim(LabBatch batch) {
+        List<LabTest> claimed = new ArrayList<>(batch.getSize());
+        for (LabTest test : batch.getTests()) {
+            if (remove(test)) {
+                claimed.add(test);
+            }
+        }
+        return claimed;
+    }
+
+    String nextBatchId() {
+        return "BATCH" + String.format("%04d", batchSequence.getAndIncrement());
+    }
+
+    void started(LabBatch batch) {
+        running.put(batch.getBatchId(), batch);
+    }
+
+    /**
+     * Note a completed test; a batch leaves the running list with its last test
+     */
+    void completed(LabTest test) {
+        remove(test);
+        recordTurnaround(test);
+        LabBatch batch = test.getBatchId() != null ? running.get(test.getBatchId()) : null;
+        if (batch != null && batch.getTests().stream().allMatch(t -> t.getStatus() == LabTestStatus.COMPLETED)) {
+            running.remove(batch.getBatchId(), batch);
+        }
+    }
+
+    /**
+     * Rebuild the running batches from started tests that carry a batch ID
+     */
+    void restoreRunning(Collection<LabTest> tests) {
+        Map<String, List<LabTest>> byBatch = new HashMap<>();
+        for (LabTest test : tests) {
+            if (test.getStatus() == LabTestStatus.IN_PROGRESS && test.getBatchId() != null) {
+                byBatch.computeIfAbsent(test.getBatchId(), id -> new ArrayList<>()).add(test);
+            }
+        }
+        byBatch.forEach((batchId, batchTests) -> {
+            batchTests.sort(ORDER);
+            LabTest first = batchTests.get(0);
+            running.put(batchId, new LabBatch(batchId, first.getTestType(), batchTests, first.getStartDate(), true));
+        });
+    }
+
+    // Reading
+
+    /**
+     * Every proposed batch, the one with the longest-waiting test first
+     */
+    public List<LabBatch> getBatches(LocalDateTime now) {
+        List<LabBatch> batches = new ArrayList<>();
+        for (NavigableSet<LabTest> queue : waiting.values()) {
+            batches.addAll(propose(queue, maxBatchSize, window, now, Integer.MAX_VALUE));
+        }
+        batches.sort(Comparator.comparing(LabBatch::getOldestOrderDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return batches;
+    }
+
+    /**
+     * The first batch of this test type, or null if none of its tests is waiting
+     */
+    public LabBatch nextBatch(String testType, LocalDateTime now) {
+        NavigableSet<LabTest> queue = waiting.get(key(testType));
+        if (queue == null) {
+            return null;
+        }
+        List<LabBatch> first = propose(queue, maxBatchSize, window, now, 1);
+        return first.isEmpty() ? null : first.get(0);
+    }
+
+    public LabBatch getRunningBatch(String batchId) {
+        return batchId != null ? running.get(batchId) : null;
+    }
+
+    /**
+     * Batches on the analyzers, oldest start first
+     */
+    public List<LabBatch> getRunningBatches() {
+        List<LabBatch> batches = new ArrayList<>(running.values());
+        batches.sort(Comparator.comparing(LabBatch::getStartedAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(LabBatch::getBatchId));
+        return batches;
+    }
+
+    /**
+     * Ordered tests not yet in a batch
+     */
+    public int getWaitingCount() {
+        int count = 0;
+        for (NavigableSet<LabTest> queue : waiting.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * Mean order-to-result time of the completed tests of a type, or null if there are none
+     */
+    public Duration getAverageTurnaround(String testType) {
+        Turnaround turnaround = turnarounds.get(key(testType));
+        long tests = turnaround != null ? turnaround.tests.sum() : 0;
+        return tests == 0 ? null : Duration.ofSeconds(turnaround.seconds.sum() / tests);
+    }
+
+    public Duration getMaxTurnaround(String testType) {
+        Turnaround turnaround = turnarounds.get(key(testType));
+        return turnaround == null ? null : Duration.ofSeconds(turnaround.maxSeconds.get());
+    }
+
+    /**
+     * Completed tests per test type, for the lab's statistics
+     */
+    public Map<String, Long> getCompletedCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        turnarounds.values().forEach(turnaround -> counts.put(turnaround.testType, turnaround.tests.sum()));
+        return counts;
+    }
+
+    /**
+     * Cut one type's ordered tests, oldest first, into batches of at most maxBatchSize
+     * tests ordered within window of the batch's first test. Stops after limit batches.
+     * The tests must all be of one type and in order date order.
+     */
+    public static List<LabBatch> propose(Collection<LabTest> ordered, int maxBatchSize, Duration window,
+                                         LocalDateTime now, int limit) {
+        List<LabBatch> batches = new ArrayList<>();
+        Iterator<LabTest> tests = ordered.iterator();
+        LabTest next = tests.hasNext() ? tests.next() : null;
+
+        while (next != null && batches.size() < limit) {
+            List<LabTest> batch = new ArrayList<>(Math.min(maxBatchSize, ordered.size()));
+            LabTest first = next;
+            LocalDateTime closes = first.getOrderDate() != null ? first.getOrderDate().plus(window) : null;
+            do {
+                batch.add(next);
+                next = tests.hasNext() ? tests.next() : null;
+            } while (next != null && batch.size() < maxBatchSize
+                    && (closes == null || next.getOrderDate() == null || !next.getOrderDate().isAfter(closes)));
+
+            boolean ready = batch.size() == maxBatchSize || closes == null || !now.isBefore(closes);
+            batches.add(new LabBatch(null, first.getTestType(), batch, null, ready));
+        }
+        return batches;
+    }
+
+    /**
+     * Group pending tests of any types by type and propose batches for each, the batch
+     * with the longest-waiting test first. Tests that are not ORDERED are skipped.
+     */
+    public static List<LabBatch> proposeAll(Collection<LabTest> pending, int maxBatchSize, Duration window,
+                                            LocalDateTime now) {
+        Map<String, NavigableSet<LabTest>> byType = new HashMap<>();
+        for (LabTest test : pending) {
+            if (test.getStatus() == LabTestStatus.ORDERED && test.getBatchId() == null) {
+                byType.computeIfAbsent(key(test.getTestType()), k -> new TreeSet<>(ORDER)).add(test);
+            }
+        }
+        List<LabBatch> batches = new ArrayList<>();
+        for (NavigableSet<LabTest> tests : byType.values()) {
+            batches.addAll(propose(tests, maxBatchSize, window, now, Integer.MAX_VALUE));
+        }
+        batches.sort(Comparator.comparing(LabBatch::getOldestOrderDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return batches;
+    }
+
+    private void recordTurnaround(LabTest test) {
+        Duration turnaround = test.getTurnaround();
+        if (turnaround == null) {
+            return;
+        }
+        Turnaround stats = turnarounds.computeIfAbsent(key(test.getTestType()), k -> new Turnaround(test.getTestType()));
+        stats.tests.increment();
+        stats.seconds.add(turnaround.getSeconds());
+        stats.maxSeconds.accumulate(turnaround.getSeconds());
+    }
+
+    /**
+     * Keep new batch IDs above any seen, e.g. in the journal
+     */
+    private void observeBatchId(String batchId) {
+        if (batchId == null || !batchId.startsWith("BATCH")) {
+            return;
+        }
+        try {
+            long number = Long.parseLong(batchId.substring(5));
+            batchSequence.accumulateAndGet(number + 1, Math::max);
+        } catch (NumberFormatException e) {
+            // Not one of ours
+        }
+    }
+
+    private static String key(String testType) {
+        return testType == null ? "" : testType.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,492 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.Patient;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Search-as-you-type index over patients for the registration desk.
+ *
+ * Phone numbers (digits only) and patient IDs are kept in sorted skip-list maps, so a
+ * prefix is a range scan that stops after the first k matches. Names are split into
+ * lower-case tokens; every distinct token has a posting list of the patients who
+ * carry it, and the distinct tokens also go into a trie. Misspellings are found by
+ * walking the trie with one edit-distance row per node and dropping every branch
+ * that is already too far off, so a fuzzy lookup visits a few hundred nodes instead
+ * of every name. There are far fewer distinct names than patients.
+ *
+ * Patients are only ever added: HospitalService never renames a patient or deletes
+ * one. Safe for concurrent use; searches run without locks.
+ */
+final class PatientSearchIndex {
+    // Ranking costs: lower is better
+    private static final int PREFIX_COST = 1;
+    private static final int EDIT_COST = 2;
+
+    // Bounds that keep a query on a very common name or a one-letter prefix fast
+    private static final int MAX_TOKEN_MATCHES = 64;
+    private static final int MAX_SCANNED = 50_000;
+
+    // Newest registration first among equally good matches (PAT999 is older than PAT1000)
+    private static final Comparator<Patient> NEWEST_FIRST =
+            Comparator.comparingInt((Patient p) -> p.getPatientId().length())
+                      .thenComparing(Patient::getPatientId).reversed();
+
+    // Plain string keys: natural-order comparisons keep bulk loads (journal replay) fast
+    private final ConcurrentNavigableMap<String, Patient[]> byPhone = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, Patient> byId = new ConcurrentSkipListMap<>();
+    private final Map<String, Postings> patientsByToken = new ConcurrentHashMap<>();
+    private final TrieNode tokens = new TrieNode();
+
+    /**
+     * Index a patient; adding the same patient again does nothing
+     */
+    void add(Patient patient) {
+        if (byId.putIfAbsent(patient.getPatientId(), patient) != null) {
+            return;
+        }
+        String phone = digits(patient.getPhoneNumber());
+        if (!phone.isEmpty()) {
+            byPhone.merge(phone, new Patient[] { patient }, PatientSearchIndex::concat);
+        }
+        List<String> words = nameTokens(patient);
+        Postings[] postings = new Postings[words.size()];
+        String[] own = new String[words.size()];
+        for (int i = 0; i < own.length; i++) {
+            postings[i] = patientsByToken.computeIfAbsent(words.get(i), this::newToken);
+            // Share the dictionary's copy of the word instead of keeping one per patient
+            own[i] = postings[i].token;
+        }
+        Indexed entry = new Indexed(patient, own);
+        for (Postings list : postings) {
+            list.add(entry);
+        }
+    }
+
+    /**
+     * Up to limit patients for what has been typed so far. Digits search phone numbers
+     * and then patient IDs by prefix, an ID like "PAT12" searches IDs, and anything else
+     * is matched against first and last names, tolerating typos and treating the last
+     * word as a prefix while it is still being typed.
+     */
+    List<Patient> search(String query, int limit) {
+        if (query == null || query.isBlank() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String trimmed = query.trim();
+        if (isPhoneLike(trimmed)) {
+            String digits = digits(trimmed);
+            List<Patient> found = new ArrayList<>(limit);
+            for (Patient[] sharing : startingWith(byPhone, digits).values()) {
+                for (Patient patient : sharing) {
+                    if (found.size() < limit) {
+                        found.add(patient);
+                    }
+                }
+                if (found.size() >= limit) {
+                    return found;
+                }
+            }
+            addIdsStartingWith("PAT" + digits, limit, found);
+            return found;
+        }
+        if (isIdLike(trimmed)) {
+            List<Patient> found = new ArrayList<>(limit);
+            addIdsStartingWith(trimmed.toUpperCase(Locale.ROOT), limit, found);
+            return found;
+        }
+        boolean stillTyping = !Character.isWhitespace(query.charAt(query.length() - 1));
+        return searchNames(tokenize(trimmed), stillTyping, limit);
+    }
+
+    private void addIdsStartingWith(String prefix, int limit, List<Patient> found) {
+        for (Patient patient : startingWith(byId, prefix).values()) {
+            if (found.size() >= limit) {
+                return;
+            }
+            if (!found.contains(patient)) {
+                found.add(patient);
+            }
+        }
+    }
+
+    private static <V> ConcurrentNavigableMap<String, V> startingWith(ConcurrentNavigableMap<String, V> index,
+                                                                      String prefix) {
+        return index.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static Patient[] concat(Patient[] sharing, Patient[] added) {
+        Patient[] all = Arrays.copyOf(sharing, sharing.length + added.length);
+        System.arraycopy(added, 0, all, sharing.length, added.length);
+        return all;
+    }
+
+    private List<Patient> searchNames(List<String> queryTokens, boolean lastIsPrefix, int limit) {
+        if (queryTokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Every query word must match one of the patient's name tokens
+        List<Map<String, Integer>> matches = new ArrayList<>();
+        int driver = 0;
+        long driverSize = Long.MAX_VALUE;
+        int minCostSum = 0;
+        int[] minCost = new int[queryTokens.size()];
+        for (int i = 0; i < queryTokens.size(); i++) {
+            Map<String, Integer> tokenMatches = matchToken(queryTokens.get(i), lastIsPrefix && i == queryTokens.size() - 1);
+            if (tokenMatches.isEmpty()) {
+                return new ArrayList<>();
+            }
+            matches.add(tokenMatches);
+            minCost[i] = Collections.min(tokenMatches.values());
+            minCostSum += minCost[i];
+            long size = 0;
+            for (String token : tokenMatches.keySet()) {
+                size += patientsByToken.get(token).size;
+            }
+            if (size < driverSize) {
+                driver = i;
+                driverSize = size;
+            }
+        }
+        int otherMinCost = minCostSum - minCost[driver];
+
+        // Walk the patients of the rarest query word, best-matching (then shortest) tokens first
+        List<Map.Entry<String, Integer>> driverTokens = new ArrayList<>(matches.get(driver).entrySet());
+        driverTokens.sort(Map.Entry.<String, Integer>comparingByValue()
+                .thenComparingInt(match -> match.getKey().length()));
+
+        Comparator<Scored> worstFirst = Comparator.comparingInt(Scored::cost)
+                .thenComparing(Scored::patient, NEWEST_FIRST).reversed();
+        PriorityQueue<Scored> best = new PriorityQueue<>(worstFirst);
+        Set<Patient> seen = driverTokens.size() > 1 ? new HashSet<>() : null;
+        int scanned = 0;
+
+        scan:
+        for (Map.Entry<String, Integer> driverToken : driverTokens) {
+            // No patient reached through this token can cost less than this
+            int bound = driverToken.getValue() + otherMinCost;
+            if (best.size() == limit && bound >= best.peek().cost()) {
+                // Tokens are sorted by cost, so the remaining ones cannot do better either
+                break;
+            }
+            Postings postings = patientsByToken.get(driverToken.getKey());
+            int n = postings.size;
+            Indexed[] items = postings.items;
+            for (int i = n - 1; i >= 0; i--) {
+                if (best.size() == limit && bound >= best.peek().cost()) {
+                    break;
+                }
+                Indexed entry = items[i];
+                if (seen != null && !seen.add(entry.patient())) {
+                    continue;
+                }
+                if (++scanned > MAX_SCANNED) {
+                    break scan;
+                }
+                int cost = cost(entry.tokens(), matches);
+                if (cost >= 0) {
+                    best.offer(new Scored(entry.patient(), cost));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+
+        List<Patient> found = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            found.add(best.poll().patient());
+        }
+        Collections.reverse(found);
+        return found;
+    }
+
+    /**
+     * Sum of the best match of each query word among the patient's tokens, -1 if a word has none
+     */
+    private static int cost(String[] own, List<Map<String, Integer>> matches) {
+        int total = 0;
+        for (Map<String, Integer> tokenMatches : matches) {
+            int best = Integer.MAX_VALUE;
+            for (String token : own) {
+                Integer cost = tokenMatches.get(token);
+                if (cost != null && cost < best) {
+                    best = cost;
+                }
+            }
+            if (best == Integer.MAX_VALUE) {
+                return -1;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Indexed tokens close to word, with their cost: the word itself, tokens it is a
+     * prefix of (while still typing), and tokens within a few edits
+     */
+    private Map<String, Integer> matchToken(String word, boolean prefix) {
+        int maxEdits = word.length() <= 3 ? 0 : word.length() <= 6 ? 1 : 2;
+        Map<String, Integer> found = new HashMap<>();
+        new TrieWalk(word, maxEdits, prefix, found).walk(tokens, 0, Integer.MAX_VALUE);
+        // A token reaches the trie just before its posting list is published
+        found.keySet().removeIf(token -> patientsByToken.get(token) == null);
+        return found;
+    }
+
+    private Postings newToken(String token) {
+        TrieNode node = tokens;
+        for (int i = 0; i < token.length(); i++) {
+            node = node.childOrCreate(token.charAt(i));
+        }
+        node.token = token;
+        return new Postings(token);
+    }
+
+    /**
+     * One fuzzy lookup: a depth-first walk of the token trie that keeps the row of the
+     * edit-distance table (optimal string alignment, so swapping two neighbouring
+     * letters is one edit) for the path to each node, and leaves a branch as soon as
+     * every cell of its row exceeds the allowed edits.
+     */
+    private static final class TrieWalk {
+        private final String word;
+        private final int maxEdits;
+        private final boolean prefix;
+        private final Map<String, Integer> found;
+        private final int maxDepth;
+        private final int[][] rows;
+        private final char[] path;
+
+        TrieWalk(String word, int maxEdits, boolean prefix, Map<String, Integer> found) {
+            this.word = word;
+            this.maxEdits = maxEdits;
+            this.prefix = prefix;
+            this.found = found;
+            this.maxDepth = word.length() + maxEdits;
+            this.rows = new int[maxDepth + 1][word.length() + 1];
+            this.path = new char[maxDepth + 1];
+            for (int i = 0; i <= word.length(); i++) {
+                rows[0][i] = i;
+            }
+        }
+
+        /**
+         * Visit the children of node, whose path is depth characters long. bestPrefix is
+         * the smallest distance between the word and any prefix of that path.
+         */
+        void walk(TrieNode node, int depth, int bestPrefix) {
+            Edges edges = node.edges;
+            int childDepth = depth + 1;
+            int[] above = rows[depth];
+            int[] row = rows[childDepth];
+            for (int c = 0; c < edges.labels().length && found.size() < MAX_TOKEN_MATCHES; c++) {
+                TrieNode child = edges.nodes()[c];
+                char label = edges.labels()[c];
+                path[childDepth] = label;
+                row[0] = childDepth;
+                int rowMin = row[0];
+                for (int i = 1; i <= word.length(); i++) {
+                    int substitution = word.charAt(i - 1) == label ? 0 : 1;
+                    int value = Math.min(Math.min(above[i] + 1, row[i - 1] + 1), above[i - 1] + substitution);
+                    if (i > 1 && childDepth > 1 && word.charAt(i - 1) == path[childDepth - 1]
+                            && word.charAt(i - 2) == label) {
+                        value = Math.min(value, rows[childDepth - 2][i - 2] + 1);
+                    }
+                    row[i] = value;
+                    rowMin = Math.min(rowMin, value);
+                }
+                int distance = row[word.length()];
+                int childPrefix = Math.min(bestPrefix, distance);
+
+                String token = child.token;
+                if (token != null && distance <= maxEdits) {
+                    record(token, distance, false);
+                }
+                if (token != null && prefix && childPrefix <= maxEdits) {
+                    record(token, childPrefix, true);
+                }
+
+                if (childDepth < maxDepth && rowMin <= maxEdits) {
+                    walk(child, childDepth, childPrefix);
+                } else if (prefix && childPrefix <= maxEdits) {
+                    // Everything further down starts with a close enough prefix
+                    collect(child, childPrefix);
+                }
+            }
+        }
+
+        /**
+         * Tokens below node, shortest first, as prefix matches
+         */
+        private void collect(TrieNode node, int distance) {
+            ArrayDeque<TrieNode> queue = new ArrayDeque<>();
+            queue.add(node);
+            while (!queue.isEmpty() && found.size() < MAX_TOKEN_MATCHES) {
+                for (TrieNode child : queue.poll().edges.nodes()) {
+                    if (child.token != null) {
+                        record(child.token, distance, true);
+                    }
+                    queue.add(child);
+                }
+            }
+        }
+
+        private void record(String token, int distance, boolean prefixOnly) {
+            int cost = token.equals(word) ? 0 : distance * EDIT_COST + (prefixOnly ? PREFIX_COST : 0);
+            found.merge(token, cost, Math::min);
+        }
+    }
+
+    private static List<String> nameTokens(Patient patient) {
+        List<String> own = tokenize(patient.getFirstName());
+        for (String token : tokenize(patient.getLastName())) {
+            if (!own.contains(token)) {
+                own.add(token);
+            }
+        }
+        return own;
+    }
+
+    /**
+     * Lower-case words of text; anything but letters and digits separates them
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>(2);
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!words.contains(word)) {
+                    words.add(word);
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * The digits of a phone number; returns the number itself when it has nothing else
+     */
+    static String digits(String phone) {
+        if (phone == null) {
+            return "";
+        }
+        for (int i = 0; i < phone.length(); i++) {
+            if (!Character.isDigit(phone.charAt(i))) {
+                StringBuilder digits = new StringBuilder(phone.length());
+                for (int j = 0; j < phone.length(); j++) {
+                    if (Character.isDigit(phone.charAt(j))) {
+                        digits.append(phone.charAt(j));
+                    }
+                }
+                return digits.toString();
+            }
+        }
+        return phone;
+    }
+
+    private static boolean isPhoneLike(String query) {
+        boolean anyDigit = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isDigit(c)) {
+                anyDigit = true;
+            } else if (c != '+' && c != '-' && c != ' ' && c != '(' && c != ')') {
+                return false;
+            }
+        }
+        return anyDigit;
+    }
+
+    // Letters followed by at least one digit and nothing else, e.g. PAT12
+    private static boolean isIdLike(String query) {
+        int i = 0;
+        while (i < query.length() && Character.isLetter(query.charAt(i))) {
+            i++;
+        }
+        if (i == 0 || i == query.length()) {
+            return false;
+        }
+        for (; i < query.length(); i++) {
+            if (!Character.isDigit(query.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Scored(Patient patient, int cost) { }
+
+    // A patient in a posting list, with all of their name tokens for scoring
+    private record Indexed(Patient patient, String[] tokens) { }
+
+    private record Edges(char[] labels, TrieNode[] nodes) { }
+
+    /**
+     * A trie node over name tokens. Its children are replaced as a whole on insert, so
+     * a concurrent walk always sees a consistent set.
+     */
+    private static final class TrieNode {
+        private static final Edges NONE = new Edges(new char[0], new TrieNode[0]);
+
+        volatile Edges edges = NONE;
+        volatile String token;
+
+        synchronized TrieNode childOrCreate(char label) {
+            Edges current = edges;
+            int at = Arrays.binarySearch(current.labels(), label);
+            if (at >= 0) {
+                return current.nodes()[at];
+            }
+            int insert = -at - 1;
+            int count = current.labels().length;
+            char[] labels = new char[count + 1];
+            TrieNode[] nodes = new TrieNode[count + 1];
+            System.arraycopy(current.labels(), 0, labels, 0, insert);
+            System.arraycopy(current.nodes(), 0, nodes, 0, insert);
+            labels[insert] = label;
+            nodes[insert] = new TrieNode();
+            System.arraycopy(current.labels(), insert, labels, insert + 1, count - insert);
+            System.arraycopy(current.nodes(), insert, nodes, insert + 1, count - insert);
+            edges = new Edges(labels, nodes);
+            return nodes[insert];
+        }
+    }
+
+    /**
+     * Patients carrying one name token, in the order they were indexed. Appends are
+     * serialized; readers read size, then the array, without locking.
+     */
+    private static final class Postings {
+        final String token;
+        volatile Indexed[] items = new Indexed[2];
+        volatile int size;
+
+        Postings(String token) {
+            this.token = token;
+        }
+
+        synchronized void add(Indexed entry) {
+            Indexed[] current = items;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                items = current;
+            }
+            current[size] = entry;
+            size = size + 1;
+        }
+
+    }
+}
@@ -0,0 +1,457 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.Medication;
+import hu_hospital.management.system.models.StockLevel;
+import hu_hospital.management.system.models.StockLot;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The pharmacy's stock: a catalog of medications by name and strength, each held as
+ * lots with their own expiry date. Dispensing takes every medication of a prescription
+ * or none of them, and draws each from the lot that expires first.
+ *
+ * Every item keeps its available units in one field, so checking a medication is a map
+ * lookup and a read. Changes to an item happen under that item's own lock; a
+ * prescription locks its items in stock key order, so windows dispensing different
+ * medications never wait for each other and two windows can never deadlock. Expired
+ * lots stop counting at once and are written off the next time their item changes.
+ *
+ * HospitalService owns the inventory and passes in how to journal. Changes are journaled
+ * while the item is still locked, with each lot in its new state, so replay simply puts
+ * the lots back.
+ */
+public class PharmacyInventory {
+
+    /** Units below which an item counts as low; -Dhospital.pharmacy.reorderLevel overrides it */
+    public static final int DEFAULT_REORDER_LEVEL = Integer.getInteger("hospital.pharmacy.reorderLevel", 100);
+
+    private static final Comparator<StockLot> FIRST_EXPIRY =
+            Comparator.comparing(StockLot::getExpiryDate).thenComparing(StockLot::getLotNumber);
+
+    /**
+     * One medication of a prescription against the stock of its item. needed is what the
+     * whole prescription takes of that item; stock is null if the pharmacy does not carry it.
+     */
+    public record Availability(Medication medication, int needed, StockLevel stock) {
+        public boolean isAvailable() {
+            return stock != null && stock.getAvailable() >= needed;
+        }
+    }
+
+    private static final class Item {
+        final String medicationName;
+        final String strength;
+        final ReentrantLock lock = new ReentrantLock();
+        // Changed under lock; read without it for stock levels and snapshots
+        final NavigableSet<StockLot> lots = new ConcurrentSkipListSet<>(FIRST_EXPIRY);
+        volatile int reorderLevel;
+        volatile long units;
+        // Guarded by lock
+        final Map<String, StockLot> lotsByNumber = new HashMap<>();
+        boolean low;
+        final LongAdder dispensed = new LongAdder();
+        final LongAdder refused = new LongAdder();
+
+        Item(String medicationName, String strength, int reorderLevel) {
+            this.medicationName = medicationName;
+            this.strength = strength;
+            this.reorderLevel = reorderLevel;
+        }
+    }
+
+    private final ConcurrentMap<String, Item> catalog = new ConcurrentHashMap<>();
+    private final Consumer<Consumer<HospitalJournal>> journal;
+    private final LongAdder dispensedPrescriptions = new LongAdder();
+    private final LongAdder refusedPrescriptions = new LongAdder();
+
+    /**
+     * journal is handed each change to append, or ignores it while nothing is journaled
+     */
+    PharmacyInventory(Consumer<Consumer<HospitalJournal>> journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Add a delivery to stock; units of a lot already held are added to it. Returns the
+     * item's level if it has just become low (old lots written off), otherwise null.
+     */
+    StockLevel receive(StockLot delivery) {
+        if (delivery.getExpiryDate() == null || delivery.getQuantity() <= 0) {
+            throw new IllegalArgumentException("A delivery needs an expiry date and a positive quantity: " + delivery);
+        }
+        Item item = item(delivery.getMedicationName(), delivery.getStrength());
+        LocalDate today = LocalDate.now();
+        item.lock.lock();
+        try {
+            writeOffExpired(item, today);
+            StockLot held = item.lotsByNumber.get(delivery.getLotNumber());
+            // Named as the item is, so a snapshot writes the lot under it
+            int quantity = held == null ? delivery.getQuantity() : Math.addExact(held.getQuantity(), delivery.getQuantity());
+            StockLot lot = new StockLot(item.medicationName, item.strength, delivery.getLotNumber(),
+                    delivery.getExpiryDate(), quantity);
+            setLot(item, lot);
+            journal.accept(j -> j.stockLotSet(lot));
+            return crossedLow(item, today);
+        } finally {
+            item.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the item's level if the new reorder level makes it low, otherwise null
+     */
+    StockLevel setReorderLevel(String medicationName, String strength, int reorderLevel) {
+        if (reorderLevel < 0) {
+            throw new IllegalArgumentException("Reorder level cannot be negative: " + reorderLevel);
+        }
+        Item item = item(medicationName, strength);
+        item.lock.lock();
+        try {
+            item.reorderLevel = reorderLevel;
+            journal.accept(j -> j.stockItemSet(item.medicationName, item.strength, reorderLevel));
+            return crossedLow(item, LocalDate.now());
+        } finally {
+            item.lock.unlock();
+        }
+    }
+
+    /**
+     * Take the units every medication needs, first-expiring lots first, or nothing if any
+     * item is short or not carried. whileLocked is called with the drawn lots in their new
+     * state while the items are still locked, so the caller can journal the dispense with them.
+     * Returns the items that have just become low, or null if nothing was drawn.
+     */
+    List<StockLevel> draw(List<Medication> medications, Consumer<List<StockLot>> whileLocked) {
+        Map<String, Integer> needs = needs(medications);
+        List<Item> items = new ArrayList<>(needs.size());
+        for (String key : needs.keySet()) {
+            Item item = catalog.get(key);
+            if (item == null) {
+                refusedPrescriptions.increment();
+                return null;
+            }
+            items.add(item);
+        }
+
+        LocalDate today = LocalDate.now();
+        int locked = 0;
+        try {
+            for (Item item : items) {
+                item.lock.lock();
+                locked++;
+            }
+            boolean shortOfStock = false;
+            for (Item item : items) {
+                writeOffExpired(item, today);
+                if (item.units < needs.get(key(item))) {
+                    item.refused.increment();
+                    shortOfStock = true;
+                }
+            }
+            if (shortOfStock) {
+                refusedPrescriptions.increment();
+                return null;
+            }
+
+            List<StockLot> drawn = new ArrayList<>();
+            for (Item item : items) {
+                int needed = needs.get(key(item));
+                List<StockLot> taken = new ArrayList<>();
+                for (Iterator<StockLot> lots = item.lots.iterator(); needed > 0 && lots.hasNext(); ) {
+                    StockLot lot = lots.next();
+                    int take = Math.min(needed, lot.getQuantity());
+                    taken.add(lot.withQuantity(lot.getQuantity() - take));
+                    needed -= take;
+                }
+                taken.forEach(lot -> setLot(item, lot));
+                item.dispensed.add(needs.get(key(item)));
+                drawn.addAll(taken);
+            }
+            whileLocked.accept(drawn);
+            dispensedPrescriptions.increment();
+
+            List<StockLevel> nowLow = new ArrayList<>();
+            for (Item item : items) {
+                StockLevel level = crossedLow(item, today);
+                if (level != null) {
+                    nowLow.add(level);
+                }
+            }
+            return nowLow;
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                items.get(i).lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Write off every expired lot. Returns the items that have just become low.
+     */
+    List<StockLevel> writeOffExpired() {
+        LocalDate today = LocalDate.now();
+        List<StockLevel> nowLow = new ArrayList<>();
+        for (Item item : catalog.values()) {
+            StockLot first = first(item);
+            if (first == null || !first.isExpired(today)) {
+                continue;
+            }
+            item.lock.lock();
+            try {
+                writeOffExpired(item, today);
+                StockLevel level = crossedLow(item, today);
+                if (level != null) {
+                    nowLow.add(level);
+                }
+            } finally {
+                item.lock.unlock();
+            }
+        }
+        return nowLow;
+    }
+
+    // Replay: state straight from the journal, nothing journaled again
+
+    void applyItem(String medicationName, String strength, int reorderLevel) {
+        Item item = catalog.computeIfAbsent(Medication.stockKey(medicationName, strength),
+                k -> new Item(medicationName, strength, reorderLevel));
+        item.lock.lock();
+        try {
+            item.reorderLevel = reorderLevel;
+            item.low = item.units < reorderLevel;
+        } finally {
+            item.lock.unlock();
+        }
+    }
+
+    void applyLot(StockLot lot) {
+        Item item = catalog.computeIfAbsent(lot.getStockKey(),
+                k -> new Item(lot.getMedicationName(), lot.getStrength(), DEFAULT_REORDER_LEVEL));
+        item.lock.lock();
+        try {
+            setLot(item, lot);
+            item.low = item.units < item.reorderLevel;
+        } finally {
+            item.lock.unlock();
+        }
+    }
+
+    /**
+     * Every item followed by its lots. Takes no locks, so it is safe from journal compaction.
+     */
+    void writeTo(HospitalJournal.Handler out) {
+        for (Item item : catalog.values()) {
+            out.stockItemSet(item.medicationName, item.strength, item.reorderLevel);
+            item.lots.forEach(out::stockLotSet);
+        }
+    }
+
+    boolean isEmpty() {
+        return catalog.isEmpty();
+    }
+
+    // Reading
+
+    /**
+     * Stock of one item, or null if the pharmacy does not carry it
+     */
+    public StockLevel getStockLevel(String medicationName, String strength) {
+        Item item = catalog.get(Medication.stockKey(medicationName, strength));
+        return item != null ? level(item, LocalDate.now()) : null;
+    }
+
+    public StockLevel getStockLevel(Medication medication) {
+        Item item = catalog.get(medication.getStockKey());
+        return item != null ? level(item, LocalDate.now()) : null;
+    }
+
+    public boolean isAvailable(Medication medication) {
+        StockLevel level = getStockLevel(medication);
+        return level != null && level.getAvailable() >= medication.getUnitsNeeded();
+    }
+
+    /**
+     * Each medication against its item's stock, in prescription order
+     */
+    public List<Availability> check(List<Medication> medications) {
+        Map<String, Integer> needs = needs(medications);
+        LocalDate today = LocalDate.now();
+        List<Availability> availability = new ArrayList<>(medications.size());
+        for (Medication medication : medications) {
+            Item item = catalog.get(medication.getStockKey());
+            availability.add(new Availability(medication, needs.get(medication.getStockKey()),
+                    item != null ? level(item, today) : null));
+        }
+        return availability;
+    }
+
+    /**
+     * Every item, by name and strength
+     */
+    public List<StockLevel> getStockLevels() {
+        LocalDate today = LocalDate.now();
+        List<StockLevel> levels = new ArrayList<>();
+        new TreeMap<>(catalog).values().forEach(item -> levels.add(level(item, today)));
+        return levels;
+    }
+
+    /**
+     * Items below their reorder level, emptiest first
+     */
+    public List<StockLevel> getLowStock() {
+        List<StockLevel> low = new ArrayList<>();
+        for (StockLevel level : getStockLevels()) {
+            if (level.isLow()) {
+                low.add(level);
+            }
+        }
+        low.sort(Comparator.comparingLong(StockLevel::getAvailable));
+        return low;
+    }
+
+    /**
+     * Lots of one item, first to expire first
+     */
+    public List<StockLot> getLots(String medicationName, String strength) {
+        Item item = catalog.get(Medication.stockKey(medicationName, strength));
+        return item != null ? new ArrayList<>(item.lots) : List.of();
+    }
+
+    public long getDispensedUnits(String medicationName, String strength) {
+        Item item = catalog.get(Medication.stockKey(medicationName, strength));
+        return item != null ? item.dispensed.sum() : 0;
+    }
+
+    /**
+     * Prescriptions this item was too short to fill
+     */
+    public long getShortfalls(String medicationName, String strength) {
+        Item item = catalog.get(Medication.stockKey(medicationName, strength));
+        return item != null ? item.refused.sum() : 0;
+    }
+
+    public long getDispensedPrescriptions() {
+        return dispensedPrescriptions.sum();
+    }
+
+    public long getRefusedPrescriptions() {
+        return refusedPrescriptions.sum();
+    }
+
+    /**
+     * The catalog item, added with the default reorder level if it is new
+     */
+    private Item item(String medicationName, String strength) {
+        if (medicationName == null || medicationName.isBlank()) {
+            throw new IllegalArgumentException("A stock item needs a medication name");
+        }
+        String key = Medication.stockKey(medicationName, strength);
+        Item held = catalog.get(key);
+        if (held != null) {
+            return held;
+        }
+        // Put the item in place before journaling it, so a snapshot cannot miss it
+        Item created = new Item(medicationName.trim(), strength == null ? "" : strength.trim(), DEFAULT_REORDER_LEVEL);
+        held = catalog.putIfAbsent(key, created);
+        if (held != null) {
+            return held;
+        }
+        created.lock.lock();
+        try {
+            journal.accept(j -> j.stockItemSet(created.medicationName, created.strength, created.reorderLevel));
+        } finally {
+            created.lock.unlock();
+        }
+        return created;
+    }
+
+    /**
+     * Replace a lot with its new state; a lot without units is gone. Caller holds the lock.
+     */
+    private static void setLot(Item item, StockLot lot) {
+        StockLot old = lot.getQuantity() > 0
+                ? item.lotsByNumber.put(lot.getLotNumber(), lot)
+                : item.lotsByNumber.remove(lot.getLotNumber());
+        if (old != null) {
+            item.lots.remove(old);
+            item.units -= old.getQuantity();
+        }
+        if (lot.getQuantity() > 0) {
+            item.lots.add(lot);
+            item.units += lot.getQuantity();
+        }
+    }
+
+    /**
+     * Caller holds the lock
+     */
+    private void writeOffExpired(Item item, LocalDate today) {
+        for (StockLot lot = first(item); lot != null && lot.isExpired(today); lot = first(item)) {
+            StockLot gone = lot.withQuantity(0);
+            setLot(item, gone);
+            journal.accept(j -> j.stockLotSet(gone));
+            System.out.println("🗑️ Wrote off " + lot.getQuantity() + " expired units of " + lot);
+        }
+    }
+
+    /**
+     * The level of an item that has just dropped below its reorder level, once until it
+     * is back above it. Caller holds the lock.
+     */
+    private static StockLevel crossedLow(Item item, LocalDate today) {
+        boolean low = item.units < item.reorderLevel;
+        boolean crossed = low && !item.low;
+        item.low = low;
+        return crossed ? level(item, today) : null;
+    }
+
+    private static StockLevel level(Item item, LocalDate today) {
+        long units = item.units;
+        StockLot first = first(item);
+        if (first != null && first.isExpired(today)) {
+            // Lots expired since the item last changed; count what can still be used
+            units = 0;
+            first = null;
+            for (StockLot lot : item.lots) {
+                if (!lot.isExpired(today)) {
+                    units += lot.getQuantity();
+                    first = first == null ? lot : first;
+                }
+            }
+        }
+        return new StockLevel(item.medicationName, item.strength, units, item.reorderLevel,
+                first != null ? first.getExpiryDate() : null);
+    }
+
+    private static StockLot first(Item item) {
+        Iterator<StockLot> lots = item.lots.iterator();
+        return lots.hasNext() ? lots.next() : null;
+    }
+
+    private static String key(Item item) {
+        return Medication.stockKey(item.medicationName, item.strength);
+    }
+
+    private static Map<String, Integer> needs(List<Medication> medications) {
+        // Sorted, which is the order items are locked in
+        Map<String, Integer> needs = new TreeMap<>();
+        for (Medication medication : medications) {
+            needs.merge(medication.getStockKey(), medication.getUnitsNeeded(), Integer::sum);
+        }
+        return needs;
+    }
+}
@@ -0,0 +1,63 @@
+package hu_hospital.management.system.services;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daily queue number counter. Numbers start again at 1 every day, like the
+ * queue_counters table in hospital_schema.sql.
+ */
+public class QueueCounter {
+    private volatile DailyCount current;
+
+    public QueueCounter() {
+        current = new DailyCount(LocalDate.now(), 0);
+    }
+
+    /**
+     * Issue the next queue number for today
+     */
+    public int next() {
+        return today().count.incrementAndGet();
+    }
+
+    /**
+     * Last queue number issued today (0 if none)
+     */
+    public int current() {
+        return today().count.get();
+    }
+
+    /**
+     * Make sure numbers issued elsewhere (e.g. by the database) are never handed out again
+     */
+    public void observe(int issued) {
+        today().count.accumulateAndGet(issued, Math::max);
+    }
+
+    private DailyCount today() {
+        DailyCount count = current;
+        LocalDate date = LocalDate.now();
+        if (!count.date.equals(date)) {
+            count = rollOver(date);
+        }
+        return count;
+    }
+
+    private synchronized DailyCount rollOver(LocalDate date) {
+        if (!current.date.equals(date)) {
+            current = new DailyCount(date, 0);
+        }
+        return current;
+    }
+
+    private static final class DailyCount {
+        final LocalDate date;
+        final AtomicInteger count;
+
+        DailyCount(LocalDate date, int count) {
+            this.date = date;
+            this.count = new AtomicInteger(count);
+        }
+    }
+}
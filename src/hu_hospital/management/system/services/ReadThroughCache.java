@@ -0,0 +1,171 @@
+package hu_hospital.management.system.services;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded least-recently-used cache with a time to live, loading missing entries
+ * from the database on first read.
+ *
+ * Loads run outside the lock, so a slow query never blocks readers of other keys.
+ * A load that overlaps an invalidation is returned to its caller but not cached,
+ * so an update can never be overwritten by the row read just before it.
+ * Missing rows (null) are not cached.
+ */
+public class ReadThroughCache<K, V> {
+
+    /**
+     * Reads one value from the backing store, or null if there is none
+     */
+    public interface Loader<K, V> {
+        V load(K key) throws SQLException;
+    }
+
+    private record Entry<V>(V value, long expiresAt) { }
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Loader<K, V> loader;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<K, Entry<V>> entries;
+    // Bumped by every invalidation; a load that saw an older value must not be cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    public ReadThroughCache(String name, int maxSize, long ttl, TimeUnit unit, Loader<K, V> loader) {
+        if (maxSize < 1 || ttl <= 0) {
+            throw new IllegalArgumentException("Invalid cache settings for " + name
+                    + ": maxSize=" + maxSize + ", ttl=" + ttl);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.loader = loader;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= ReadThroughCache.this.maxSize) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * The cached value for the key, loading it if it is missing or has expired
+     */
+    public V get(K key) throws SQLException {
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAt < 0) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                expirations.increment();
+            }
+        }
+
+        misses.increment();
+        long generation = invalidations.get();
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (SQLException | RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            recordLoad(System.nanoTime() - now);
+        }
+
+        if (value != null) {
+            synchronized (this) {
+                if (invalidations.get() == generation) {
+                    entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drop one entry, e.g. after the row was updated
+     */
+    public synchronized void invalidate(K key) {
+        invalidations.incrementAndGet();
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Drop expired entries now instead of on their next read
+     */
+    public synchronized void purgeExpired() {
+        long now = System.nanoTime();
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().expiresAt >= 0) {
+                it.remove();
+                expirations.increment();
+            }
+        }
+    }
+
+    private void recordLoad(long nanos) {
+        loadNanos.add(nanos);
+        maxLoadNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Metrics
+    public String getName() { return name; }
+    public int getMaxSize() { return maxSize; }
+    public synchronized int size() { return entries.size(); }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getLoadFailures() { return loadFailures.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getExpirations() { return expirations.sum(); }
+    public double getMaxLoadMillis() { return maxLoadNanos.get() / 1_000_000.0; }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long lookups = h + misses.sum();
+        return lookups == 0 ? 0 : (double) h / lookups;
+    }
+
+    public double getAverageLoadMillis() {
+        long loads = misses.sum();
+        return loads == 0 ? 0 : loadNanos.sum() / 1_000_000.0 / loads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d entries, hits %d, misses %d (%.1f%% hit rate), evicted %d, expired %d,"
+                        + " load avg %.2f ms, max %.2f ms, failed %d",
+                name, size(), maxSize, getHits(), getMisses(), getHitRate() * 100, getEvictions(),
+                getExpirations(), getAverageLoadMillis(), getMaxLoadMillis(), getLoadFailures());
+    }
+}
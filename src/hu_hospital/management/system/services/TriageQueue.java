@@ -0,0 +1,149 @@
+package hu_hospital.management.system.services;
+
+import hu_hospital.management.system.models.Patient;
+import hu_hospital.management.system.models.TriageLevel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The waiting room in triage order: an ordered list keyed by (triage level, arrival),
+ * kept up to date by incremental merges. Adding, re-triaging or removing a patient only
+ * marks their node and is O(1); the patient's node is found through a map by ID.
+ *
+ * The ordered list the screens read is rebuilt only after the queue has changed; reads
+ * in between share it. A rebuild sorts just the patients added or re-triaged since the
+ * last one and merges them into the previous order, dropping those who left, so it is a
+ * linear pass rather than a sort of the whole room.
+ */
+final class TriageQueue {
+
+    private static final Comparator<Node> ORDER =
+            Comparator.comparingInt((Node n) -> n.level.ordinal()).thenComparingLong(n -> n.arrival);
+
+    private static final class Node {
+        final Patient patient;
+        final long arrival;
+        TriageLevel level;
+        boolean queued = true;
+        boolean moved = true;
+
+        Node(Patient patient, TriageLevel level, long arrival) {
+            this.patient = patient;
+            this.level = level;
+            this.arrival = arrival;
+        }
+    }
+
+    // Guarded by this
+    private final Map<String, Node> nodes = new HashMap<>();
+    private long arrivals;
+
+    // Rebuilt on the first read after a change, from the previous order plus the moved nodes
+    private Node[] orderedNodes = new Node[0];
+    private final List<Node> moved = new ArrayList<>();
+    private volatile List<Patient> ordered = List.of();
+    private volatile boolean stale;
+
+    /**
+     * Add a patient behind everyone of the same triage level. A patient already in the
+     * queue keeps their place; returns false then.
+     */
+    synchronized boolean add(Patient patient) {
+        if (nodes.containsKey(patient.getPatientId())) {
+            return false;
+        }
+        Node node = new Node(patient, patient.getTriageLevel(), arrivals++);
+        nodes.put(patient.getPatientId(), node);
+        moved.add(node);
+        stale = true;
+        return true;
+    }
+
+    synchronized boolean remove(String patientId) {
+        Node node = nodes.remove(patientId);
+        if (node == null) {
+            return false;
+        }
+        node.queued = false;
+        stale = true;
+        return true;
+    }
+
+    /**
+     * Move a waiting patient to a new triage level; they keep their arrival time
+     */
+    synchronized boolean reprioritize(String patientId, TriageLevel level) {
+        Node node = nodes.get(patientId);
+        if (node == null || node.level == level) {
+            return false;
+        }
+        node.level = level;
+        if (!node.moved) {
+            node.moved = true;
+            moved.add(node);
+        }
+        stale = true;
+        return true;
+    }
+
+    synchronized boolean contains(String patientId) {
+        return nodes.containsKey(patientId);
+    }
+
+    synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Every waiting patient, most urgent first; the list is read-only
+     */
+    List<Patient> inOrder() {
+        if (stale) {
+            synchronized (this) {
+                if (stale) {
+                    rebuild();
+                    stale = false;
+                }
+            }
+        }
+        return ordered;
+    }
+
+    private void rebuild() {
+        List<Node> changed = new ArrayList<>(moved.size());
+        for (Node node : moved) {
+            if (node.queued) {
+                changed.add(node);
+            }
+        }
+        moved.clear();
+        changed.sort(ORDER);
+
+        Node[] merged = new Node[nodes.size()];
+        List<Patient> patients = new ArrayList<>(merged.length);
+        int count = 0;
+        int next = 0;
+        for (Node node : orderedNodes) {
+            if (!node.queued || node.moved) {
+                continue;
+            }
+            while (next < changed.size() && ORDER.compare(changed.get(next), node) < 0) {
+                merged[count++] = changed.get(next++);
+            }
+            merged[count++] = node;
+        }
+        while (next < changed.size()) {
+            merged[count++] = changed.get(next++);
+        }
+        for (Node node : merged) {
+            node.moved = false;
+            patients.add(node.patient);
+        }
+        orderedNodes = merged;
+        ordered = Collections.unmodifiableList(patients);
+    }
+}